@@ -19,8 +19,30 @@
 
 package freemarker.cache;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.JarURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 
+import freemarker.log.Logger;
+import freemarker.template.Configuration;
 import freemarker.template.utility.NullArgumentException;
 import freemarker.template.utility.StringUtil;
 
@@ -28,12 +50,26 @@ import freemarker.template.utility.StringUtil;
  * A {@link TemplateLoader} that can load templates from the "classpath". Naturally, it can load from jar files, or from
  * anywhere where Java can load classes from. Internally, it uses {@link Class#getResource(String)} or
  * {@link ClassLoader#getResource(String)} to load templates.
+ * 
+ * <p>
+ * Optionally, it can scan the base package on the class path only once, and then find the templates without
+ * involving the {@link ClassLoader}; see {@link #setUseClassPathIndex(boolean)}.
  */
-public class ClassTemplateLoader extends URLTemplateLoader {
+public class ClassTemplateLoader extends URLTemplateLoader
+        implements EnumerableTemplateLoader, StatefulTemplateLoader {
+    
+    private static final Logger LOG = Logger.getLogger("freemarker.cache");
     
     private final Class<?> resourceLoaderClass;
     private final ClassLoader classLoader;
     private final String basePackagePath;
+    
+    private boolean useClassPathIndex;
+    /**
+     * {@code null} if it wasn't built yet, or {@link #useClassPathIndex} is {@code false}.
+     */
+    private volatile ClassPathIndex classPathIndex;
+    private final Object classPathIndexLock = new Object();
 
     /**
      * Creates a template loader that will use the {@link Class#getResource(String)} method of its own class to load the
@@ -147,6 +183,88 @@ public class ClassTemplateLoader extends URLTemplateLoader {
                 .getResource(fullPath);
     }
 
+    /**
+     * If {@link #setUseClassPathIndex(boolean) useClassPathIndex} is {@code true}, then finds the template in the
+     * class path index, otherwise it works as described in {@link URLTemplateLoader#findTemplateSource(String)}.
+     */
+    @Override
+    public Object findTemplateSource(String name) throws IOException {
+        if (!useClassPathIndex) {
+            return super.findTemplateSource(name);
+        }
+        
+        Object source = getClassPathIndex().get(name);
+        if (source instanceof File && !((File) source).isFile()) {
+            // Was deleted since the class path was scanned
+            return null;
+        }
+        return source;
+    }
+    
+    @Override
+    public long getLastModified(Object templateSource) {
+        if (templateSource instanceof JarEntryTemplateSource) {
+            return ((JarEntryTemplateSource) templateSource).lastModified;
+        } else if (templateSource instanceof File) {
+            return ((File) templateSource).lastModified();
+        } else {
+            return super.getLastModified(templateSource);
+        }
+    }
+
+    @Override
+    public Reader getReader(Object templateSource, String encoding) throws IOException {
+        if (templateSource instanceof JarEntryTemplateSource) {
+            JarEntryTemplateSource jarEntrySource = (JarEntryTemplateSource) templateSource;
+            InputStream in;
+            try {
+                in = jarEntrySource.jarFile.getInputStream(jarEntrySource.jarEntry);
+            } catch (IllegalStateException e) {
+                // The JarFile was closed by resetState() since the source was found.
+                URLConnection conn = jarEntrySource.url.openConnection();
+                // Without caching, the JarFile opened by the connection is closed when the stream is closed.
+                conn.setUseCaches(false);
+                in = conn.getInputStream();
+            }
+            return new InputStreamReader(in, encoding);
+        } else if (templateSource instanceof File) {
+            return new InputStreamReader(new FileInputStream((File) templateSource), encoding);
+        } else {
+            return super.getReader(templateSource, encoding);
+        }
+    }
+
+    @Override
+    public void closeTemplateSource(Object templateSource) throws IOException {
+        if (!(templateSource instanceof JarEntryTemplateSource || templateSource instanceof File)) {
+            super.closeTemplateSource(templateSource);
+        }
+        // Otherwise do nothing, as the Reader is closed by the caller.
+    }
+
+    /**
+     * Drops the class path index (if {@link #setUseClassPathIndex(boolean) useClassPathIndex} is {@code true}), so
+     * that the class path will be scanned again when the next template is searched. This is only useful if the
+     * templates are in a directory (not in a jar), and new templates were added there. The jar files kept open by the
+     * index are closed.
+     * 
+     * @since 2.3.29
+     */
+    public void resetState() {
+        dropClassPathIndex();
+    }
+    
+    private void dropClassPathIndex() {
+        ClassPathIndex classPathIndex;
+        synchronized (classPathIndexLock) {
+            classPathIndex = this.classPathIndex;
+            this.classPathIndex = null;
+        }
+        if (classPathIndex != null) {
+            classPathIndex.close();
+        }
+    }
+
     private static boolean isSchemeless(String fullPath) {
         int i = 0;
         int ln = fullPath.length();
@@ -165,6 +283,199 @@ public class ClassTemplateLoader extends URLTemplateLoader {
         return true;
     }
 
+    /**
+     * Lists the resources under the base package, in all the directories and jar files of the class path (of the
+     * class loader) that contain that package. Other kind of class path entries (like the virtual file systems of
+     * some application servers) are skipped, as they can't be listed. Note that jar files only show up if they
+     * contain an explicit entry for the base package directory, which is the case for most jar files.
+     * 
+     * <p>
+     * If {@link #setUseClassPathIndex(boolean) useClassPathIndex} is {@code true}, then this simply lists the content
+     * of the class path index.
+     * 
+     * @since 2.3.29
+     */
+    public List<String> listTemplateNames() throws IOException {
+        if (useClassPathIndex) {
+            List<String> names = new ArrayList<String>(getClassPathIndex().keySet());
+            Collections.sort(names);
+            return names;
+        }
+        
+        Map<String, Object> names = new TreeMap<String, Object>();
+        scanClassPath(names, null);
+        return new ArrayList<String>(names.keySet());
+    }
+    
+    private Map<String, Object> getClassPathIndex() throws IOException {
+        ClassPathIndex classPathIndex = this.classPathIndex;
+        if (classPathIndex == null) {
+            synchronized (classPathIndexLock) {
+                classPathIndex = this.classPathIndex;
+                if (classPathIndex == null) {
+                    Map<String, Object> sources = new HashMap<String, Object>();
+                    Map<String, JarFile> jarFiles = new HashMap<String, JarFile>();
+                    try {
+                        scanClassPath(sources, jarFiles);
+                    } catch (IOException e) {
+                        closeJarFiles(jarFiles.values());
+                        throw e;
+                    } catch (RuntimeException e) {
+                        closeJarFiles(jarFiles.values());
+                        throw e;
+                    }
+                    classPathIndex = new ClassPathIndex(
+                            Collections.unmodifiableMap(sources), new ArrayList<JarFile>(jarFiles.values()));
+                    this.classPathIndex = classPathIndex;
+                }
+            }
+        }
+        return classPathIndex.sources;
+    }
+    
+    private static void closeJarFiles(Collection<JarFile> jarFiles) {
+        for (JarFile jarFile : jarFiles) {
+            try {
+                jarFile.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close jar file " + StringUtil.jQuote(jarFile.getName()), e);
+            }
+        }
+    }
+    
+    /**
+     * Finds the resources under the base package in the directories and jar files of the class path.
+     * 
+     * @param sources
+     *            The template names (relative to the base package) are added to this as keys, with a {@link File} or
+     *            a {@link JarEntryTemplateSource} value. Names that were already added aren't overwritten, as the
+     *            earlier class path entry hides the later ones.
+     * @param openJarFiles
+     *            If {@code null}, the values added to {@code sources} are {@code null} for the jar entries, and the jar
+     *            files are closed after they were scanned. Otherwise the jar files are kept open for reading the
+     *            {@link JarEntryTemplateSource}-s, and are added to this, with their URL as the key.
+     */
+    private void scanClassPath(Map<String, Object> sources, Map<String, JarFile> openJarFiles) throws IOException {
+        String absBasePackagePath = getAbsoluteBasePackagePath();
+        ClassLoader classLoader = this.classLoader != null ? this.classLoader : resourceLoaderClass.getClassLoader();
+        if (classLoader == null) {
+            classLoader = ClassLoader.getSystemClassLoader();
+        }
+        
+        for (Enumeration<URL> dirURLs = classLoader.getResources(absBasePackagePath); dirURLs.hasMoreElements(); ) {
+            URL dirURL = dirURLs.nextElement();
+            String protocol = dirURL.getProtocol();
+            if ("file".equals(protocol)) {
+                File dir;
+                try {
+                    dir = new File(dirURL.toURI());
+                } catch (URISyntaxException e) {
+                    // Old URLClassLoader-s may return not properly escaped URL-s 
+                    dir = new File(dirURL.getPath());
+                }
+                scanDirectory(dir, "", sources);
+            } else if ("jar".equals(protocol)) {
+                URLConnection conn = dirURL.openConnection();
+                if (conn instanceof JarURLConnection) {
+                    scanJarFile((JarURLConnection) conn, sources, openJarFiles);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Returns the base package path relatively to the root of the class loader, without initial {@code /}, and with
+     * {@code /} at the end, unless it's the root itself.
+     */
+    private String getAbsoluteBasePackagePath() {
+        if (resourceLoaderClass == null) {
+            return basePackagePath;
+        }
+        if (basePackagePath.startsWith("/")) {
+            return basePackagePath.substring(1);
+        }
+        String className = resourceLoaderClass.getName();
+        int lastDotIdx = className.lastIndexOf('.');
+        return lastDotIdx == -1
+                ? basePackagePath
+                : className.substring(0, lastDotIdx + 1).replace('.', '/') + basePackagePath;
+    }
+
+    private static void scanDirectory(File dir, String namePrefix, Map<String, Object> sources) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = namePrefix + file.getName();
+            if (file.isDirectory()) {
+                scanDirectory(file, name + "/", sources);
+            } else if (file.isFile() && !sources.containsKey(name)) {
+                sources.put(name, file);
+            }
+        }
+    }
+    
+    /**
+     * Scans the jar file; see the {@code openJarFiles} parameter of {@link #scanClassPath(Map, Map)}.
+     */
+    private static void scanJarFile(JarURLConnection conn, Map<String, Object> sources,
+            Map<String, JarFile> openJarFiles) throws IOException {
+        String dirEntryName = conn.getEntryName();
+        if (dirEntryName == null) {
+            dirEntryName = "";
+        } else if (dirEntryName.length() != 0 && !dirEntryName.endsWith("/")) {
+            dirEntryName += "/";
+        }
+        
+        String jarFileURL = conn.getJarFileURL().toExternalForm();
+        JarFile jarFile = openJarFiles != null ? openJarFiles.get(jarFileURL) : null;
+        boolean closeJarFile;
+        if (jarFile == null) {
+            conn.setUseCaches(false); // So that we get a JarFile that we own, and so are allowed to close
+            jarFile = conn.getJarFile();
+            if (openJarFiles != null) {
+                openJarFiles.put(jarFileURL, jarFile);
+                closeJarFile = false;
+            } else {
+                closeJarFile = true;
+            }
+        } else {
+            closeJarFile = false;
+        }
+        try {
+            for (Enumeration<JarEntry> entries = jarFile.entries(); entries.hasMoreElements(); ) {
+                JarEntry entry = entries.nextElement();
+                String entryName = entry.getName();
+                if (!entry.isDirectory() && entryName.startsWith(dirEntryName)) {
+                    String name = entryName.substring(dirEntryName.length());
+                    if (!sources.containsKey(name)) {
+                        sources.put(name, openJarFiles != null
+                                ? new JarEntryTemplateSource(
+                                        jarFile, entry,
+                                        new URL("jar:" + jarFileURL + "!" + toURLPath("/" + entryName)))
+                                : null);
+                    }
+                }
+            }
+        } finally {
+            if (closeJarFile) {
+                jarFile.close();
+            }
+        }
+    }
+
+    private static String toURLPath(String path) throws IOException {
+        try {
+            // Unlike URLEncoder, this leaves "/"-s alone, and escapes space as %20.
+            return new URI(null, null, path, null).getRawPath();
+        } catch (URISyntaxException e) {
+            IOException ioE = new IOException("Failed to create URL path from " + StringUtil.jQuote(path));
+            ioE.initCause(e);
+            throw ioE;
+        }
+    }
+
     /**
      * Show class name and some details that are useful in template-not-found errors.
      * 
@@ -206,6 +517,35 @@ public class ClassTemplateLoader extends URLTemplateLoader {
         return classLoader;
     }
 
+    /**
+     * Getter pair of {@link #setUseClassPathIndex(boolean)}.
+     * 
+     * @since 2.3.29
+     */
+    public boolean getUseClassPathIndex() {
+        return useClassPathIndex;
+    }
+
+    /**
+     * Sets whether the base package is scanned on the class path only once (when the first template is searched),
+     * and then the templates are found based on the resulting index, instead of asking the {@link ClassLoader} on
+     * each lookup. Defaults to {@code false}. The index keeps the indexed jar files open (one handle per jar
+     * file), until {@link #resetState()} or {@code setUseClassPathIndex(false)} is called. The templates in the jar
+     * files are never reloaded, as jar content can't change anyway. The templates in directories are still reloaded
+     * when they are modified, but templates added after the scan won't be found until {@link #resetState()} is called
+     * (as {@link Configuration#clearTemplateCache()} does).
+     * 
+     * <p>
+     * Only those class path entries are indexed that {@link #listTemplateNames()} can list; templates in other kind of
+     * class path entries won't be found in this mode. Should be set before the template loader is used.
+     * 
+     * @since 2.3.29
+     */
+    public void setUseClassPathIndex(boolean useClassPathIndex) {
+        this.useClassPathIndex = useClassPathIndex;
+        dropClassPathIndex();
+    }
+
     /**
      * See the similar parameter of {@link #ClassTemplateLoader(ClassLoader, String)}; note that this is a normalized
      * version of what was actually passed to the constructor.
@@ -216,4 +556,68 @@ public class ClassTemplateLoader extends URLTemplateLoader {
         return basePackagePath;
     }
 
-}
\ No newline at end of file
+    /**
+     * The result of {@link #scanClassPath(Map, Map)}, together with the jar files that must be closed when it's
+     * dropped.
+     */
+    private static final class ClassPathIndex {
+        
+        /** Maps the template names to {@link File}-s or {@link JarEntryTemplateSource}-s. */
+        private final Map<String, Object> sources;
+        private final List<JarFile> jarFiles;
+        
+        ClassPathIndex(Map<String, Object> sources, List<JarFile> jarFiles) {
+            this.sources = sources;
+            this.jarFiles = jarFiles;
+        }
+        
+        void close() {
+            closeJarFiles(jarFiles);
+        }
+        
+    }
+
+    /**
+     * A template source found in a jar file by the class path index.
+     */
+    private static final class JarEntryTemplateSource {
+        
+        /** Owned by the {@link ClassPathIndex}; might be already closed. */
+        private final JarFile jarFile;
+        private final JarEntry jarEntry;
+        /** The {@code jar:} URL of the entry. */
+        private final URL url;
+        private final long lastModified;
+        
+        JarEntryTemplateSource(JarFile jarFile, JarEntry jarEntry, URL url) {
+            this.jarFile = jarFile;
+            this.jarEntry = jarEntry;
+            this.url = url;
+            this.lastModified = jarEntry.getTime();
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof JarEntryTemplateSource)) {
+                return false;
+            }
+            // Not using URL.equals, as that may resolve host names
+            return url.toExternalForm().equals(((JarEntryTemplateSource) o).url.toExternalForm());
+        }
+        
+        @Override
+        public int hashCode() {
+            return url.toExternalForm().hashCode();
+        }
+        
+        @Override
+        public String toString() {
+            return url.toExternalForm();
+        }
+        
+    }
+
+}
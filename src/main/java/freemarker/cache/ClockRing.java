@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.cache;
+
+/**
+ * The circular list of entries, and the "clock hand" moving on it, that implement the "CLOCK" eviction algorithm (an
+ * approximation of least-recently-used eviction) for {@link ConcurrentLfuCacheStorage} and
+ * {@link WeightedCacheStorage}. Not thread-safe; the caller must guard all methods with its own lock, except
+ * {@link Node#markReferenced()}, which can be called without locking.
+ * 
+ * @since 2.3.29
+ */
+final class ClockRing<N extends ClockRing.Node> {
+
+    /** Sentinel of the circular list; the nodes follow it in the order of their insertion. */
+    private final Node head = new Node();
+    /** The next node to consider for eviction. */
+    private Node clockHand = head;
+    private int size;
+
+    ClockRing() {
+        head.prev = head.next = head;
+    }
+
+    /**
+     * Links the node before the clock hand, so it will be the last to be visited by it.
+     */
+    void add(N node) {
+        Node next = clockHand;
+        node.next = next;
+        node.prev = next.prev;
+        next.prev.next = node;
+        next.prev = node;
+        size++;
+    }
+
+    /**
+     * Unlinks a node that was earlier {@link #add(Node) added}.
+     */
+    void remove(N node) {
+        if (clockHand == node) {
+            clockHand = node.next;
+        }
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = node.next = null;
+        size--;
+    }
+
+    /**
+     * Moves the clock hand to the first node that wasn't {@link Node#markReferenced() referenced} since the clock hand
+     * has last passed it, meanwhile clearing the referenced flag of the nodes it passes. Doesn't remove the returned
+     * node. Must only be called if the ring isn't empty.
+     */
+    @SuppressWarnings("unchecked")
+    N findEvictionVictim() {
+        Node node = clockHand;
+        while (true) {
+            if (node != head) {
+                if (!node.referenced) {
+                    clockHand = node.next;
+                    return (N) node;
+                }
+                node.referenced = false;
+            }
+            node = node.next;
+        }
+    }
+
+    void clear() {
+        head.prev = head.next = head;
+        clockHand = head;
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    static class Node {
+        /** Set on read, cleared when the clock hand passes it; races are harmless. */
+        volatile boolean referenced;
+        Node prev;
+        Node next;
+
+        /**
+         * Called when the entry is read; it's thread-safe, and doesn't require locking.
+         */
+        final void markReferenced() {
+            // Avoid the volatile write if possible, as that's costly when many threads read the same entry.
+            if (!referenced) {
+                referenced = true;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+import java.io.IOException;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+/**
+ * Persists the compiled (already parsed) form of templates, so that after a restart the {@link TemplateCache} can
+ * re-create the {@link Template} objects without parsing their source code again. The entries are identified by a key
+ * that's calculated by FreeMarker from the source name, the source code itself, the
+ * {@link Configuration#getIncompatibleImprovements() incompatible_improvements}, the settings that influence parsing,
+ * and from the FreeMarker version. Thus if any of these change, the old entry is simply not used anymore; there's no
+ * need to invalidate entries explicitly. The stored data is opaque for the store, and is only usable with the same
+ * FreeMarker version that has written it.
+ *
+ * <p>
+ * The template source is still loaded with the {@link TemplateLoader}, as that's needed to calculate the key. What's
+ * saved is the parsing. Re-creating templates from their compiled form has some one-time initialization cost in each
+ * JVM, so the gain is the biggest when a lot of templates are loaded after the start. The compiled form is compressed,
+ * and is typically about as big as the template source code.
+ *
+ * <p>
+ * Implementations must be thread-safe. Any exception thrown by the methods is logged, and then the template is parsed
+ * as if there was no {@link CompiledTemplateStore}.
+ *
+ * @see Configuration#setCompiledTemplateStore(CompiledTemplateStore)
+ * @see FileCompiledTemplateStore
+ *
+ * @since 2.3.29
+ */
+public interface CompiledTemplateStore {
+
+    /**
+     * Returns the data earlier stored with {@link #put(String, String, byte[])} for the given key, or {@code null} if
+     * there's no such entry.
+     *
+     * @param sourceName
+     *            The {@link Template#getSourceName() source name} of the template; for information only, as the key
+     *            alone identifies the entry.
+     * @param key
+     *            Identifies the entry; a string of lower case hexadecimal digits, so it's safe to use it as part of a
+     *            file name.
+     */
+    byte[] get(String sourceName, String key) throws IOException;
+
+    /**
+     * Stores the compiled form of a template; see {@link #get(String, String)} for the parameters. If there's
+     * already an entry with the same key, it should be replaced, though as it's known to have the same content, it
+     * can be also kept.
+     */
+    void put(String sourceName, String key, byte[] compiledTemplate) throws IOException;
+
+}
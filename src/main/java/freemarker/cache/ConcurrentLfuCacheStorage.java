@@ -0,0 +1,400 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded, thread-safe cache storage that, unlike {@link MruCacheStorage}, can be used by {@link TemplateCache}
+ * without synchronization. Reading ({@link #get(Object)}) doesn't lock; only {@link #put(Object, Object)},
+ * {@link #remove(Object)} and {@link #clear()} do, which are rare compared to reads in a template cache.
+ *
+ * <p>Like with {@link MruCacheStorage}, there are two levels: in the first, items are strongly referenced up to the
+ * specified maximum, and items that don't fit there are moved into the second level, where they are softly referenced
+ * up to another specified maximum (after that, the oldest soft item is discarded). What's different is how it's
+ * decided which items are kept in the first level. For that, this storage keeps an approximate, aging access frequency
+ * statistic of the recently accessed keys (including cache misses), and a new item only replaces an existing one in
+ * the first level if it was accessed more frequently than the existing item, which in turn was chosen with the
+ * "CLOCK" algorithm (i.e., it's one that wasn't read since the last time the eviction has visited it). This way,
+ * reading lot of rarely used items once (like when a crawler walks through thousands of pages) can't push out the
+ * often used items from the first level.
+ *
+ * <p>Each size limit can vary between 0 and {@link Integer#MAX_VALUE}. This can be also created with the
+ * {@code cache_storage} setting (see {@link freemarker.core.Configurable#setSetting(String, String)}), like
+ * {@code "ConcurrentLfuCacheStorage(500, 5000)"}.
+ *
+ * @see freemarker.template.Configuration#setCacheStorage(CacheStorage)
+ *
+ * @since 2.3.29
+ */
+public class ConcurrentLfuCacheStorage implements ConcurrentCacheStorage, CacheStorageWithGetSize {
+
+    private final int strongSizeLimit;
+    private final int softSizeLimit;
+
+    private final ConcurrentHashMap<Object, StrongEntry> strongMap = new ConcurrentHashMap<Object, StrongEntry>();
+    private final ConcurrentHashMap<Object, SoftEntry> softMap = new ConcurrentHashMap<Object, SoftEntry>();
+    private final ReferenceQueue<Object> refQueue = new ReferenceQueue<Object>();
+    private final FrequencySketch frequencySketch;
+
+    /** Guards all the fields below, and all changes in the maps. */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ClockRing<StrongEntry> strongRing = new ClockRing<StrongEntry>();
+    /** Sentinel of the circular list of the soft entries, in the order of their insertion. */
+    private final SoftEntry softHead = new SoftEntry(null, null, null);
+    private int softSize;
+
+    /**
+     * Creates a new cache storage with the specified maximum cache sizes.
+     *
+     * @param strongSizeLimit
+     *            the maximum number of strongly referenced templates; when exceeded, either the new entry or the
+     *            entry that's evicted from the strong cache (whichever is used less frequently) will be moved into
+     *            the soft cache.
+     * @param softSizeLimit
+     *            the maximum number of softly referenced templates; when exceeded, the entry that was moved into the
+     *            soft cache the earliest will be discarded.
+     */
+    public ConcurrentLfuCacheStorage(int strongSizeLimit, int softSizeLimit) {
+        if (strongSizeLimit < 0) throw new IllegalArgumentException("strongSizeLimit < 0");
+        if (softSizeLimit < 0) throw new IllegalArgumentException("softSizeLimit < 0");
+        this.strongSizeLimit = strongSizeLimit;
+        this.softSizeLimit = softSizeLimit;
+        frequencySketch = new FrequencySketch(strongSizeLimit);
+
+        softHead.prev = softHead.next = softHead;
+    }
+
+    /**
+     * Always returns {@code true}.
+     */
+    public boolean isConcurrent() {
+        return true;
+    }
+
+    public Object get(Object key) {
+        frequencySketch.increment(key);
+
+        StrongEntry strongEntry = strongMap.get(key);
+        if (strongEntry != null) {
+            strongEntry.markReferenced();
+            return strongEntry.value;
+        }
+
+        SoftEntry softEntry = softMap.get(key);
+        if (softEntry == null) {
+            return null;
+        }
+        Object value = softEntry.get();
+        // Try to move it back into the strong cache, but never block the reader thread for that:
+        if (value != null && strongSizeLimit != 0 && lock.tryLock()) {
+            try {
+                if (softMap.remove(key, softEntry)) {
+                    unlinkSoft(softEntry);
+                    if (!admitIntoStrong(key, value)) {
+                        putIntoSoft(key, value);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return value;
+    }
+
+    public void put(Object key, Object value) {
+        lock.lock();
+        try {
+            removeClearedReferences();
+
+            StrongEntry strongEntry = strongMap.get(key);
+            if (strongEntry != null) {
+                strongEntry.value = value;
+                return;
+            }
+
+            SoftEntry softEntry = softMap.remove(key);
+            if (softEntry != null) {
+                unlinkSoft(softEntry);
+            }
+
+            if (!admitIntoStrong(key, value)) {
+                putIntoSoft(key, value);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void remove(Object key) {
+        lock.lock();
+        try {
+            removeClearedReferences();
+
+            StrongEntry strongEntry = strongMap.remove(key);
+            if (strongEntry != null) {
+                strongRing.remove(strongEntry);
+            }
+            SoftEntry softEntry = softMap.remove(key);
+            if (softEntry != null) {
+                unlinkSoft(softEntry);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            strongMap.clear();
+            softMap.clear();
+            strongRing.clear();
+            softHead.prev = softHead.next = softHead;
+            softSize = 0;
+            // Quick refQueue processing
+            while (refQueue.poll() != null);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Must be called while holding the lock.
+     *
+     * @return Whether the entry was added to the strong cache.
+     */
+    private boolean admitIntoStrong(Object key, Object value) {
+        if (strongSizeLimit == 0) {
+            return false;
+        }
+
+        if (strongRing.size() >= strongSizeLimit) {
+            StrongEntry victim = strongRing.findEvictionVictim();
+            if (frequencySketch.frequency(key) <= frequencySketch.frequency(victim.key)) {
+                return false;
+            }
+            strongMap.remove(victim.key);
+            strongRing.remove(victim);
+            putIntoSoft(victim.key, victim.value);
+        }
+
+        StrongEntry strongEntry = new StrongEntry(key, value);
+        strongRing.add(strongEntry);
+        strongMap.put(key, strongEntry);
+        return true;
+    }
+
+    private void putIntoSoft(Object key, Object value) {
+        if (softSizeLimit == 0) {
+            return;
+        }
+
+        if (softSize >= softSizeLimit) {
+            // The list is circular, so softHead.next is the oldest soft entry
+            SoftEntry oldest = softHead.next;
+            softMap.remove(oldest.key);
+            unlinkSoft(oldest);
+        }
+
+        SoftEntry softEntry = new SoftEntry(key, value, refQueue);
+        softEntry.prev = softHead.prev;
+        softEntry.next = softHead;
+        softHead.prev.next = softEntry;
+        softHead.prev = softEntry;
+        softSize++;
+        softMap.put(key, softEntry);
+    }
+
+    private void unlinkSoft(SoftEntry entry) {
+        entry.prev.next = entry.next;
+        entry.next.prev = entry.prev;
+        entry.prev = entry.next = null;
+        softSize--;
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private void removeClearedReferences() {
+        for (; ; ) {
+            SoftEntry softEntry = (SoftEntry) refQueue.poll();
+            if (softEntry == null) {
+                break;
+            }
+            // The entry might have been already removed (then it isn't linked anymore), or replaced.
+            if (softMap.remove(softEntry.key, softEntry)) {
+                unlinkSoft(softEntry);
+            }
+        }
+    }
+
+    /**
+     * Returns the configured upper limit of the number of strong cache entries.
+     */
+    public int getStrongSizeLimit() {
+        return strongSizeLimit;
+    }
+
+    /**
+     * Returns the configured upper limit of the number of soft cache entries.
+     */
+    public int getSoftSizeLimit() {
+        return softSizeLimit;
+    }
+
+    /**
+     * Returns the <em>current</em> number of strong cache entries.
+     *
+     * @see #getStrongSizeLimit()
+     */
+    public int getStrongSize() {
+        lock.lock();
+        try {
+            return strongRing.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a close approximation of the <em>current</em> number of soft cache entries.
+     *
+     * @see #getSoftSizeLimit()
+     */
+    public int getSoftSize() {
+        lock.lock();
+        try {
+            removeClearedReferences();
+            return softSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a close approximation of the current number of cache entries.
+     *
+     * @see #getStrongSize()
+     * @see #getSoftSize()
+     */
+    public int getSize() {
+        return getSoftSize() + getStrongSize();
+    }
+
+    private static final class StrongEntry extends ClockRing.Node {
+        private final Object key;
+        private volatile Object value;
+
+        StrongEntry(Object key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static final class SoftEntry extends SoftReference<Object> {
+        private final Object key;
+        private SoftEntry prev;
+        private SoftEntry next;
+
+        SoftEntry(Object key, Object value, ReferenceQueue<Object> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit (saturating) access counters, which are halved periodically, so that the frequencies
+     * reflect the recent accesses. The counters are updated without synchronization; lost updates only make the
+     * statistics a bit less accurate, which is acceptable here.
+     */
+    private static final class FrequencySketch {
+
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int MAX_WIDTH = 1 << 20;
+        private static final int[] SEEDS = { 0x97CB3127, 0xB8D0F45D, 0xC2B2AE3D, 0x27D4EB2F };
+
+        private final int[] counters;
+        private final int widthMask;
+        private final int resetThreshold;
+        private int additions;
+
+        FrequencySketch(int maxSize) {
+            int width = 16;
+            while (width < maxSize && width < MAX_WIDTH) {
+                width <<= 1;
+            }
+            counters = new int[width * DEPTH];
+            widthMask = width - 1;
+            resetThreshold = width * 10;
+        }
+
+        void increment(Object key) {
+            int hash = spread(key.hashCode());
+            boolean incremented = false;
+            for (int row = 0; row < DEPTH; row++) {
+                int idx = indexOf(hash, row);
+                int count = counters[idx];
+                if (count < MAX_COUNT) {
+                    counters[idx] = count + 1;
+                    incremented = true;
+                }
+            }
+            if (incremented && ++additions >= resetThreshold) {
+                reset();
+            }
+        }
+
+        int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < DEPTH; row++) {
+                frequency = Math.min(frequency, counters[indexOf(hash, row)]);
+            }
+            return frequency;
+        }
+
+        private void reset() {
+            additions = 0;
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] >>>= 1;
+            }
+        }
+
+        private int indexOf(int hash, int row) {
+            int h = (hash + SEEDS[row]) * SEEDS[row];
+            h ^= h >>> 16;
+            return row * (widthMask + 1) + (h & widthMask);
+        }
+
+        private static int spread(int h) {
+            h ^= h >>> 17;
+            h *= 0xED5AD4BB;
+            h ^= h >>> 11;
+            return h;
+        }
+
+    }
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+import java.io.IOException;
+import java.util.List;
+
+import freemarker.template.Configuration;
+
+/**
+ * Interface that can be implemented by {@link TemplateLoader}-s that can list the template sources they can load.
+ * This is used for example to resolve the globs passed to
+ * {@link Configuration#preloadTemplates(java.util.Collection, java.util.Collection)}.
+ *
+ * @since 2.3.29
+ */
+public interface EnumerableTemplateLoader extends TemplateLoader {
+
+    /**
+     * Returns the names of all template sources that this loader could find with
+     * {@link #findTemplateSource(String)}, in the format that that method expects, that is, relative to the root of
+     * the loader, using {@code /} as separator, and not starting with {@code /}. The list is sorted, and contains no
+     * duplicates. As it's a snapshot, it need not be consistent with the subsequent {@link #findTemplateSource(String)}
+     * calls.
+     *
+     * <p>
+     * Note that the result will contain the localized variants (like {@code foo_en_US.ftl}) as separate entries, as
+     * this loader is not aware of the {@link TemplateLookupStrategy}.
+     */
+    List<String> listTemplateNames() throws IOException;
+
+}
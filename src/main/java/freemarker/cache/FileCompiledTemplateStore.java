@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import freemarker.template.Configuration;
+import freemarker.template.utility.ClassUtil;
+import freemarker.template.utility.NullArgumentException;
+
+/**
+ * A {@link CompiledTemplateStore} that stores each compiled template in a separate file in the given directory. The
+ * file is first written under a temporary name, and then renamed, so concurrent readers (also in other processes)
+ * never see a partially written file.
+ *
+ * <p>
+ * As the keys change when the template source, the parsing related settings, or the FreeMarker version changes, the
+ * files that aren't used anymore are left behind. This class doesn't delete them; it's up to the application to clean
+ * up the directory occasionally (like after upgrading FreeMarker), if that's a concern.
+ *
+ * @since 2.3.29
+ */
+public class FileCompiledTemplateStore implements CompiledTemplateStore {
+
+    private static final String FILE_NAME_SUFFIX = ".ftlc";
+
+    private final File directory;
+
+    /**
+     * @param directory
+     *            The directory where the files will be stored. It will be created if it doesn't exist yet. It shouldn't
+     *            contain anything else than the files of this store, and it must not be shared with
+     *            {@link Configuration}-s that use a different FreeMarker installation (class loader) than this.
+     */
+    public FileCompiledTemplateStore(File directory) throws IOException {
+        NullArgumentException.check("directory", directory);
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException("Failed to create directory: " + directory);
+        }
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public byte[] get(String sourceName, String key) throws IOException {
+        File file = getFile(key);
+        FileInputStream in;
+        try {
+            in = new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        try {
+            long length = file.length();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("File is too big: " + file);
+            }
+            byte[] content = new byte[(int) length];
+            int offset = 0;
+            while (offset < content.length) {
+                int readCount = in.read(content, offset, content.length - offset);
+                if (readCount == -1) {
+                    throw new IOException("File was shorter than expected: " + file);
+                }
+                offset += readCount;
+            }
+            return content;
+        } finally {
+            in.close();
+        }
+    }
+
+    public void put(String sourceName, String key, byte[] compiledTemplate) throws IOException {
+        File file = getFile(key);
+        File tempFile = File.createTempFile(key, ".tmp", directory);
+        try {
+            FileOutputStream out = new FileOutputStream(tempFile);
+            try {
+                out.write(compiledTemplate);
+            } finally {
+                out.close();
+            }
+            if (!tempFile.renameTo(file) && !file.isFile()) {
+                throw new IOException("Failed to rename " + tempFile + " to " + file);
+            }
+            // If the rename has failed because the file exists (possible on Windows), then it was stored concurrently
+            // by someone else, and as the key was the same, so is the content.
+        } finally {
+            if (tempFile.exists()) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    private File getFile(String key) {
+        return new File(directory, key + FILE_NAME_SUFFIX);
+    }
+
+    @Override
+    public String toString() {
+        return ClassUtil.getShortClassNameOfObject(this) + "(directory=\"" + directory + "\")";
+    }
+
+}
@@ -19,6 +19,7 @@
 
 package freemarker.cache;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -29,7 +30,13 @@ import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import freemarker.core._Java8;
+import freemarker.core._JavaVersions;
 import freemarker.log.Logger;
 import freemarker.template.Configuration;
 import freemarker.template.utility.SecurityUtilities;
@@ -41,8 +48,11 @@ import freemarker.template.utility.StringUtil;
  * directory. If you want symbolic links that point outside the template directory to work, you need to disable this
  * feature by using {@link #FileTemplateLoader(File, boolean)} with {@code true} second argument, but before that, check
  * the security implications there!
+ * 
+ * <p>Since 2.3.29, with {@link #setWatchForChanges(boolean)} it can be made to notify the {@link TemplateCache} when
+ * a template file was changed, instead of relying on polling.
  */
-public class FileTemplateLoader implements TemplateLoader {
+public class FileTemplateLoader implements ObservableTemplateLoader, EnumerableTemplateLoader {
     
     /**
      * By setting this Java system property to {@code true}, you can change the default of
@@ -73,6 +83,10 @@ public class FileTemplateLoader implements TemplateLoader {
     private final String canonicalBasePath;
     private boolean emulateCaseSensitiveFileSystem;
     private MruCacheStorage correctCasePaths;
+    private final CopyOnWriteArrayList<TemplateSourceChangeListener> changeListeners
+            = new CopyOnWriteArrayList<TemplateSourceChangeListener>();
+    /** Non-{@code null} exactly if we are watching for changes; guarded by {@code this}. */
+    private Closeable directoryWatcher;
 
     /**
      * Creates a new file template cache that will use the current directory (the value of the system property
@@ -262,6 +276,45 @@ public class FileTemplateLoader implements TemplateLoader {
         // Do nothing.
     }
     
+    /**
+     * Lists the files in the {@link #getBaseDirectory()}, recursively. If the canonical path check wasn't disabled in
+     * the constructor, then the files and directories that resolve to outside the base directory are omitted.
+     * 
+     * @since 2.3.29
+     */
+    public List<String> listTemplateNames() throws IOException {
+        try {
+            return AccessController.doPrivileged(new PrivilegedExceptionAction<List<String>>() {
+                public List<String> run() throws IOException {
+                    List<String> names = new ArrayList<String>();
+                    listTemplateNames(baseDir, "", names);
+                    Collections.sort(names);
+                    return names;
+                }
+            });
+        } catch (PrivilegedActionException e) {
+            throw (IOException) e.getException();
+        }
+    }
+    
+    private void listTemplateNames(File dir, String namePrefix, List<String> names) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (canonicalBasePath != null && !file.getCanonicalPath().startsWith(canonicalBasePath)) {
+                continue;
+            }
+            String name = namePrefix + file.getName();
+            if (file.isDirectory()) {
+                listTemplateNames(file, name + "/", names);
+            } else if (file.isFile()) {
+                names.add(name);
+            }
+        }
+    }
+    
     /**
      * Returns the base directory in which the templates are searched. This comes from the constructor argument, but
      * it's possibly a canonicalized version of that. 
@@ -319,6 +372,106 @@ public class FileTemplateLoader implements TemplateLoader {
         return EMULATE_CASE_SENSITIVE_FILE_SYSTEM_DEFAULT;
     }
 
+    /**
+     * Sets whether to watch the {@link #getBaseDirectory()} directory tree for file changes (with a
+     * {@code java.nio.file.WatchService}), and notify the registered {@link TemplateSourceChangeListener}-s about them.
+     * The {@link TemplateCache} registers such a listener, and will re-check the cached templates after a change
+     * notification even if the {@link Configuration#setTemplateUpdateDelayMilliseconds(long) template update delay}
+     * hasn't elapsed yet. Thus, the template update delay can be set to a very high value (like
+     * {@link Long#MAX_VALUE}), and so file system calls will only be made after something was changed, while changes
+     * are still picked up quickly.
+     * 
+     * <p>
+     * The watching is done on a background daemon thread. How quickly the changes are reported depends on the
+     * operating system, and on some file systems (like network file systems) it may not work at all. Setting this to
+     * {@code false} stops the watching.
+     * 
+     * <p>
+     * Defaults to {@code false}. This feature requires Java 8 or later.
+     * 
+     * @throws IOException
+     *             If registering the watches has failed.
+     * @throws UnsupportedOperationException
+     *             If the Java version is less than 8.
+     * 
+     * @since 2.3.29
+     */
+    public void setWatchForChanges(boolean watchForChanges) throws IOException {
+        synchronized (this) {
+            if (watchForChanges == (directoryWatcher != null)) {
+                return;
+            }
+            
+            if (watchForChanges) {
+                final _Java8 java8 = _JavaVersions.JAVA_8;
+                if (java8 == null) {
+                    throw new UnsupportedOperationException("Watching for changes requires Java 8 or later.");
+                }
+                try {
+                    directoryWatcher = AccessController.doPrivileged(new PrivilegedExceptionAction<Closeable>() {
+                        public Closeable run() throws IOException {
+                            return java8.watchDirectoryTree(baseDir, new _Java8.DirectoryTreeChangeListener() {
+                                public void changed(String relativePath) {
+                                    onTemplateSourceChanged(relativePath);
+                                }
+                            });
+                        }
+                    });
+                } catch (PrivilegedActionException e) {
+                    throw (IOException) e.getException();
+                }
+            } else {
+                Closeable directoryWatcher = this.directoryWatcher;
+                this.directoryWatcher = null;
+                directoryWatcher.close();
+            }
+        }
+    }
+
+    /**
+     * Getter pair of {@link #setWatchForChanges(boolean)}.
+     * 
+     * @since 2.3.29
+     */
+    public boolean getWatchForChanges() {
+        synchronized (this) {
+            return directoryWatcher != null;
+        }
+    }
+
+    /**
+     * @since 2.3.29
+     */
+    public void addTemplateSourceChangeListener(TemplateSourceChangeListener listener) {
+        changeListeners.addIfAbsent(listener);
+    }
+
+    /**
+     * @since 2.3.29
+     */
+    public void removeTemplateSourceChangeListener(TemplateSourceChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+    
+    private void onTemplateSourceChanged(String templateSourceName) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("File change detected: "
+                    + (templateSourceName != null ? StringUtil.jQuoteNoXSS(templateSourceName) : "unknown"));
+        }
+        
+        // A file might have been renamed to a different letter case:
+        MruCacheStorage correctCasePaths = this.correctCasePaths;
+        if (correctCasePaths != null) {
+            synchronized (correctCasePaths) {
+                correctCasePaths.clear();
+            }
+        }
+        
+        for (TemplateSourceChangeListener listener : changeListeners) {
+            listener.templateSourceChanged(templateSourceName);
+        }
+    }
+
     /**
      * Show class name and some details that are useful in template-not-found errors.
      * 
@@ -332,6 +485,7 @@ public class FileTemplateLoader implements TemplateLoader {
                 + "baseDir=\"" + baseDir + "\""
                 + (canonicalBasePath != null ? ", canonicalBasePath=\"" + canonicalBasePath + "\"" : "")
                 + (emulateCaseSensitiveFileSystem ? ", emulateCaseSensitiveFileSystem=true" : "")
+                + (getWatchForChanges() ? ", watchForChanges=true" : "")
                 + ")";
     }
     
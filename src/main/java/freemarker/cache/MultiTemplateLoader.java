@@ -21,7 +21,11 @@ package freemarker.cache;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 
 import freemarker.template.utility.NullArgumentException;
@@ -35,7 +39,7 @@ import freemarker.template.utility.NullArgumentException;
  * 
  * <p>This class is thread-safe.
  */
-public class MultiTemplateLoader implements StatefulTemplateLoader {
+public class MultiTemplateLoader implements StatefulTemplateLoader, EnumerableTemplateLoader {
 
     private final TemplateLoader[] templateLoaders;
     private final Map<String, TemplateLoader> lastTemplateLoaderForName
@@ -107,6 +111,22 @@ public class MultiTemplateLoader implements StatefulTemplateLoader {
         ((MultiSource) templateSource).close();
     }
 
+    /**
+     * Returns the union of the template names listed by the enclosed {@link TemplateLoader}-s. The enclosed
+     * {@link TemplateLoader}-s that don't implement {@link EnumerableTemplateLoader} are skipped.
+     * 
+     * @since 2.3.29
+     */
+    public List<String> listTemplateNames() throws IOException {
+        Set<String> names = new TreeSet<String>();
+        for (TemplateLoader templateLoader : templateLoaders) {
+            if (templateLoader instanceof EnumerableTemplateLoader) {
+                names.addAll(((EnumerableTemplateLoader) templateLoader).listTemplateNames());
+            }
+        }
+        return new ArrayList<String>(names);
+    }
+
     /**
      * Clears the sickiness memory, also resets the state of all enclosed {@link StatefulTemplateLoader}-s.
      */
@@ -151,6 +171,10 @@ public class MultiTemplateLoader implements StatefulTemplateLoader {
             return source;
         }
 
+        TemplateLoader getLoader() {
+            return loader;
+        }
+
         @Override
         public boolean equals(Object o) {
             if (o instanceof MultiSource) {
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+/**
+ * Interface that can be implemented by {@link TemplateLoader}-s that can notify others when their template sources
+ * were changed, so that {@link TemplateCache} doesn't have to poll for changes with
+ * {@link TemplateLoader#getLastModified(Object)}.
+ * 
+ * <p>
+ * Notifications may arrive on any thread, so listeners should return quickly.
+ * 
+ * @see FileTemplateLoader#setWatchForChanges(boolean)
+ * 
+ * @since 2.3.29
+ */
+public interface ObservableTemplateLoader extends TemplateLoader {
+    
+    /**
+     * Registers a listener that will be notified when template sources change. Adding the same listener for a second
+     * time has no effect.
+     */
+    void addTemplateSourceChangeListener(TemplateSourceChangeListener listener);
+
+    /**
+     * Unregisters a listener added with {@link #addTemplateSourceChangeListener(TemplateSourceChangeListener)}; does
+     * nothing if it wasn't registered.
+     */
+    void removeTemplateSourceChangeListener(TemplateSourceChangeListener listener);
+    
+}
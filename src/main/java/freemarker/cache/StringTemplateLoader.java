@@ -21,7 +21,10 @@ package freemarker.cache;
 
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import freemarker.template.utility.StringUtil;
@@ -59,8 +62,9 @@ import freemarker.template.utility.StringUtil;
  * want to combine a <tt>StringTemplateLoader</tt> with another loader. You can
  * do so using a {@link freemarker.cache.MultiTemplateLoader}.
  */
-public class StringTemplateLoader implements TemplateLoader {
+public class StringTemplateLoader implements EnumerableTemplateLoader {
     
+    /** Guarded by itself, so that {@link #listTemplateNames()} can iterate over it while templates are added. */
     private final Map<String, StringTemplateSource> templates = new HashMap<String, StringTemplateSource>();
     
     /**
@@ -98,7 +102,10 @@ public class StringTemplateLoader implements TemplateLoader {
      * terms of <tt>System.currentTimeMillis()</tt>
      */
     public void putTemplate(String name, String templateContent, long lastModified) {
-        templates.put(name, new StringTemplateSource(name, templateContent, lastModified));
+        StringTemplateSource source = new StringTemplateSource(name, templateContent, lastModified);
+        synchronized (templates) {
+            templates.put(name, source);
+        }
     }
     
     /**
@@ -114,14 +121,32 @@ public class StringTemplateLoader implements TemplateLoader {
      * @since 2.3.24
      */
     public boolean removeTemplate(String name) {
-        return templates.remove(name) != null;
+        synchronized (templates) {
+            return templates.remove(name) != null;
+        }
     }
     
     public void closeTemplateSource(Object templateSource) {
     }
     
+    /**
+     * Returns the names of the templates added with {@link #putTemplate(String, String)} and its overloads.
+     * 
+     * @since 2.3.29
+     */
+    public List<String> listTemplateNames() {
+        List<String> names;
+        synchronized (templates) {
+            names = new ArrayList<String>(templates.keySet());
+        }
+        Collections.sort(names);
+        return names;
+    }
+    
     public Object findTemplateSource(String name) {
-        return templates.get(name);
+        synchronized (templates) {
+            return templates.get(name);
+        }
     }
     
     public long getLastModified(Object templateSource) {
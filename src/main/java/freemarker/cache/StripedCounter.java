@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that can be incremented from many threads concurrently without much contention, as the threads will
+ * mostly update different cells (each on its own cache line). Reading the value is slower, as it has to sum up the
+ * cells. (This is a poor man's {@code java.util.concurrent.atomic.LongAdder}, which requires Java 8.)
+ */
+final class StripedCounter {
+
+    /** The number of {@code long}-s that are assumed to fill a cache line. */
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray cells;
+    private final int stripeMask;
+
+    StripedCounter() {
+        int stripes = 1;
+        int cpus = Runtime.getRuntime().availableProcessors();
+        while (stripes < cpus && stripes < 64) {
+            stripes <<= 1;
+        }
+        stripeMask = stripes - 1;
+        cells = new AtomicLongArray(stripes * PADDING);
+    }
+
+    void add(long delta) {
+        cells.getAndAdd(getCellIndex(), delta);
+    }
+
+    void increment() {
+        add(1);
+    }
+
+    long get() {
+        long sum = 0;
+        for (int i = 0; i < cells.length(); i += PADDING) {
+            sum += cells.get(i);
+        }
+        return sum;
+    }
+
+    /**
+     * Not atomic; increments that happen during this call might be lost or might be kept.
+     */
+    void reset() {
+        for (int i = 0; i < cells.length(); i += PADDING) {
+            cells.set(i, 0);
+        }
+    }
+
+    private int getCellIndex() {
+        int h = System.identityHashCode(Thread.currentThread());
+        h ^= (h >>> 16);
+        return (h & stripeMask) * PADDING;
+    }
+
+}
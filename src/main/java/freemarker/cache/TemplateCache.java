@@ -20,20 +20,39 @@
 package freemarker.cache;
 
 import java.io.IOException;
+import java.io.PushbackReader;
 import java.io.Reader;
 import java.io.Serializable;
+import java.io.StringReader;
 import java.io.StringWriter;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 import java.net.URLConnection;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import freemarker.cache.MultiTemplateLoader.MultiSource;
 import freemarker.core.BugException;
 import freemarker.core.Environment;
+import freemarker.core.ParserConfiguration;
 import freemarker.core.TemplateConfiguration;
+import freemarker.core.TemplateDependency;
+import freemarker.core._CoreAPI;
 import freemarker.log.Logger;
 import freemarker.template.Configuration;
 import freemarker.template.MalformedTemplateNameException;
@@ -68,6 +87,8 @@ public class TemplateCache {
     private static final char ASTERISK = '*';
     private static final char SLASH = '/';
     private static final String LOCALE_PART_SEPARATOR = "_";
+    /** The number of characters that we look into to find the {@code #ftl} header before parsing. */
+    private static final int FTL_HEADER_SNIFF_LENGTH = 1024;
     private static final Logger LOG = Logger.getLogger("freemarker.cache");
 
     /** Maybe {@code null}. */
@@ -80,13 +101,59 @@ public class TemplateCache {
     private final TemplateConfigurationFactory templateConfigurations;
     
     private final boolean isStorageConcurrent;
+    /** The lookups/loads in progress, used to coalesce concurrent cache misses for the same template. */
+    private final ConcurrentHashMap<TemplateKey, PendingLoad> pendingLoads
+            = new ConcurrentHashMap<TemplateKey, PendingLoad>();
     /** {@link Configuration#setTemplateUpdateDelayMilliseconds(long)} */
     private long updateDelay = DEFAULT_TEMPLATE_UPDATE_DELAY_MILLIS;
     /** {@link Configuration#setLocalizedLookup(boolean)} */
     private boolean localizedLookup = true;
+    /** {@link Configuration#setTemplateUpdateExecutor(Executor)} */
+    private Executor backgroundRefreshExecutor;
+    /** {@link Configuration#setTemplateDependencyPrefetchExecutor(Executor)} */
+    private Executor dependencyPrefetchExecutor;
+    /** {@link Configuration#setCompiledTemplateStore(CompiledTemplateStore)} */
+    private CompiledTemplateStore compiledTemplateStore;
+    /** {@link Configuration#setContentBasedTemplateReuse(boolean)} */
+    private boolean contentBasedTemplateReuse;
+    /** {@link Configuration#setInlineStaticTextIncludes(boolean)} */
+    private boolean inlineStaticTextIncludes;
+    /**
+     * Non-{@code null} while the current thread loads a template for {@link #inlineStaticTextIncludes}; see
+     * {@link #getInlinedTemplate}.
+     */
+    private final ThreadLocal<Boolean> inliningInCurrentThread = new ThreadLocal<Boolean>();
+    /**
+     * Maps the content key (see {@link _TemplateAPI#getCompiledFormKey}) and the template name to the
+     * {@link LoadedTemplate} parsed from that content, if {@link #contentBasedTemplateReuse} is enabled. The templates
+     * weren't customized with {@link #customizeTemplate}, and are only used with
+     * {@link _TemplateAPI#copyWithSharedParseResult(Template)}.
+     */
+    private final SoftCacheStorage parseResultsByContent = new SoftCacheStorage();
+    /**
+     * Incremented when an {@link ObservableTemplateLoader} reports a change; all cache entries that were checked
+     * before that will be re-checked, regardless of the {@link #updateDelay}.
+     */
+    private final AtomicInteger sourceChangeCount = new AtomicInteger();
+    /**
+     * Maps the {@link TemplateKey}-s with {@code null} locale (and {@code null} custom lookup condition) to
+     * {@link LocalizedVariants}. This lets the lookups of a template name with a different locale use what the earlier
+     * lookups have found, and to share the parsed template.
+     */
+    private final SoftCacheStorage localizedVariantsIndex = new SoftCacheStorage();
+    /**
+     * Maps template names to the names of the loaded templates that statically depend on them (see
+     * {@link Template#getStaticDependencies()}). Entries are only added (until {@link #clear()}), so after reloads it
+     * can contain dependencies that no longer exist. Guarded by itself.
+     */
+    private final Map<String, Set<String>> dependentTemplateNames = new HashMap<String, Set<String>>();
+    /** Copy-on-write, so that notifying the listeners needs no locking. */
+    private volatile TemplateCacheListener[] listeners = NO_LISTENERS;
 
     private Configuration config;
 
+    private static final TemplateCacheListener[] NO_LISTENERS = new TemplateCacheListener[0];
+
     /**
      * Returns a template cache that will first try to load a template from
      * the file system relative to the current user directory (i.e. the value
@@ -193,6 +260,12 @@ public class TemplateCache {
         this.templateConfigurations = templateConfigurations;
         
         this.config = config;
+        
+        if (templateLoader instanceof ObservableTemplateLoader) {
+            ObservableTemplateLoader observableTemplateLoader = (ObservableTemplateLoader) templateLoader;
+            observableTemplateLoader.addTemplateSourceChangeListener(
+                    new TemplateCacheSourceChangeListener(this, observableTemplateLoader));
+        }
     }
     
     /**
@@ -323,35 +396,141 @@ public class TemplateCache {
             final String name, final Locale locale, final Object customLookupCondition,
             final String encoding, final boolean parseAsFTL)
     throws IOException {
-        final boolean debug = LOG.isDebugEnabled();
-        final String debugName = debug
-                ? buildDebugName(name, locale, customLookupCondition, encoding, parseAsFTL)
-                : null;
         final TemplateKey tk = new TemplateKey(name, locale, customLookupCondition, encoding, parseAsFTL);
         
-        CachedTemplate cachedTemplate;
-        if (isStorageConcurrent) {
-            cachedTemplate = (CachedTemplate) storage.get(tk);
-        } else {
-            synchronized (storage) {
-                cachedTemplate = (CachedTemplate) storage.get(tk);
+        CachedTemplate cachedTemplate = getCached(tk);
+        if (cachedTemplate == null || isStale(cachedTemplate, System.currentTimeMillis())) {
+            // If we have a stale template, and background refresh is enabled, we will serve the stale template, while
+            // it's re-checked and maybe reloaded in the background.
+            final Executor backgroundRefreshExecutor = cachedTemplate != null
+                    && cachedTemplate.templateOrException instanceof Template
+                    ? this.backgroundRefreshExecutor : null;
+            
+            // We will have to look up and maybe (re)load the template. To avoid parsing the same template in parallel
+            // on concurrent cache misses, only one thread does that per TemplateKey, and the others wait for its
+            // result (which can also be a negative lookup or an exception).
+            final PendingLoad pendingLoad = new PendingLoad();
+            final PendingLoad otherPendingLoad = pendingLoads.putIfAbsent(tk, pendingLoad);
+            if (otherPendingLoad == null) {
+                if (backgroundRefreshExecutor != null && tryScheduleBackgroundRefresh(backgroundRefreshExecutor,
+                        pendingLoad, tk, name, locale, customLookupCondition, encoding, parseAsFTL)) {
+                    fireHit(name, locale, cachedTemplate.source);
+                    return (Template) cachedTemplate.templateOrException;
+                }
+                
+                try {
+                    // Another thread might have finished loading since we have checked the storage, so check again:
+                    Template template = getTemplateInternal(
+                            tk, getCached(tk), name, locale, customLookupCondition, encoding, parseAsFTL);
+                    pendingLoad.setResult(template);
+                    return template;
+                } catch (IOException e) {
+                    pendingLoad.setException(e);
+                    throw e;
+                } catch (RuntimeException e) {
+                    pendingLoad.setException(e);
+                    throw e;
+                } catch (Error e) {
+                    pendingLoad.setException(e);
+                    throw e;
+                } finally {
+                    pendingLoads.remove(tk);
+                }
+            } else if (backgroundRefreshExecutor != null) {
+                // Already being refreshed
+                fireHit(name, locale, cachedTemplate.source);
+                return (Template) cachedTemplate.templateOrException;
+            } else if (!otherPendingLoad.isLoadedByCurrentThread() && inliningInCurrentThread.get() == null) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(buildDebugName(name, locale, customLookupCondition, encoding, parseAsFTL)
+                            + " is being loaded by another thread; waiting for its result.");
+                }
+                return waitForPendingLoad(otherPendingLoad);
+            }
+            // Else the loading of this very template has (indirectly) requested itself, or the other thread might wait
+            // for us because of cyclic #include inlining, and so waiting could be a deadlock. We just fall back to
+            // uncoalesced loading then.
+        }
+        return getTemplateInternal(tk, cachedTemplate, name, locale, customLookupCondition, encoding, parseAsFTL);
+    }
+    
+    /**
+     * @return {@code false} if the executor has rejected the task, in which case the caller must do the refresh
+     *         synchronously, and complete the {@link PendingLoad}.
+     */
+    private boolean tryScheduleBackgroundRefresh(Executor executor, final PendingLoad pendingLoad,
+            final TemplateKey tk, final String name, final Locale locale, final Object customLookupCondition,
+            final String encoding, final boolean parseAsFTL) {
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        pendingLoad.setResult(getTemplateInternal(
+                                tk, getCached(tk), name, locale, customLookupCondition, encoding, parseAsFTL));
+                    } catch (Throwable e) {
+                        // The exception was also stored in the cache by getTemplateInternal, so it will be thrown by
+                        // the next getTemplate call.
+                        pendingLoad.setException(e);
+                        if (LOG.isWarnEnabled()) {
+                            LOG.warn("Background refresh of template "
+                                    + buildDebugName(name, locale, customLookupCondition, encoding, parseAsFTL)
+                                    + " has failed.", e);
+                        }
+                    } finally {
+                        pendingLoads.remove(tk);
+                    }
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            // The executor is saturated. We fall back to synchronous refresh, as otherwise the template could remain
+            // stale for an unlimited time.
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Background refresh of template "
+                        + buildDebugName(name, locale, customLookupCondition, encoding, parseAsFTL)
+                        + " was rejected by the executor; refreshing it synchronously.");
             }
+            return false;
         }
+    }
+    
+    private Template getTemplateInternal(
+            final TemplateKey tk, CachedTemplate cachedTemplate,
+            final String name, final Locale locale, final Object customLookupCondition,
+            final String encoding, final boolean parseAsFTL)
+    throws IOException {
+        final boolean debug = LOG.isDebugEnabled();
+        final String debugName = debug
+                ? buildDebugName(name, locale, customLookupCondition, encoding, parseAsFTL)
+                : null;
         
         final long now = System.currentTimeMillis();
+        // Read before the lookup, so that changes during the lookup will make the result stale:
+        final int sourceChangeCount = this.sourceChangeCount.get();
         
+        final TemplateCacheListener[] listeners = this.listeners;
         long lastModified = -1L;
         boolean rethrown = false;
+        boolean cacheHit = false;
+        boolean staleCheck = false;
         TemplateLookupResult newLookupResult = null;
         try {
             if (cachedTemplate != null) {
                 // If we're within the refresh delay, return the cached copy
-                if (now - cachedTemplate.lastChecked < updateDelay) {
+                if (!isStale(cachedTemplate, now)) {
                     if (debug) {
                         LOG.debug(debugName + " cached copy not yet stale; using cached.");
                     }
                     // Can be null, indicating a cached negative lookup
                     Object t = cachedTemplate.templateOrException;
+                    cacheHit = true;
+                    if (listeners.length != 0) {
+                        if (t instanceof Template) {
+                            fireHit(name, locale, cachedTemplate.source);
+                        } else {
+                            fireNegativeHit(name, locale);
+                        }
+                    }
                     if (t instanceof Template || t == null) {
                         return (Template) t;
                     } else if (t instanceof RuntimeException) {
@@ -366,30 +545,67 @@ public class TemplateCache {
                 // Clone as the instance bound to the map should be treated as
                 // immutable to ensure proper concurrent semantics
                 cachedTemplate = cachedTemplate.cloneCachedTemplate();
-                // Update the last-checked flag
-                cachedTemplate.lastChecked = now;
-
-                // Find the template source
-                newLookupResult = lookupTemplate(name, locale, customLookupCondition);
-
-                // Template source was removed
-                if (!newLookupResult.isPositive()) {
-                    if (debug) {
-                        LOG.debug(debugName + " no source found.");
-                    } 
-                    storeNegativeLookup(tk, cachedTemplate, null);
-                    return null;
+                staleCheck = true;
+            } else {
+                if (debug) {
+                    LOG.debug("Couldn't find template in cache for " + debugName + "; will try to load it.");
                 }
+                
+                // Construct a new CachedTemplate entry. Note we set the
+                // cachedTemplate.lastModified to Long.MIN_VALUE. This is
+                // a flag that signs it has to be explicitly queried later on.
+                cachedTemplate = new CachedTemplate();
+                cachedTemplate.lastModified = Long.MIN_VALUE;
+            }
+            
+            // Find the template source. What the lookup finds might be already known from the lookup of the same
+            // template name with another locale, in which case the result is only as fresh as that knowledge.
+            final long lookupStartTime = listeners.length != 0 ? System.nanoTime() : 0;
+            final LocalizedVariants variants = getLocalizedVariants(
+                    new TemplateKey(name, null, null, encoding, parseAsFTL), now, sourceChangeCount);
+            cachedTemplate.lastChecked = variants.created;
+            cachedTemplate.sourceChangeCount = sourceChangeCount;
+            newLookupResult = lookupTemplate(name, locale, customLookupCondition, variants);
 
+            if (!newLookupResult.isPositive()) {
+                if (debug) {
+                    LOG.debug(debugName + " no source found.");
+                } 
+                if (listeners.length != 0) {
+                    fireLookup(name, locale, null, staleCheck, System.nanoTime() - lookupStartTime);
+                }
+                storeNegativeLookup(tk, cachedTemplate, null);
+                return null;
+            }
+            
+            final String sourceName = newLookupResult.getTemplateSourceName();
+            final Object newLookupResultSource = newLookupResult.getTemplateSource();
+            final Object source;
+            SharedTemplate sharedTemplate;
+            if (newLookupResultSource instanceof SharedTemplate) {
+                sharedTemplate = (SharedTemplate) newLookupResultSource;
+                source = sharedTemplate.source;
+                lastModified = sharedTemplate.lastModified;
+            } else {
+                source = newLookupResultSource;
+                lastModified = templateLoader.getLastModified(source);
+                sharedTemplate = revalidateSharedTemplate(
+                        variants, sourceName, source, lastModified, now, sourceChangeCount);
+            }
+            if (listeners.length != 0) {
+                fireLookup(name, locale, source, staleCheck, System.nanoTime() - lookupStartTime);
+            }
+            
+            if (cachedTemplate.lastModified != Long.MIN_VALUE) {
                 // If the source didn't change and its last modified date
                 // also didn't change, return the cached version.
-                final Object newLookupResultSource = newLookupResult.getTemplateSource();
-                lastModified = templateLoader.getLastModified(newLookupResultSource);
                 boolean lastModifiedNotChanged = lastModified == cachedTemplate.lastModified;
-                boolean sourceEquals = newLookupResultSource.equals(cachedTemplate.source);
-                if (lastModifiedNotChanged && sourceEquals) {
+                boolean sourceEquals = source.equals(cachedTemplate.source);
+                boolean inlinedTemplatesChanged = lastModifiedNotChanged && sourceEquals
+                        && haveInlinedTemplatesChanged(cachedTemplate.inlinedIncludes, now, sourceChangeCount);
+                if (lastModifiedNotChanged && sourceEquals && !inlinedTemplatesChanged) {
                     if (debug) {
-                        LOG.debug(debugName + ": using cached since " + newLookupResultSource + " hasn't changed.");
+                        LOG.debug(debugName + ": using cached since " + source + " hasn't changed.");
                     }
                     storeCached(tk, cachedTemplate);
                     return (Template) cachedTemplate.templateOrException;
@@ -397,70 +613,411 @@ public class TemplateCache {
                     if (!sourceEquals) {
                         LOG.debug("Updating source because: " + 
                             "sourceEquals=" + sourceEquals + 
-                            ", newlyFoundSource=" + StringUtil.jQuoteNoXSS(newLookupResultSource) + 
+                            ", newlyFoundSource=" + StringUtil.jQuoteNoXSS(source) + 
                             ", cached.source=" + StringUtil.jQuoteNoXSS(cachedTemplate.source));
                     } else if (!lastModifiedNotChanged) {
                         LOG.debug("Updating source because: " + 
                             "lastModifiedNotChanged=" + lastModifiedNotChanged + 
                             ", cached.lastModified=" + cachedTemplate.lastModified + 
                             " != source.lastModified=" + lastModified);
+                    } else {
+                        LOG.debug("Updating " + debugName + " because an inlined #include target has changed");
                     }
                 }
-            } else {
-                if (debug) {
-                    LOG.debug("Couldn't find template in cache for " + debugName + "; will try to load it.");
-                }
-                
-                // Construct a new CachedTemplate entry. Note we set the
-                // cachedTemplate.lastModified to Long.MIN_VALUE. This is
-                // a flag that signs it has to be explicitly queried later on.
-                cachedTemplate = new CachedTemplate();
-                cachedTemplate.lastChecked = now;
-                
-                newLookupResult = lookupTemplate(name, locale, customLookupCondition);
-                
-                if (!newLookupResult.isPositive()) {
-                    storeNegativeLookup(tk, cachedTemplate, null);
-                    return null;
-                }
-                
-                cachedTemplate.lastModified = lastModified = Long.MIN_VALUE;
             }
-
-            Object source = newLookupResult.getTemplateSource();
+            
             cachedTemplate.source = source;
             
             // If we get here, then we need to (re)load the template
-            if (debug) {
-                LOG.debug("Loading template for " + debugName + " from " + StringUtil.jQuoteNoXSS(source));
+            final long loadStartTime = listeners.length != 0 ? System.nanoTime() : 0;
+            Template template;
+            TemplateConfiguration tc;
+            InlinedIncludes inlinedIncludes;
+            boolean parsed = false;
+            if (sharedTemplate != null) {
+                if (debug) {
+                    LOG.debug("Reusing the already parsed " + StringUtil.jQuoteNoXSS(source) + " for " + debugName);
+                }
+                template = _TemplateAPI.copyWithSharedParseResult(sharedTemplate.parsedTemplate);
+                tc = sharedTemplate.templateConfiguration;
+                inlinedIncludes = sharedTemplate.inlinedIncludes;
+            } else {
+                if (debug) {
+                    LOG.debug("Loading template for " + debugName + " from " + StringUtil.jQuoteNoXSS(source));
+                }
+                tc = getTemplateConfiguration(sourceName, source);
+                LoadedTemplate loadedTemplate = loadTemplate(
+                        templateLoader, source, name, sourceName, tc, encoding, parseAsFTL,
+                        parseAsFTL && getInlineStaticTextIncludes() ? tk : null);
+                parsed = !loadedTemplate.reusedParseResult;
+                inlinedIncludes = loadedTemplate.inlinedIncludes;
+                // The loaded template (which the AST nodes belong to) is never returned, only its copies, so none of
+                // the returned templates is special, and none of them is referred by the AST.
+                variants.putSharedTemplate(sourceName, new SharedTemplate(
+                        loadedTemplate.template, tc, source, lastModified, inlinedIncludes));
+                template = _TemplateAPI.copyWithSharedParseResult(loadedTemplate.template);
+            }
+            // The inlined content is only used with the locale (etc.) it was inlined for, so only then it matters if
+            // the inlined templates change.
+            cachedTemplate.inlinedIncludes = inlinedIncludes != null && inlinedIncludes.isInlinedFor(tk)
+                    ? inlinedIncludes : null;
+            template = customizeTemplate(template, tc, locale, customLookupCondition);
+            if (listeners.length != 0) {
+                fireLoad(name, locale, source, staleCheck, parsed, System.nanoTime() - loadStartTime);
             }
-            
-            lastModified = lastModified == Long.MIN_VALUE ? templateLoader.getLastModified(source) : lastModified;            
-            Template template = loadTemplate(
-                    templateLoader, source,
-                    name, newLookupResult.getTemplateSourceName(), locale, customLookupCondition,
-                    encoding, parseAsFTL);
             cachedTemplate.templateOrException = template;
             cachedTemplate.lastModified = lastModified;
             storeCached(tk, cachedTemplate);
+            processStaticDependencies(name, template, locale, customLookupCondition, encoding);
             return template;
         } catch (RuntimeException e) {
             if (cachedTemplate != null) {
                 storeNegativeLookup(tk, cachedTemplate, e);
             }
+            if (listeners.length != 0) {
+                fireLoadFailure(name, locale, e);
+            }
             throw e;
         } catch (IOException e) {
             if (!rethrown) {
                 storeNegativeLookup(tk, cachedTemplate, e);
+                if (listeners.length != 0 && !cacheHit) {
+                    fireLoadFailure(name, locale, e);
+                }
             }
             throw e;
         } finally {
-            if (newLookupResult != null && newLookupResult.isPositive()) {
+            if (newLookupResult != null && newLookupResult.isPositive()
+                    && !(newLookupResult.getTemplateSource() instanceof SharedTemplate)) {
                 templateLoader.closeTemplateSource(newLookupResult.getTemplateSource());
             }
         }
     }
 
+    /**
+     * Implements {@link #setInlineStaticTextIncludes(boolean)}.
+     * 
+     * @param template
+     *            The freshly loaded template, whose AST isn't yet shared with other templates or threads.
+     * @param inliningKey
+     *            The key of the template being loaded; the {@code #include}-s are resolved with its locale, custom
+     *            lookup condition and encoding. If {@code null}, nothing is inlined.
+     * 
+     * @return The inlined templates, or {@code null} if nothing was inlined.
+     */
+    private InlinedIncludes inlineStaticTextIncludes(Template template, TemplateKey inliningKey) {
+        if (inliningKey == null) {
+            return null;
+        }
+        
+        Map<TemplateDependency, char[]> inlinedTexts = null;
+        List<InlinedTemplate> inlinedTemplates = null;
+        for (TemplateDependency dependency : template.getStaticDependencies()) {
+            if (dependency.isImported()) {
+                continue;
+            }
+            
+            String depEncoding = dependency.getEncoding() != null ? dependency.getEncoding() : inliningKey.encoding;
+            PendingLoad pendingLoad = pendingLoads.get(new TemplateKey(
+                    dependency.getTemplateName(), inliningKey.locale, inliningKey.customLookupCondition, depEncoding,
+                    dependency.getParse()));
+            if (pendingLoad != null && pendingLoad.isLoadedByCurrentThread()) {
+                continue; // Cyclic #include; it will be resolved at runtime
+            }
+            
+            Template depTemplate;
+            try {
+                depTemplate = getInlinedTemplate(
+                        dependency, inliningKey.locale, inliningKey.customLookupCondition, depEncoding);
+            } catch (Exception e) {
+                // The #include will fail at runtime the same way, if it's executed at all.
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Couldn't load " + dependency + " for inlining; it will be resolved at runtime.", e);
+                }
+                continue;
+            }
+            if (depTemplate == null) {
+                continue;
+            }
+            char[] text = _CoreAPI.getStaticText(depTemplate);
+            if (text == null) {
+                continue;
+            }
+            
+            // We need to know which version of the included template we have inlined, so that we can later check if
+            // it has changed. The load has just put that into the LocalizedVariants, unless it was already replaced.
+            LocalizedVariants depVariants = (LocalizedVariants) localizedVariantsIndex.get(new TemplateKey(
+                    dependency.getTemplateName(), null, null, depEncoding, dependency.getParse()));
+            Object depKnownSource = depVariants != null
+                    ? depVariants.knownSources.get(depTemplate.getSourceName()) : null;
+            if (!(depKnownSource instanceof SharedTemplate)
+                    || ((SharedTemplate) depKnownSource).parsedTemplate != _TemplateAPI.getAstOwner(depTemplate)) {
+                continue;
+            }
+            SharedTemplate depSharedTemplate = (SharedTemplate) depKnownSource;
+            
+            if (inlinedTexts == null) {
+                inlinedTexts = new HashMap<TemplateDependency, char[]>();
+                inlinedTemplates = new ArrayList<InlinedTemplate>();
+            }
+            inlinedTexts.put(dependency, text);
+            inlinedTemplates.add(new InlinedTemplate(
+                    dependency, depEncoding,
+                    depTemplate.getSourceName(), depSharedTemplate.source, depSharedTemplate.lastModified));
+        }
+        if (inlinedTexts == null) {
+            return null;
+        }
+        
+        _CoreAPI.inlineIncludes(template, inlinedTexts,
+                inliningKey.locale, inliningKey.customLookupCondition, inliningKey.encoding);
+        return new InlinedIncludes(inliningKey, inlinedTemplates);
+    }
+    
+    /**
+     * Gets a template for {@link #inlineStaticTextIncludes}. Unlike a normal {@link #getTemplate} call, this doesn't
+     * wait for the other threads that are loading the same template, as with cyclic {@code #include}-s they might
+     * be waiting for the current thread; it loads the template itself instead.
+     */
+    private Template getInlinedTemplate(
+            TemplateDependency dependency, Locale locale, Object customLookupCondition, String encoding)
+            throws IOException {
+        Boolean prevInliningInCurrentThread = inliningInCurrentThread.get();
+        inliningInCurrentThread.set(Boolean.TRUE);
+        try {
+            return getTemplate(
+                    dependency.getTemplateName(), locale, customLookupCondition, encoding, dependency.getParse())
+                    .getTemplate();
+        } finally {
+            if (prevInliningInCurrentThread == null) {
+                inliningInCurrentThread.remove();
+            }
+        }
+    }
+    
+    /**
+     * Tells if any of the inlined templates would be found in a different source or version now; see
+     * {@link #setInlineStaticTextIncludes(boolean)}. This only does a template lookup (which is usually answered by
+     * the {@link LocalizedVariants}), and doesn't load the inlined templates, nor touches their cache entries.
+     * 
+     * @param inlinedIncludes
+     *            Maybe {@code null}, in which case the result is {@code false}.
+     */
+    private boolean haveInlinedTemplatesChanged(InlinedIncludes inlinedIncludes, long now, int sourceChangeCount) {
+        if (inlinedIncludes == null) {
+            return false;
+        }
+        TemplateKey inliningKey = inlinedIncludes.inliningKey;
+        for (InlinedTemplate inlinedTemplate : inlinedIncludes.templates) {
+            TemplateDependency dependency = inlinedTemplate.dependency;
+            LocalizedVariants variants = getLocalizedVariants(
+                    new TemplateKey(dependency.getTemplateName(), null, null,
+                            inlinedTemplate.encoding, dependency.getParse()),
+                    now, sourceChangeCount);
+            TemplateLookupResult lookupResult = null;
+            try {
+                lookupResult = lookupTemplate(
+                        dependency.getTemplateName(), inliningKey.locale, inliningKey.customLookupCondition,
+                        variants);
+                if (!lookupResult.isPositive()
+                        || !lookupResult.getTemplateSourceName().equals(inlinedTemplate.sourceName)) {
+                    return true;
+                }
+                Object source = lookupResult.getTemplateSource();
+                if (source instanceof SharedTemplate) {
+                    SharedTemplate sharedTemplate = (SharedTemplate) source;
+                    if (sharedTemplate.lastModified != inlinedTemplate.lastModified
+                            || !sharedTemplate.source.equals(inlinedTemplate.source)) {
+                        return true;
+                    }
+                } else {
+                    long lastModified = templateLoader.getLastModified(source);
+                    if (lastModified != inlinedTemplate.lastModified || !source.equals(inlinedTemplate.source)) {
+                        return true;
+                    }
+                    // So that the checks of other including templates needn't call the TemplateLoader again:
+                    revalidateSharedTemplate(
+                            variants, inlinedTemplate.sourceName, source, lastModified, now, sourceChangeCount);
+                }
+            } catch (Exception e) {
+                return true;
+            } finally {
+                if (lookupResult != null && lookupResult.isPositive()
+                        && !(lookupResult.getTemplateSource() instanceof SharedTemplate)) {
+                    try {
+                        templateLoader.closeTemplateSource(lookupResult.getTemplateSource());
+                    } catch (IOException e) {
+                        LOG.warn("Failed to close template source " + lookupResult.getTemplateSource(), e);
+                    }
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Returns the {@link SharedTemplate} of the stale {@link LocalizedVariants} if it was loaded from the same,
+     * unchanged source, and also puts it into {@link LocalizedVariants#knownSources}; otherwise returns {@code null}.
+     * If {@code #include}-s were inlined into that template, and any of the inlined templates has changed, it's not
+     * reused either, so the template will be loaded (and inlined) again.
+     */
+    private SharedTemplate revalidateSharedTemplate(
+            LocalizedVariants variants, String sourceName, Object source, long lastModified,
+            long now, int sourceChangeCount) {
+        SharedTemplate sharedTemplate = variants.getStaleSharedTemplate(sourceName, source, lastModified);
+        if (sharedTemplate == null
+                || haveInlinedTemplatesChanged(sharedTemplate.inlinedIncludes, now, sourceChangeCount)) {
+            return null;
+        }
+        variants.putSharedTemplate(sourceName, sharedTemplate);
+        return sharedTemplate;
+    }
+
+    /**
+     * Records the static dependencies of a newly loaded template, and prefetches them if
+     * {@link #dependencyPrefetchExecutor} is set.
+     */
+    private void processStaticDependencies(
+            final String name, Template template,
+            final Locale locale, final Object customLookupCondition, final String encoding) {
+        final List<TemplateDependency> dependencies = template.getStaticDependencies();
+        if (dependencies.isEmpty()) {
+            return;
+        }
+        
+        synchronized (dependentTemplateNames) {
+            for (TemplateDependency dependency : dependencies) {
+                Set<String> dependents = dependentTemplateNames.get(dependency.getTemplateName());
+                if (dependents == null) {
+                    dependents = new HashSet<String>();
+                    dependentTemplateNames.put(dependency.getTemplateName(), dependents);
+                }
+                dependents.add(name);
+            }
+        }
+        
+        Executor dependencyPrefetchExecutor = this.dependencyPrefetchExecutor;
+        if (dependencyPrefetchExecutor == null) {
+            return;
+        }
+        for (final TemplateDependency dependency : dependencies) {
+            // Request the dependency just like the #include or #import would, so that it will be a cache hit then:
+            final String dependencyEncoding = dependency.getEncoding() != null ? dependency.getEncoding() : encoding;
+            try {
+                dependencyPrefetchExecutor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            getTemplate(dependency.getTemplateName(), locale, customLookupCondition,
+                                    dependencyEncoding, dependency.getParse());
+                        } catch (Throwable e) {
+                            // The failure is cached, so it will be reported when the template is actually requested.
+                            if (LOG.isDebugEnabled()) {
+                                LOG.debug("Prefetching " + dependency + " of " + StringUtil.jQuoteNoXSS(name)
+                                        + " has failed.", e);
+                            }
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Prefetching the dependencies of " + StringUtil.jQuoteNoXSS(name)
+                            + " was rejected by the executor.");
+                }
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Returns the {@link LocalizedVariants} to use for a lookup that's done now; creates a new one if the current one
+     * is missing or stale.
+     * 
+     * @param variantsKey
+     *            The {@link TemplateKey} with {@code null} locale and {@code null} custom lookup condition.
+     */
+    private LocalizedVariants getLocalizedVariants(TemplateKey variantsKey, long now, int sourceChangeCount) {
+        LocalizedVariants variants = (LocalizedVariants) localizedVariantsIndex.get(variantsKey);
+        if (variants == null || now - variants.created >= updateDelay
+                || variants.sourceChangeCount != sourceChangeCount) {
+            variants = new LocalizedVariants(now, sourceChangeCount, variants);
+            localizedVariantsIndex.put(variantsKey, variants);
+        }
+        return variants;
+    }
+
+    /**
+     * Returns the {@link TemplateLoader} that has found the template source; for a {@link MultiTemplateLoader} that's
+     * its child loader.
+     */
+    private TemplateLoader getSourceTemplateLoader(Object source) {
+        if (source instanceof MultiSource) {
+            return ((MultiSource) source).getLoader();
+        }
+        return source != null ? templateLoader : null;
+    }
+
+    private void fireHit(String name, Locale locale, Object source) {
+        TemplateCacheListener[] listeners = this.listeners;
+        if (listeners.length == 0) {
+            return;
+        }
+        TemplateLoader sourceTemplateLoader = getSourceTemplateLoader(source);
+        for (TemplateCacheListener listener : listeners) {
+            try {
+                listener.hit(name, locale, sourceTemplateLoader);
+            } catch (RuntimeException e) {
+                logListenerFailure(e);
+            }
+        }
+    }
+
+    private void fireNegativeHit(String name, Locale locale) {
+        for (TemplateCacheListener listener : listeners) {
+            try {
+                listener.negativeHit(name, locale);
+            } catch (RuntimeException e) {
+                logListenerFailure(e);
+            }
+        }
+    }
+
+    private void fireLookup(String name, Locale locale, Object source, boolean staleCheck, long ioNanos) {
+        TemplateLoader sourceTemplateLoader = getSourceTemplateLoader(source);
+        for (TemplateCacheListener listener : listeners) {
+            try {
+                listener.lookup(name, locale, sourceTemplateLoader, staleCheck, ioNanos);
+            } catch (RuntimeException e) {
+                logListenerFailure(e);
+            }
+        }
+    }
+
+    private void fireLoad(
+            String name, Locale locale, Object source, boolean reload, boolean parsed, long loadNanos) {
+        TemplateLoader sourceTemplateLoader = getSourceTemplateLoader(source);
+        for (TemplateCacheListener listener : listeners) {
+            try {
+                listener.load(name, locale, sourceTemplateLoader, reload, parsed, loadNanos);
+            } catch (RuntimeException e) {
+                logListenerFailure(e);
+            }
+        }
+    }
+
+    private void fireLoadFailure(String name, Locale locale, Throwable exception) {
+        for (TemplateCacheListener listener : listeners) {
+            try {
+                listener.loadFailure(name, locale, exception);
+            } catch (RuntimeException e) {
+                logListenerFailure(e);
+            }
+        }
+    }
+
+    private void logListenerFailure(RuntimeException e) {
+        LOG.error("TemplateCacheListener has thrown exception", e);
+    }
+
     private static final Method INIT_CAUSE = getInitCauseMethod();
     
     private static final Method getInitCauseMethod() {
@@ -502,6 +1059,32 @@ public class TemplateCache {
                 "template on an earlier attempt; see cause exception.", e);
     }
 
+    private Template waitForPendingLoad(PendingLoad pendingLoad) throws IOException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    pendingLoad.done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    // Like with the blocking I/O of the template loader, we don't give up because of this
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        Throwable e = pendingLoad.exception;
+        if (e == null) {
+            return pendingLoad.template;
+        }
+        throw newIOException("There was an error loading the " +
+                "template in another thread that was loading it concurrently; see cause exception.", e);
+    }
+
     private void storeNegativeLookup(TemplateKey tk, 
             CachedTemplate cachedTemplate, Exception e) {
         cachedTemplate.templateOrException = e;
@@ -510,6 +1093,21 @@ public class TemplateCache {
         storeCached(tk, cachedTemplate);
     }
 
+    private boolean isStale(CachedTemplate cachedTemplate, long now) {
+        return now - cachedTemplate.lastChecked >= updateDelay
+                || cachedTemplate.sourceChangeCount != sourceChangeCount.get();
+    }
+
+    private CachedTemplate getCached(TemplateKey tk) {
+        if (isStorageConcurrent) {
+            return (CachedTemplate) storage.get(tk);
+        } else {
+            synchronized (storage) {
+                return (CachedTemplate) storage.get(tk);
+            }
+        }
+    }
+
     private void storeCached(TemplateKey tk, CachedTemplate cachedTemplate) {
         if (isStorageConcurrent) {
             storage.put(tk, cachedTemplate);
@@ -520,36 +1118,65 @@ public class TemplateCache {
         }
     }
 
-    private Template loadTemplate(
-            final TemplateLoader templateLoader, final Object source,
-            final String name, final String sourceName, Locale locale, final Object customLookupCondition,
-            String initialEncoding, final boolean parseAsFTL) throws IOException {
-        final TemplateConfiguration tc;
+    /**
+     * Estimates the heap usage of a cache entry created by {@link TemplateCache}; see
+     * {@link WeightedCacheStorage#weigh(Object, Object)}.
+     */
+    static long estimateMemoryUsage(Object key, Object value) {
+        // The storage's entry, the key, and the CachedTemplate, roughly:
+        long size = 128;
+        if (key instanceof TemplateKey) {
+            size += 2L * ((TemplateKey) key).name.length();
+        }
+        Object templateOrException = value instanceof CachedTemplate
+                ? ((CachedTemplate) value).templateOrException : value;
+        if (templateOrException instanceof Template) {
+            size += ((Template) templateOrException).getEstimatedMemoryUsage();
+        } else if (templateOrException instanceof Throwable) {
+            // With the stack trace and the cause exceptions, roughly
+            size += 2048;
+        }
+        return size;
+    }
+
+    private TemplateConfiguration getTemplateConfiguration(String sourceName, Object source) throws IOException {
         try {
-            tc = templateConfigurations != null ? templateConfigurations.get(sourceName, source) : null;
+            return templateConfigurations != null ? templateConfigurations.get(sourceName, source) : null;
         } catch (TemplateConfigurationFactoryException e) {
             throw newIOException("Error while getting TemplateConfiguration; see cause exception.", e);
         }
-        if (tc != null) {
-            // TC.{encoding,locale} is stronger than the cfg.getTemplate arguments by design.
-            if (tc.isEncodingSet()) {
-                initialEncoding = tc.getEncoding();
-            }
-            if (tc.isLocaleSet()) {
-                locale = tc.getLocale();
-            }
+    }
+    
+    /**
+     * Loads the template, but doesn't yet apply the {@link TemplateConfiguration} and the other settings that aren't
+     * decided by the parsing; see {@link #customizeTemplate(Template, TemplateConfiguration, Locale, Object)}.
+     * 
+     * @param inliningKey
+     *            If not {@code null}, the {@code #include}-s are inlined into a newly parsed template; see
+     *            {@link #inlineStaticTextIncludes(Template, TemplateKey)}.
+     */
+    private LoadedTemplate loadTemplate(
+            final TemplateLoader templateLoader, final Object source,
+            final String name, final String sourceName, final TemplateConfiguration tc,
+            String initialEncoding, final boolean parseAsFTL, final TemplateKey inliningKey) throws IOException {
+        // TC.encoding is stronger than the cfg.getTemplate arguments by design.
+        if (tc != null && tc.isEncodingSet()) {
+            initialEncoding = tc.getEncoding();
         }
         
-        Template template;
+        LoadedTemplate loadedTemplate;
         {
             if (parseAsFTL) {
+                final CompiledTemplateStore compiledTemplateStore = getCompiledTemplateStore();
+                final boolean contentBasedTemplateReuse = getContentBasedTemplateReuse();
                 try {
-                    final Reader reader = templateLoader.getReader(source, initialEncoding);
-                    try {
-                        template = new Template(name, sourceName, reader, config, tc, initialEncoding);
-                    } finally {
-                        reader.close();
-                    }
+                    loadedTemplate = compiledTemplateStore == null && !contentBasedTemplateReuse
+                            ? newLoadedTemplate(
+                                    parseTemplate(templateLoader, source, name, sourceName, tc, initialEncoding),
+                                    inliningKey)
+                            : loadTemplateBySourceCode(
+                                    compiledTemplateStore, contentBasedTemplateReuse,
+                                    templateLoader, source, name, sourceName, tc, initialEncoding, inliningKey);
                 } catch (Template.WrongEncodingException wee) {
                     String actualEncoding = wee.getTemplateSpecifiedEncoding();
                     if (LOG.isDebugEnabled()) {
@@ -557,37 +1184,41 @@ public class TemplateCache {
                                 + actualEncoding + "\". Template: " + sourceName);
                     }
                     
-                    final Reader reader = templateLoader.getReader(source, actualEncoding);
-                    try {
-                        template = new Template(name, sourceName, reader, config, tc, actualEncoding);
-                    } finally {
-                        reader.close();
-                    }
+                    loadedTemplate = compiledTemplateStore == null && !contentBasedTemplateReuse
+                            ? newLoadedTemplate(
+                                    parseTemplate(templateLoader, source, name, sourceName, tc, actualEncoding),
+                                    inliningKey)
+                            : loadTemplateBySourceCode(
+                                    compiledTemplateStore, contentBasedTemplateReuse,
+                                    templateLoader, source, name, sourceName, tc, actualEncoding, inliningKey);
                 }
             } else {
-                // Read the contents into a StringWriter, then construct a single-text-block template from it.
-                final StringWriter sw = new StringWriter();
-                final char[] buf = new char[4096];
-                final Reader reader = templateLoader.getReader(source, initialEncoding);
-                try {
-                    fetchChars: while (true) {
-                        int charsRead = reader.read(buf);
-                        if (charsRead > 0) {
-                            sw.write(buf, 0, charsRead);
-                        } else if (charsRead < 0) {
-                            break fetchChars;
-                        }
-                    }
-                } finally {
-                    reader.close();
-                }
-                template = Template.getPlainTextTemplate(name, sourceName, sw.toString(), config);
+                // Read the contents into a String, then construct a single-text-block template from it.
+                Template template = Template.getPlainTextTemplate(
+                        name, sourceName, readSource(templateLoader, source, initialEncoding), config);
                 template.setEncoding(initialEncoding);
+                loadedTemplate = new LoadedTemplate(template, false, null);
             }
         }
-
+        return loadedTemplate;
+    }
+    
+    /**
+     * Creates the {@link LoadedTemplate} for a template that was just parsed (or read from the compiled form), and so
+     * whose AST isn't shared yet; it does the inlining too.
+     */
+    private LoadedTemplate newLoadedTemplate(Template template, TemplateKey inliningKey) {
+        return new LoadedTemplate(template, false, inlineStaticTextIncludes(template, inliningKey));
+    }
+    
+    private Template customizeTemplate(
+            Template template, TemplateConfiguration tc, Locale locale, Object customLookupCondition) {
         if (tc != null) {
             tc.apply(template);
+            // TC.locale is stronger than the cfg.getTemplate arguments by design.
+            if (tc.isLocaleSet()) {
+                locale = tc.getLocale();
+            }
         }
         
         template.setLocale(locale);
@@ -595,6 +1226,147 @@ public class TemplateCache {
         return template;
     }
 
+    private Template parseTemplate(
+            TemplateLoader templateLoader, Object source, String name, String sourceName, TemplateConfiguration tc,
+            String encoding) throws IOException {
+        Reader reader = templateLoader.getReader(source, encoding);
+        try {
+            char[] sourceBeginning = new char[FTL_HEADER_SNIFF_LENGTH];
+            int sourceBeginningLength = read(reader, sourceBeginning);
+            String headerEncoding = getDifferentHeaderEncoding(
+                    CharBuffer.wrap(sourceBeginning, 0, sourceBeginningLength), tc, encoding);
+            if (headerEncoding != null) {
+                reader.close();
+                encoding = headerEncoding;
+                reader = templateLoader.getReader(source, encoding);
+            } else {
+                PushbackReader pushbackReader = new PushbackReader(reader, sourceBeginning.length);
+                pushbackReader.unread(sourceBeginning, 0, sourceBeginningLength);
+                reader = pushbackReader;
+            }
+            return new Template(name, sourceName, reader, config, tc, encoding);
+        } finally {
+            reader.close();
+        }
+    }
+    
+    /**
+     * Reads until the buffer is full, or the end of the stream is reached.
+     * 
+     * @return The number of characters read.
+     */
+    private static int read(Reader reader, char[] buffer) throws IOException {
+        int ln = 0;
+        int charsRead;
+        while (ln < buffer.length && (charsRead = reader.read(buffer, ln, buffer.length - ln)) != -1) {
+            ln += charsRead;
+        }
+        return ln;
+    }
+    
+    /**
+     * Returns the encoding specified in the {@code #ftl} header, if that differs from the encoding that the source was
+     * read with, or else {@code null}. This allows re-reading the template with the correct encoding before parsing,
+     * instead of parsing it until the parser finds the header (see {@link Template.WrongEncodingException}), and then
+     * parsing it again. If the header can't be understood without parsing, this returns {@code null}, and then we
+     * still fall back to that.
+     */
+    private String getDifferentHeaderEncoding(CharSequence sourceBeginning, TemplateConfiguration tc, String encoding) {
+        if (encoding == null) {
+            return null;
+        }
+        String headerEncoding = _CoreAPI.sniffFTLHeaderEncoding(
+                sourceBeginning, tc != null ? (ParserConfiguration) tc : config);
+        return headerEncoding != null && !headerEncoding.equalsIgnoreCase(encoding) ? headerEncoding : null;
+    }
+    
+    /**
+     * Like {@link #parseTemplate}, but reads the whole source code first, so that before parsing it, it can try to
+     * reuse an earlier parse result for the same source code (and parsing settings). That comes from the
+     * {@link #parseResultsByContent}, if {@code contentBasedTemplateReuse} is {@code true}, or else from the
+     * {@link CompiledTemplateStore}, if that's non-{@code null}. If the template had to be parsed, the result is
+     * put into both. Errors related to the {@link CompiledTemplateStore} are only logged.
+     */
+    private LoadedTemplate loadTemplateBySourceCode(
+            CompiledTemplateStore compiledTemplateStore, boolean contentBasedTemplateReuse,
+            TemplateLoader templateLoader, Object source, String name, String sourceName, TemplateConfiguration tc,
+            String encoding, TemplateKey inliningKey) throws IOException {
+        String sourceCode = readSource(templateLoader, source, encoding);
+        String headerEncoding = getDifferentHeaderEncoding(sourceCode, tc, encoding);
+        if (headerEncoding != null) {
+            encoding = headerEncoding;
+            sourceCode = readSource(templateLoader, source, encoding);
+        }
+        String key = _TemplateAPI.getCompiledFormKey(sourceName, sourceCode, config, tc, encoding);
+        // The AST nodes resolve relative template names (like in #include) with the name of the template they belong
+        // to, so the parse result can only be reused for the same template name.
+        String contentKey = key + "\n" + name;
+        
+        if (contentBasedTemplateReuse) {
+            LoadedTemplate parseResult = (LoadedTemplate) parseResultsByContent.get(contentKey);
+            if (parseResult != null) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Reusing the parse result of an earlier load of the same content for "
+                            + StringUtil.jQuoteNoXSS(sourceName));
+                }
+                return new LoadedTemplate(parseResult.template, true, parseResult.inlinedIncludes);
+            }
+        }
+        
+        Template template = null;
+        if (compiledTemplateStore != null) {
+            try {
+                byte[] compiledForm = compiledTemplateStore.get(sourceName, key);
+                if (compiledForm != null) {
+                    template = _TemplateAPI.fromCompiledForm(
+                            compiledForm, sourceCode, name, sourceName, config, tc, encoding);
+                }
+            } catch (Exception e) {
+                LOG.warn("Failed to get template " + StringUtil.jQuote(sourceName) + " from the "
+                        + "CompiledTemplateStore; will parse it instead.", e);
+            }
+        }
+        
+        if (template == null) {
+            template = new Template(name, sourceName, new StringReader(sourceCode), config, tc, encoding);
+            if (compiledTemplateStore != null) {
+                try {
+                    compiledTemplateStore.put(sourceName, key, _TemplateAPI.toCompiledForm(template));
+                } catch (Exception e) {
+                    LOG.warn("Failed to put template " + StringUtil.jQuote(sourceName) + " into the "
+                            + "CompiledTemplateStore.", e);
+                }
+            }
+        }
+        
+        // The inlining must be done before the template is put into parseResultsByContent, as then it's shared.
+        LoadedTemplate loadedTemplate = newLoadedTemplate(template, inliningKey);
+        if (contentBasedTemplateReuse) {
+            parseResultsByContent.put(contentKey, loadedTemplate);
+        }
+        return loadedTemplate;
+    }
+    
+    private static String readSource(TemplateLoader templateLoader, Object source, String encoding)
+            throws IOException {
+        final StringWriter sw = new StringWriter();
+        final char[] buf = new char[4096];
+        final Reader reader = templateLoader.getReader(source, encoding);
+        try {
+            fetchChars: while (true) {
+                int charsRead = reader.read(buf);
+                if (charsRead > 0) {
+                    sw.write(buf, 0, charsRead);
+                } else if (charsRead < 0) {
+                    break fetchChars;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return sw.toString();
+    }
+
     /**
      * Gets the delay in milliseconds between checking for newer versions of a
      * template source.
@@ -619,6 +1391,270 @@ public class TemplateCache {
         }
     }
 
+    /**
+     * Sets the {@link Executor} used to re-check (and maybe reload) the cached templates whose update delay has
+     * elapsed (see {@link #setDelay(long)}). If this is non-{@code null}, then {@link #getTemplate(String, Locale,
+     * Object, String, boolean)} will return the stale cached template immediately, and the check will happen in the
+     * background. The refreshed template replaces the stale one in the cache when it's ready. Cache misses, and
+     * staled negative lookups and loading errors are still handled synchronously. If {@code null} (the default), then
+     * all checks happen synchronously in the thread that gets the template.
+     * 
+     * <p>
+     * A bounded executor can be used; if it rejects the task (with {@link RejectedExecutionException}), the check is
+     * done synchronously, in the thread that gets the template, just as if no executor was set.
+     * 
+     * @since 2.3.29
+     */
+    public void setBackgroundRefreshExecutor(Executor backgroundRefreshExecutor) {
+        // synchronized was moved here so that we don't advertise that it's thread-safe, as it's not.
+        synchronized (this) {
+            this.backgroundRefreshExecutor = backgroundRefreshExecutor;
+        }
+    }
+    
+    /**
+     * Getter pair of {@link #setBackgroundRefreshExecutor(Executor)}.
+     * 
+     * @since 2.3.29
+     */
+    public Executor getBackgroundRefreshExecutor() {
+        // synchronized was moved here so that we don't advertise that it's thread-safe, as it's not.
+        synchronized (this) {
+            return backgroundRefreshExecutor;
+        }
+    }
+
+    /**
+     * Sets the {@link Executor} used to load the templates that a newly loaded template includes or imports (see
+     * {@link Template#getStaticDependencies()}), so that they are already in the cache when the template is executed.
+     * The dependencies are requested with the same locale, custom lookup condition, and (unless the
+     * {@code #include} specifies otherwise) encoding as the depending template, which is what the {@code #include}
+     * and {@code #import} directives will do if the depending template is the main template. As the prefetched
+     * templates are loaded with this same mechanism, their dependencies are prefetched as well. Dependencies that are
+     * already cached are only checked as usual. If {@code null} (the default), nothing is prefetched.
+     * 
+     * <p>
+     * A bounded executor can be used; if it rejects a task (with {@link RejectedExecutionException}), the rest of the
+     * dependencies of the template are not prefetched. Prefetching errors are cached like any other loading errors,
+     * and so they will be thrown when the template is actually requested.
+     * 
+     * @since 2.3.29
+     */
+    public void setDependencyPrefetchExecutor(Executor dependencyPrefetchExecutor) {
+        // synchronized was moved here so that we don't advertise that it's thread-safe, as it's not.
+        synchronized (this) {
+            this.dependencyPrefetchExecutor = dependencyPrefetchExecutor;
+        }
+    }
+    
+    /**
+     * Getter pair of {@link #setDependencyPrefetchExecutor(Executor)}.
+     * 
+     * @since 2.3.29
+     */
+    public Executor getDependencyPrefetchExecutor() {
+        // synchronized was moved here so that we don't advertise that it's thread-safe, as it's not.
+        synchronized (this) {
+            return dependencyPrefetchExecutor;
+        }
+    }
+    
+    /**
+     * Returns the names of the templates that include or import the given template, directly or indirectly, as far as
+     * it's known from the {@link Template#getStaticDependencies() static dependencies} of the templates loaded by
+     * this cache since it was last {@link #clear() cleared}. This can be used to find the templates that are affected
+     * by the change of a template, like to remove them from the cache, or to load them again in advance. The result
+     * may contain templates that no longer depend on the given template, or that are no longer in the cache.
+     * 
+     * @param templateName
+     *            The name of the dependency, in the format that {@link #getTemplate(String, Locale, Object, String,
+     *            boolean)} accepts.
+     * 
+     * @return A new sorted set, not {@code null}, doesn't contain {@code templateName} (unless there's a cyclic
+     *         dependency).
+     * 
+     * @since 2.3.29
+     */
+    public Set<String> getDependentTemplateNames(String templateName) throws MalformedTemplateNameException {
+        NullArgumentException.check("templateName", templateName);
+        templateName = templateNameFormat.normalizeRootBasedName(templateName);
+        
+        Set<String> result = new TreeSet<String>();
+        List<String> unprocessed = new ArrayList<String>();
+        unprocessed.add(templateName);
+        synchronized (dependentTemplateNames) {
+            while (!unprocessed.isEmpty()) {
+                Set<String> dependents = dependentTemplateNames.get(unprocessed.remove(unprocessed.size() - 1));
+                if (dependents != null) {
+                    for (String dependent : dependents) {
+                        if (result.add(dependent)) {
+                            unprocessed.add(dependent);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sets the {@link CompiledTemplateStore} used to avoid parsing templates again, typically after an application
+     * restart. When this is non-{@code null}, the source code of the template is still loaded, but if the store
+     * already contains its compiled form (for the same source code and parsing settings), the {@link Template} is
+     * re-created from that, instead of parsing the source code. Otherwise the template is parsed, and its compiled
+     * form is put into the store. Defaults to {@code null}. Doesn't affect templates loaded with {@code parseAsFTL}
+     * {@code false}.
+     * 
+     * @since 2.3.29
+     */
+    public void setCompiledTemplateStore(CompiledTemplateStore compiledTemplateStore) {
+        // synchronized was moved here so that we don't advertise that it's thread-safe, as it's not.
+        synchronized (this) {
+            this.compiledTemplateStore = compiledTemplateStore;
+        }
+    }
+    
+    /**
+     * Getter pair of {@link #setCompiledTemplateStore(CompiledTemplateStore)}.
+     * 
+     * @since 2.3.29
+     */
+    public CompiledTemplateStore getCompiledTemplateStore() {
+        // synchronized was moved here so that we don't advertise that it's thread-safe, as it's not.
+        synchronized (this) {
+            return compiledTemplateStore;
+        }
+    }
+
+    /**
+     * Sets whether templates loaded from identical source code (with identical parsing settings, and the same
+     * {@link Template#getSourceName() source name}) should share the parse result, even if they are loaded
+     * independently. Without this, a template is parsed again when its {@link TemplateLoader#getLastModified(Object)
+     * last modification time} changes, even if its content didn't change. When this is {@code true}, the source code
+     * is still loaded, but the parsing is skipped if a template with the same content (identified by a hash) was
+     * already parsed, and its parse result wasn't yet garbage collected (they are softly referenced). Only the
+     * settings that aren't decided by parsing (like the locale, and those coming from the
+     * {@link TemplateConfiguration}) are applied to the reused parse result. Defaults to {@code false}. Doesn't affect
+     * templates loaded with {@code parseAsFTL} {@code false}.
+     * 
+     * @since 2.3.29
+     */
+    public void setContentBasedTemplateReuse(boolean contentBasedTemplateReuse) {
+        // synchronized was moved here so that we don't advertise that it's thread-safe, as it's not.
+        synchronized (this) {
+            this.contentBasedTemplateReuse = contentBasedTemplateReuse;
+            if (!contentBasedTemplateReuse) {
+                parseResultsByContent.clear();
+            }
+        }
+    }
+    
+    /**
+     * Getter pair of {@link #setContentBasedTemplateReuse(boolean)}.
+     * 
+     * @since 2.3.29
+     */
+    public boolean getContentBasedTemplateReuse() {
+        // synchronized was moved here so that we don't advertise that it's thread-safe, as it's not.
+        synchronized (this) {
+            return contentBasedTemplateReuse;
+        }
+    }
+
+    /**
+     * Sets whether the {@code #include}-s with literal arguments (see {@link Template#getStaticDependencies()}) whose
+     * target template is only static text (it contains no FTL tags or interpolations, or it's loaded with
+     * {@code parse=false}) should be resolved when the including template is loaded, so that executing the
+     * {@code #include} just writes the already known text. This saves the template lookup and the cache check that
+     * an {@code #include} normally does on each execution. The included template is loaded with the locale, custom
+     * lookup condition, and encoding of the including template; if these differ at runtime (like because the locale
+     * was changed with {@code #setting}), the {@code #include} is executed normally. As the including template then
+     * depends on the content of the included template, when the including template is checked for changes (see
+     * {@link #setDelay(long)}), it's also reloaded if any of the inlined templates was reloaded. Defaults to
+     * {@code false}.
+     * 
+     * <p>
+     * The inlining is done on the AST of the including template right after it was parsed (or read from the
+     * {@link CompiledTemplateStore}), before it's shared with other {@link Template} objects. So if that AST is later
+     * reused for another locale, custom lookup condition, or encoding (like when several locales resolve to the same
+     * template source), the {@code #include}-s are executed normally with those.
+     * 
+     * @since 2.3.29
+     */
+    public void setInlineStaticTextIncludes(boolean inlineStaticTextIncludes) {
+        // synchronized was moved here so that we don't advertise that it's thread-safe, as it's not.
+        synchronized (this) {
+            this.inlineStaticTextIncludes = inlineStaticTextIncludes;
+        }
+    }
+    
+    /**
+     * Getter pair of {@link #setInlineStaticTextIncludes(boolean)}.
+     * 
+     * @since 2.3.29
+     */
+    public boolean getInlineStaticTextIncludes() {
+        // synchronized was moved here so that we don't advertise that it's thread-safe, as it's not.
+        synchronized (this) {
+            return inlineStaticTextIncludes;
+        }
+    }
+
+    /**
+     * Adds a {@link TemplateCacheListener} that will be notified about the cache hits, misses, and template loads.
+     * Adding the same listener twice has no effect. This method is thread-safe, and can be called while the cache is
+     * in use.
+     * 
+     * @since 2.3.29
+     */
+    public void addListener(TemplateCacheListener listener) {
+        NullArgumentException.check("listener", listener);
+        synchronized (this) {
+            TemplateCacheListener[] listeners = this.listeners;
+            for (TemplateCacheListener existingListener : listeners) {
+                if (existingListener == listener) {
+                    return;
+                }
+            }
+            TemplateCacheListener[] newListeners = new TemplateCacheListener[listeners.length + 1];
+            System.arraycopy(listeners, 0, newListeners, 0, listeners.length);
+            newListeners[listeners.length] = listener;
+            this.listeners = newListeners;
+        }
+    }
+
+    /**
+     * Removes a listener added with {@link #addListener(TemplateCacheListener)}; does nothing if it wasn't added.
+     * This method is thread-safe.
+     * 
+     * @since 2.3.29
+     */
+    public void removeListener(TemplateCacheListener listener) {
+        synchronized (this) {
+            TemplateCacheListener[] listeners = this.listeners;
+            for (int i = 0; i < listeners.length; i++) {
+                if (listeners[i] == listener) {
+                    TemplateCacheListener[] newListeners = new TemplateCacheListener[listeners.length - 1];
+                    System.arraycopy(listeners, 0, newListeners, 0, i);
+                    System.arraycopy(listeners, i + 1, newListeners, i, newListeners.length - i);
+                    this.listeners = newListeners;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the listeners added with {@link #addListener(TemplateCacheListener)}, in the order as they were added.
+     * 
+     * @return An unmodifiable snapshot; not {@code null}.
+     * 
+     * @since 2.3.29
+     */
+    public List<TemplateCacheListener> getListeners() {
+        return Collections.unmodifiableList(Arrays.asList(listeners.clone()));
+    }
+
     /**
      * Returns if localized template lookup is enabled or not.
      */
@@ -652,6 +1688,11 @@ public class TemplateCache {
     public void clear() {
         synchronized (storage) {
             storage.clear();
+            localizedVariantsIndex.clear();
+            parseResultsByContent.clear();
+            synchronized (dependentTemplateNames) {
+                dependentTemplateNames.clear();
+            }
             if (templateLoader instanceof StatefulTemplateLoader) {
                 ((StatefulTemplateLoader) templateLoader).resetState();
             }
@@ -702,6 +1743,8 @@ public class TemplateCache {
                     storage.remove(tk);
                 }
             }
+            // So that the removed template won't be re-created from what the lookups for other locales have found:
+            localizedVariantsIndex.remove(new TemplateKey(name, null, null, encoding, parse));
             if (debug) {
                 LOG.debug(debugName + " was removed from the cache, if it was there");
             }
@@ -734,21 +1777,22 @@ public class TemplateCache {
         }
     }
 
-    private TemplateLookupResult lookupTemplate(String name, Locale locale, Object customLookupCondition)
-            throws IOException {
+    private TemplateLookupResult lookupTemplate(String name, Locale locale, Object customLookupCondition,
+            LocalizedVariants variants) throws IOException {
         final TemplateLookupResult lookupResult = templateLookupStrategy.lookup(
-                new TemplateCacheTemplateLookupContext(name, locale, customLookupCondition));
+                new TemplateCacheTemplateLookupContext(name, locale, customLookupCondition, variants));
         if (lookupResult == null) {
             throw new NullPointerException("Lookup result shouldn't be null");
         }
         return lookupResult;
     }
 
-    private TemplateLookupResult lookupTemplateWithAcquisitionStrategy(String path) throws IOException {
+    private TemplateLookupResult lookupTemplateWithAcquisitionStrategy(String path, LocalizedVariants variants)
+            throws IOException {
         int asterisk = path.indexOf(ASTERISK);
         // Shortcut in case there is no acquisition
         if (asterisk == -1) {
-            return TemplateLookupResult.from(path, findTemplateSource(path));
+            return TemplateLookupResult.from(path, findTemplateSource(path, variants));
         }
         StringTokenizer tok = new StringTokenizer(path, "/");
         int lastAsterisk = -1;
@@ -764,7 +1808,7 @@ public class TemplateCache {
             tokpath.add(pathToken);
         }
         if (lastAsterisk == -1) {  // if there was no real "*" step after all
-            return TemplateLookupResult.from(path, findTemplateSource(path));
+            return TemplateLookupResult.from(path, findTemplateSource(path, variants));
         }
         String basePath = concatPath(tokpath, 0, lastAsterisk);
         String resourcePath = concatPath(tokpath, lastAsterisk + 1, tokpath.size());
@@ -775,7 +1819,7 @@ public class TemplateCache {
         int l = basePath.length();
         for (; ; ) {
             String fullPath = buf.append(resourcePath).toString();
-            Object templateSource = findTemplateSource(fullPath);
+            Object templateSource = findTemplateSource(fullPath, variants);
             if (templateSource != null) {
                 return TemplateLookupResult.from(fullPath, templateSource);
             }
@@ -787,12 +1831,29 @@ public class TemplateCache {
         }
     }
 
-    private Object findTemplateSource(String path) throws IOException {
+    /**
+     * @return The template source, or a {@link SharedTemplate} if the source was already found and loaded (possibly
+     *         for another locale), or {@code null} if the source wasn't found.
+     */
+    private Object findTemplateSource(String path, LocalizedVariants variants) throws IOException {
+        final Object knownResult = variants.knownSources.get(path);
+        if (knownResult != null) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("TemplateLoader.findTemplateSource(" +  StringUtil.jQuote(path) + "): "
+                        + (knownResult == LocalizedVariants.NO_SOURCE ? "Not found" : "Found")
+                        + " (known from an earlier lookup)");
+            }
+            return knownResult != LocalizedVariants.NO_SOURCE ? knownResult : null;
+        }
+        
         final Object result = templateLoader.findTemplateSource(path);
         if (LOG.isDebugEnabled()) {
             LOG.debug("TemplateLoader.findTemplateSource(" +  StringUtil.jQuote(path) + "): "
                     + (result == null ? "Not found" : "Found"));
         }
+        if (result == null) {
+            variants.knownSources.put(path, LocalizedVariants.NO_SOURCE);
+        }
         return modifyForConfIcI(result);
     }
 
@@ -828,7 +1889,8 @@ public class TemplateCache {
     
     /**
      * This class holds a (name, locale) pair and is used as the key in
-     * the cached templates map.
+     * the cached templates map. With {@code null} locale it's the key of
+     * {@link TemplateCache#localizedVariantsIndex}.
      */
     private static final class TemplateKey {
         private final String name;
@@ -852,14 +1914,14 @@ public class TemplateCache {
                 return
                     parse == tk.parse &&
                     name.equals(tk.name) &&
-                    locale.equals(tk.locale) &&
+                    nullSafeEquals(locale, tk.locale) &&
                     nullSafeEquals(customLookupCondition, tk.customLookupCondition) &&
                     encoding.equals(tk.encoding);
             }
             return false;
         }
 
-        private boolean nullSafeEquals(Object o1, Object o2) {
+        private static boolean nullSafeEquals(Object o1, Object o2) {
             return o1 != null
                 ? (o2 != null ? o1.equals(o2) : false)
                 : o2 == null;
@@ -869,7 +1931,7 @@ public class TemplateCache {
         public int hashCode() {
             return
                 name.hashCode() ^
-                locale.hashCode() ^
+                (locale != null ? locale.hashCode() : 0) ^
                 encoding.hashCode() ^
                 (customLookupCondition != null ? customLookupCondition.hashCode() : 0) ^
                 Boolean.valueOf(!parse).hashCode();
@@ -890,7 +1952,14 @@ public class TemplateCache {
         Object templateOrException;
         Object source;
         long lastChecked;
+        /** The {@link TemplateCache#sourceChangeCount} when the entry was last checked. */
+        int sourceChangeCount;
         long lastModified;
+        /**
+         * The templates whose content was inlined into {@link #templateOrException}, or {@code null}; see
+         * {@link TemplateCache#setInlineStaticTextIncludes(boolean)}.
+         */
+        InlinedIncludes inlinedIncludes;
         
         public CachedTemplate cloneCachedTemplate() {
             try {
@@ -901,10 +1970,232 @@ public class TemplateCache {
         }
     }
     
+    /**
+     * The templates whose content was inlined into the AST of a template when it was loaded; see
+     * {@link TemplateCache#setInlineStaticTextIncludes(boolean)}.
+     */
+    private static final class InlinedIncludes {
+        
+        /** The key of the template that was loaded; its locale, etc. were used to get the inlined templates. */
+        final TemplateKey inliningKey;
+        final List<InlinedTemplate> templates;
+        
+        InlinedIncludes(TemplateKey inliningKey, List<InlinedTemplate> templates) {
+            this.inliningKey = inliningKey;
+            this.templates = templates;
+        }
+        
+        /**
+         * Tells if the inlined content is used when the template is got with the given key (the template name
+         * doesn't matter, as it's part of the inlined {@link TemplateDependency}-s).
+         */
+        boolean isInlinedFor(TemplateKey tk) {
+            return TemplateKey.nullSafeEquals(tk.locale, inliningKey.locale)
+                    && TemplateKey.nullSafeEquals(tk.customLookupCondition, inliningKey.customLookupCondition)
+                    && tk.encoding.equals(inliningKey.encoding);
+        }
+        
+    }
+    
+    /**
+     * A template whose content was inlined, and the version of its source that was inlined.
+     */
+    private static final class InlinedTemplate {
+        
+        final TemplateDependency dependency;
+        /** The encoding the template was requested with; not {@code null}, unlike in the {@link #dependency}. */
+        final String encoding;
+        final String sourceName;
+        /** Already closed; only used for comparison. */
+        final Object source;
+        final long lastModified;
+
+        InlinedTemplate(
+                TemplateDependency dependency, String encoding, String sourceName, Object source, long lastModified) {
+            this.dependency = dependency;
+            this.encoding = encoding;
+            this.sourceName = sourceName;
+            this.source = source;
+            this.lastModified = lastModified;
+        }
+        
+    }
+    
+    /**
+     * What the template lookups for a given template name (and encoding and parse flag) have found during a period
+     * that's not longer than the template update delay; see {@link TemplateCache#localizedVariantsIndex}. With
+     * localized lookup, this is typically which localized variants of the template exist. Lookups with another
+     * locale can use this instead of calling the {@link TemplateLoader}, and if they resolve to a template source
+     * that was already loaded, they can share its parsed form (the AST).
+     */
+    private static final class LocalizedVariants {
+        
+        /** Value in {@link #knownSources} for sources that the {@link TemplateLoader} couldn't find. */
+        static final Object NO_SOURCE = new Object();
+        
+        final long created;
+        final int sourceChangeCount;
+        /**
+         * Maps template source names (the paths passed to {@link TemplateLoader#findTemplateSource(String)}) to
+         * {@link #NO_SOURCE} or to a {@link SharedTemplate}.
+         */
+        final ConcurrentHashMap<String, Object> knownSources = new ConcurrentHashMap<String, Object>();
+        /**
+         * The {@link SharedTemplate}-s of the stale instance this has replaced; these can be reused if the source
+         * is still the same.
+         */
+        private final Map<String, SharedTemplate> staleSharedTemplates;
+        
+        LocalizedVariants(long created, int sourceChangeCount, LocalizedVariants staleVariants) {
+            this.created = created;
+            this.sourceChangeCount = sourceChangeCount;
+            if (staleVariants != null) {
+                staleSharedTemplates = new HashMap<String, SharedTemplate>(staleVariants.staleSharedTemplates);
+                for (Map.Entry<String, Object> knownSource : staleVariants.knownSources.entrySet()) {
+                    if (knownSource.getValue() instanceof SharedTemplate) {
+                        staleSharedTemplates.put(knownSource.getKey(), (SharedTemplate) knownSource.getValue());
+                    }
+                }
+            } else {
+                staleSharedTemplates = Collections.emptyMap();
+            }
+        }
+        
+        void putSharedTemplate(String sourceName, SharedTemplate sharedTemplate) {
+            knownSources.put(sourceName, sharedTemplate);
+        }
+        
+        /**
+         * Returns the {@link SharedTemplate} of the stale instance if it was loaded from the same, unchanged source;
+         * otherwise returns {@code null}. See {@link TemplateCache#revalidateSharedTemplate}.
+         */
+        SharedTemplate getStaleSharedTemplate(String sourceName, Object source, long lastModified) {
+            SharedTemplate sharedTemplate = staleSharedTemplates.get(sourceName);
+            if (sharedTemplate == null
+                    || sharedTemplate.lastModified != lastModified || !sharedTemplate.source.equals(source)) {
+                return null;
+            }
+            return sharedTemplate;
+        }
+        
+    }
+    
+    /**
+     * The result of {@link TemplateCache#loadTemplate}.
+     */
+    private static final class LoadedTemplate {
+        
+        final Template template;
+        /** Tells if the template shares the parse result of an earlier load of identical content. */
+        final boolean reusedParseResult;
+        /** What was inlined into the AST of the {@link #template}, or {@code null}. */
+        final InlinedIncludes inlinedIncludes;
+        
+        LoadedTemplate(Template template, boolean reusedParseResult, InlinedIncludes inlinedIncludes) {
+            this.template = template;
+            this.reusedParseResult = reusedParseResult;
+            this.inlinedIncludes = inlinedIncludes;
+        }
+        
+    }
+    
+    /**
+     * A parsed template that can be shared by the {@link Template}-s created for different locales. As such, it's
+     * also used as the template source in the {@link TemplateLookupResult} when the source is already known from
+     * {@link LocalizedVariants}.
+     */
+    private static final class SharedTemplate {
+        
+        /** Not customized with the {@link #templateConfiguration}, and not returned by the {@link TemplateCache}. */
+        final Template parsedTemplate;
+        final TemplateConfiguration templateConfiguration;
+        /** Already closed; only used for comparison. */
+        final Object source;
+        final long lastModified;
+        /** What was inlined into the AST of the {@link #parsedTemplate}, or {@code null}. */
+        final InlinedIncludes inlinedIncludes;
+        
+        SharedTemplate(Template parsedTemplate, TemplateConfiguration templateConfiguration, Object source,
+                long lastModified, InlinedIncludes inlinedIncludes) {
+            this.parsedTemplate = parsedTemplate;
+            this.templateConfiguration = templateConfiguration;
+            this.source = source;
+            this.lastModified = lastModified;
+            this.inlinedIncludes = inlinedIncludes;
+        }
+        
+        @Override
+        public String toString() {
+            return String.valueOf(source);
+        }
+        
+    }
+    
+    /**
+     * Doesn't prevent the {@link TemplateCache} from being garbage collected, as the {@link TemplateLoader} may
+     * outlive it (like when {@link Configuration} replaces its {@link TemplateCache}).
+     */
+    private static final class TemplateCacheSourceChangeListener implements TemplateSourceChangeListener {
+        
+        private final WeakReference<TemplateCache> templateCacheRef;
+        private final ObservableTemplateLoader templateLoader;
+
+        TemplateCacheSourceChangeListener(TemplateCache templateCache, ObservableTemplateLoader templateLoader) {
+            this.templateCacheRef = new WeakReference<TemplateCache>(templateCache);
+            this.templateLoader = templateLoader;
+        }
+
+        public void templateSourceChanged(String templateSourceName) {
+            TemplateCache templateCache = templateCacheRef.get();
+            if (templateCache == null) {
+                templateLoader.removeTemplateSourceChangeListener(this);
+                return;
+            }
+            // As the template source name can be reached through many template names and locales, and as a new file
+            // can change the result of previously negative lookups, we just make all entries stale. That only means
+            // a getLastModified call for each entry, not reloading.
+            templateCache.sourceChangeCount.incrementAndGet();
+        }
+        
+    }
+    
+    /**
+     * The result of a template lookup/(re)load that's in progress in some thread, which other threads that need the
+     * same template can wait for.
+     */
+    private static final class PendingLoad {
+        
+        private final Thread loaderThread = Thread.currentThread();
+        private final CountDownLatch done = new CountDownLatch(1);
+        
+        // Safely published via the latch
+        private Template template;
+        private Throwable exception;
+        
+        boolean isLoadedByCurrentThread() {
+            return loaderThread == Thread.currentThread();
+        }
+        
+        void setResult(Template template) {
+            this.template = template;
+            done.countDown();
+        }
+        
+        void setException(Throwable exception) {
+            this.exception = exception;
+            done.countDown();
+        }
+        
+    }
+    
     private class TemplateCacheTemplateLookupContext extends TemplateLookupContext {
+        
+        private final LocalizedVariants variants;
 
-        TemplateCacheTemplateLookupContext(String templateName, Locale templateLocale, Object customLookupCondition) {
+        TemplateCacheTemplateLookupContext(String templateName, Locale templateLocale, Object customLookupCondition,
+                LocalizedVariants variants) {
             super(templateName, localizedLookup ? templateLocale : null, customLookupCondition);
+            this.variants = variants;
         }
 
         @Override
@@ -914,7 +2205,7 @@ public class TemplateCache {
                 throw new IllegalArgumentException("Non-normalized name, starts with \"/\": " + name);
             }
             
-            return TemplateCache.this.lookupTemplateWithAcquisitionStrategy(name);
+            return TemplateCache.this.lookupTemplateWithAcquisitionStrategy(name, variants);
         }
 
         @Override
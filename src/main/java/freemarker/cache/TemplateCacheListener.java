@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+import java.util.Locale;
+
+import freemarker.template.Configuration;
+
+/**
+ * Gets notified about what a {@link TemplateCache} does, typically to collect statistics about it. See
+ * {@link TemplateCacheStatistics} for a ready to use implementation. Listeners are added with
+ * {@link Configuration#addTemplateCacheListener(TemplateCacheListener)}, or with
+ * {@link TemplateCache#addListener(TemplateCacheListener)}.
+ * 
+ * <p>
+ * The methods are called synchronously, in the thread that gets the template, so they must be fast and thread-safe.
+ * {@link #hit(String, Locale, TemplateLoader)} in particular is called for most template lookups, so it shouldn't use
+ * locks. Exceptions thrown by the listener methods are logged, and otherwise ignored.
+ * 
+ * <p>
+ * The {@code templateName} parameters are the normalized template names (as requested, not the name of the localized
+ * variant actually found), and the {@code locale} parameters are the requested locales.
+ * 
+ * @since 2.3.29
+ */
+public interface TemplateCacheListener {
+
+    /**
+     * The template was found in the cache, and wasn't stale. This is also called if the template was stale, but it's
+     * being re-checked in the background (see {@link TemplateCache#setBackgroundRefreshExecutor}), and so the stale
+     * template is returned.
+     * 
+     * @param templateLoader
+     *            The {@link TemplateLoader} that has loaded the template. If the template was loaded through a
+     *            {@link MultiTemplateLoader}, then this is the child {@link TemplateLoader} that has found it.
+     */
+    void hit(String templateName, Locale locale, TemplateLoader templateLoader);
+
+    /**
+     * The cache remembers that the template doesn't exist, or that its loading has failed, and that information
+     * wasn't stale.
+     */
+    void negativeHit(String templateName, Locale locale);
+
+    /**
+     * The template was looked up with the {@link TemplateLookupStrategy}, either because it wasn't in the cache (a
+     * cache miss), or because the cached entry has become stale. In the last case the last modification time of the
+     * found template source was also queried.
+     * 
+     * @param templateLoader
+     *            The {@link TemplateLoader} that has found the template, or {@code null} if the template wasn't
+     *            found. See the similar parameter of {@link #hit(String, Locale, TemplateLoader)}.
+     * @param staleCheck
+     *            {@code true} if this was the re-check of a stale cache entry, {@code false} if it was a cache miss.
+     * @param ioNanos
+     *            The time spent with finding the template source, and with querying its last modification time, in
+     *            nanoseconds.
+     */
+    void lookup(String templateName, Locale locale, TemplateLoader templateLoader, boolean staleCheck, long ioNanos);
+
+    /**
+     * The template was loaded (and put into the cache), after a {@link #lookup(String, Locale, TemplateLoader,
+     * boolean, long)} has found it.
+     * 
+     * @param templateLoader
+     *            See the similar parameter of {@link #hit(String, Locale, TemplateLoader)}.
+     * @param reload
+     *            {@code true} if the template was in the cache, but it has changed since then, {@code false} if it
+     *            wasn't in the cache.
+     * @param parsed
+     *            {@code false} if the parsed template was reused from the cache (as it was already loaded for
+     *            another locale, or, with {@link TemplateCache#setContentBasedTemplateReuse(boolean)}, from
+     *            identical source code), {@code true} otherwise.
+     * @param loadNanos
+     *            The time it took to read and parse the template, in nanoseconds. As the parser reads the template
+     *            source as it goes, this includes reading it with the {@link TemplateLoader}.
+     */
+    void load(String templateName, Locale locale, TemplateLoader templateLoader, boolean reload, boolean parsed,
+            long loadNanos);
+
+    /**
+     * The lookup or the loading of the template has failed with an exception. Note that a missing template is not
+     * a failure.
+     */
+    void loadFailure(String templateName, Locale locale, Throwable exception);
+
+}
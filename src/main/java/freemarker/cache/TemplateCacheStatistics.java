@@ -0,0 +1,676 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import freemarker.template.Configuration;
+
+/**
+ * A {@link TemplateCacheListener} that collects statistics about the {@link TemplateCache}: hit and miss counts, how
+ * often stale entries were checked and reloaded, and how long the lookups and the loading (parsing) took. It can also
+ * break down these by {@link TemplateLoader} (see {@link #getTemplateLoaderStatistics()}), and by template name (see
+ * {@link #setMaxTrackedTemplateNames(int)}). It's also a JMX MBean, which can be registered with
+ * {@link #registerMBean(String)}. Typical usage:
+ * 
+ * <pre>
+ * TemplateCacheStatistics stats = new TemplateCacheStatistics();
+ * cfg.addTemplateCacheListener(stats);
+ * stats.registerMBean("myApp");
+ * ...
+ * // When the Configuration is not used anymore:
+ * stats.unregisterMBean();
+ * </pre>
+ * 
+ * <p>
+ * The MBean is never registered automatically, not even when the object is added to a {@link Configuration}, as
+ * only the application knows a name that identifies the {@link Configuration}, and when it's discarded. An MBean
+ * that's not unregistered remains reachable from the MBean server, and so does this object.
+ * 
+ * <p>
+ * When a {@link Configuration} is cloned, the clone gets its own instance (see {@link #createEmptyCopy()}), which is
+ * not registered as an MBean; it can be found with {@link Configuration#getTemplateCacheListeners()}.
+ * 
+ * <p>
+ * Recording a cache hit only increments a striped counter (and if template names are tracked, a per-name counter),
+ * so it doesn't add lock contention to the template lookups. The counters are not updated atomically together, so
+ * reading them while the cache is in use can give slightly inconsistent results.
+ * 
+ * <p>
+ * This class is thread-safe.
+ *
+ * @since 2.3.29
+ */
+public class TemplateCacheStatistics implements TemplateCacheListener, TemplateCacheStatisticsMBean {
+
+    private final boolean loaderStatistics;
+
+    private final StripedCounter hitCount = new StripedCounter();
+    private final StripedCounter negativeHitCount = new StripedCounter();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong staleCheckCount = new AtomicLong();
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong reloadCount = new AtomicLong();
+    private final AtomicLong loadFailureCount = new AtomicLong();
+    private final TimeHistogram lookupTimeHistogram = new TimeHistogram();
+    private final TimeHistogram loadTimeHistogram = new TimeHistogram();
+
+    private final ConcurrentMap<TemplateLoader, TemplateCacheStatistics> statisticsByTemplateLoader;
+
+    private volatile int maxTrackedTemplateNames;
+    private final ConcurrentMap<String, TemplateNameStatistics> statisticsByTemplateName;
+
+    private ObjectName registeredObjectName;
+
+    public TemplateCacheStatistics() {
+        this(true);
+    }
+
+    private TemplateCacheStatistics(boolean loaderStatistics) {
+        this.loaderStatistics = loaderStatistics;
+        if (loaderStatistics) {
+            statisticsByTemplateLoader = new ConcurrentHashMap<TemplateLoader, TemplateCacheStatistics>();
+            statisticsByTemplateName = new ConcurrentHashMap<String, TemplateNameStatistics>();
+        } else {
+            statisticsByTemplateLoader = null;
+            statisticsByTemplateName = null;
+        }
+    }
+
+    public void hit(String templateName, Locale locale, TemplateLoader templateLoader) {
+        hitCount.increment();
+        if (loaderStatistics) {
+            TemplateCacheStatistics loaderStats = getTemplateLoaderStatistics(templateLoader);
+            if (loaderStats != null) {
+                loaderStats.hit(templateName, locale, templateLoader);
+            }
+            TemplateNameStatistics nameStats = getTemplateNameStatistics(templateName);
+            if (nameStats != null) {
+                nameStats.requestCount.incrementAndGet();
+            }
+        }
+    }
+
+    public void negativeHit(String templateName, Locale locale) {
+        negativeHitCount.increment();
+        if (loaderStatistics) {
+            TemplateNameStatistics nameStats = getTemplateNameStatistics(templateName);
+            if (nameStats != null) {
+                nameStats.requestCount.incrementAndGet();
+            }
+        }
+    }
+
+    public void lookup(
+            String templateName, Locale locale, TemplateLoader templateLoader, boolean staleCheck, long ioNanos) {
+        if (staleCheck) {
+            staleCheckCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+        }
+        lookupTimeHistogram.record(ioNanos);
+        if (loaderStatistics) {
+            TemplateCacheStatistics loaderStats = getTemplateLoaderStatistics(templateLoader);
+            if (loaderStats != null) {
+                loaderStats.lookup(templateName, locale, templateLoader, staleCheck, ioNanos);
+            }
+            if (!staleCheck) {
+                TemplateNameStatistics nameStats = getTemplateNameStatistics(templateName);
+                if (nameStats != null) {
+                    nameStats.requestCount.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    public void load(String templateName, Locale locale, TemplateLoader templateLoader, boolean reload,
+            boolean parsed, long loadNanos) {
+        loadCount.incrementAndGet();
+        if (reload) {
+            reloadCount.incrementAndGet();
+        }
+        if (parsed) {
+            loadTimeHistogram.record(loadNanos);
+        }
+        if (loaderStatistics) {
+            TemplateCacheStatistics loaderStats = getTemplateLoaderStatistics(templateLoader);
+            if (loaderStats != null) {
+                loaderStats.load(templateName, locale, templateLoader, reload, parsed, loadNanos);
+            }
+            if (parsed) {
+                TemplateNameStatistics nameStats = getTemplateNameStatistics(templateName);
+                if (nameStats != null) {
+                    nameStats.loadNanos.addAndGet(loadNanos);
+                }
+            }
+        }
+    }
+
+    public void loadFailure(String templateName, Locale locale, Throwable exception) {
+        loadFailureCount.incrementAndGet();
+    }
+
+    private TemplateCacheStatistics getTemplateLoaderStatistics(TemplateLoader templateLoader) {
+        if (templateLoader == null) {
+            return null;
+        }
+        TemplateCacheStatistics loaderStats = statisticsByTemplateLoader.get(templateLoader);
+        if (loaderStats == null) {
+            loaderStats = new TemplateCacheStatistics(false);
+            TemplateCacheStatistics prevLoaderStats = statisticsByTemplateLoader.putIfAbsent(
+                    templateLoader, loaderStats);
+            if (prevLoaderStats != null) {
+                loaderStats = prevLoaderStats;
+            }
+        }
+        return loaderStats;
+    }
+
+    private TemplateNameStatistics getTemplateNameStatistics(String templateName) {
+        int maxTrackedTemplateNames = this.maxTrackedTemplateNames;
+        if (maxTrackedTemplateNames == 0) {
+            return null;
+        }
+        TemplateNameStatistics nameStats = statisticsByTemplateName.get(templateName);
+        if (nameStats == null) {
+            if (statisticsByTemplateName.size() >= maxTrackedTemplateNames) {
+                return null;
+            }
+            nameStats = new TemplateNameStatistics();
+            TemplateNameStatistics prevNameStats = statisticsByTemplateName.putIfAbsent(templateName, nameStats);
+            if (prevNameStats != null) {
+                nameStats = prevNameStats;
+            }
+        }
+        return nameStats;
+    }
+
+    /**
+     * The number of times the template was found in the cache, and wasn't stale (or was being refreshed in the
+     * background).
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * The number of times the cache remembered that the template doesn't exist, or that it couldn't be loaded.
+     */
+    public long getNegativeHitCount() {
+        return negativeHitCount.get();
+    }
+
+    /**
+     * The number of times the template wasn't in the cache. For the per-{@link TemplateLoader} statistics this
+     * only counts the misses where the template was found.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * {@link #getHitCount()} plus {@link #getNegativeHitCount()}, divided by that plus {@link #getMissCount()}; 0 if
+     * there were no requests yet.
+     */
+    public double getHitRatio() {
+        long hits = getHitCount() + getNegativeHitCount();
+        long requests = hits + getMissCount();
+        return requests != 0 ? (double) hits / requests : 0;
+    }
+
+    /**
+     * The number of times a stale cache entry was checked for changes.
+     */
+    public long getStaleCheckCount() {
+        return staleCheckCount.get();
+    }
+
+    /**
+     * The number of times a template was loaded, including {@link #getReloadCount()}.
+     */
+    public long getLoadCount() {
+        return loadCount.get();
+    }
+
+    /**
+     * The number of times a template was loaded again, because it has changed since it was cached.
+     */
+    public long getReloadCount() {
+        return reloadCount.get();
+    }
+
+    /**
+     * The number of times the lookup or the loading of a template has failed with an exception.
+     */
+    public long getLoadFailureCount() {
+        return loadFailureCount.get();
+    }
+
+    /**
+     * The time spent in the {@link TemplateLoader} when looking up templates (on a cache miss or stale check).
+     */
+    public TimeHistogram getLookupTimeHistogram() {
+        return lookupTimeHistogram;
+    }
+
+    /**
+     * The time it took to read and parse the templates. Loads where the parsed template could be reused (as it was
+     * already loaded for another locale) aren't included.
+     */
+    public TimeHistogram getLoadTimeHistogram() {
+        return loadTimeHistogram;
+    }
+
+    public double getLookupTimeTotalMillis() {
+        return toMillis(lookupTimeHistogram.getTotalNanos());
+    }
+
+    public double getLookupTimeMeanMillis() {
+        return toMillis(lookupTimeHistogram.getMeanNanos());
+    }
+
+    public double getLookupTimeP95Millis() {
+        return toMillis(lookupTimeHistogram.getPercentileNanos(0.95));
+    }
+
+    public double getLookupTimeMaxMillis() {
+        return toMillis(lookupTimeHistogram.getMaxNanos());
+    }
+
+    public double getLoadTimeTotalMillis() {
+        return toMillis(loadTimeHistogram.getTotalNanos());
+    }
+
+    public double getLoadTimeMeanMillis() {
+        return toMillis(loadTimeHistogram.getMeanNanos());
+    }
+
+    public double getLoadTimeP95Millis() {
+        return toMillis(loadTimeHistogram.getPercentileNanos(0.95));
+    }
+
+    public double getLoadTimeMaxMillis() {
+        return toMillis(loadTimeHistogram.getMaxNanos());
+    }
+
+    /**
+     * Returns the statistics broken down by the {@link TemplateLoader} that has found the template. When a
+     * {@link MultiTemplateLoader} is used, the keys are its child loaders. The values are
+     * {@link TemplateCacheStatistics} objects that don't do further breakdowns, and where
+     * {@link #getNegativeHitCount()} and {@link #getLoadFailureCount()} are always 0.
+     * 
+     * @return An unmodifiable snapshot; not {@code null}. Empty for the per-{@link TemplateLoader} statistics
+     *         themselves.
+     */
+    public Map<TemplateLoader, TemplateCacheStatistics> getTemplateLoaderStatistics() {
+        if (!loaderStatistics) {
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(
+                new LinkedHashMap<TemplateLoader, TemplateCacheStatistics>(statisticsByTemplateLoader));
+    }
+
+    public String[] getTemplateLoaderSummaries() {
+        List<String> result = new ArrayList<String>();
+        for (Map.Entry<TemplateLoader, TemplateCacheStatistics> ent : getTemplateLoaderStatistics().entrySet()) {
+            result.add(ent.getKey() + ": " + ent.getValue());
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    /**
+     * Sets the maximum number of template names for which statistics are tracked; defaults to 0, which disables
+     * this feature. As the names of the templates are tracked in the order as they are first seen, and names that
+     * come after the limit was reached are ignored, this should be set to be above the number of different template
+     * names that are expected to be used, but still low enough to not consume too much memory. The tracked names
+     * are queried with {@link #getTopRequestedTemplateNames(int)} and {@link #getTopLoadTimeTemplateNames(int)}.
+     */
+    public void setMaxTrackedTemplateNames(int maxTrackedTemplateNames) {
+        if (maxTrackedTemplateNames < 0) {
+            throw new IllegalArgumentException("maxTrackedTemplateNames can't be negative");
+        }
+        if (!loaderStatistics) {
+            throw new IllegalStateException("Template names aren't tracked in per-TemplateLoader statistics.");
+        }
+        this.maxTrackedTemplateNames = maxTrackedTemplateNames;
+    }
+
+    public int getMaxTrackedTemplateNames() {
+        return maxTrackedTemplateNames;
+    }
+
+    /**
+     * Creates a new instance with the same settings as this one (like {@link #getMaxTrackedTemplateNames()}), but
+     * without the recorded statistics, and not registered as an MBean. This is used by {@link Configuration#clone()},
+     * so that the clone doesn't add to the statistics of the original {@link Configuration}.
+     */
+    public TemplateCacheStatistics createEmptyCopy() {
+        TemplateCacheStatistics copy = new TemplateCacheStatistics(loaderStatistics);
+        if (loaderStatistics) {
+            copy.setMaxTrackedTemplateNames(maxTrackedTemplateNames);
+        }
+        return copy;
+    }
+
+    /**
+     * Returns the at most {@code n} template names that were requested most often (by counting hits, negative hits,
+     * and misses), in descending order of the request counts. Only works if
+     * {@link #setMaxTrackedTemplateNames(int)} was set.
+     * 
+     * @return A map whose keys are the template names, and the values are the request counts; not {@code null}.
+     */
+    public Map<String, Long> getTopRequestedTemplateNames(int n) {
+        return getTopTemplateNames(n, false);
+    }
+
+    /**
+     * Returns the at most {@code n} template names on whose loading the most time was spent, in descending order of
+     * the total load time. Only works if {@link #setMaxTrackedTemplateNames(int)} was set.
+     * 
+     * @return A map whose keys are the template names, and the values are the total load times in nanoseconds; not
+     *         {@code null}.
+     */
+    public Map<String, Long> getTopLoadTimeTemplateNames(int n) {
+        return getTopTemplateNames(n, true);
+    }
+
+    private Map<String, Long> getTopTemplateNames(int n, final boolean byLoadTime) {
+        if (!loaderStatistics) {
+            return Collections.emptyMap();
+        }
+        List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>();
+        for (Map.Entry<String, TemplateNameStatistics> ent : statisticsByTemplateName.entrySet()) {
+            TemplateNameStatistics nameStats = ent.getValue();
+            long value = byLoadTime ? nameStats.loadNanos.get() : nameStats.requestCount.get();
+            if (value != 0) {
+                entries.add(new NameAndValue(ent.getKey(), value));
+            }
+        }
+        Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+            public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+                return o2.getValue().compareTo(o1.getValue());
+            }
+        });
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < n && i < entries.size(); i++) {
+            Map.Entry<String, Long> ent = entries.get(i);
+            result.put(ent.getKey(), ent.getValue());
+        }
+        return result;
+    }
+
+    public String[] getTopRequestedTemplates() {
+        return toStringArray(getTopRequestedTemplateNames(10), false);
+    }
+
+    public String[] getTopLoadTimeTemplates() {
+        return toStringArray(getTopLoadTimeTemplateNames(10), true);
+    }
+
+    private static String[] toStringArray(Map<String, Long> topNames, boolean nanos) {
+        List<String> result = new ArrayList<String>();
+        for (Map.Entry<String, Long> ent : topNames.entrySet()) {
+            result.add(ent.getKey() + ": " + (nanos ? toMillis(ent.getValue()) + " ms" : ent.getValue()));
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    /**
+     * Sets all counters and histograms to 0, and forgets the per-{@link TemplateLoader} and per-template-name
+     * statistics. Events that are recorded concurrently with this call might be partially lost.
+     */
+    public void reset() {
+        hitCount.reset();
+        negativeHitCount.reset();
+        missCount.set(0);
+        staleCheckCount.set(0);
+        loadCount.set(0);
+        reloadCount.set(0);
+        loadFailureCount.set(0);
+        lookupTimeHistogram.reset();
+        loadTimeHistogram.reset();
+        if (loaderStatistics) {
+            statisticsByTemplateLoader.clear();
+            statisticsByTemplateName.clear();
+        }
+    }
+
+    /**
+     * Registers this object in the platform MBean server, with the
+     * {@code freemarker.cache:type=TemplateCacheStatistics,name=<name>} object name. As there's usually one
+     * {@link TemplateCacheStatistics} per {@link Configuration}, the name should identify the {@link Configuration}.
+     * This is never called automatically; see in the class documentation.
+     * 
+     * @return The {@link ObjectName} under which it was registered.
+     */
+    public synchronized ObjectName registerMBean(String name) throws JMException {
+        if (registeredObjectName != null) {
+            throw new IllegalStateException("Already registered as " + registeredObjectName);
+        }
+        ObjectName objectName = new ObjectName(
+                "freemarker.cache:type=TemplateCacheStatistics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        registeredObjectName = objectName;
+        return objectName;
+    }
+
+    /**
+     * Undoes {@link #registerMBean(String)}; does nothing if this object wasn't registered.
+     */
+    public synchronized void unregisterMBean() throws JMException {
+        if (registeredObjectName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredObjectName);
+            registeredObjectName = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + getHitCount()
+                + (loaderStatistics ? ", negativeHits=" + getNegativeHitCount() : "")
+                + ", misses=" + getMissCount()
+                + ", staleChecks=" + getStaleCheckCount()
+                + ", loads=" + getLoadCount()
+                + ", reloads=" + getReloadCount()
+                + (loaderStatistics ? ", loadFailures=" + getLoadFailureCount() : "")
+                + ", lookupTime=" + lookupTimeHistogram
+                + ", loadTime=" + loadTimeHistogram;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
+    private static class TemplateNameStatistics {
+        private final AtomicLong requestCount = new AtomicLong();
+        private final AtomicLong loadNanos = new AtomicLong();
+    }
+
+    private static class NameAndValue implements Map.Entry<String, Long> {
+        private final String name;
+        private final Long value;
+
+        NameAndValue(String name, long value) {
+            this.name = name;
+            this.value = Long.valueOf(value);
+        }
+
+        public String getKey() {
+            return name;
+        }
+
+        public Long getValue() {
+            return value;
+        }
+
+        public Long setValue(Long value) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * A histogram of durations, with buckets whose upper bounds are powers of 2 nanoseconds, starting from 1024 ns
+     * (about 1 µs). So the percentiles it returns are only accurate up to a factor of 2, but recording a value is
+     * cheap, and the memory usage is constant.
+     */
+    public static final class TimeHistogram {
+
+        private static final int FIRST_BUCKET_BITS = 10;
+        private static final int BUCKET_COUNT = 32;
+
+        private final AtomicLongArray bucketCounts = new AtomicLongArray(BUCKET_COUNT);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private TimeHistogram() {
+            // Not meant to be instantiated outside TemplateCacheStatistics
+        }
+
+        void record(long nanos) {
+            if (nanos < 0) {
+                nanos = 0;  // System.nanoTime() isn't guaranteed to be monotonic on all platforms
+            }
+            bucketCounts.incrementAndGet(getBucketIndex(nanos));
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max;
+            while (nanos > (max = maxNanos.get())) {
+                if (maxNanos.compareAndSet(max, nanos)) {
+                    break;
+                }
+            }
+        }
+
+        private static int getBucketIndex(long nanos) {
+            int index = 64 - Long.numberOfLeadingZeros(nanos) - FIRST_BUCKET_BITS;
+            return index < 0 ? 0 : index < BUCKET_COUNT ? index : BUCKET_COUNT - 1;
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                bucketCounts.set(i, 0);
+            }
+            count.set(0);
+            totalNanos.set(0);
+            maxNanos.set(0);
+        }
+
+        /**
+         * The number of recorded durations.
+         */
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.get();
+        }
+
+        /**
+         * The average of the recorded durations; 0 if nothing was recorded.
+         */
+        public long getMeanNanos() {
+            long count = getCount();
+            return count != 0 ? getTotalNanos() / count : 0;
+        }
+
+        /**
+         * The longest recorded duration; 0 if nothing was recorded.
+         */
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        /**
+         * Returns an upper bound of the given percentile, that is, the upper bound of the bucket in which it falls,
+         * but at most {@link #getMaxNanos()}.
+         * 
+         * @param percentile
+         *            Between 0 and 1; for example 0.95 for the 95th percentile.
+         */
+        public long getPercentileNanos(double percentile) {
+            if (percentile < 0 || percentile > 1) {
+                throw new IllegalArgumentException("percentile must be between 0 and 1");
+            }
+            long[] counts = getBucketCounts();
+            long count = 0;
+            for (long bucketCount : counts) {
+                count += bucketCount;
+            }
+            if (count == 0) {
+                return 0;
+            }
+            long threshold = (long) Math.ceil(count * percentile);
+            long maxNanos = getMaxNanos();
+            long cumulativeCount = 0;
+            for (int i = 0; i < counts.length - 1; i++) {
+                cumulativeCount += counts[i];
+                if (cumulativeCount >= threshold && cumulativeCount != 0) {
+                    return Math.min(getBucketUpperBoundNanos(i), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        /**
+         * The number of recorded durations in each bucket; see {@link #getBucketUpperBoundNanos(int)}.
+         */
+        public long[] getBucketCounts() {
+            long[] result = new long[BUCKET_COUNT];
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                result[i] = bucketCounts.get(i);
+            }
+            return result;
+        }
+
+        /**
+         * The exclusive upper bound of the durations counted in the bucket with the given index, or
+         * {@link Long#MAX_VALUE} for the last bucket.
+         */
+        public static long getBucketUpperBoundNanos(int bucketIndex) {
+            return bucketIndex < BUCKET_COUNT - 1 ? 1L << (bucketIndex + FIRST_BUCKET_BITS) : Long.MAX_VALUE;
+        }
+
+        @Override
+        public String toString() {
+            return "(count=" + getCount()
+                    + ", meanMillis=" + toMillis(getMeanNanos())
+                    + ", p95Millis=" + toMillis(getPercentileNanos(0.95))
+                    + ", maxMillis=" + toMillis(getMaxNanos()) + ")";
+        }
+
+    }
+
+}
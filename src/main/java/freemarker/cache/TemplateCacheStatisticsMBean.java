@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+/**
+ * The JMX management interface of {@link TemplateCacheStatistics}; see the documentation of the methods there. The
+ * times are in milliseconds here (as {@code double}-s), to be readable in generic JMX consoles.
+ *
+ * @since 2.3.29
+ */
+public interface TemplateCacheStatisticsMBean {
+
+    long getHitCount();
+
+    long getNegativeHitCount();
+
+    long getMissCount();
+
+    double getHitRatio();
+
+    long getStaleCheckCount();
+
+    long getLoadCount();
+
+    long getReloadCount();
+
+    long getLoadFailureCount();
+
+    double getLookupTimeTotalMillis();
+
+    double getLookupTimeMeanMillis();
+
+    double getLookupTimeP95Millis();
+
+    double getLookupTimeMaxMillis();
+
+    double getLoadTimeTotalMillis();
+
+    double getLoadTimeMeanMillis();
+
+    double getLoadTimeP95Millis();
+
+    double getLoadTimeMaxMillis();
+
+    /**
+     * The statistics broken down by {@link TemplateLoader}, one line per loader.
+     */
+    String[] getTemplateLoaderSummaries();
+
+    /**
+     * The most requested template names, with the request counts, if
+     * {@link TemplateCacheStatistics#setMaxTrackedTemplateNames(int)} was set.
+     */
+    String[] getTopRequestedTemplates();
+
+    /**
+     * The template names on which the most time was spent with loading, if
+     * {@link TemplateCacheStatistics#setMaxTrackedTemplateNames(int)} was set.
+     */
+    String[] getTopLoadTimeTemplates();
+
+    void reset();
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+/**
+ * Receives notifications from an {@link ObservableTemplateLoader} about changed template sources.
+ * 
+ * @since 2.3.29
+ */
+public interface TemplateSourceChangeListener {
+
+    /**
+     * Called when a template source was created, deleted or modified.
+     * 
+     * @param templateSourceName
+     *            The name of the changed template source, in the format used by
+     *            {@link TemplateLoader#findTemplateSource(String)}. Note that since a template source can be found
+     *            through multiple template names (like with localized lookup), this is not necessarily the name that
+     *            was used for getting the template. It's {@code null} if it's not known what has changed, so all
+     *            template sources should be considered to be potentially changed.
+     */
+    void templateSourceChanged(String templateSourceName);
+    
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import freemarker.template.Template;
+
+/**
+ * A thread-safe cache storage that's bounded by the total weight of the items, instead of by their count, where the
+ * weight of an item is by default its estimated heap usage in bytes. This makes sense for templates, as their sizes can
+ * differ by orders of magnitude, so with an item count limit it's hard to avoid both wasting heap and throwing out
+ * still needed templates. The weight of the templates is estimated with {@link Template#getEstimatedMemoryUsage()};
+ * to weigh items differently, override {@link #weigh(Object, Object)}.
+ *
+ * <p>When adding an item would exceed the weight limit, items are evicted until it fits, chosen with the "CLOCK"
+ * algorithm (an approximation of least-recently-used eviction). An item that's alone heavier than the limit isn't
+ * stored at all. Like {@link ConcurrentLfuCacheStorage}, reading ({@link #get(Object)}) doesn't lock; only
+ * {@link #put(Object, Object)}, {@link #remove(Object)} and {@link #clear()} do.
+ *
+ * <p>This can be also created with the {@code cache_storage} setting (see
+ * {@link freemarker.core.Configurable#setSetting(String, String)}), like
+ * {@code "WeightedCacheStorage(100000000)"}.
+ *
+ * @see freemarker.template.Configuration#setCacheStorage(CacheStorage)
+ *
+ * @since 2.3.29
+ */
+public class WeightedCacheStorage implements ConcurrentCacheStorage, CacheStorageWithGetSize {
+
+    private final long maxWeight;
+
+    private final ConcurrentHashMap<Object, Entry> map = new ConcurrentHashMap<Object, Entry>();
+
+    /** Guards all the fields below, and all changes in the map. */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ClockRing<Entry> ring = new ClockRing<Entry>();
+    private long weight;
+
+    /**
+     * @param maxWeight
+     *            The maximum of the total weight of the items; with the default {@link #weigh(Object, Object)}, the
+     *            maximum estimated heap usage in bytes.
+     */
+    public WeightedCacheStorage(long maxWeight) {
+        if (maxWeight < 0) throw new IllegalArgumentException("maxWeight < 0");
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Always returns {@code true}.
+     */
+    public boolean isConcurrent() {
+        return true;
+    }
+
+    public Object get(Object key) {
+        Entry entry = map.get(key);
+        if (entry == null) {
+            return null;
+        }
+        entry.markReferenced();
+        return entry.value;
+    }
+
+    public void put(Object key, Object value) {
+        // Weighing can take long for a template that wasn't weighed yet, so we do it outside the lock.
+        long itemWeight = weigh(key, value);
+        if (itemWeight < 0) {
+            throw new IllegalStateException("weigh(Object, Object) has returned a negative value: " + itemWeight);
+        }
+
+        lock.lock();
+        try {
+            Entry oldEntry = map.remove(key);
+            if (oldEntry != null) {
+                unlink(oldEntry);
+            }
+
+            if (itemWeight > maxWeight) {
+                return;
+            }
+            while (weight + itemWeight > maxWeight) {
+                Entry victim = ring.findEvictionVictim();
+                map.remove(victim.key);
+                unlink(victim);
+            }
+
+            Entry entry = new Entry(key, value, itemWeight);
+            ring.add(entry);
+            weight += itemWeight;
+            map.put(key, entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void remove(Object key) {
+        lock.lock();
+        try {
+            Entry entry = map.remove(key);
+            if (entry != null) {
+                unlink(entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            map.clear();
+            ring.clear();
+            weight = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the weight of an item. This is called by {@link #put(Object, Object)}, outside the lock of this storage,
+     * so it can be called concurrently. It must return the same value for the same item every time.
+     *
+     * <p>The default implementation returns the estimated heap usage of the item in bytes. When used by
+     * {@link TemplateCache}, that's mostly the estimated heap usage of the {@link Template} (see
+     * {@link Template#getEstimatedMemoryUsage()}). For any other kind of value it returns a small constant.
+     *
+     * @return Not negative.
+     */
+    protected long weigh(Object key, Object value) {
+        return TemplateCache.estimateMemoryUsage(key, value);
+    }
+
+    private void unlink(Entry entry) {
+        ring.remove(entry);
+        weight -= entry.weight;
+    }
+
+    /**
+     * Returns the configured upper limit of the total weight of the cache entries.
+     */
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * Returns the <em>current</em> total weight of the cache entries.
+     *
+     * @see #getMaxWeight()
+     */
+    public long getWeight() {
+        lock.lock();
+        try {
+            return weight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the current number of cache entries.
+     */
+    public int getSize() {
+        lock.lock();
+        try {
+            return ring.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Entry extends ClockRing.Node {
+        private final Object key;
+        private final Object value;
+        private final long weight;
+
+        Entry(Object key, Object value, long weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+}
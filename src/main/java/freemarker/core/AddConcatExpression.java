@@ -43,6 +43,8 @@ import freemarker.template.TemplateSequenceModel;
  */
 final class AddConcatExpression extends Expression {
 
+    private static final long serialVersionUID = 1L;
+
     private final Expression left;
     private final Expression right;
 
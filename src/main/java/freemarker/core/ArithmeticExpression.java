@@ -29,6 +29,8 @@ import freemarker.template.TemplateModel;
  */
 final class ArithmeticExpression extends Expression {
 
+    private static final long serialVersionUID = 1L;
+
     static final int TYPE_SUBSTRACTION = 0;
     static final int TYPE_MULTIPLICATION = 1;
     static final int TYPE_DIVISION = 2;
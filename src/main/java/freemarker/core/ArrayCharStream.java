@@ -0,0 +1,348 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * The {@link CharStream} used by {@link FMParserTokenManager}, in place of the {@code SimpleCharStream} that JavaCC
+ * would generate. It holds the whole template source in a single {@code char} array, so reading a character is just an
+ * array access, and backing up is just decreasing the position. Unlike {@code SimpleCharStream}, it doesn't update the
+ * line and column number for each character read; the positions are only calculated when the token manager asks for
+ * them (i.e., once per token), from a table of line start offsets. The line and column numbers are the same as
+ * {@code SimpleCharStream} would give, including how tab characters are counted (see {@link #setTabSize(int)}).
+ */
+final class ArrayCharStream implements CharStream {
+
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private char[] buffer;
+    private int length;
+    /** If not {@code null}, the source wasn't read yet, and will be read from this on the first {@link #readChar()}. */
+    private Reader reader;
+    private final int startLine;
+    private final int startColumn;
+    private int tabSize = 1;
+
+    /** The index of the last read character; -1 if nothing was read yet. */
+    private int pos = -1;
+    private int tokenBegin;
+
+    /** The index of the first character of each line; filled on demand. */
+    private int[] lineStarts;
+    private int lineCount;
+    private boolean hasTabs;
+    /** The result of the last line lookup, as the next lookup is likely to be on the same line. */
+    private int lastLineIndex;
+
+    /**
+     * @param source
+     *            The source code; it won't be copied, and must not be modified while this object is used.
+     * @param sourceLength
+     *            The number of characters to use from the start of {@code source}.
+     * @param startLine
+     *            The line number of the first character, 1-based.
+     * @param startColumn
+     *            The column number of the first character, 1-based.
+     */
+    ArrayCharStream(char[] source, int sourceLength, int startLine, int startColumn) {
+        this.buffer = source;
+        this.length = sourceLength;
+        this.startLine = startLine;
+        this.startColumn = startColumn;
+    }
+
+    ArrayCharStream(String source, int startLine, int startColumn) {
+        this(source.toCharArray(), source.length(), startLine, startColumn);
+    }
+
+    /**
+     * Reads the source from a {@link Reader}. The reading happens on the first {@link #readChar()} call, which
+     * is needed for the legacy {@link FMParser} constructors, which can't throw {@link IOException}. Note that the
+     * token manager treats an {@link IOException} as the end of the file, so the caller has to remember reading
+     * errors in the {@link Reader}, if it cares.
+     */
+    ArrayCharStream(Reader reader, int startLine, int startColumn) {
+        this(new char[0], 0, startLine, startColumn);
+        this.reader = reader;
+    }
+
+    private void readSource() throws IOException {
+        Reader reader = this.reader;
+        this.reader = null;
+
+        char[] buffer = new char[READ_BUFFER_SIZE];
+        int length = 0;
+        int charsRead;
+        while ((charsRead = reader.read(buffer, length, buffer.length - length)) != -1) {
+            length += charsRead;
+            if (length == buffer.length) {
+                char[] newBuffer = new char[buffer.length * 2];
+                System.arraycopy(buffer, 0, newBuffer, 0, length);
+                buffer = newBuffer;
+            }
+        }
+        this.buffer = buffer;
+        this.length = length;
+    }
+
+    public char readChar() throws IOException {
+        if (++pos < length) {
+            return buffer[pos];
+        }
+        if (reader != null) {
+            readSource();
+            if (pos < length) {
+                return buffer[pos];
+            }
+        }
+        // Same as what SimpleCharStream does on EOF:
+        pos--;
+        if (tokenBegin == -1) {
+            tokenBegin = pos;
+        }
+        throw new IOException("End of the source reached");
+    }
+
+    public char BeginToken() throws IOException {
+        tokenBegin = -1;
+        char c = readChar();
+        tokenBegin = pos;
+        return c;
+    }
+
+    /**
+     * Reads the characters after the last read one for as long as they can be part of a {@code STATIC_TEXT_WS} token.
+     * 
+     * @return The number of characters read.
+     */
+    int readStaticTextWsChars() {
+        int startPos = pos;
+        while (pos + 1 < length && isStaticTextWsChar(buffer[pos + 1])) {
+            pos++;
+        }
+        return pos - startPos;
+    }
+
+    /**
+     * Reads the characters after the last read one for as long as they can be part of a {@code STATIC_TEXT_NON_WS}
+     * token.
+     * 
+     * @return The number of characters read.
+     */
+    int readStaticTextNonWsChars() {
+        int startPos = pos;
+        while (pos + 1 < length && isStaticTextNonWsChar(buffer[pos + 1])) {
+            pos++;
+        }
+        return pos - startPos;
+    }
+
+    /**
+     * Tells if the character can be part of a {@code STATIC_TEXT_WS} token; must be in sync with the definition of
+     * that token in {@code FTL.jj}.
+     */
+    static boolean isStaticTextWsChar(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    /**
+     * Tells if the character can be part of a {@code STATIC_TEXT_NON_WS} token; must be in sync with the definition of
+     * that token in {@code FTL.jj}.
+     */
+    static boolean isStaticTextNonWsChar(int c) {
+        switch (c) {
+        case '$':
+        case '<':
+        case '#':
+        case '[':
+        case '{':
+        case '\n':
+        case '\r':
+        case '\t':
+        case ' ':
+            return false;
+        default:
+            return true;
+        }
+    }
+
+    public void backup(int amount) {
+        pos -= amount;
+    }
+
+    public String GetImage() {
+        return new String(buffer, tokenBegin, pos - tokenBegin + 1);
+    }
+
+    public char[] GetSuffix(int len) {
+        char[] suffix = new char[len];
+        System.arraycopy(buffer, pos - len + 1, suffix, 0, len);
+        return suffix;
+    }
+
+    public void Done() {
+        // Nothing to release; the buffer is possibly owned by the caller.
+    }
+
+    public int getBeginLine() {
+        return getLine(tokenBegin);
+    }
+
+    public int getBeginColumn() {
+        return getColumn(tokenBegin);
+    }
+
+    public int getEndLine() {
+        return getLine(pos);
+    }
+
+    public int getEndColumn() {
+        return getColumn(pos);
+    }
+
+    /**
+     * @deprecated Use {@link #getEndLine()}
+     */
+    @Deprecated
+    public int getLine() {
+        return getEndLine();
+    }
+
+    /**
+     * @deprecated Use {@link #getEndColumn()}
+     */
+    @Deprecated
+    public int getColumn() {
+        return getEndColumn();
+    }
+
+    /**
+     * Sets how many columns a tab character counts as; the tab character moves the column to the next tab stop, like
+     * in text editors. Defaults to 1, like in {@code SimpleCharStream}.
+     */
+    public void setTabSize(int tabSize) {
+        this.tabSize = tabSize;
+    }
+
+    public int getTabSize() {
+        return tabSize;
+    }
+
+    /**
+     * Always returns {@code true}.
+     */
+    public boolean getTrackLineColumn() {
+        return true;
+    }
+
+    /**
+     * Not supported, as the line and column numbers are calculated on demand anyway.
+     */
+    public void setTrackLineColumn(boolean trackLineColumn) {
+        if (!trackLineColumn) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private int getLine(int index) {
+        if (index < 0) {
+            return startLine;
+        }
+        return startLine + getLineIndex(index);
+    }
+
+    private int getColumn(int index) {
+        if (index < 0) {
+            return startColumn - 1;
+        }
+        int lineIndex = getLineIndex(index);
+        int lineStart = lineStarts[lineIndex];
+        int column = lineIndex == 0 ? startColumn - 1 : 0;
+        if (!hasTabs) {
+            return column + index - lineStart + 1;
+        }
+        for (int i = lineStart; i <= index; i++) {
+            if (buffer[i] == '\t') {
+                column += tabSize - column % tabSize;
+            } else {
+                column++;
+            }
+        }
+        return column;
+    }
+
+    /**
+     * Returns the 0-based index of the line that contains the character at the given index. The line break
+     * characters belong to the line that they terminate. Like in {@code SimpleCharStream}, a line break is
+     * {@code \n}, {@code \r\n}, or a {@code \r} that's not followed by {@code \n}.
+     */
+    private int getLineIndex(int index) {
+        if (lineStarts == null) {
+            buildLineStarts();
+        }
+
+        int lineIndex = lastLineIndex;
+        if (index >= lineStarts[lineIndex] && (lineIndex + 1 == lineCount || index < lineStarts[lineIndex + 1])) {
+            return lineIndex;
+        }
+
+        int low = 0;
+        int high = lineCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (lineStarts[mid] <= index) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        lastLineIndex = low;
+        return low;
+    }
+
+    private void buildLineStarts() {
+        char[] buffer = this.buffer;
+        int length = this.length;
+        int[] lineStarts = new int[Math.max(16, length / 32)];
+        int lineCount = 1;
+        boolean hasTabs = false;
+        for (int i = 0; i < length; i++) {
+            char c = buffer[i];
+            if (c <= '\r') {
+                if (c == '\n' || c == '\r' && (i + 1 == length || buffer[i + 1] != '\n')) {
+                    if (lineCount == lineStarts.length) {
+                        int[] newLineStarts = new int[lineCount * 2];
+                        System.arraycopy(lineStarts, 0, newLineStarts, 0, lineCount);
+                        lineStarts = newLineStarts;
+                    }
+                    lineStarts[lineCount++] = i + 1;
+                } else if (c == '\t') {
+                    hasTabs = true;
+                }
+            }
+        }
+        this.lineStarts = lineStarts;
+        this.lineCount = lineCount;
+        this.hasTabs = hasTabs;
+    }
+
+}
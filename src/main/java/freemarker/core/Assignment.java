@@ -31,6 +31,8 @@ import freemarker.template.TemplateScalarModel;
  */
 final class Assignment extends TemplateElement {
 
+    private static final long serialVersionUID = 1L;
+
     // These must not clash with ArithmeticExpression.TYPE_... constants: 
     private static final int OPERATOR_TYPE_EQUALS = 0x10000;
     private static final int OPERATOR_TYPE_PLUS_EQUALS = 0x10001;
@@ -94,6 +96,14 @@ final class Assignment extends TemplateElement {
         
         this.valueExp = valueExp;
     }
+
+    String getVariableName() {
+        return variableName;
+    }
+
+    int getScope() {
+        return scope;
+    }
     
     void setNamespaceExp(Expression namespaceExp) {
         if (scope != NAMESPACE && namespaceExp != null) throw new BugException();
@@ -30,6 +30,8 @@ import freemarker.template.TemplateException;
  */
 final class AssignmentInstruction extends TemplateElement {
 
+    private static final long serialVersionUID = 1L;
+
     private int scope;
     private Expression namespaceExp;
 
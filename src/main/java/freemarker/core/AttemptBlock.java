@@ -28,6 +28,8 @@ import freemarker.template.TemplateException;
  */
 final class AttemptBlock extends TemplateElement {
     
+    private static final long serialVersionUID = 1L;
+
     private TemplateElement attemptedSection;
     private RecoveryBlock recoverySection;
     
@@ -28,6 +28,8 @@ import freemarker.template.TemplateException;
  */
 final class AutoEscBlock extends TemplateElement {
     
+    private static final long serialVersionUID = 1L;
+
     AutoEscBlock(TemplateElements children) { 
         setChildren(children);
     }
@@ -20,7 +20,6 @@
 package freemarker.core;
 
 import java.io.IOException;
-import java.io.StringWriter;
 
 import freemarker.template.SimpleScalar;
 import freemarker.template.TemplateException;
@@ -32,6 +31,8 @@ import freemarker.template.TemplateModelException;
  */
 final class BlockAssignment extends TemplateElement {
 
+    private static final long serialVersionUID = 1L;
+
     private final String varName;
     private final Expression namespaceExp;
     private final int scope;
@@ -45,15 +46,27 @@ final class BlockAssignment extends TemplateElement {
         this.markupOutputFormat = markupOutputFormat;
     }
 
+    String getVariableName() {
+        return varName;
+    }
+
+    int getScope() {
+        return scope;
+    }
+
     @Override
     TemplateElement[] accept(Environment env) throws TemplateException, IOException {
         TemplateElement[] children = getChildBuffer();
         
         TemplateModel value;
         if (children != null) {
-            StringWriter out = new StringWriter();
-            env.visit(children, out);
-            value = capturedStringToModel(out.toString());
+            _SegmentedWriter out = new _SegmentedWriter(env);
+            try {
+                env.visit(children, out);
+                value = capturedStringToModel(out.toString());
+            } finally {
+                out.release();
+            }
         } else {
             value = capturedStringToModel("");
         }
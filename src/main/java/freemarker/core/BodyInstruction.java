@@ -33,6 +33,8 @@ import freemarker.template.TemplateModelException;
  */
 final class BodyInstruction extends TemplateElement {
     
+    private static final long serialVersionUID = 1L;
+
     
     private List bodyParameters;
     
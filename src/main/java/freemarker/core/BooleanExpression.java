@@ -25,6 +25,8 @@ import freemarker.template.TemplateModel;
 
 abstract class BooleanExpression extends Expression {
 
+    private static final long serialVersionUID = 1L;
+
     @Override
     TemplateModel _eval(Environment env) throws TemplateException {
         return evalToBoolean(env) ? TemplateBooleanModel.TRUE : TemplateBooleanModel.FALSE;
@@ -24,6 +24,8 @@ import freemarker.template.TemplateModel;
 
 final class BooleanLiteral extends Expression {
 
+    private static final long serialVersionUID = 1L;
+
     private final boolean val;
 
     public BooleanLiteral(boolean val) {
@@ -24,6 +24,8 @@ package freemarker.core;
  */
 final class BreakInstruction extends TemplateElement {
 
+    private static final long serialVersionUID = 1L;
+
     @Override
     TemplateElement[] accept(Environment env) {
         throw BreakOrContinueException.BREAK_INSTANCE;
@@ -79,6 +79,8 @@ import freemarker.template.utility.StringUtil;
  */
 abstract class BuiltIn extends Expression implements Cloneable {
     
+    private static final long serialVersionUID = 1L;
+
     protected Expression target;
     protected String key;
 
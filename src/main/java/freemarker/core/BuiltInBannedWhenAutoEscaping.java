@@ -24,4 +24,6 @@ package freemarker.core;
  */
 abstract class BuiltInBannedWhenAutoEscaping extends SpecialBuiltIn {
     
+    private static final long serialVersionUID = 1L;
+
 }
\ No newline at end of file
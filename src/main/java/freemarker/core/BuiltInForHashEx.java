@@ -26,6 +26,8 @@ import freemarker.template.TemplateModelException;
 
 abstract class BuiltInForHashEx extends BuiltIn {
 
+    private static final long serialVersionUID = 1L;
+
     @Override
     TemplateModel _eval(Environment env) throws TemplateException {
         TemplateModel model = target.eval(env);
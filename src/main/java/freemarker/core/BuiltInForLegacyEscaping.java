@@ -27,6 +27,8 @@ import freemarker.template.TemplateModel;
  */
 abstract class BuiltInForLegacyEscaping extends BuiltInBannedWhenAutoEscaping {
     
+    private static final long serialVersionUID = 1L;
+
     @Override
     TemplateModel _eval(Environment env)
     throws TemplateException {
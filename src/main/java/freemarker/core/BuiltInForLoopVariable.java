@@ -25,6 +25,8 @@ import freemarker.template.TemplateModel;
 
 abstract class BuiltInForLoopVariable extends SpecialBuiltIn {
     
+    private static final long serialVersionUID = 1L;
+
     private String loopVarName;
     
     void bindToLoopVariable(String loopVarName) {
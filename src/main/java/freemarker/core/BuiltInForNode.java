@@ -25,6 +25,8 @@ import freemarker.template.TemplateModelException;
 import freemarker.template.TemplateNodeModel;
 
 abstract class BuiltInForNode extends BuiltIn {
+    private static final long serialVersionUID = 1L;
+
     @Override
     TemplateModel _eval(Environment env)
             throws TemplateException {
@@ -24,6 +24,8 @@ import freemarker.template.TemplateModel;
 import freemarker.template.TemplateModelException;
 
 abstract class BuiltInForNumber extends BuiltIn {
+    private static final long serialVersionUID = 1L;
+
     @Override
     TemplateModel _eval(Environment env)
             throws TemplateException {
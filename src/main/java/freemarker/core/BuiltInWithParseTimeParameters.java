@@ -23,6 +23,8 @@ import java.util.List;
 
 abstract class BuiltInWithParseTimeParameters extends SpecialBuiltIn {
 
+    private static final long serialVersionUID = 1L;
+
     abstract void bindToParameters(List/*<Expression>*/ parameters, Token openParen, Token closeParen)
             throws ParseException;
 
@@ -43,6 +43,8 @@ class BuiltInsForDates {
     
     static class dateType_if_unknownBI extends BuiltIn {
         
+        private static final long serialVersionUID = 1L;
+
         private final int dateType;
 
         dateType_if_unknownBI(int dateType) {
@@ -77,6 +79,8 @@ class BuiltInsForDates {
      */
     static class iso_BI extends AbstractISOBI {
         
+        private static final long serialVersionUID = 1L;
+
         class Result implements TemplateMethodModelEx {
             private final Date date;
             private final int dateType;
@@ -147,6 +151,8 @@ class BuiltInsForDates {
      */
     static class iso_utc_or_local_BI extends AbstractISOBI {
         
+        private static final long serialVersionUID = 1L;
+
         private final boolean useUTC;
         
         iso_utc_or_local_BI(Boolean showOffset, int accuracy, boolean useUTC) {
@@ -179,6 +185,8 @@ class BuiltInsForDates {
     private BuiltInsForDates() { }
 
     static abstract class AbstractISOBI extends BuiltInForDate {
+        private static final long serialVersionUID = 1L;
+
         protected final Boolean showOffset;
         protected final int accuracy;
     
@@ -32,6 +32,8 @@ class BuiltInsForHashes {
 
     static class keysBI extends BuiltInForHashEx {
 
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(TemplateHashModelEx hashExModel, Environment env)
                 throws TemplateModelException, InvalidReferenceException {
@@ -43,6 +45,8 @@ class BuiltInsForHashes {
     }
     
     static class valuesBI extends BuiltInForHashEx {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(TemplateHashModelEx hashExModel, Environment env)
                 throws TemplateModelException, InvalidReferenceException {
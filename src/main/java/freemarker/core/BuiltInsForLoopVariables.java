@@ -34,6 +34,8 @@ class BuiltInsForLoopVariables {
     
     static class indexBI extends BuiltInForLoopVariable {
 
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(IterationContext iterCtx, Environment env) throws TemplateException {
             return new SimpleNumber(iterCtx.getIndex());
@@ -43,6 +45,8 @@ class BuiltInsForLoopVariables {
     
     static class counterBI extends BuiltInForLoopVariable {
 
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(IterationContext iterCtx, Environment env) throws TemplateException {
             return new SimpleNumber(iterCtx.getIndex() + 1);
@@ -52,6 +56,8 @@ class BuiltInsForLoopVariables {
 
     static abstract class BooleanBuiltInForLoopVariable extends BuiltInForLoopVariable {
 
+        private static final long serialVersionUID = 1L;
+
         @Override
         final TemplateModel calculateResult(IterationContext iterCtx, Environment env) throws TemplateException {
             return calculateBooleanResult(iterCtx, env) ? TemplateBooleanModel.TRUE : TemplateBooleanModel.FALSE;
@@ -63,6 +69,8 @@ class BuiltInsForLoopVariables {
     
     static class has_nextBI extends BooleanBuiltInForLoopVariable {
 
+        private static final long serialVersionUID = 1L;
+
         @Override
         protected boolean calculateBooleanResult(IterationContext iterCtx, Environment env) {
             return iterCtx.hasNext();
@@ -72,6 +80,8 @@ class BuiltInsForLoopVariables {
 
     static class is_lastBI extends BooleanBuiltInForLoopVariable {
 
+        private static final long serialVersionUID = 1L;
+
         @Override
         protected boolean calculateBooleanResult(IterationContext iterCtx, Environment env) {
             return !iterCtx.hasNext();
@@ -81,6 +91,8 @@ class BuiltInsForLoopVariables {
 
     static class is_firstBI extends BooleanBuiltInForLoopVariable {
 
+        private static final long serialVersionUID = 1L;
+
         @Override
         protected boolean calculateBooleanResult(IterationContext iterCtx, Environment env) {
             return iterCtx.getIndex() == 0;
@@ -90,6 +102,8 @@ class BuiltInsForLoopVariables {
 
     static class is_odd_itemBI extends BooleanBuiltInForLoopVariable {
 
+        private static final long serialVersionUID = 1L;
+
         @Override
         protected boolean calculateBooleanResult(IterationContext iterCtx, Environment env) {
             return iterCtx.getIndex() % 2 == 0;
@@ -99,6 +113,8 @@ class BuiltInsForLoopVariables {
 
     static class is_even_itemBI extends BooleanBuiltInForLoopVariable {
 
+        private static final long serialVersionUID = 1L;
+
         @Override
         protected boolean calculateBooleanResult(IterationContext iterCtx, Environment env) {
             return iterCtx.getIndex() % 2 != 0;
@@ -108,6 +124,8 @@ class BuiltInsForLoopVariables {
     
     static class item_parityBI extends BuiltInForLoopVariable {
         
+        private static final long serialVersionUID = 1L;
+
         private static final SimpleScalar ODD = new SimpleScalar("odd");
         private static final SimpleScalar EVEN = new SimpleScalar("even");
 
@@ -120,6 +138,8 @@ class BuiltInsForLoopVariables {
 
     static class item_parity_capBI extends BuiltInForLoopVariable {
         
+        private static final long serialVersionUID = 1L;
+
         private static final SimpleScalar ODD = new SimpleScalar("Odd");
         private static final SimpleScalar EVEN = new SimpleScalar("Even");
 
@@ -132,6 +152,8 @@ class BuiltInsForLoopVariables {
 
     static class item_cycleBI extends BuiltInForLoopVariable {
 
+        private static final long serialVersionUID = 1L;
+
         private class BIMethod implements TemplateMethodModelEx {
             
             private final IterationContext iterCtx;
@@ -30,6 +30,8 @@ class BuiltInsForMarkupOutputs {
     
     static class markup_stringBI extends BuiltInForMarkupOutput {
 
+        private static final long serialVersionUID = 1L;
+
         @Override
         protected TemplateModel calculateResult(TemplateMarkupOutputModel model) throws TemplateModelException {
             return new SimpleScalar(model.getOutputFormat().getMarkupString(model));
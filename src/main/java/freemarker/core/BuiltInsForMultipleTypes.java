@@ -55,8 +55,12 @@ class BuiltInsForMultipleTypes {
 
     static class cBI extends AbstractCBI implements ICIChainMember {
         
+        private static final long serialVersionUID = 1L;
+
         static class BIBeforeICE2d3d21 extends AbstractCBI {
 
+            private static final long serialVersionUID = 1L;
+
             @Override
             protected TemplateModel formatNumber(Environment env, TemplateModel model) throws TemplateModelException {
                 Number num = EvalUtil.modelToNumber((TemplateNumberModel) model, target);
@@ -134,6 +138,8 @@ class BuiltInsForMultipleTypes {
     }
 
     static class dateBI extends BuiltIn {
+        private static final long serialVersionUID = 1L;
+
         private class DateParser
         implements
             TemplateDateModel,
@@ -248,6 +254,8 @@ class BuiltInsForMultipleTypes {
     }
 
     static class apiBI extends BuiltIn {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel _eval(Environment env) throws TemplateException {
             if (!env.isAPIBuiltinEnabled()) {
@@ -266,6 +274,8 @@ class BuiltInsForMultipleTypes {
     }
 
     static class has_apiBI extends BuiltIn {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel _eval(Environment env) throws TemplateException {
             final TemplateModel tm = target.eval(env);
@@ -275,6 +285,8 @@ class BuiltInsForMultipleTypes {
     }
     
     static class is_booleanBI extends BuiltIn {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel _eval(Environment env) throws TemplateException {
             TemplateModel tm = target.eval(env);
@@ -285,6 +297,8 @@ class BuiltInsForMultipleTypes {
     }
 
     static class is_collectionBI extends BuiltIn {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel _eval(Environment env) throws TemplateException {
             TemplateModel tm = target.eval(env);
@@ -294,6 +308,8 @@ class BuiltInsForMultipleTypes {
     }
 
     static class is_collection_exBI extends BuiltIn {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel _eval(Environment env) throws TemplateException {
             TemplateModel tm = target.eval(env);
@@ -303,6 +319,8 @@ class BuiltInsForMultipleTypes {
     }
 
     static class is_dateLikeBI extends BuiltIn {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel _eval(Environment env) throws TemplateException {
             TemplateModel tm = target.eval(env);
@@ -314,6 +332,8 @@ class BuiltInsForMultipleTypes {
 
     static class is_dateOfTypeBI extends BuiltIn {
         
+        private static final long serialVersionUID = 1L;
+
         private final int dateType;
         
         is_dateOfTypeBI(int dateType) {
@@ -330,6 +350,8 @@ class BuiltInsForMultipleTypes {
     }
 
     static class is_directiveBI extends BuiltIn {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel _eval(Environment env) throws TemplateException {
             TemplateModel tm = target.eval(env);
@@ -341,6 +363,8 @@ class BuiltInsForMultipleTypes {
     }
 
     static class is_enumerableBI extends BuiltIn {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel _eval(Environment env) throws TemplateException {
             TemplateModel tm = target.eval(env);
@@ -354,6 +378,8 @@ class BuiltInsForMultipleTypes {
     }
 
     static class is_hash_exBI extends BuiltIn {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel _eval(Environment env) throws TemplateException {
             TemplateModel tm = target.eval(env);
@@ -363,6 +389,8 @@ class BuiltInsForMultipleTypes {
     }
 
     static class is_hashBI extends BuiltIn {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel _eval(Environment env) throws TemplateException {
             TemplateModel tm = target.eval(env);
@@ -372,6 +400,8 @@ class BuiltInsForMultipleTypes {
     }
 
     static class is_indexableBI extends BuiltIn {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel _eval(Environment env) throws TemplateException {
             TemplateModel tm = target.eval(env);
@@ -381,6 +411,8 @@ class BuiltInsForMultipleTypes {
     }
 
     static class is_macroBI extends BuiltIn {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel _eval(Environment env) throws TemplateException {
             TemplateModel tm = target.eval(env);
@@ -392,6 +424,8 @@ class BuiltInsForMultipleTypes {
     }
 
     static class is_markup_outputBI extends BuiltIn {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel _eval(Environment env) throws TemplateException {
             TemplateModel tm = target.eval(env);
@@ -402,6 +436,8 @@ class BuiltInsForMultipleTypes {
     }
     
     static class is_methodBI extends BuiltIn {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel _eval(Environment env) throws TemplateException {
             TemplateModel tm = target.eval(env);
@@ -412,6 +448,8 @@ class BuiltInsForMultipleTypes {
     }
 
     static class is_nodeBI extends BuiltIn {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel _eval(Environment env) throws TemplateException {
             TemplateModel tm = target.eval(env);
@@ -422,6 +460,8 @@ class BuiltInsForMultipleTypes {
     }
 
     static class is_numberBI extends BuiltIn {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel _eval(Environment env) throws TemplateException {
             TemplateModel tm = target.eval(env);
@@ -432,6 +472,8 @@ class BuiltInsForMultipleTypes {
     }
 
     static class is_sequenceBI extends BuiltIn {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel _eval(Environment env) throws TemplateException {
             TemplateModel tm = target.eval(env);
@@ -446,6 +488,8 @@ class BuiltInsForMultipleTypes {
     }
 
     static class is_stringBI extends BuiltIn {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel _eval(Environment env) throws TemplateException {
             TemplateModel tm = target.eval(env);
@@ -456,6 +500,8 @@ class BuiltInsForMultipleTypes {
     }
 
     static class is_transformBI extends BuiltIn {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel _eval(Environment env) throws TemplateException {
             TemplateModel tm = target.eval(env);
@@ -466,6 +512,8 @@ class BuiltInsForMultipleTypes {
     }
 
     static class namespaceBI extends BuiltIn {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel _eval(Environment env) throws TemplateException {
             TemplateModel tm = target.eval(env);
@@ -481,6 +529,8 @@ class BuiltInsForMultipleTypes {
     }
 
     static class sizeBI extends BuiltIn {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel _eval(Environment env) throws TemplateException {
             TemplateModel model = target.eval(env);
@@ -509,6 +559,8 @@ class BuiltInsForMultipleTypes {
     
     static class stringBI extends BuiltIn {
         
+        private static final long serialVersionUID = 1L;
+
         private class BooleanFormatter
         implements 
             TemplateScalarModel, 
@@ -721,6 +773,8 @@ class BuiltInsForMultipleTypes {
 
     static abstract class AbstractCBI extends BuiltIn {
         
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel _eval(Environment env) throws TemplateException {
             TemplateModel model = target.eval(env);
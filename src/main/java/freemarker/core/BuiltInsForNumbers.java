@@ -42,6 +42,8 @@ class BuiltInsForNumbers {
 
     private static abstract class abcBI extends BuiltInForNumber {
 
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(Number num, TemplateModel model) throws TemplateModelException {
             final int n;
@@ -65,6 +67,8 @@ class BuiltInsForNumbers {
 
     static class lower_abcBI extends abcBI {
 
+        private static final long serialVersionUID = 1L;
+
         @Override
         protected String toABC(int n) {
             return StringUtil.toLowerABC(n);
@@ -74,6 +78,8 @@ class BuiltInsForNumbers {
 
     static class upper_abcBI extends abcBI {
 
+        private static final long serialVersionUID = 1L;
+
         @Override
         protected String toABC(int n) {
             return StringUtil.toUpperABC(n);
@@ -82,6 +88,8 @@ class BuiltInsForNumbers {
     }
     
     static class absBI extends BuiltInForNumber {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(Number num, TemplateModel model) throws TemplateModelException {
             if (num instanceof Integer) {
@@ -147,6 +155,8 @@ class BuiltInsForNumbers {
     }
     
     static class byteBI extends BuiltInForNumber {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(Number num, TemplateModel model) {
             if (num instanceof Byte) {
@@ -157,6 +167,8 @@ class BuiltInsForNumbers {
     }
 
     static class ceilingBI extends BuiltInForNumber {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(Number num, TemplateModel model) {
             return new SimpleNumber(new BigDecimal(num.doubleValue()).divide(BIG_DECIMAL_ONE, 0, BigDecimal.ROUND_CEILING));
@@ -164,6 +176,8 @@ class BuiltInsForNumbers {
     }
 
     static class doubleBI extends BuiltInForNumber {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(Number num, TemplateModel model) {
             if (num instanceof Double) {
@@ -174,6 +188,8 @@ class BuiltInsForNumbers {
     }
 
     static class floatBI extends BuiltInForNumber {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(Number num, TemplateModel model) {
             if (num instanceof Float) {
@@ -184,6 +200,8 @@ class BuiltInsForNumbers {
     }
 
     static class floorBI extends BuiltInForNumber {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(Number num, TemplateModel model) {
             return new SimpleNumber(new BigDecimal(num.doubleValue()).divide(BIG_DECIMAL_ONE, 0, BigDecimal.ROUND_FLOOR));
@@ -191,6 +209,8 @@ class BuiltInsForNumbers {
     }
 
     static class intBI extends BuiltInForNumber {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(Number num, TemplateModel model) {
             if (num instanceof Integer) {
@@ -201,6 +221,8 @@ class BuiltInsForNumbers {
     }
 
     static class is_infiniteBI extends BuiltInForNumber {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(Number num, TemplateModel model) throws TemplateModelException {
             return NumberUtil.isInfinite(num) ? TemplateBooleanModel.TRUE : TemplateBooleanModel.FALSE;
@@ -209,6 +231,8 @@ class BuiltInsForNumbers {
 
 
     static class is_nanBI extends BuiltInForNumber {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(Number num, TemplateModel model) throws TemplateModelException {
             return NumberUtil.isNaN(num) ? TemplateBooleanModel.TRUE : TemplateBooleanModel.FALSE;
@@ -217,6 +241,8 @@ class BuiltInsForNumbers {
 
     // Does both someNumber?long and someDate?long, thus it doesn't extend NumberBuiltIn
     static class longBI extends BuiltIn {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel _eval(Environment env)
                 throws TemplateException {
@@ -237,6 +263,8 @@ class BuiltInsForNumbers {
 
     static class number_to_dateBI extends BuiltInForNumber {
         
+        private static final long serialVersionUID = 1L;
+
         private final int dateType;
         
         number_to_dateBI(int dateType) {
@@ -251,6 +279,8 @@ class BuiltInsForNumbers {
     }
 
     static class roundBI extends BuiltInForNumber {
+        private static final long serialVersionUID = 1L;
+
         private static final BigDecimal half = new BigDecimal("0.5");
         @Override
         TemplateModel calculateResult(Number num, TemplateModel model) {
@@ -259,6 +289,8 @@ class BuiltInsForNumbers {
     }
     
     static class shortBI extends BuiltInForNumber {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(Number num, TemplateModel model) {
             if (num instanceof Short) {
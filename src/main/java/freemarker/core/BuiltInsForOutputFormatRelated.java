@@ -25,6 +25,8 @@ class BuiltInsForOutputFormatRelated {
 
     static class no_escBI extends AbstractConverterBI {
 
+        private static final long serialVersionUID = 1L;
+
         @Override
         protected TemplateModel calculateResult(String lho, MarkupOutputFormat outputFormat, Environment env)
                 throws TemplateException {
@@ -35,6 +37,8 @@ class BuiltInsForOutputFormatRelated {
 
     static class escBI extends AbstractConverterBI {
 
+        private static final long serialVersionUID = 1L;
+
         @Override
         protected TemplateModel calculateResult(String lho, MarkupOutputFormat outputFormat, Environment env)
                 throws TemplateException {
@@ -45,6 +49,8 @@ class BuiltInsForOutputFormatRelated {
     
     static abstract class AbstractConverterBI extends MarkupOutputFormatBoundBuiltIn {
 
+        private static final long serialVersionUID = 1L;
+
         @Override
         protected TemplateModel calculateResult(Environment env) throws TemplateException {
             TemplateModel lhoTM = target.eval(env);
@@ -55,6 +55,8 @@ class BuiltInsForSequences {
     
     static class chunkBI extends BuiltInForSequence {
 
+        private static final long serialVersionUID = 1L;
+
         private class BIMethod implements TemplateMethodModelEx {
             
             private final TemplateSequenceModel tsm;
@@ -142,6 +144,8 @@ class BuiltInsForSequences {
     
     static class firstBI extends BuiltIn {
         
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel _eval(Environment env)
                 throws TemplateException {
@@ -178,6 +182,8 @@ class BuiltInsForSequences {
 
     static class joinBI extends BuiltIn {
         
+        private static final long serialVersionUID = 1L;
+
         private class BIMethodForCollection implements TemplateMethodModelEx {
             
             private final Environment env;
@@ -250,6 +256,8 @@ class BuiltInsForSequences {
     }
 
     static class lastBI extends BuiltInForSequence {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(TemplateSequenceModel tsm)
         throws TemplateModelException {
@@ -262,6 +270,8 @@ class BuiltInsForSequences {
     }
 
     static class reverseBI extends BuiltInForSequence {
+        private static final long serialVersionUID = 1L;
+
         private static class ReverseSequence implements TemplateSequenceModel {
             private final TemplateSequenceModel seq;
 
@@ -289,6 +299,8 @@ class BuiltInsForSequences {
     }
 
     static class seq_containsBI extends BuiltIn {
+        private static final long serialVersionUID = 1L;
+
         private class BIMethodForCollection implements TemplateMethodModelEx {
             private TemplateCollectionModel m_coll;
             private Environment m_env;
@@ -356,6 +368,8 @@ class BuiltInsForSequences {
     
     static class seq_index_ofBI extends BuiltIn {
         
+        private static final long serialVersionUID = 1L;
+
         private class BIMethod implements TemplateMethodModelEx {
             
             protected final TemplateSequenceModel m_seq;
@@ -515,6 +529,8 @@ class BuiltInsForSequences {
     }
 
     static class sort_byBI extends sortBI {
+        private static final long serialVersionUID = 1L;
+
         class BIMethod implements TemplateMethodModelEx {
             TemplateSequenceModel seq;
             
@@ -568,6 +584,8 @@ class BuiltInsForSequences {
 
     static class sortBI extends BuiltInForSequence {
         
+        private static final long serialVersionUID = 1L;
+
         private static class BooleanKVPComparator implements Comparator, Serializable {
 
             public int compare(Object arg0, Object arg1) {
@@ -833,6 +851,8 @@ class BuiltInsForSequences {
 
     static class sequenceBI extends BuiltIn {
 
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel _eval(Environment env) throws TemplateException {
             TemplateModel model = target.eval(env);
@@ -886,6 +906,8 @@ class BuiltInsForSequences {
  
     private static abstract class MinOrMaxBI extends BuiltIn {
         
+        private static final long serialVersionUID = 1L;
+
         private final int comparatorOperator;
         
         protected MinOrMaxBI(int comparatorOperator) {
@@ -938,6 +960,8 @@ class BuiltInsForSequences {
 
     static class maxBI extends MinOrMaxBI {
 
+        private static final long serialVersionUID = 1L;
+
         public maxBI() {
             super(EvalUtil.CMP_OP_GREATER_THAN);
         }
@@ -946,6 +970,8 @@ class BuiltInsForSequences {
 
     static class minBI extends MinOrMaxBI {
 
+        private static final long serialVersionUID = 1L;
+
         public minBI() {
             super(EvalUtil.CMP_OP_LESS_THAN);
         }
@@ -40,6 +40,8 @@ import freemarker.template.utility.StringUtil;
 class BuiltInsForStringsBasic {
 
     static class cap_firstBI extends BuiltInForString {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(String s, Environment env) {
             int i = 0;
@@ -57,6 +59,8 @@ class BuiltInsForStringsBasic {
     }
 
     static class capitalizeBI extends BuiltInForString {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(String s, Environment env) {
             return new SimpleScalar(StringUtil.capitalize(s));
@@ -64,6 +68,8 @@ class BuiltInsForStringsBasic {
     }
 
     static class chop_linebreakBI extends BuiltInForString {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(String s, Environment env) {
             return new SimpleScalar(StringUtil.chomp(s));
@@ -72,6 +78,8 @@ class BuiltInsForStringsBasic {
 
     static class containsBI extends BuiltIn {
         
+        private static final long serialVersionUID = 1L;
+
         private class BIMethod implements TemplateMethodModelEx {
             
             private final String s;
@@ -96,6 +104,8 @@ class BuiltInsForStringsBasic {
 
     static class ends_withBI extends BuiltInForString {
     
+        private static final long serialVersionUID = 1L;
+
         private class BIMethod implements TemplateMethodModelEx {
             private String s;
     
@@ -118,6 +128,8 @@ class BuiltInsForStringsBasic {
 
     static class ensure_ends_withBI extends BuiltInForString {
         
+        private static final long serialVersionUID = 1L;
+
         private class BIMethod implements TemplateMethodModelEx {
             private String s;
     
@@ -140,6 +152,8 @@ class BuiltInsForStringsBasic {
 
     static class ensure_starts_withBI extends BuiltInForString {
         
+        private static final long serialVersionUID = 1L;
+
         private class BIMethod implements TemplateMethodModelEx {
             private String s;
     
@@ -188,6 +202,8 @@ class BuiltInsForStringsBasic {
 
     static class index_ofBI extends BuiltIn {
         
+        private static final long serialVersionUID = 1L;
+
         private class BIMethod implements TemplateMethodModelEx {
             
             private final String s;
@@ -223,6 +239,8 @@ class BuiltInsForStringsBasic {
     }
     
     static class keep_afterBI extends BuiltInForString {
+        private static final long serialVersionUID = 1L;
+
         class KeepAfterMethod implements TemplateMethodModelEx {
             private String s;
 
@@ -268,6 +286,8 @@ class BuiltInsForStringsBasic {
     }
     
     static class keep_after_lastBI extends BuiltInForString {
+        private static final long serialVersionUID = 1L;
+
         class KeepAfterMethod implements TemplateMethodModelEx {
             private String s;
 
@@ -320,6 +340,8 @@ class BuiltInsForStringsBasic {
     }
     
     static class keep_beforeBI extends BuiltInForString {
+        private static final long serialVersionUID = 1L;
+
         class KeepUntilMethod implements TemplateMethodModelEx {
             private String s;
 
@@ -363,6 +385,8 @@ class BuiltInsForStringsBasic {
     
     // TODO
     static class keep_before_lastBI extends BuiltInForString {
+        private static final long serialVersionUID = 1L;
+
         class KeepUntilMethod implements TemplateMethodModelEx {
             private String s;
 
@@ -413,6 +437,8 @@ class BuiltInsForStringsBasic {
     
     static class lengthBI extends BuiltInForString {
     
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(String s, Environment env) throws TemplateException {
             return new SimpleNumber(s.length());
@@ -421,6 +447,8 @@ class BuiltInsForStringsBasic {
     }    
 
     static class lower_caseBI extends BuiltInForString {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(String s, Environment env) {
             return new SimpleScalar(s.toLowerCase(env.getLocale()));
@@ -429,6 +457,8 @@ class BuiltInsForStringsBasic {
 
     static class padBI extends BuiltInForString {
         
+        private static final long serialVersionUID = 1L;
+
         private class BIMethod implements TemplateMethodModelEx {
             
             private final String s;
@@ -479,6 +509,8 @@ class BuiltInsForStringsBasic {
     
     static class remove_beginningBI extends BuiltInForString {
         
+        private static final long serialVersionUID = 1L;
+
         private class BIMethod implements TemplateMethodModelEx {
             private String s;
     
@@ -501,6 +533,8 @@ class BuiltInsForStringsBasic {
 
     static class remove_endingBI extends BuiltInForString {
     
+        private static final long serialVersionUID = 1L;
+
         private class BIMethod implements TemplateMethodModelEx {
             private String s;
     
@@ -522,6 +556,8 @@ class BuiltInsForStringsBasic {
     }
     
     static class split_BI extends BuiltInForString {
+        private static final long serialVersionUID = 1L;
+
         class SplitMethod implements TemplateMethodModel {
             private String s;
 
@@ -556,6 +592,8 @@ class BuiltInsForStringsBasic {
     
     static class starts_withBI extends BuiltInForString {
     
+        private static final long serialVersionUID = 1L;
+
         private class BIMethod implements TemplateMethodModelEx {
             private String s;
     
@@ -578,6 +616,8 @@ class BuiltInsForStringsBasic {
 
     static class substringBI extends BuiltInForString {
         
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(final String s, final Environment env) throws TemplateException {
             return new TemplateMethodModelEx() {
@@ -636,6 +676,8 @@ class BuiltInsForStringsBasic {
     }
 
     static class trimBI extends BuiltInForString {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(String s, Environment env) {
             return new SimpleScalar(s.trim());
@@ -643,6 +685,8 @@ class BuiltInsForStringsBasic {
     }
 
     static class uncap_firstBI extends BuiltInForString {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(String s, Environment env) {
             int i = 0;
@@ -660,6 +704,8 @@ class BuiltInsForStringsBasic {
     }
 
     static class upper_caseBI extends BuiltInForString {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(String s, Environment env) {
             return new SimpleScalar(s.toUpperCase(env.getLocale()));
@@ -667,6 +713,8 @@ class BuiltInsForStringsBasic {
     }
 
     static class word_listBI extends BuiltInForString {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(String s, Environment env) {
             SimpleSequence result = new SimpleSequence();
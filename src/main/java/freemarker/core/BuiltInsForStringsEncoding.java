@@ -35,7 +35,11 @@ class BuiltInsForStringsEncoding {
 
     static class htmlBI extends BuiltInForLegacyEscaping implements ICIChainMember {
         
+        private static final long serialVersionUID = 1L;
+
         static class BIBeforeICI2d3d20 extends BuiltInForLegacyEscaping {
+            private static final long serialVersionUID = 1L;
+
             @Override
             TemplateModel calculateResult(String s, Environment env) {
                 return new SimpleScalar(StringUtil.HTMLEnc(s));
@@ -60,6 +64,8 @@ class BuiltInsForStringsEncoding {
     }
 
     static class j_stringBI extends BuiltInForString {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(String s, Environment env) {
             return new SimpleScalar(StringUtil.javaStringEnc(s));
@@ -67,6 +73,8 @@ class BuiltInsForStringsEncoding {
     }
 
     static class js_stringBI extends BuiltInForString {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(String s, Environment env) {
             return new SimpleScalar(StringUtil.javaScriptStringEnc(s));
@@ -74,6 +82,8 @@ class BuiltInsForStringsEncoding {
     }
 
     static class json_stringBI extends BuiltInForString {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(String s, Environment env) {
             return new SimpleScalar(StringUtil.jsonStringEnc(s));
@@ -81,6 +91,8 @@ class BuiltInsForStringsEncoding {
     }
 
     static class rtfBI extends BuiltInForLegacyEscaping {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(String s, Environment env) {
             return new SimpleScalar(StringUtil.RTFEnc(s));
@@ -89,6 +101,8 @@ class BuiltInsForStringsEncoding {
 
     static class urlBI extends BuiltInForString {
         
+        private static final long serialVersionUID = 1L;
+
         static class UrlBIResult extends BuiltInsForStringsEncoding.AbstractUrlBIResult {
     
             protected UrlBIResult(BuiltIn parent, String target, Environment env) {
@@ -111,6 +125,8 @@ class BuiltInsForStringsEncoding {
 
     static class urlPathBI extends BuiltInForString {
     
+        private static final long serialVersionUID = 1L;
+
         static class UrlPathBIResult extends BuiltInsForStringsEncoding.AbstractUrlBIResult {
     
             protected UrlPathBIResult(BuiltIn parent, String target, Environment env) {
@@ -132,6 +148,8 @@ class BuiltInsForStringsEncoding {
     }
 
     static class xhtmlBI extends BuiltInForLegacyEscaping {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(String s, Environment env) {
             return new SimpleScalar(StringUtil.XHTMLEnc(s));
@@ -139,6 +157,8 @@ class BuiltInsForStringsEncoding {
     }
 
     static class xmlBI extends BuiltInForLegacyEscaping {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(String s, Environment env) {
             return new SimpleScalar(StringUtil.XMLEnc(s));
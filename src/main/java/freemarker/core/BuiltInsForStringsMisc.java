@@ -19,7 +19,6 @@
 
 package freemarker.core;
 
-import java.io.StringReader;
 import java.util.List;
 
 import freemarker.template.MalformedTemplateNameException;
@@ -35,6 +34,8 @@ import freemarker.template.TemplateScalarModel;
 class BuiltInsForStringsMisc {
 
     static class booleanBI extends BuiltInForString {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(String s, Environment env)  throws TemplateException {
             final boolean b;
@@ -56,6 +57,8 @@ class BuiltInsForStringsMisc {
 
     static class evalBI extends OutputFormatBoundBuiltIn {
         
+        private static final long serialVersionUID = 1L;
+
         @Override
         protected TemplateModel calculateResult(Environment env) throws TemplateException {
             return calculateResult(BuiltInForString.getTargetString(target, env), env);
@@ -64,40 +67,44 @@ class BuiltInsForStringsMisc {
         TemplateModel calculateResult(String s, Environment env) throws TemplateException {
             Template parentTemplate = getTemplate();
             
-            Expression exp = null;
-            try {
+            ParserConfiguration pCfg = parentTemplate.getParserConfiguration();
+            // pCfg.outputFormat is exceptional: it's inherited from the lexical context
+            if (pCfg.getOutputFormat() != outputFormat) {
+                pCfg = new _ParserConfigurationWithInheritedFormat(
+                        pCfg, outputFormat, Integer.valueOf(autoEscapingPolicy));
+            }
+            
+            ParsedFragmentCache parsedFragmentCache = env.getConfiguration().getParsedFragmentCache();
+            Expression exp = parsedFragmentCache != null
+                    ? parsedFragmentCache.getExpression(parentTemplate, s, pCfg) : null;
+            if (exp == null) {
                 try {
-                    ParserConfiguration pCfg = parentTemplate.getParserConfiguration();
-                    
-                    SimpleCharStream simpleCharStream = new SimpleCharStream(
-                            new StringReader("(" + s + ")"),
-                            RUNTIME_EVAL_LINE_DISPLACEMENT, 1,
-                            s.length() + 2);
-                    simpleCharStream.setTabSize(pCfg.getTabSize());
-                    FMParserTokenManager tkMan = new FMParserTokenManager(
-                            simpleCharStream);
-                    tkMan.SwitchTo(FMParserConstants.FM_EXPRESSION);
-
-                    // pCfg.outputFormat is exceptional: it's inherited from the lexical context
-                    if (pCfg.getOutputFormat() != outputFormat) {
-                        pCfg = new _ParserConfigurationWithInheritedFormat(
-                                pCfg, outputFormat, Integer.valueOf(autoEscapingPolicy));
+                    try {
+                        ArrayCharStream charStream = new ArrayCharStream(
+                                "(" + s + ")", RUNTIME_EVAL_LINE_DISPLACEMENT, 1);
+                        charStream.setTabSize(pCfg.getTabSize());
+                        FMParserTokenManager tkMan = new FMParserTokenManager(
+                                charStream);
+                        tkMan.SwitchTo(FMParserConstants.FM_EXPRESSION);
+                        
+                        FMParser parser = new FMParser(
+                                parentTemplate, false, tkMan, pCfg);
+                        
+                        exp = parser.Expression();
+                    } catch (TokenMgrError e) {
+                        throw e.toParseException(parentTemplate);
                     }
-                    
-                    FMParser parser = new FMParser(
-                            parentTemplate, false, tkMan, pCfg);
-                    
-                    exp = parser.Expression();
-                } catch (TokenMgrError e) {
-                    throw e.toParseException(parentTemplate);
+                } catch (ParseException e) {
+                    throw new _MiscTemplateException(this, env,
+                            "Failed to \"?", key, "\" string with this error:\n\n",
+                            _MessageUtil.EMBEDDED_MESSAGE_BEGIN,
+                            new _DelayedGetMessage(e),
+                            _MessageUtil.EMBEDDED_MESSAGE_END,
+                            "\n\nThe failing expression:");
+                }
+                if (parsedFragmentCache != null) {
+                    parsedFragmentCache.putExpression(parentTemplate, s, pCfg, exp);
                 }
-            } catch (ParseException e) {
-                throw new _MiscTemplateException(this, env,
-                        "Failed to \"?", key, "\" string with this error:\n\n",
-                        _MessageUtil.EMBEDDED_MESSAGE_BEGIN,
-                        new _DelayedGetMessage(e),
-                        _MessageUtil.EMBEDDED_MESSAGE_END,
-                        "\n\nThe failing expression:");
             }
             try {
                 return exp.eval(env);
@@ -114,6 +121,8 @@ class BuiltInsForStringsMisc {
     }
 
     static class numberBI extends BuiltInForString {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(String s, Environment env)  throws TemplateException {
             try {
@@ -125,6 +134,8 @@ class BuiltInsForStringsMisc {
     }
     
     static class absolute_template_nameBI extends BuiltInForString {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel calculateResult(String s, Environment env)  throws TemplateException {
             return new AbsoluteTemplateNameResult(s, env);
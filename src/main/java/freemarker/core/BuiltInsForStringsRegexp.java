@@ -44,6 +44,8 @@ import freemarker.template.utility.StringUtil;
 class BuiltInsForStringsRegexp {
 
     static class groupsBI extends BuiltIn {
+        private static final long serialVersionUID = 1L;
+
         @Override
         TemplateModel _eval(Environment env) throws TemplateException {
             TemplateModel targetModel = target.eval(env);
@@ -62,6 +64,8 @@ class BuiltInsForStringsRegexp {
     }
     
     static class matchesBI extends BuiltInForString {
+        private static final long serialVersionUID = 1L;
+
         class MatcherBuilder implements TemplateMethodModel {
             
             String matchString;
@@ -93,6 +97,8 @@ class BuiltInsForStringsRegexp {
     
     static class replace_reBI extends BuiltInForString {
         
+        private static final long serialVersionUID = 1L;
+
         class ReplaceMethod implements TemplateMethodModel {
             private String s;
 
@@ -32,6 +32,8 @@ final class BuiltInsWithParseTimeParameters {
      */
     static class then_BI extends BuiltInWithParseTimeParameters {
         
+        private static final long serialVersionUID = 1L;
+
         private Expression whenTrueExp;
         private Expression whenFalseExp;
 
@@ -88,6 +90,8 @@ final class BuiltInsWithParseTimeParameters {
 
     static class switch_BI extends BuiltInWithParseTimeParameters {
         
+        private static final long serialVersionUID = 1L;
+
         private List/*<Expression>*/ parameters;
 
         @Override
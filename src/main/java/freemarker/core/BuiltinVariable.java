@@ -19,6 +19,8 @@
 
 package freemarker.core;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.Arrays;
 import java.util.Date;
 
@@ -40,6 +42,8 @@ import freemarker.template.utility.StringUtil;
  */
 final class BuiltinVariable extends Expression {
 
+    private static final long serialVersionUID = 1L;
+
     static final String TEMPLATE_NAME_CC = "templateName";
     static final String TEMPLATE_NAME = "template_name";
     static final String MAIN_TEMPLATE_NAME_CC = "mainTemplateName";
@@ -120,7 +124,7 @@ final class BuiltinVariable extends Expression {
         VERSION
     };
 
-    private final String name;
+    private String name; // Not final because of readObject
     private final TemplateModel parseTimeValue;
 
     BuiltinVariable(Token nameTk, FMParserTokenManager tokenManager, TemplateModel parseTimeValue)
@@ -176,6 +180,12 @@ final class BuiltinVariable extends Expression {
         this.name = name.intern();
     }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        // As _eval compares the name with identity, it must be interned again:
+        name = name.intern();
+    }
+
     @Override
     TemplateModel _eval(Environment env) throws TemplateException {
         if (parseTimeValue != null) {
@@ -24,6 +24,8 @@ package freemarker.core;
  */
 final class Case extends TemplateElement {
 
+    private static final long serialVersionUID = 1L;
+
     static final int TYPE_CASE = 0;
     static final int TYPE_DEFAULT = 1;
     
@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+/**
+ * Recycles the fixed size {@code char[]} segments of the {@link _SegmentedWriter}-s. This is used by a single
+ * {@link Environment}, so it's not thread safe. It only keeps a limited number of segments, so that a single huge
+ * capture won't make the {@link Environment} hold a lot of memory.
+ * 
+ * @since 2.3.29
+ */
+final class CharSegmentPool {
+
+    static final int SEGMENT_SIZE = 4096;
+    private static final int MAX_POOLED_SEGMENTS = 32;
+
+    private final char[][] segments = new char[MAX_POOLED_SEGMENTS][];
+    private int size;
+
+    /**
+     * Returns a pooled segment, or a new one if the pool is empty. The content of the segment is undefined.
+     */
+    char[] take() {
+        if (size == 0) {
+            return new char[SEGMENT_SIZE];
+        }
+        size--;
+        char[] segment = segments[size];
+        segments[size] = null;
+        return segment;
+    }
+
+    /**
+     * Gives back a segment that was taken with {@link #take()}; it mustn't be used by the caller after this.
+     */
+    void giveBack(char[] segment) {
+        if (size < MAX_POOLED_SEGMENTS) {
+            segments[size++] = segment;
+        }
+    }
+
+}
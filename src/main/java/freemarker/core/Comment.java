@@ -30,6 +30,8 @@ import freemarker.template.utility.StringUtil;
 @Deprecated
 public final class Comment extends TemplateElement {
 
+    private static final long serialVersionUID = 1L;
+
     private final String text;
 
     Comment(String text) {
@@ -26,6 +26,8 @@ import freemarker.template.TemplateException;
  */
 final class ComparisonExpression extends BooleanExpression {
 
+    private static final long serialVersionUID = 1L;
+
     private final Expression left;
     private final Expression right;
     private final int operation;
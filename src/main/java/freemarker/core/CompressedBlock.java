@@ -31,6 +31,8 @@ import freemarker.template.utility.StandardCompress;
  */
 final class CompressedBlock extends TemplateElement {
 
+    private static final long serialVersionUID = 1L;
+
     CompressedBlock(TemplateElements children) { 
         setChildren(children);
     }
@@ -30,6 +30,8 @@ import freemarker.template.TemplateException;
 
 final class ConditionalBlock extends TemplateElement {
 
+    private static final long serialVersionUID = 1L;
+
     static final int TYPE_IF = 0;
     static final int TYPE_ELSE = 1;
     static final int TYPE_ELSE_IF = 2;
@@ -43,6 +45,10 @@ final class ConditionalBlock extends TemplateElement {
         this.type = type;
     }
 
+    int getType() {
+        return type;
+    }
+
     @Override
     TemplateElement[] accept(Environment env) throws TemplateException, IOException {
         if (condition == null || condition.evalToBoolean(env)) {
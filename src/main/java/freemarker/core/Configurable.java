@@ -41,6 +41,7 @@ import java.util.Set;
 import java.util.TimeZone;
 
 import freemarker.cache.AndMatcher;
+import freemarker.cache.ConcurrentLfuCacheStorage;
 import freemarker.cache.ConditionalTemplateConfigurationFactory;
 import freemarker.cache.FileNameGlobMatcher;
 import freemarker.cache.FirstMatchTemplateConfigurationFactory;
@@ -50,6 +51,7 @@ import freemarker.cache.OrMatcher;
 import freemarker.cache.PathGlobMatcher;
 import freemarker.cache.PathRegexMatcher;
 import freemarker.cache.TemplateLoader;
+import freemarker.cache.WeightedCacheStorage;
 import freemarker.ext.beans.BeansWrapper;
 import freemarker.ext.beans.BeansWrapperBuilder;
 import freemarker.template.AttemptExceptionReporter;
@@ -508,6 +510,55 @@ public class Configurable {
         return copy;
     }
     
+    /**
+     * Copies the settings and the custom attributes that were set directly on this object (i.e., that aren't
+     * inherited from the parent) to a {@link Configurable} that has no settings set directly yet. Keep this in sync
+     * with the fields!
+     * 
+     * @since 2.3.29
+     */
+    @SuppressWarnings("unchecked")
+    void copyDirectSettingsTo(Configurable target) {
+        for (Object key : properties.keySet()) {  // Doesn't include the inherited defaults
+            target.properties.setProperty((String) key, properties.getProperty((String) key));
+        }
+        target.customAttributes = customAttributes != null ? (HashMap) customAttributes.clone() : null;
+        
+        target.locale = locale;
+        target.numberFormat = numberFormat;
+        target.timeFormat = timeFormat;
+        target.dateFormat = dateFormat;
+        target.dateTimeFormat = dateTimeFormat;
+        target.timeZone = timeZone;
+        target.sqlDataAndTimeTimeZone = sqlDataAndTimeTimeZone;
+        target.sqlDataAndTimeTimeZoneSet = sqlDataAndTimeTimeZoneSet;
+        target.booleanFormat = booleanFormat;
+        target.trueStringValue = trueStringValue;
+        target.falseStringValue = falseStringValue;
+        target.classicCompatible = classicCompatible;
+        target.templateExceptionHandler = templateExceptionHandler;
+        target.attemptExceptionReporter = attemptExceptionReporter;
+        target.arithmeticEngine = arithmeticEngine;
+        target.objectWrapper = objectWrapper;
+        target.outputEncoding = outputEncoding;
+        target.outputEncodingSet = outputEncodingSet;
+        target.urlEscapingCharset = urlEscapingCharset;
+        target.urlEscapingCharsetSet = urlEscapingCharsetSet;
+        target.autoFlush = autoFlush;
+        target.newBuiltinClassResolver = newBuiltinClassResolver;
+        target.showErrorTips = showErrorTips;
+        target.apiBuiltinEnabled = apiBuiltinEnabled;
+        target.logTemplateExceptions = logTemplateExceptions;
+        target.wrapUncheckedExceptions = wrapUncheckedExceptions;
+        target.customDateFormats = customDateFormats;
+        target.customNumberFormats = customNumberFormats;
+        target.autoImports = autoImports != null ? (LinkedHashMap<String, String>) autoImports.clone() : null;
+        target.autoIncludes = autoIncludes != null ? (ArrayList<String>) autoIncludes.clone() : null;
+        target.lazyImports = lazyImports;
+        target.lazyAutoImports = lazyAutoImports;
+        target.lazyAutoImportsSet = lazyAutoImportsSet;
+    }
+    
     /**
      * Returns the parent {@link Configurable} object of this object. The parent stores the default setting values for
      * this {@link Configurable}. For example, the parent of a {@link freemarker.template.Template} object is a
@@ -2334,9 +2385,11 @@ public class Configurable {
      *       
      *   <li><p>{@code "cache_storage"}:
      *       See {@link Configuration#setCacheStorage}.
-     *       <br>String value: If the value contains dot, then it's interpreted as an <a href="#fm_obe">object builder
-     *       expression</a>.
-     *       If the value does not contain dot,
+     *       <br>String value: If the value contains dot or parenthesis, then it's interpreted as an
+     *       <a href="#fm_obe">object builder expression</a>, like
+     *       {@code "ConcurrentLfuCacheStorage(100, 1000)"} (see {@link ConcurrentLfuCacheStorage}), or
+     *       {@code "WeightedCacheStorage(100000000)"} (see {@link WeightedCacheStorage}).
+     *       If the value does not contain dot or parenthesis,
      *       then a {@link freemarker.cache.MruCacheStorage} will be used with the
      *       maximum strong and soft sizes specified with the setting value. Examples
      *       of valid setting values:
@@ -2497,7 +2550,8 @@ public class Configurable {
      *     {@link TemplateConfiguration}, {@link PathGlobMatcher}, {@link FileNameGlobMatcher}, {@link PathRegexMatcher},
      *     {@link AndMatcher}, {@link OrMatcher}, {@link NotMatcher}, {@link ConditionalTemplateConfigurationFactory},
      *     {@link MergingTemplateConfigurationFactory}, {@link FirstMatchTemplateConfigurationFactory},
-     *     {@link HTMLOutputFormat}, {@link XMLOutputFormat}, {@link RTFOutputFormat}, {@link PlainTextOutputFormat},
+     *     {@link ConcurrentLfuCacheStorage}, {@link WeightedCacheStorage}, {@link HTMLOutputFormat},
+     *     {@link XMLOutputFormat}, {@link RTFOutputFormat}, {@link PlainTextOutputFormat},
      *     {@link UndefinedOutputFormat}, {@link Configuration}.
      *   </li>
      *   <li>
@@ -24,6 +24,8 @@ package freemarker.core;
  */
 final class ContinueInstruction extends TemplateElement {
 
+    private static final long serialVersionUID = 1L;
+
     @Override
     TemplateElement[] accept(Environment env) {
         throw BreakOrContinueException.CONTINUE_INSTANCE;
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import freemarker.template.TemplateBooleanModel;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+
+/**
+ * {@link TemplatePostProcessor#DEAD_BRANCH_ELIMINATION}
+ */
+final class DeadBranchEliminationTemplatePostProcessor extends TreeRewritingTemplatePostProcessor {
+
+    @Override
+    void rewriteChildren(TemplateElement parent) {
+        int i = 0;
+        while (i < parent.getChildCount()) {
+            TemplateElement child = parent.getChild(i);
+            if (child instanceof ConditionalBlock) {
+                ConditionalBlock block = (ConditionalBlock) child;
+                Boolean condition = getConstantCondition(block);
+                if (condition == null) {
+                    i++;
+                } else if (condition.booleanValue()) {
+                    i += replaceWithChildren(parent, i, block);
+                } else {
+                    parent.replaceChildren(i, i + 1, null, 0);
+                }
+            } else if (child instanceof IfBlock) {
+                i += rewriteIfBlock(parent, i, (IfBlock) child);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * @return The number of elements the {@link IfBlock} was replaced with.
+     */
+    private int rewriteIfBlock(TemplateElement parent, int index, IfBlock ifBlock) {
+        int branchIdx = 0;
+        while (branchIdx < ifBlock.getChildCount()) {
+            Boolean condition = getConstantCondition((ConditionalBlock) ifBlock.getChild(branchIdx));
+            if (condition == null) {
+                branchIdx++;
+            } else if (condition.booleanValue()) {
+                // The later branches can never run
+                ifBlock.replaceChildren(branchIdx + 1, ifBlock.getChildCount(), null, 0);
+                branchIdx++;
+            } else {
+                ifBlock.replaceChildren(branchIdx, branchIdx + 1, null, 0);
+            }
+        }
+        
+        if (ifBlock.getChildCount() == 0) {
+            parent.replaceChildren(index, index + 1, null, 0);
+            return 0;
+        }
+        
+        ConditionalBlock firstBranch = (ConditionalBlock) ifBlock.getChild(0);
+        if (firstBranch.condition == null || getConstantCondition(firstBranch) != null) {
+            // As the condition isn't false, it's always true
+            return replaceWithChildren(parent, index, firstBranch);
+        }
+        
+        if (firstBranch.getType() != ConditionalBlock.TYPE_IF) {
+            // The #elseif has become the first branch
+            ConditionalBlock ifBranch = new ConditionalBlock(
+                    firstBranch.condition, copyChildren(firstBranch), ConditionalBlock.TYPE_IF);
+            ifBranch.setLocation(firstBranch.getTemplate(), firstBranch, firstBranch);
+            ifBlock.replaceChildren(0, 1, new TemplateElement[] { ifBranch }, 1);
+            firstBranch = ifBranch;
+        }
+        if (ifBlock.getChildCount() == 1) {
+            // Same as what IfBlock.postParseCleanup does
+            firstBranch.setLocation(ifBlock.getTemplate(), firstBranch, ifBlock);
+            parent.replaceChildren(index, index + 1, new TemplateElement[] { firstBranch }, 1);
+        }
+        return 1;
+    }
+    
+    /**
+     * @return The number of children the element was replaced with.
+     */
+    private static int replaceWithChildren(TemplateElement parent, int index, TemplateElement element) {
+        int childCount = element.getChildCount();
+        parent.replaceChildren(index, index + 1, element.getChildBuffer(), childCount);
+        return childCount;
+    }
+    
+    private static TemplateElements copyChildren(TemplateElement element) {
+        int childCount = element.getChildCount();
+        if (childCount == 0) {
+            return TemplateElements.EMPTY;
+        }
+        TemplateElement[] children = new TemplateElement[childCount];
+        System.arraycopy(element.getChildBuffer(), 0, children, 0, childCount);
+        return new TemplateElements(children, childCount);
+    }
+    
+    /**
+     * Returns the value of the condition if it's known at parse time, otherwise {@code null}. The condition of an
+     * {@code #else} is always {@code true}.
+     */
+    private static Boolean getConstantCondition(ConditionalBlock block) {
+        Expression condition = block.condition;
+        if (condition == null) {
+            return Boolean.TRUE;
+        }
+        // If this is non-null, then it's also what the condition evaluates to on runtime:
+        TemplateModel constantValue = condition.constantValue;
+        if (!(constantValue instanceof TemplateBooleanModel)) {
+            return null;
+        }
+        try {
+            return Boolean.valueOf(((TemplateBooleanModel) constantValue).getAsBoolean());
+        } catch (TemplateModelException e) {
+            return null;
+        }
+    }
+    
+}
@@ -32,6 +32,8 @@ import freemarker.template.TemplateException;
  */
 @Deprecated
 public class DebugBreak extends TemplateElement {
+    private static final long serialVersionUID = 1L;
+
     public DebugBreak(TemplateElement nestedBlock) {
         addChild(nestedBlock);
         copyLocationFrom(nestedBlock);
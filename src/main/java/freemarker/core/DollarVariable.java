@@ -34,6 +34,8 @@ import freemarker.template.utility.StringUtil;
  */
 final class DollarVariable extends Interpolation {
 
+    private static final long serialVersionUID = 1L;
+
     private final Expression expression;
     
     /** For {@code #escape x as ...} (legacy auto-escaping) */
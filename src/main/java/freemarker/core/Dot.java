@@ -28,6 +28,8 @@ import freemarker.template.TemplateModel;
  * <code>TemplateHashModel</code>.
  */
 final class Dot extends Expression {
+    private static final long serialVersionUID = 1L;
+
     private final Expression target;
     private final String key;
 
@@ -39,6 +39,8 @@ import freemarker.template.utility.Constants;
  */
 final class DynamicKeyName extends Expression {
 
+    private static final long serialVersionUID = 1L;
+
     private final Expression keyExpression;
     private final Expression target;
 
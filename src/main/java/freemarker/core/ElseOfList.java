@@ -28,6 +28,8 @@ import freemarker.template.TemplateException;
  */
 final class ElseOfList extends TemplateElement {
     
+    private static final long serialVersionUID = 1L;
+
     ElseOfList(TemplateElements children) {
         setChildren(children);
     }
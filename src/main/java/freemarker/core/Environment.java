@@ -60,6 +60,8 @@ import freemarker.template.TemplateException;
 import freemarker.template.TemplateExceptionHandler;
 import freemarker.template.TemplateHashModel;
 import freemarker.template.TemplateHashModelEx;
+import freemarker.template.TemplateHashModelEx2.KeyValuePair;
+import freemarker.template.TemplateHashModelEx2.KeyValuePairIterator;
 import freemarker.template.TemplateModel;
 import freemarker.template.TemplateModelException;
 import freemarker.template.TemplateModelIterator;
@@ -159,6 +161,14 @@ public final class Environment extends Configurable {
     private Collator cachedCollator;
 
     private Writer out;
+    /**
+     * Maps the templates that the AST nodes belong to, to the {@link Template}-s that were processed with those ASTs;
+     * see {@link #getTemplateForAstOwner(Template)}. If the same AST was processed with multiple {@link Template}-s,
+     * the last one wins. {@code null} until the first such {@link Template}.
+     */
+    private IdentityHashMap<Template, Template> templatesByAstOwner;
+    /** Lazily created; see {@link #getCharSegmentPool()}. */
+    private CharSegmentPool charSegmentPool;
     private Macro.Context currentMacroContext;
     private LocalContextStack localContextStack;
     private final Namespace mainNamespace;
@@ -205,6 +215,7 @@ public final class Environment extends Configurable {
         this.currentNamespace = mainNamespace = new Namespace(template);
         this.out = out;
         this.rootDataModel = rootDataModel;
+        enterTemplate(template);
         importMacros(template);
     }
 
@@ -257,7 +268,35 @@ public final class Environment extends Configurable {
     @SuppressFBWarnings(value = "RANGE_ARRAY_INDEX", justification = "False alarm")
     public Template getCurrentTemplate() {
         int ln = instructionStackSize;
-        return ln == 0 ? getMainTemplate() : instructionStack[ln - 1].getTemplate();
+        return ln == 0 ? getMainTemplate() : getTemplateForAstOwner(instructionStack[ln - 1].getTemplate());
+    }
+
+    /**
+     * Must be called before processing the AST of a {@link Template}, so that {@link #getTemplateForAstOwner(Template)}
+     * can find it.
+     */
+    private void enterTemplate(Template template) {
+        Template astOwner = _TemplateAPI.getAstOwner(template);
+        if (astOwner != template) {
+            if (templatesByAstOwner == null) {
+                templatesByAstOwner = new IdentityHashMap<Template, Template>();
+            }
+            templatesByAstOwner.put(astOwner, template);
+        }
+    }
+
+    /**
+     * Returns the {@link Template} that this {@link Environment} has processed with the AST whose nodes belong to the
+     * given template. These differ if the {@link Template} shares its AST with other {@link Template}-s (like the
+     * {@link Template}-s of the different locales that were loaded from the same template source), as then the AST
+     * nodes belong to the template that the parse result was created for.
+     */
+    private Template getTemplateForAstOwner(Template astOwner) {
+        if (templatesByAstOwner == null) {
+            return astOwner;
+        }
+        Template template = templatesByAstOwner.get(astOwner);
+        return template != null ? template : astOwner;
     }
 
     /**
@@ -299,6 +338,15 @@ public final class Environment extends Configurable {
      * Processes the template to which this environment belongs to.
      */
     public void process() throws TemplateException, IOException {
+        Template templateBeforePostProcessing = _TemplateAPI.getTemplateBeforePostProcessing(getTemplate());
+        if (templateBeforePostProcessing != null) {
+            processAndVerifyPostProcessing(templateBeforePostProcessing);
+        } else {
+            process(getTemplate().getRootTreeNode());
+        }
+    }
+    
+    private void process(TemplateElement rootTreeNode) throws TemplateException, IOException {
         Object savedEnv = threadEnv.get();
         threadEnv.set(this);
         try {
@@ -306,7 +354,7 @@ public final class Environment extends Configurable {
             clearCachedValues();
             try {
                 doAutoImportsAndIncludes(this);
-                visit(getTemplate().getRootTreeNode());
+                visit(rootTreeNode);
                 // It's here as we must not flush if there was an exception.
                 if (getAutoFlush()) {
                     out.flush();
@@ -320,6 +368,70 @@ public final class Environment extends Configurable {
         }
     }
 
+    /**
+     * Implements {@link Configuration#setVerifyTemplatePostProcessing(boolean)}: processes the main template with its
+     * AST as it was before the {@link TemplatePostProcessor}-s were applied, and then as it's now, and throws
+     * exception if the outputs differ. The output is only written to {@link #getOut()} if they are the same. As the
+     * template is really executed twice, all side effects (method calls, {@code ?eval}, template loading, etc.) happen
+     * twice too, which is why this mode is for testing only.
+     */
+    @SuppressWarnings("unchecked")
+    private void processAndVerifyPostProcessing(Template templateBeforePostProcessing)
+            throws TemplateException, IOException {
+        StringWriter expectedOut = new StringWriter();
+        Environment referenceEnv = new Environment(getTemplate(), rootDataModel, expectedOut);
+        // Whatever the caller has set on this Environment before process() must be visible in the reference run too:
+        copyDirectSettingsTo(referenceEnv);
+        copyVariables(globalNamespace, referenceEnv.globalNamespace);
+        copyVariables(mainNamespace, referenceEnv.mainNamespace);
+        if (customStateVariables != null) {
+            referenceEnv.customStateVariables = (IdentityHashMap<Object, Object>) customStateVariables.clone();
+        }
+        referenceEnv.importMacros(templateBeforePostProcessing);
+        referenceEnv.setCurrentVisitorNode(getCurrentVisitorNode());
+        referenceEnv.process(templateBeforePostProcessing.getRootTreeNode());
+        
+        Writer realOut = out;
+        StringWriter actualOut = new StringWriter();
+        out = actualOut;
+        try {
+            process(getTemplate().getRootTreeNode());
+        } finally {
+            out = realOut;
+        }
+        
+        String expectedOutput = expectedOut.toString();
+        String actualOutput = actualOut.toString();
+        if (!actualOutput.equals(expectedOutput)) {
+            int diffIdx = 0;
+            while (diffIdx < expectedOutput.length() && diffIdx < actualOutput.length()
+                    && expectedOutput.charAt(diffIdx) == actualOutput.charAt(diffIdx)) {
+                diffIdx++;
+            }
+            throw new _MiscTemplateException(this,
+                    "The template post-processors have changed the output of template "
+                    + StringUtil.jQuote(getTemplate().getSourceName()) + ". The outputs differ starting from "
+                    + "character index " + diffIdx + "; expected output there: "
+                    + StringUtil.jQuote(getOutputExcerpt(expectedOutput, diffIdx))
+                    + ", actual output there: " + StringUtil.jQuote(getOutputExcerpt(actualOutput, diffIdx)));
+        }
+        out.write(actualOutput);
+        if (getAutoFlush()) {
+            out.flush();
+        }
+    }
+
+    private static void copyVariables(Namespace from, Namespace to) throws TemplateModelException {
+        for (KeyValuePairIterator it = from.keyValuePairIterator(); it.hasNext(); ) {
+            KeyValuePair pair = it.next();
+            to.put(((TemplateScalarModel) pair.getKey()).getAsString(), pair.getValue());
+        }
+    }
+
+    private static String getOutputExcerpt(String output, int startIdx) {
+        return output.substring(startIdx, Math.min(startIdx + 40, output.length()));
+    }
+
     /**
      * "Visit" the template element.
      */
@@ -539,20 +651,42 @@ public final class Environment extends Configurable {
              AttemptBlock attemptBlock, TemplateElement attemptedSection, RecoveryBlock recoverySection)
              throws TemplateException, IOException {
         Writer prevOut = this.out;
-        StringWriter sw = new StringWriter();
-        this.out = sw;
+        // Nested #attempt-s share the buffer of the outermost one, and only roll back to the point where they started.
+        boolean outermost = !(prevOut instanceof RollbackWriter);
+        RollbackWriter rollbackOut;
+        long mark;
+        if (outermost) {
+            rollbackOut = new RollbackWriter(prevOut, this,
+                    configuration.getAttemptOutputSpillThreshold(), configuration.getAttemptOutputSpillDirectory());
+            mark = 0;
+            this.out = rollbackOut;
+        } else {
+            rollbackOut = (RollbackWriter) prevOut;
+            mark = rollbackOut.mark();
+        }
         TemplateException thrownException = null;
         boolean lastFIRE = setFastInvalidReferenceExceptions(false);
         boolean lastInAttemptBlock = inAttemptBlock;
         try {
-            inAttemptBlock = true;
-            visit(attemptedSection);
-        } catch (TemplateException te) {
-            thrownException = te;
+            try {
+                inAttemptBlock = true;
+                visit(attemptedSection);
+            } catch (TemplateException te) {
+                thrownException = te;
+            } finally {
+                inAttemptBlock = lastInAttemptBlock;
+                setFastInvalidReferenceExceptions(lastFIRE);
+                this.out = prevOut;
+            }
+            if (thrownException != null) {
+                rollbackOut.rollback(mark);
+            } else if (outermost) {
+                rollbackOut.commit();
+            }
         } finally {
-            inAttemptBlock = lastInAttemptBlock;
-            setFastInvalidReferenceExceptions(lastFIRE);
-            this.out = prevOut;
+            if (outermost) {
+                rollbackOut.release();
+            }
         }
         if (thrownException != null) {
             if (ATTEMPT_LOGGER.isDebugEnabled()) {
@@ -565,11 +699,19 @@ public final class Environment extends Configurable {
             } finally {
                 recoveredErrorStack.remove(recoveredErrorStack.size() - 1);
             }
-        } else {
-            out.write(sw.toString());
         }
     }
 
+    /**
+     * The pool of the segments of the {@link _SegmentedWriter}-s used for capturing output during this processing.
+     */
+    CharSegmentPool getCharSegmentPool() {
+        if (charSegmentPool == null) {
+            charSegmentPool = new CharSegmentPool();
+        }
+        return charSegmentPool;
+    }
+
     String getCurrentRecoveredErrorMessage() throws TemplateException {
         if (recoveredErrorStack.isEmpty()) {
             throw new _MiscTemplateException(this, ".error is not available outside of a #recover block");
@@ -2211,10 +2353,10 @@ public final class Environment extends Configurable {
         Macro enclosingMacro = getEnclosingMacro(stackEl);
         if (enclosingMacro != null) {
             sb.append(_MessageUtil.formatLocationForEvaluationError(
-                    enclosingMacro, stackEl.beginLine, stackEl.beginColumn));
+                    enclosingMacro, stackEl.getBeginLine(), stackEl.getBeginColumn()));
         } else {
             sb.append(_MessageUtil.formatLocationForEvaluationError(
-                    stackEl.getTemplate(), stackEl.beginLine, stackEl.beginColumn));
+                    stackEl.getTemplate(), stackEl.getBeginLine(), stackEl.getBeginColumn()));
         }
         sb.append("]");
     }
@@ -2544,11 +2686,11 @@ public final class Environment extends Configurable {
                 ignoreMissing);
     }
 
-    private Object getIncludedTemplateCustomLookupCondition() {
+    Object getIncludedTemplateCustomLookupCondition() {
         return getTemplate().getCustomLookupCondition();
     }
 
-    private String getIncludedTemplateEncoding() {
+    String getIncludedTemplateEncoding() {
         String encoding;
         // This branch shouldn't exist, as it doesn't make much sense to inherit encoding. But we have to keep BC.
         encoding = getTemplate().getEncoding();
@@ -2577,6 +2719,7 @@ public final class Environment extends Configurable {
             legacyParent = includedTemplate;
         }
 
+        enterTemplate(includedTemplate);
         importMacros(includedTemplate);
         try {
             visit(includedTemplate.getRootTreeNode());
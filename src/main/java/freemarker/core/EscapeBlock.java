@@ -29,6 +29,8 @@ import freemarker.template.TemplateException;
  */
 class EscapeBlock extends TemplateElement {
 
+    private static final long serialVersionUID = 1L;
+
     private final String variable;
     private final Expression expr;
     private Expression escapedExpr;
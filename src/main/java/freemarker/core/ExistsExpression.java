@@ -27,6 +27,8 @@ import freemarker.template.TemplateModel;
 /** {@code exp??} and {@code (exp)??} */
 class ExistsExpression extends Expression {
 	
+    private static final long serialVersionUID = 1L;
+
 	protected final Expression exp;
 	
 	ExistsExpression(Expression exp) {
@@ -19,6 +19,10 @@
 
 package freemarker.core;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 import freemarker.ext.beans.BeanModel;
 import freemarker.template.Configuration;
 import freemarker.template.Template;
@@ -43,6 +47,8 @@ import freemarker.template.utility.UndeclaredThrowableException;
 @Deprecated
 abstract public class Expression extends TemplateObject {
 
+    private static final long serialVersionUID = 1L;
+
     /**
      * @param env might be {@code null}, if this kind of expression can be evaluated during parsing (as opposed to
      *     during template execution).
@@ -54,7 +60,13 @@ abstract public class Expression extends TemplateObject {
     // Used to store a constant return value for this expression. Only if it
     // is possible, of course.
     
-    TemplateModel constantValue;
+    transient TemplateModel constantValue;
+    
+    /**
+     * Marks a {@link #constantValue} that must be re-calculated after deserialization; constant values aren't
+     * serialized, as they can be arbitrary {@link TemplateModel}-s.
+     */
+    private static final TemplateModel CONSTANT_VALUE_TO_RECALCULATE = new TemplateModel() { };
 
     // Hook in here to set the constant value if possible.
     
@@ -70,6 +82,30 @@ abstract public class Expression extends TemplateObject {
         }
     }
 
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeBoolean(constantValue != null);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        constantValue = in.readBoolean() ? CONSTANT_VALUE_TO_RECALCULATE : null;
+    }
+
+    /**
+     * Called after the subexpressions were deserialized too, so now we can evaluate the expression.
+     */
+    Object readResolve() {
+        if (constantValue == CONSTANT_VALUE_TO_RECALCULATE) {
+            try {
+                constantValue = _eval(null);
+            } catch (Exception e) {
+                constantValue = null;
+            }
+        }
+        return this;
+    }
+
     /**
      * @deprecated At the moment FreeMarker has no API for this with backward-compatibility promises.
      */
@@ -183,7 +219,7 @@ abstract public class Expression extends TemplateObject {
     final Expression deepCloneWithIdentifierReplaced(
             String replacedIdentifier, Expression replacement, ReplacemenetState replacementState) {
         Expression clone = deepCloneWithIdentifierReplaced_inner(replacedIdentifier, replacement, replacementState);
-        if (clone.beginLine == 0) {
+        if (clone.getBeginLine() == 0) {
             clone.copyLocationFrom(this);
         }
         return clone;
@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import freemarker.template.Configuration;
+
+/**
+ * Finds out the encoding specified in the {@code #ftl} header, without parsing the template. This is used to avoid
+ * parsing the whole template only to find out that it was decoded with the wrong charset, and so must be read and
+ * parsed again (see {@link freemarker.template.Template.WrongEncodingException}).
+ * 
+ * <p>
+ * This is just a cheap scan that only understands the common case, where the {@code encoding} parameter value is a
+ * string literal without escapes. When in doubt, it reports that there's no encoding specified, in which case the
+ * parser will still detect the mismatch. But when it does find an encoding, it must be the same that the parser would
+ * find, as the parser has no chance to correct that.
+ */
+final class FTLHeaderEncodingSniffer {
+
+    private static final String ENCODING_PARAM_NAME = "encoding";
+
+    private FTLHeaderEncodingSniffer() {
+        // Not meant to be instantiated
+    }
+
+    /**
+     * @param src
+     *            The beginning of the template source; usually not the whole template, but long enough to contain
+     *            the {@code #ftl} header.
+     * @param tagSyntax
+     *            The tag syntax from the {@link ParserConfiguration}, which decides if {@code [#ftl ...]} and/or
+     *            {@code <#ftl ...>} is recognized as header.
+     * 
+     * @return The encoding specified in the {@code #ftl} header, or {@code null} if there's no header, it doesn't
+     *         specify the encoding, or it couldn't be found out with this simple scan.
+     */
+    static String getEncoding(CharSequence src, int tagSyntax) {
+        final int ln = src.length();
+        int pos = skipWS(src, 0);
+        if (!startsWith(src, pos, "<#ftl") && !startsWith(src, pos, "[#ftl")) {
+            return null;
+        }
+        if (src.charAt(pos) == '<'
+                ? tagSyntax == Configuration.SQUARE_BRACKET_TAG_SYNTAX
+                : tagSyntax == Configuration.ANGLE_BRACKET_TAG_SYNTAX) {
+            // The parser will treat it as static text
+            return null;
+        }
+        pos += 5;
+        if (pos == ln || !isWS(src.charAt(pos))) {
+            // Header without parameters, or not a header (like "<#ftlx")
+            return null;
+        }
+
+        int nesting = 0;
+        while (pos < ln) {
+            char c = src.charAt(pos);
+            if (c == '"' || c == '\'') {
+                pos = skipStringLiteral(src, pos, false);
+                if (pos == -1) {
+                    return null;
+                }
+            } else if (startsWith(src, pos, "<#--") || startsWith(src, pos, "[#--")) {
+                // Comments can contain anything, and they are rare here, so we don't deal with them
+                return null;
+            } else if (c == '(' || c == '[' || c == '{') {
+                nesting++;
+                pos++;
+            } else if (c == ')' || c == ']' || c == '}') {
+                if (nesting == 0) {
+                    // End of a "[#ftl ...]" header, or a syntax error
+                    return null;
+                }
+                nesting--;
+                pos++;
+            } else if (nesting == 0 && (c == '>' || c == '/')) {
+                // End of a "<#ftl ...>" header, or some operator that we don't deal with
+                return null;
+            } else if (isIdentifierChar(c)) {
+                int idStart = pos;
+                do {
+                    pos++;
+                } while (pos < ln && isIdentifierChar(src.charAt(pos)));
+                if (pos - idStart == 1 && c == 'r' && pos < ln
+                        && (src.charAt(pos) == '"' || src.charAt(pos) == '\'')) {
+                    pos = skipStringLiteral(src, pos, true);
+                    if (pos == -1) {
+                        return null;
+                    }
+                } else if (nesting == 0 && pos - idStart == ENCODING_PARAM_NAME.length()
+                        && ENCODING_PARAM_NAME.equalsIgnoreCase(src.subSequence(idStart, pos).toString())) {
+                    return getEncodingParamValue(src, pos);
+                }
+            } else {
+                pos++;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param pos
+     *            The index after the parameter name.
+     */
+    private static String getEncodingParamValue(CharSequence src, int pos) {
+        final int ln = src.length();
+        pos = skipWS(src, pos);
+        if (pos == ln || src.charAt(pos) != '=') {
+            return null;
+        }
+        pos = skipWS(src, pos + 1);
+        if (pos == ln) {
+            return null;
+        }
+        boolean raw = false;
+        if (src.charAt(pos) == 'r') {
+            raw = true;
+            pos++;
+        }
+        if (pos == ln) {
+            return null;
+        }
+        char quote = src.charAt(pos);
+        if (quote != '"' && quote != '\'') {
+            return null;
+        }
+        int valueStart = pos + 1;
+        int valueEnd = valueStart;
+        while (valueEnd < ln && src.charAt(valueEnd) != quote) {
+            char c = src.charAt(valueEnd);
+            if (!raw && (c == '\\' || c == '$' || c == '#' || c == '[')) {
+                // Escape or possible interpolation; let the parser deal with it
+                return null;
+            }
+            valueEnd++;
+        }
+        if (valueEnd == ln) {
+            return null;
+        }
+        // The value must be followed by the end of the header, or by the next parameter (otherwise it's possibly
+        // just the first operand of some operator):
+        pos = skipWS(src, valueEnd + 1);
+        if (pos == ln) {
+            return null;
+        }
+        char c = src.charAt(pos);
+        if (c != '>' && c != ']' && c != '/') {
+            if (pos == valueEnd + 1 || !isIdentifierChar(c)) {
+                return null;
+            }
+            do {
+                pos++;
+            } while (pos < ln && isIdentifierChar(src.charAt(pos)));
+            pos = skipWS(src, pos);
+            if (pos + 1 >= ln || src.charAt(pos) != '=' || src.charAt(pos + 1) == '=') {
+                return null;
+            }
+        }
+        return src.subSequence(valueStart, valueEnd).toString();
+    }
+
+    /**
+     * @return The index after the closing quotation mark, or -1 if the literal is not closed.
+     */
+    private static int skipStringLiteral(CharSequence src, int pos, boolean raw) {
+        final int ln = src.length();
+        char quote = src.charAt(pos++);
+        while (pos < ln) {
+            char c = src.charAt(pos++);
+            if (c == quote) {
+                return pos;
+            }
+            if (c == '\\' && !raw) {
+                pos++;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isIdentifierChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '@' || c == '-' || c == '.'
+                || c == ':';
+    }
+
+    private static int skipWS(CharSequence src, int pos) {
+        final int ln = src.length();
+        while (pos < ln && isWS(src.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * The characters of {@code STATIC_TEXT_WS}, which are also the whitespace characters inside FTL tags.
+     */
+    private static boolean isWS(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private static boolean startsWith(CharSequence src, int pos, String prefix) {
+        int prefixLn = prefix.length();
+        if (src.length() - pos < prefixLn) {
+            return false;
+        }
+        for (int i = 0; i < prefixLn; i++) {
+            if (src.charAt(pos + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -25,6 +25,8 @@ import freemarker.template.TemplateException;
 
 final class FallbackInstruction extends TemplateElement {
 
+    private static final long serialVersionUID = 1L;
+
     @Override
     TemplateElement[] accept(Environment env) throws IOException, TemplateException {
         env.fallback();
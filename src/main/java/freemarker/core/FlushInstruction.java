@@ -26,6 +26,8 @@ import java.io.IOException;
  */
 final class FlushInstruction extends TemplateElement {
 
+    private static final long serialVersionUID = 1L;
+
     @Override
     TemplateElement[] accept(Environment env) throws IOException {
         env.getOut().flush();
@@ -35,6 +35,8 @@ import freemarker.template._TemplateAPI;
 
 final class HashLiteral extends Expression {
 
+    private static final long serialVersionUID = 1L;
+
     private final ArrayList keys, values;
     private final int size;
 
@@ -19,6 +19,9 @@
 
 package freemarker.core;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
 import freemarker.template.TemplateException;
 import freemarker.template.TemplateModel;
 
@@ -27,15 +30,31 @@ import freemarker.template.TemplateModel;
  */
 final class Identifier extends Expression {
 
-    private final String name;
+    private static final long serialVersionUID = 1L;
+
+    private String name; // Not final because of readObject
+    /** Set by {@link LocalVariableResolver}; {@code null} if the variable is always looked up by name. */
+    private LocalVariableBinding binding;
 
     Identifier(String name) {
-        this.name = name;
+        // Interned, as the same few names occur again and again in all the templates
+        this.name = name.intern();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        name = name.intern();
     }
 
     @Override
     TemplateModel _eval(Environment env) throws TemplateException {
         try {
+            if (binding != null) {
+                TemplateModel value = binding.getValue(env, name);
+                if (value != null) {
+                    return value;
+                }
+            }
             return env.getVariable(name);
         } catch (NullPointerException e) {
             if (env == null) {
@@ -59,6 +78,14 @@ final class Identifier extends Expression {
     String getName() {
         return name;
     }
+
+    LocalVariableBinding getBinding() {
+        return binding;
+    }
+
+    void setBinding(LocalVariableBinding binding) {
+        this.binding = binding;
+    }
     
     @Override
     String getNodeTypeSymbol() {
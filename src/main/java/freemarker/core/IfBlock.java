@@ -30,6 +30,8 @@ import freemarker.template.TemplateException;
  */
 final class IfBlock extends TemplateElement {
 
+    private static final long serialVersionUID = 1L;
+
     IfBlock(ConditionalBlock block) {
         setChildBufferCapacity(1);
         addBlock(block);
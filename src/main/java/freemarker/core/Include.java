@@ -20,6 +20,7 @@
 package freemarker.core;
 
 import java.io.IOException;
+import java.util.Locale;
 
 import freemarker.template.MalformedTemplateNameException;
 import freemarker.template.Template;
@@ -35,10 +36,14 @@ import freemarker.template.utility.StringUtil;
  */
 final class Include extends TemplateElement {
 
+    private static final long serialVersionUID = 1L;
+
     private final Expression includedTemplateNameExp, encodingExp, parseExp, ignoreMissingExp;
     private final String encoding;
     private final Boolean parse;
     private final Boolean ignoreMissingExpPrecalcedValue;
+    /** Set if the included template was inlined by the {@link freemarker.cache.TemplateCache}. */
+    private transient InlinedContent inlinedContent;
 
     /**
      * @param template the template that this <tt>#include</tt> is a part of.
@@ -117,8 +122,39 @@ final class Include extends TemplateElement {
         }
     }
     
+    /**
+     * Returns the included template as a {@link TemplateDependency}, or {@code null} if that can't be known without
+     * executing the directive.
+     */
+    TemplateDependency getStaticDependency() {
+        if (encodingExp != null && encoding == null || parse == null) {
+            return null;
+        }
+        return TemplateDependency.create(getTemplate(), includedTemplateNameExp, false, encoding, parse.booleanValue());
+    }
+    
+    /**
+     * Makes this directive print the given text instead of getting the included template, as far as the included
+     * template would be got with the given parameters. This is only allowed on an AST that's not shared with other
+     * {@link Template} objects, and only before the template is published to other threads.
+     * 
+     * @param text
+     *            The content of the included template, which must be static text.
+     * @param encoding
+     *            The encoding with which the included template was got.
+     */
+    void setInlinedContent(char[] text, Locale locale, Object customLookupCondition, String encoding) {
+        inlinedContent = new InlinedContent(text, locale, customLookupCondition, encoding);
+    }
+    
     @Override
     TemplateElement[] accept(Environment env) throws TemplateException, IOException {
+        final InlinedContent inlinedContent = this.inlinedContent;
+        if (inlinedContent != null && inlinedContent.isApplicable(env, encoding)) {
+            env.getOut().write(inlinedContent.text);
+            return null;
+        }
+        
         final String includedTemplateName = includedTemplateNameExp.evalAndCoerceToPlainText(env);
         final String fullIncludedTemplateName;
         try {
@@ -255,5 +291,37 @@ final class Include extends TemplateElement {
     boolean isShownInStackTrace() {
         return true;
     }
+
+    private static final class InlinedContent {
+        
+        private final char[] text;
+        private final Locale locale;
+        private final Object customLookupCondition;
+        private final String encoding;
+        
+        InlinedContent(char[] text, Locale locale, Object customLookupCondition, String encoding) {
+            this.text = text;
+            this.locale = locale;
+            this.customLookupCondition = customLookupCondition;
+            this.encoding = encoding;
+        }
+
+        /**
+         * Tells if the included template would be got with the same parameters as the inlined content was, for
+         * example, the {@code locale} setting wasn't changed since the template processing has started.
+         */
+        boolean isApplicable(Environment env, String includeEncoding) {
+            if (!env.getLocale().equals(locale)) {
+                return false;
+            }
+            Object envCustomLookupCondition = env.getIncludedTemplateCustomLookupCondition();
+            if (envCustomLookupCondition == null ? customLookupCondition != null
+                    : !envCustomLookupCondition.equals(customLookupCondition)) {
+                return false;
+            }
+            return (includeEncoding != null ? includeEncoding : env.getIncludedTemplateEncoding()).equals(encoding);
+        }
+        
+    }
     
 }
@@ -22,6 +22,8 @@ import freemarker.template.TemplateException;
 
 abstract class Interpolation extends TemplateElement {
 
+    private static final long serialVersionUID = 1L;
+
     protected abstract String dump(boolean canonical, boolean inStringLiteral);
 
     @Override
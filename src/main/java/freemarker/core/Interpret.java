@@ -46,6 +46,8 @@ import freemarker.template._TemplateAPI;
  */
 class Interpret extends OutputFormatBoundBuiltIn {
     
+    private static final long serialVersionUID = 1L;
+
     /**
      * Constructs a template on-the-fly and returns it embedded in a
      * {@link TemplateTransformModel}.
@@ -83,27 +85,42 @@ class Interpret extends OutputFormatBoundBuiltIn {
         Template parentTemplate = env.getConfiguration().getIncompatibleImprovements().intValue()
                 >= _TemplateAPI.VERSION_INT_2_3_26 ? env.getCurrentTemplate() : env.getTemplate();
         
+        ParserConfiguration pCfg = parentTemplate.getParserConfiguration();
+        // pCfg.outputFormat is exceptional: it's inherited from the lexical context
+        if (pCfg.getOutputFormat() != outputFormat) {
+            pCfg = new _ParserConfigurationWithInheritedFormat(
+                    pCfg, outputFormat, Integer.valueOf(autoEscapingPolicy));
+        }
+        String interpretedTemplateName =
+                (parentTemplate.getName() != null ? parentTemplate.getName() : "nameless_template") + "->" + id;
+        
+        ParsedFragmentCache parsedFragmentCache = env.getConfiguration().getParsedFragmentCache();
+        Template cachedTemplate = parsedFragmentCache != null
+                ? parsedFragmentCache.getTemplate(interpretedTemplateName, templateSource, pCfg) : null;
         final Template interpretedTemplate;
-        try {
-            ParserConfiguration pCfg = parentTemplate.getParserConfiguration();
-            // pCfg.outputFormat is exceptional: it's inherited from the lexical context
-            if (pCfg.getOutputFormat() != outputFormat) {
-                pCfg = new _ParserConfigurationWithInheritedFormat(
-                        pCfg, outputFormat, Integer.valueOf(autoEscapingPolicy));
+        if (cachedTemplate != null) {
+            // As we set the locale, we need our own Template object:
+            interpretedTemplate = _TemplateAPI.copyWithSharedParseResult(cachedTemplate);
+        } else {
+            try {
+                interpretedTemplate = new Template(
+                        interpretedTemplateName,
+                        null,
+                        new StringReader(templateSource),
+                        parentTemplate.getConfiguration(), pCfg,
+                        null);
+            } catch (IOException e) {
+                throw new _MiscTemplateException(this, e, env, new Object[] {
+                            "Template parsing with \"?", key, "\" has failed with this error:\n\n",
+                            _MessageUtil.EMBEDDED_MESSAGE_BEGIN,
+                            new _DelayedGetMessage(e),
+                            _MessageUtil.EMBEDDED_MESSAGE_END,
+                            "\n\nThe failed expression:" });
+            }
+            if (parsedFragmentCache != null) {
+                parsedFragmentCache.putTemplate(interpretedTemplateName, templateSource, pCfg,
+                        _TemplateAPI.copyWithSharedParseResult(interpretedTemplate));
             }
-            interpretedTemplate = new Template(
-                    (parentTemplate.getName() != null ? parentTemplate.getName() : "nameless_template") + "->" + id,
-                    null,
-                    new StringReader(templateSource),
-                    parentTemplate.getConfiguration(), pCfg,
-                    null);
-        } catch (IOException e) {
-            throw new _MiscTemplateException(this, e, env, new Object[] {
-                        "Template parsing with \"?", key, "\" has failed with this error:\n\n",
-                        _MessageUtil.EMBEDDED_MESSAGE_BEGIN,
-                        new _DelayedGetMessage(e),
-                        _MessageUtil.EMBEDDED_MESSAGE_END,
-                        "\n\nThe failed expression:" });
         }
         
         interpretedTemplate.setLocale(env.getLocale());
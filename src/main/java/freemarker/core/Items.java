@@ -28,6 +28,8 @@ import freemarker.template.TemplateException;
  */
 class Items extends TemplateElement {
 
+    private static final long serialVersionUID = 1L;
+
     private final String loopVarName;
     private final String loopVar2Name;
 
@@ -42,6 +44,14 @@ class Items extends TemplateElement {
         setChildren(children);
     }
 
+    String getLoopVariableName() {
+        return loopVarName;
+    }
+
+    String getLoopVariable2Name() {
+        return loopVar2Name;
+    }
+
     @Override
     TemplateElement[] accept(Environment env) throws TemplateException, IOException {
         final IterationContext iterCtx = IteratorBlock.findEnclosingIterationContext(env, null);
@@ -44,6 +44,8 @@ import freemarker.template.utility.Constants;
  */
 final class IteratorBlock extends TemplateElement {
 
+    private static final long serialVersionUID = 1L;
+
     private final Expression listedExp;
     private final String loopVarName;
     private final String loopVar2Name;
@@ -83,6 +85,14 @@ final class IteratorBlock extends TemplateElement {
         this.hashListing = hashListing;
         this.forEach = forEach;
     }
+
+    String getLoopVariableName() {
+        return loopVarName;
+    }
+
+    String getLoopVariable2Name() {
+        return loopVar2Name;
+    }
     
     boolean isHashListing() {
         return hashListing;
@@ -459,7 +469,21 @@ final class IteratorBlock extends TemplateElement {
             
             return null;
         }
-        
+
+        /**
+         * Like {@link #getLocalVariable(String)}, but doesn't know the legacy {@code _index} and {@code _has_next}
+         * variables; used by {@link LocalVariableBinding.LoopVariable}.
+         */
+        TemplateModel getLoopVariableValue(String name) {
+            if (name.equals(loopVarName)) {
+                return loopVar;
+            }
+            if (name.equals(loopVar2Name)) {
+                return loopVar2;
+            }
+            return null;
+        }
+
         public Collection getLocalVariableNames() {
             String loopVariableName = this.loopVarName;
             if (loopVariableName != null) {
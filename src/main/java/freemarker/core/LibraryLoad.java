@@ -34,6 +34,8 @@ import freemarker.template.TemplateException;
 @Deprecated
 public final class LibraryLoad extends TemplateElement {
 
+    private static final long serialVersionUID = 1L;
+
     private Expression importedTemplateNameExp;
     private String targetNsVarName;
 
@@ -49,6 +51,14 @@ public final class LibraryLoad extends TemplateElement {
         this.importedTemplateNameExp = templateName;
     }
 
+    /**
+     * Returns the imported template as a {@link TemplateDependency}, or {@code null} if that can't be known without
+     * executing the directive.
+     */
+    TemplateDependency getStaticDependency() {
+        return TemplateDependency.create(getTemplate(), importedTemplateNameExp, true, null, true);
+    }
+    
     @Override
     TemplateElement[] accept(Environment env) throws TemplateException, IOException {
         final String importedTemplateName = importedTemplateNameExp.evalAndCoerceToPlainText(env);
@@ -24,6 +24,8 @@ import freemarker.template.TemplateException;
 
 class ListElseContainer extends TemplateElement {
 
+    private static final long serialVersionUID = 1L;
+
     private final IteratorBlock listPart;
     private final ElseOfList elsePart;
 
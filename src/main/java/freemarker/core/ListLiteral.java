@@ -35,6 +35,8 @@ import freemarker.template.TemplateSequenceModel;
 
 final class ListLiteral extends Expression {
 
+    private static final long serialVersionUID = 1L;
+
     final ArrayList/*<Expression>*/ items;
 
     ListLiteral(ArrayList items) {
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import java.io.Serializable;
+
+import freemarker.core.IteratorBlock.IterationContext;
+import freemarker.template.TemplateModel;
+
+/**
+ * Tells where the value of an {@link Identifier} can be found at runtime without looking up its name in all the
+ * scopes, as was determined by {@link LocalVariableResolver} from the lexical position of the {@link Identifier}.
+ * The binding is only trusted after a few cheap runtime checks; if those fail, or the variable has no value (which
+ * means that an outer scope could still have a variable with the same name), {@link #getValue(Environment, String)}
+ * returns {@code null}, and the caller must fall back to {@link Environment#getVariable(String)}.
+ * 
+ * @since 2.3.29
+ */
+abstract class LocalVariableBinding implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @return The value of the variable, or {@code null} if it must be looked up by name.
+     */
+    abstract TemplateModel getValue(Environment env, String name);
+
+    /**
+     * A {@code #list} (or {@code #items}) loop variable; {@code offset} is the number of {@link LocalContext}-s that
+     * are above its {@link IterationContext} in the {@link LocalContextStack}.
+     */
+    static final class LoopVariable extends LocalVariableBinding {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int offset;
+
+        LoopVariable(int offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        TemplateModel getValue(Environment env, String name) {
+            LocalContextStack localContextStack = env.getLocalContextStack();
+            if (localContextStack == null) {
+                return null;
+            }
+            int index = localContextStack.size() - 1 - offset;
+            if (index < 0) {
+                return null;
+            }
+            LocalContext localContext = localContextStack.get(index);
+            return localContext instanceof IterationContext
+                    ? ((IterationContext) localContext).getLoopVariableValue(name) : null;
+        }
+
+        @Override
+        public int hashCode() {
+            return offset;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof LoopVariable && ((LoopVariable) obj).offset == offset;
+        }
+
+        @Override
+        public String toString() {
+            return "loopVariable(offset=" + offset + ")";
+        }
+
+    }
+
+    /**
+     * A parameter or a {@code #local} of a macro or function, stored in the {@code slot}-th element of
+     * {@link Macro.Context}; {@code localContextStackSize} is the number of {@code #list}-s between the
+     * {@link Identifier} and the macro, as in its scope the {@link LocalContextStack} must not contain anything else.
+     */
+    static final class MacroLocal extends LocalVariableBinding {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Macro macro;
+        private final int slot;
+        private final int localContextStackSize;
+
+        MacroLocal(Macro macro, int slot, int localContextStackSize) {
+            this.macro = macro;
+            this.slot = slot;
+            this.localContextStackSize = localContextStackSize;
+        }
+
+        @Override
+        TemplateModel getValue(Environment env, String name) {
+            Macro.Context macroContext = env.getCurrentMacroContext();
+            if (macroContext == null || macroContext.getMacro() != macro) {
+                return null;
+            }
+            LocalContextStack localContextStack = env.getLocalContextStack();
+            if ((localContextStack != null ? localContextStack.size() : 0) != localContextStackSize) {
+                return null;
+            }
+            return macroContext.getLocalVariable(slot);
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(macro) * 31 + slot) * 31 + localContextStackSize;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof MacroLocal)) {
+                return false;
+            }
+            MacroLocal other = (MacroLocal) obj;
+            return other.macro == macro && other.slot == slot
+                    && other.localContextStackSize == localContextStackSize;
+        }
+
+        @Override
+        public String toString() {
+            return "macroLocal(" + macro.getName() + ", slot=" + slot
+                    + ", localContextStackSize=" + localContextStackSize + ")";
+        }
+
+    }
+
+}
@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Binds the {@link Identifier}-s that refer to the parameters or {@code #local}-s of a macro (or function), or to
+ * {@code #list} loop variables, to the place where their value is stored at runtime (see
+ * {@link LocalVariableBinding}), so that they needn't be looked up by name in all the scopes. This runs after the
+ * template was parsed and post-processed. The {@link Identifier}-s whose scope can't be decided from the source
+ * code alone (like those outside macros and loops, or those inside the nested content of a user directive call that
+ * has loop variables) are left alone, and are looked up by name as before.
+ */
+final class LocalVariableResolver {
+
+    private static final String LEGACY_INDEX_SUFFIX = "_index";
+    private static final String LEGACY_HAS_NEXT_SUFFIX = "_has_next";
+
+    /** The scopes that the currently visited {@link TemplateObject} is inside, the innermost last. */
+    private final ArrayList<Scope> scopes = new ArrayList<Scope>();
+    /** To share the equal bindings, as there are often many references to the same variable. */
+    private final HashMap<LocalVariableBinding, LocalVariableBinding> bindings
+            = new HashMap<LocalVariableBinding, LocalVariableBinding>();
+
+    private LocalVariableResolver() {
+        // Use resolve(TemplateElement)
+    }
+
+    static void resolve(TemplateElement rootElement) {
+        if (rootElement != null) {
+            new LocalVariableResolver().visit(rootElement);
+        }
+    }
+
+    private void visit(TemplateObject tObj) {
+        if (tObj instanceof Identifier) {
+            resolve((Identifier) tObj);
+            return;
+        }
+
+        if (tObj instanceof Macro) {
+            Macro macro = (Macro) tObj;
+            collectLocalVariableNames(macro, macro);
+            // The parameter default expressions are evaluated inside the macro too
+            scopes.add(Scope.newMacroScope(macro));
+            visitParameters(tObj);
+            visitChildren(tObj);
+            scopes.remove(scopes.size() - 1);
+            return;
+        }
+
+        // Things like the listed expression of #list, or the arguments of a directive call are evaluated in the
+        // enclosing scope:
+        visitParameters(tObj);
+
+        if (tObj instanceof IteratorBlock) {
+            IteratorBlock iteratorBlock = (IteratorBlock) tObj;
+            scopes.add(Scope.newLoopScope(iteratorBlock.getLoopVariableName(), iteratorBlock.getLoopVariable2Name()));
+            visitChildren(tObj);
+            scopes.remove(scopes.size() - 1);
+        } else if (tObj instanceof Items) {
+            Items items = (Items) tObj;
+            Scope loopScope = scopes.isEmpty() ? null : scopes.get(scopes.size() - 1);
+            if (loopScope != null && loopScope.kind == Scope.KIND_LOOP) {
+                // #items sets the loop variables of the IterationContext of the enclosing #list
+                String prevLoopVarName = loopScope.loopVarName;
+                String prevLoopVar2Name = loopScope.loopVar2Name;
+                loopScope.loopVarName = items.getLoopVariableName();
+                loopScope.loopVar2Name = items.getLoopVariable2Name();
+                visitChildren(tObj);
+                loopScope.loopVarName = prevLoopVarName;
+                loopScope.loopVar2Name = prevLoopVar2Name;
+            } else {
+                visitChildrenInOpaqueScope(tObj);
+            }
+        } else if (tObj instanceof UnifiedCall && ((UnifiedCall) tObj).getBodyParameterNames() != null) {
+            visitChildrenInOpaqueScope(tObj);
+        } else {
+            visitChildren(tObj);
+        }
+    }
+
+    private void visitChildrenInOpaqueScope(TemplateObject tObj) {
+        scopes.add(Scope.OPAQUE);
+        visitChildren(tObj);
+        scopes.remove(scopes.size() - 1);
+    }
+
+    private void visitParameters(TemplateObject tObj) {
+        int paramCount = tObj.getParameterCount();
+        for (int i = 0; i < paramCount; i++) {
+            Object paramValue = tObj.getParameterValue(i);
+            if (paramValue instanceof TemplateObject) {
+                visit((TemplateObject) paramValue);
+            }
+        }
+    }
+
+    private void visitChildren(TemplateObject tObj) {
+        if (tObj instanceof TemplateElement) {
+            TemplateElement element = (TemplateElement) tObj;
+            int childCount = element.getChildCount();
+            for (int i = 0; i < childCount; i++) {
+                visit(element.getChild(i));
+            }
+        }
+    }
+
+    /**
+     * Gives a fixed index to all the {@code #local}-s in the macro body, so that the references that precede the
+     * {@code #local} in the source code can be bound too.
+     */
+    private static void collectLocalVariableNames(Macro macro, TemplateElement element) {
+        String localVarName;
+        if (element instanceof Assignment && ((Assignment) element).getScope() == Assignment.LOCAL) {
+            localVarName = ((Assignment) element).getVariableName();
+        } else if (element instanceof BlockAssignment
+                && ((BlockAssignment) element).getScope() == Assignment.LOCAL) {
+            localVarName = ((BlockAssignment) element).getVariableName();
+        } else {
+            localVarName = null;
+        }
+        if (localVarName != null) {
+            macro.addLocalVariableName(localVarName);
+        }
+
+        int childCount = element.getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            TemplateElement child = element.getChild(i);
+            if (!(child instanceof Macro)) {
+                collectLocalVariableNames(macro, child);
+            }
+        }
+    }
+
+    private void resolve(Identifier identifier) {
+        String name = identifier.getName();
+        int offset = 0;
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Scope scope = scopes.get(i);
+            if (scope.kind == Scope.KIND_LOOP) {
+                if (name.equals(scope.loopVarName) || name.equals(scope.loopVar2Name)) {
+                    bind(identifier, new LocalVariableBinding.LoopVariable(offset));
+                    return;
+                }
+                if (scope.loopVarName != null && name.startsWith(scope.loopVarName)
+                        && (name.endsWith(LEGACY_INDEX_SUFFIX) || name.endsWith(LEGACY_HAS_NEXT_SUFFIX))) {
+                    // Possibly something like "x_index"; leave it to the IterationContext
+                    return;
+                }
+                offset++;
+            } else if (scope.kind == Scope.KIND_MACRO) {
+                int index = scope.macro.getLocalVariableIndex(name);
+                if (index != -1) {
+                    bind(identifier, new LocalVariableBinding.MacroLocal(scope.macro, index, offset));
+                }
+                return;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void bind(Identifier identifier, LocalVariableBinding binding) {
+        LocalVariableBinding sharedBinding = bindings.get(binding);
+        if (sharedBinding == null) {
+            bindings.put(binding, binding);
+            sharedBinding = binding;
+        }
+        identifier.setBinding(sharedBinding);
+    }
+
+    private static final class Scope {
+
+        /** A {@code #list}, which has an {@link IteratorBlock.IterationContext} in the {@link LocalContextStack}. */
+        static final int KIND_LOOP = 0;
+        /** The body of a macro or function, which has its own {@link Macro.Context}. */
+        static final int KIND_MACRO = 1;
+        /** Something where the {@link LocalContextStack} can contain anything. */
+        static final int KIND_OPAQUE = 2;
+
+        static final Scope OPAQUE = new Scope(KIND_OPAQUE, null);
+
+        final int kind;
+        final Macro macro;
+        /** Not final, as {@code #items} changes it. */
+        String loopVarName;
+        String loopVar2Name;
+
+        private Scope(int kind, Macro macro) {
+            this.kind = kind;
+            this.macro = macro;
+        }
+
+        static Scope newLoopScope(String loopVarName, String loopVar2Name) {
+            Scope scope = new Scope(KIND_LOOP, null);
+            scope.loopVarName = loopVarName;
+            scope.loopVar2Name = loopVar2Name;
+            return scope;
+        }
+
+        static Scope newMacroScope(Macro macro) {
+            return new Scope(KIND_MACRO, macro);
+        }
+
+    }
+
+}
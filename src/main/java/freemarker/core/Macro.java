@@ -19,17 +19,21 @@
 
 package freemarker.core;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
+import freemarker.template.SimpleScalar;
+import freemarker.template.SimpleSequence;
+import freemarker.template.TemplateCollectionModel;
 import freemarker.template.TemplateException;
+import freemarker.template.TemplateHashModelEx;
 import freemarker.template.TemplateModel;
 import freemarker.template.TemplateModelException;
-import freemarker.template.TemplateModelIterator;
-import freemarker.template.TemplateScalarModel;
 
 /**
  * An element representing a macro declaration.
@@ -39,12 +43,20 @@ import freemarker.template.TemplateScalarModel;
 @Deprecated
 public final class Macro extends TemplateElement implements TemplateModel {
 
+    private static final long serialVersionUID = 1L;
+
     static final Macro DO_NOTHING_MACRO = new Macro(".pass", 
             Collections.EMPTY_LIST, 
             Collections.EMPTY_MAP,
             null, false,
             TemplateElements.EMPTY);
     
+    /**
+     * Stands for a local variable that was set to {@code null}, as opposed to one that was never set; the distinction
+     * matters for the error message when a required parameter is missing.
+     */
+    private static final TemplateModel NULL_LOCAL_VALUE = new TemplateModel() { };
+
     final static int TYPE_MACRO = 0;
     final static int TYPE_FUNCTION = 1;
     
@@ -54,6 +66,15 @@ public final class Macro extends TemplateElement implements TemplateModel {
     private final String catchAllParamName;
     private final boolean function;
 
+    /**
+     * The names of the local variables that are stored in {@link Context#localVarValues} by index: the parameters,
+     * the catch-all parameter, and then the {@code #local}-s that {@link LocalVariableResolver} has found in the
+     * body. Only changes until the template is fully parsed.
+     */
+    private final ArrayList<String> localVarNames;
+    /** The inverse of {@link #localVarNames}. */
+    private final HashMap<String, Integer> localVarIndexes;
+
     Macro(String name, List argumentNames, Map args, 
             String catchAllParamName, boolean function,
             TemplateElements children) {
@@ -64,6 +85,15 @@ public final class Macro extends TemplateElement implements TemplateModel {
         
         this.function = function;
         this.catchAllParamName = catchAllParamName; 
+
+        localVarNames = new ArrayList<String>(paramNames.length + 1);
+        localVarIndexes = new HashMap<String, Integer>();
+        for (int i = 0; i < paramNames.length; i++) {
+            addLocalVariableName(paramNames[i]);
+        }
+        if (catchAllParamName != null) {
+            addLocalVariableName(catchAllParamName);
+        }
         
         this.setChildren(children);
     }
@@ -88,6 +118,29 @@ public final class Macro extends TemplateElement implements TemplateModel {
         return name;
     }
 
+    /**
+     * Returns the index of the local variable in the {@link Context}, or -1 if it has no fixed index.
+     */
+    int getLocalVariableIndex(String name) {
+        Integer index = localVarIndexes.get(name);
+        return index != null ? index.intValue() : -1;
+    }
+
+    /**
+     * Assigns a fixed index to the local variable, unless it already has one; used during parsing.
+     * 
+     * @return The index of the local variable.
+     */
+    int addLocalVariableName(String name) {
+        Integer index = localVarIndexes.get(name);
+        if (index == null) {
+            index = Integer.valueOf(localVarNames.size());
+            localVarNames.add(name);
+            localVarIndexes.put(name, index);
+        }
+        return index.intValue();
+    }
+
     @Override
     TemplateElement[] accept(Environment env) {
         env.visitMacroDef(this);
@@ -153,7 +206,15 @@ public final class Macro extends TemplateElement implements TemplateModel {
     }
 
     class Context implements LocalContext {
-        final Environment.Namespace localVars; 
+        /** The values of the local variables listed in {@link Macro#localVarNames}, by index. */
+        private final TemplateModel[] localVarValues;
+        /**
+         * Local variables that aren't in {@link Macro#localVarNames}, like those set by a {@code #local} in an
+         * {@code #include}-d template; {@code null} if there were none yet.
+         */
+        private HashMap<String, TemplateModel> extraLocalVars;
+        /** Created on demand by {@link #getLocals()}. */
+        private LocalsHash localsHash;
         final TemplateObject callPlace;
         final Environment.Namespace nestedContentNamespace;
         final List nestedContentParameterNames;
@@ -163,7 +224,7 @@ public final class Macro extends TemplateElement implements TemplateModel {
         Context(Environment env, 
                 TemplateObject callPlace,
                 List nestedContentParameterNames) {
-            this.localVars = env.new Namespace(); 
+            this.localVarValues = new TemplateModel[localVarNames.size()];
             this.callPlace = callPlace;
             this.nestedContentNamespace = env.getCurrentNamespace();
             this.nestedContentParameterNames = nestedContentParameterNames;
@@ -187,7 +248,7 @@ public final class Macro extends TemplateElement implements TemplateModel {
                 resolvedAnArg = hasUnresolvedArg = false;
                 for (int i = 0; i < paramNames.length; ++i) {
                     String argName = paramNames[i];
-                    if (localVars.get(argName) == null) {
+                    if (getLocalVariable(i) == null) {
                         Expression valueExp = (Expression) paramDefaults.get(argName);
                         if (valueExp != null) {
                             try {
@@ -198,7 +259,7 @@ public final class Macro extends TemplateElement implements TemplateModel {
                                         hasUnresolvedArg = true;
                                     }
                                 } else {
-                                    localVars.put(argName, tm);
+                                    localVarValues[i] = tm;
                                     resolvedAnArg = true;
                                 }
                             } catch (InvalidReferenceException e) {
@@ -208,7 +269,7 @@ public final class Macro extends TemplateElement implements TemplateModel {
                                 }
                             }
                         } else if (!env.isClassicCompatible()) {
-                            boolean argWasSpecified = localVars.containsKey(argName);
+                            boolean argWasSpecified = localVarValues[i] != null;
                             throw new _MiscTemplateException(env,
                                     new _ErrorDescriptionBuilder(
                                             "When calling ", (isFunction() ? "function" : "macro"), " ",
@@ -247,27 +308,120 @@ public final class Macro extends TemplateElement implements TemplateModel {
          * or null if it doesn't exist.
          */ 
         public TemplateModel getLocalVariable(String name) throws TemplateModelException {
-             return localVars.get(name);
+            int index = getLocalVariableIndex(name);
+            if (index != -1) {
+                return getLocalVariable(index);
+            }
+            return extraLocalVars != null ? extraLocalVars.get(name) : null;
         }
 
-        Environment.Namespace getLocals() {
-            return localVars;
+        /**
+         * @param index
+         *            The index from {@link Macro#getLocalVariableIndex(String)}.
+         */
+        TemplateModel getLocalVariable(int index) {
+            TemplateModel value = localVarValues[index];
+            return value != NULL_LOCAL_VALUE ? value : null;
+        }
+
+        /**
+         * Returns a live hash view of the local variables; {@code #local}-s executed later are visible through it.
+         */
+        TemplateHashModelEx getLocals() {
+            if (localsHash == null) {
+                localsHash = new LocalsHash();
+            }
+            return localsHash;
         }
         
         /**
          * Set a local variable in this macro 
          */
         void setLocalVar(String name, TemplateModel var) {
-            localVars.put(name, var);
+            int index = getLocalVariableIndex(name);
+            if (index != -1) {
+                localVarValues[index] = var != null ? var : NULL_LOCAL_VALUE;
+            } else {
+                if (extraLocalVars == null) {
+                    extraLocalVars = new HashMap<String, TemplateModel>();
+                }
+                extraLocalVars.put(name, var);
+            }
         }
 
         public Collection getLocalVariableNames() throws TemplateModelException {
-            HashSet result = new HashSet();
-            for (TemplateModelIterator it = localVars.keys().iterator(); it.hasNext(); ) {
-                result.add(((TemplateScalarModel) it.next()).getAsString());
+            HashSet<String> result = new HashSet<String>();
+            for (int i = 0; i < localVarValues.length; i++) {
+                if (localVarValues[i] != null) {
+                    result.add(localVarNames.get(i));
+                }
+            }
+            if (extraLocalVars != null) {
+                result.addAll(extraLocalVars.keySet());
             }
             return result;
         }
+        
+        /**
+         * Hash view of the local variables that reads the slot array on each access, so it needs no copying, and
+         * doesn't get stale. Locals that were set to {@code null} are treated as non-existent.
+         */
+        private class LocalsHash implements TemplateHashModelEx {
+
+            public TemplateModel get(String key) throws TemplateModelException {
+                return getLocalVariable(key);
+            }
+
+            public boolean isEmpty() {
+                return size() == 0;
+            }
+
+            public int size() {
+                int size = 0;
+                for (int i = 0; i < localVarValues.length; i++) {
+                    TemplateModel value = localVarValues[i];
+                    if (value != null && value != NULL_LOCAL_VALUE) {
+                        size++;
+                    }
+                }
+                if (extraLocalVars != null) {
+                    for (TemplateModel value : extraLocalVars.values()) {
+                        if (value != null) {
+                            size++;
+                        }
+                    }
+                }
+                return size;
+            }
+
+            public TemplateCollectionModel keys() {
+                return collect(true);
+            }
+
+            public TemplateCollectionModel values() {
+                return collect(false);
+            }
+            
+            private TemplateCollectionModel collect(boolean keys) {
+                SimpleSequence result = new SimpleSequence(size(), null);
+                for (int i = 0; i < localVarValues.length; i++) {
+                    TemplateModel value = localVarValues[i];
+                    if (value != null && value != NULL_LOCAL_VALUE) {
+                        result.add(keys ? new SimpleScalar(localVarNames.get(i)) : value);
+                    }
+                }
+                if (extraLocalVars != null) {
+                    for (Map.Entry<String, TemplateModel> ent : extraLocalVars.entrySet()) {
+                        TemplateModel value = ent.getValue();
+                        if (value != null) {
+                            result.add(keys ? new SimpleScalar(ent.getKey()) : value);
+                        }
+                    }
+                }
+                return new CollectionAndSequence(result);
+            }
+            
+        }
     }
 
     @Override
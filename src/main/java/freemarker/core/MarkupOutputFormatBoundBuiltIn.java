@@ -24,6 +24,8 @@ import freemarker.template.utility.NullArgumentException;
 
 abstract class MarkupOutputFormatBoundBuiltIn extends SpecialBuiltIn {
     
+    private static final long serialVersionUID = 1L;
+
     protected MarkupOutputFormat outputFormat;
     
     void bindToMarkupOutputFormat(MarkupOutputFormat outputFormat) {
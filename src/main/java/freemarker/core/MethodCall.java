@@ -41,6 +41,8 @@ import freemarker.template.utility.NullWriter;
  */
 final class MethodCall extends Expression {
 
+    private static final long serialVersionUID = 1L;
+
     private final Expression target;
     private final ListLiteral arguments;
 
@@ -50,9 +50,9 @@ class MiscUtil {
                         Map.Entry ent2 = (Map.Entry) o2;
                         Expression exp2 = (Expression) ent2.getValue();
                         
-                        int res = exp1.beginLine - exp2.beginLine;
+                        int res = exp1.getBeginLine() - exp2.getBeginLine();
                         if (res != 0) return res;
-                        res = exp1.beginColumn - exp2.beginColumn;
+                        res = exp1.getBeginColumn() - exp2.getBeginColumn();
                         if (res != 0) return res;
                         
                         if (ent1 == ent2) return 0;
@@ -28,6 +28,8 @@ import freemarker.template.TemplateException;
  */
 final class MixedContent extends TemplateElement {
 
+    private static final long serialVersionUID = 1L;
+
     MixedContent() { }
     
     /**
@@ -36,6 +36,8 @@ import freemarker.template.TemplateModelException;
  */
 class NewBI extends BuiltIn {
     
+    private static final long serialVersionUID = 1L;
+
     static Class<?> JYTHON_MODEL_CLASS;
     static {
         try {
@@ -28,6 +28,8 @@ import freemarker.template.TemplateException;
  */
 final class NoAutoEscBlock extends TemplateElement {
     
+    private static final long serialVersionUID = 1L;
+
     NoAutoEscBlock(TemplateElements children) { 
         setChildren(children);
     }
@@ -23,6 +23,8 @@ import freemarker.template.TemplateException;
 
 final class NotExpression extends BooleanExpression {
 
+    private static final long serialVersionUID = 1L;
+
     private final Expression target;
 
     NotExpression(Expression target) {
@@ -30,6 +30,8 @@ import freemarker.template.TemplateNumberModel;
  */
 final class NumberLiteral extends Expression implements TemplateNumberModel {
 
+    private static final long serialVersionUID = 1L;
+
     private final Number value;
 
     public NumberLiteral(Number value) {
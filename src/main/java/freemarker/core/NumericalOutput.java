@@ -35,6 +35,8 @@ import freemarker.template.utility.StringUtil;
  */
 final class NumericalOutput extends Interpolation {
 
+    private static final long serialVersionUID = 1L;
+
     private final Expression expression;
     private final boolean hasFormat;
     private final int minFracDigits;
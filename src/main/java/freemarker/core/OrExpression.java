@@ -23,6 +23,8 @@ import freemarker.template.TemplateException;
 
 final class OrExpression extends BooleanExpression {
 
+    private static final long serialVersionUID = 1L;
+
     private final Expression lho;
     private final Expression rho;
 
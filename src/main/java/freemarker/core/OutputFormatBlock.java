@@ -28,6 +28,8 @@ import freemarker.template.TemplateException;
  */
 final class OutputFormatBlock extends TemplateElement {
     
+    private static final long serialVersionUID = 1L;
+
     private final Expression paramExp;
 
     OutputFormatBlock(TemplateElements children, Expression paramExp) { 
@@ -24,6 +24,8 @@ import freemarker.template.utility.NullArgumentException;
 
 abstract class OutputFormatBoundBuiltIn extends SpecialBuiltIn {
     
+    private static final long serialVersionUID = 1L;
+
     protected OutputFormat outputFormat;
     protected int autoEscapingPolicy;
     
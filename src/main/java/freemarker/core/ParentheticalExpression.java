@@ -24,6 +24,8 @@ import freemarker.template.TemplateModel;
 
 final class ParentheticalExpression extends Expression {
 
+    private static final long serialVersionUID = 1L;
+
     private final Expression nested;
 
     ParentheticalExpression(Expression nested) {
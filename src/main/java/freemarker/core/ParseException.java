@@ -210,8 +210,8 @@ public class ParseException extends IOException implements FMParserConstants {
     public ParseException(String description, TemplateObject tobj, Throwable cause) {
         this(description,
                 tobj.getTemplate() == null ? null : tobj.getTemplate().getSourceName(),
-                        tobj.beginLine, tobj.beginColumn,
-                        tobj.endLine, tobj.endColumn,
+                        tobj.getBeginLine(), tobj.getBeginColumn(),
+                        tobj.getEndLine(), tobj.getEndColumn(),
                         cause);
     }
 
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import freemarker.cache.ConcurrentLfuCacheStorage;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+/**
+ * Caches the expressions parsed by {@code ?eval}, and the templates parsed by {@code ?interpret}, so that evaluating
+ * the same source string again doesn't invoke the parser. This is enabled with
+ * {@link Configuration#setParsedFragmentCacheSize(int)}, and is returned by
+ * {@link Configuration#getParsedFragmentCache()}, mostly to query its statistics.
+ * 
+ * <p>
+ * The cache key contains the source string, and all the {@link ParserConfiguration} settings that are in effect at the
+ * place of the call, so changing those settings (even on the {@link Configuration} itself) will not lead to using a
+ * stale parse result. As the expressions parsed by {@code ?eval} belong to the template that contains the
+ * {@code ?eval} call, those are only shared inside that template. The templates created by {@code ?interpret} are
+ * shared between all templates that give them the same name.
+ * 
+ * <p>
+ * The number of entries is bounded; when the cache is full, the entries used rarely are evicted first (see
+ * {@link ConcurrentLfuCacheStorage}). Parsing errors aren't cached.
+ * 
+ * @since 2.3.29
+ */
+public final class ParsedFragmentCache {
+    
+    private final int maxSize;
+    private final ConcurrentLfuCacheStorage storage;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    ParsedFragmentCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        this.maxSize = maxSize;
+        storage = new ConcurrentLfuCacheStorage(maxSize, 0);
+    }
+    
+    Expression getExpression(Template parentTemplate, String source, ParserConfiguration pCfg) {
+        return (Expression) get(new Key(false, parentTemplate, source, pCfg));
+    }
+
+    void putExpression(Template parentTemplate, String source, ParserConfiguration pCfg, Expression exp) {
+        storage.put(new Key(false, parentTemplate, source, pCfg), exp);
+    }
+    
+    /**
+     * Returns the template that was stored earlier with the same arguments; it must not be modified, as it's shared.
+     */
+    Template getTemplate(String name, String source, ParserConfiguration pCfg) {
+        return (Template) get(new Key(true, name, source, pCfg));
+    }
+
+    void putTemplate(String name, String source, ParserConfiguration pCfg, Template template) {
+        storage.put(new Key(true, name, source, pCfg), template);
+    }
+
+    private Object get(Key key) {
+        Object value = storage.get(key);
+        (value != null ? hitCount : missCount).incrementAndGet();
+        return value;
+    }
+    
+    /**
+     * The maximum number of entries, as was specified with {@link Configuration#setParsedFragmentCacheSize(int)}.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * The current number of entries.
+     */
+    public int getSize() {
+        return storage.getSize();
+    }
+
+    /**
+     * The number of lookups that have found a parse result, and so the parsing was skipped.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * The number of lookups that haven't found a parse result, and so the source had to be parsed.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Removes all entries; the statistics aren't reset.
+     */
+    public void clear() {
+        storage.clear();
+    }
+    
+    @Override
+    public String toString() {
+        return "ParsedFragmentCache(size=" + getSize() + "/" + maxSize
+                + ", hits=" + getHitCount() + ", misses=" + getMissCount() + ")";
+    }
+
+    private static final class Key {
+        
+        private final Object[] parts;
+        private final int hashCode;
+        
+        /**
+         * @param scope
+         *            The template of the {@code ?eval} call ({@link Template} is compared by identity), or the
+         *            name of the template created by {@code ?interpret}.
+         */
+        Key(boolean template, Object scope, String source, ParserConfiguration pCfg) {
+            parts = new Object[] {
+                    Boolean.valueOf(template), scope, source,
+                    Integer.valueOf(pCfg.getTagSyntax()),
+                    Integer.valueOf(pCfg.getInterpolationSyntax()),
+                    Integer.valueOf(pCfg.getNamingConvention()),
+                    Boolean.valueOf(pCfg.getWhitespaceStripping()),
+                    Boolean.valueOf(pCfg.getStrictSyntaxMode()),
+                    Integer.valueOf(pCfg.getAutoEscapingPolicy()),
+                    pCfg.getOutputFormat(),
+                    Boolean.valueOf(pCfg.getRecognizeStandardFileExtensions()),
+                    pCfg.getIncompatibleImprovements(),
+                    Integer.valueOf(pCfg.getTabSize()),
+                    pCfg.getArithmeticEngine() };
+            hashCode = Arrays.hashCode(parts);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && hashCode == ((Key) obj).hashCode && Arrays.equals(parts, ((Key) obj).parts);
+        }
+        
+    }
+
+}
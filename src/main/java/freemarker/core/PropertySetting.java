@@ -36,6 +36,8 @@ import freemarker.template.utility.StringUtil;
  */
 final class PropertySetting extends TemplateElement {
 
+    private static final long serialVersionUID = 1L;
+
     private final String key;
     private final Expression value;
     
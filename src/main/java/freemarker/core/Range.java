@@ -28,6 +28,8 @@ import freemarker.template._TemplateAPI;
  */
 final class Range extends Expression {
 
+    private static final long serialVersionUID = 1L;
+
     static final int END_INCLUSIVE = 0; 
     static final int END_EXCLUSIVE = 1; 
     static final int END_UNBOUND = 2; 
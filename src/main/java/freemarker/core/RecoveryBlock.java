@@ -25,6 +25,8 @@ import freemarker.template.TemplateException;
 
 final class RecoveryBlock extends TemplateElement {
     
+    private static final long serialVersionUID = 1L;
+
     RecoveryBlock(TemplateElements children) {
         setChildren(children);
     }
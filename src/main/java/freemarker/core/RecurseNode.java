@@ -35,6 +35,8 @@ import freemarker.template.TemplateSequenceModel;
  */
 final class RecurseNode extends TemplateElement {
     
+    private static final long serialVersionUID = 1L;
+
     Expression targetNode, namespaces;
     
     RecurseNode(Expression targetNode, Expression namespaces) {
@@ -26,6 +26,8 @@ import freemarker.template.TemplateException;
  */
 public final class ReturnInstruction extends TemplateElement {
 
+    private static final long serialVersionUID = 1L;
+
     private Expression exp;
 
     ReturnInstruction(Expression exp) {
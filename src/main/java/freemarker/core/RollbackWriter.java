@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+
+import freemarker.template.Configuration;
+
+/**
+ * Holds back the output of {@code #attempt} blocks until it's known that they were successful, and supports rolling
+ * back to an earlier {@link #mark()}, so that nested {@code #attempt} blocks can share the same buffer. Until the
+ * {@link Configuration#setAttemptOutputSpillThreshold(int) spill threshold} is reached, the characters are kept in a
+ * {@link _SegmentedWriter}, and after that they are moved into a temporary file (as 2 bytes per {@code char}, so that
+ * even unpaired surrogates survive), so that the memory usage stays limited regardless of the size of the section.
+ * The temporary file is created in the {@link Configuration#setAttemptOutputSpillDirectory(File) spill directory},
+ * readable only by its owner where the runtime allows that, and it's deleted by {@link #release()}. Not thread safe.
+ * 
+ * @since 2.3.29
+ */
+final class RollbackWriter extends Writer {
+
+    private static final String SPILL_FILE_PREFIX = "freemarker-attempt-";
+    private static final String SPILL_FILE_SUFFIX = ".tmp";
+
+    private final Writer out;
+    private final _SegmentedWriter buffer;
+    private final int spillThreshold;
+    private final File spillDirectory;
+
+    private File spillFile;
+    private FileOutputStream spillFileOut;
+    private OutputStream spillOut;
+    /** The number of characters in the spill file. */
+    private long spilledLength;
+
+    /**
+     * @param out
+     *            Where the output goes after {@link #commit()}.
+     * @param spillThreshold
+     *            The number of buffered characters after which they are moved to a temporary file, or 0 if they
+     *            should be always kept in memory.
+     * @param spillDirectory
+     *            The directory where the temporary file is created, or {@code null} if it should be in the
+     *            {@code java.io.tmpdir} directory.
+     */
+    RollbackWriter(Writer out, Environment env, int spillThreshold, File spillDirectory) {
+        this.out = out;
+        this.buffer = new _SegmentedWriter(env);
+        this.spillThreshold = spillThreshold;
+        this.spillDirectory = spillDirectory;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        buffer.write(c);
+        spillIfNeeded();
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        buffer.write(cbuf, off, len);
+        spillIfNeeded();
+    }
+
+    @Override
+    public void write(String str) throws IOException {
+        buffer.write(str);
+        spillIfNeeded();
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        buffer.write(str, off, len);
+        spillIfNeeded();
+    }
+
+    /**
+     * Returns a position that can be later passed to {@link #rollback(long)}.
+     */
+    long mark() {
+        return spilledLength + buffer.getLength();
+    }
+
+    /**
+     * Discards everything that was written since the given {@link #mark()}.
+     */
+    void rollback(long mark) throws IOException {
+        if (mark >= spilledLength) {
+            buffer.truncate((int) (mark - spilledLength));
+        } else {
+            buffer.release();
+            spillOut.flush();
+            spillFileOut.getChannel().truncate(mark * 2);
+            spilledLength = mark;
+        }
+    }
+
+    /**
+     * Writes everything that was written into this writer to the wrapped {@link Writer}.
+     */
+    void commit() throws IOException {
+        if (spillFile != null) {
+            spillOut.flush();
+            char[] chars = new char[CharSegmentPool.SEGMENT_SIZE];
+            InputStream in = new BufferedInputStream(new FileInputStream(spillFile));
+            try {
+                long remaining = spilledLength;
+                while (remaining > 0) {
+                    int n = (int) Math.min(remaining, chars.length);
+                    for (int i = 0; i < n; i++) {
+                        int b1 = in.read();
+                        int b2 = in.read();
+                        if (b2 == -1) {
+                            throw new IOException("Unexpected end of file: " + spillFile);
+                        }
+                        chars[i] = (char) ((b1 << 8) | b2);
+                    }
+                    out.write(chars, 0, n);
+                    remaining -= n;
+                }
+            } finally {
+                in.close();
+            }
+        }
+        buffer.writeTo(out);
+    }
+
+    /**
+     * Releases the buffer, and deletes the temporary file if there's one. Must be called at the end, even if
+     * {@link #commit()} wasn't called.
+     */
+    void release() {
+        buffer.release();
+        if (spillFile != null) {
+            try {
+                spillOut.close();
+            } catch (IOException e) {
+                // Ignored, as the file is deleted anyway
+            }
+            spillFile.delete();
+            spillFile = null;
+            spillFileOut = null;
+            spillOut = null;
+            spilledLength = 0;
+        }
+    }
+
+    private void spillIfNeeded() throws IOException {
+        int bufferedLength = buffer.getLength();
+        if (spillThreshold == 0 || bufferedLength <= spillThreshold) {
+            return;
+        }
+        
+        if (spillFile == null) {
+            File file = createSpillFile();
+            try {
+                spillFileOut = new FileOutputStream(file);
+            } catch (IOException e) {
+                file.delete();
+                throw e;
+            }
+            spillOut = new BufferedOutputStream(spillFileOut);
+            spillFile = file;
+        }
+        buffer.writeTo(new Writer() {
+
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                int end = off + len;
+                for (int i = off; i < end; i++) {
+                    char c = cbuf[i];
+                    spillOut.write(c >> 8);
+                    spillOut.write(c);
+                }
+            }
+
+            @Override
+            public void flush() {
+                // Not used
+            }
+
+            @Override
+            public void close() {
+                // Not used
+            }
+            
+        });
+        buffer.release();
+        spilledLength += bufferedLength;
+    }
+
+    private File createSpillFile() throws IOException {
+        _Java8 java8 = _JavaVersions.JAVA_8;
+        // Not using File.deleteOnExit(), as that retains the path of each file until the JVM exits.
+        return java8 != null
+                ? java8.createOwnerOnlyTempFile(SPILL_FILE_PREFIX, SPILL_FILE_SUFFIX, spillDirectory)
+                : File.createTempFile(SPILL_FILE_PREFIX, SPILL_FILE_SUFFIX, spillDirectory);
+    }
+
+    /**
+     * Does nothing, as the output can't be sent further until it's committed.
+     */
+    @Override
+    public void flush() {
+        // Nothing to do
+    }
+
+    /**
+     * Does nothing; see {@link #release()}.
+     */
+    @Override
+    public void close() {
+        // Nothing to do
+    }
+
+}
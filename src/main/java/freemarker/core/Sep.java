@@ -28,6 +28,8 @@ import freemarker.template.TemplateException;
  */
 class Sep extends TemplateElement {
 
+    private static final long serialVersionUID = 1L;
+
     public Sep(TemplateElements children) {
         setChildren(children);
     }
@@ -24,4 +24,6 @@ package freemarker.core;
  */
 abstract class SpecialBuiltIn extends BuiltIn {
 
+    private static final long serialVersionUID = 1L;
+
 }
@@ -26,6 +26,8 @@ import freemarker.template.TemplateException;
  */
 final class StopInstruction extends TemplateElement {
 
+    private static final long serialVersionUID = 1L;
+
     private Expression exp;
 
     StopInstruction(Expression exp) {
@@ -19,7 +19,6 @@
 
 package freemarker.core;
 
-import java.io.StringReader;
 import java.util.List;
 
 import freemarker.template.Configuration;
@@ -32,6 +31,8 @@ import freemarker.template.utility.StringUtil;
 
 final class StringLiteral extends Expression implements TemplateScalarModel {
     
+    private static final long serialVersionUID = 1L;
+
     private final String value;
     
     /** {@link List} of {@link String}-s and {@link Interpolation}-s. */
@@ -58,14 +59,12 @@ final class StringLiteral extends Expression implements TemplateScalarModel {
                     || intSyn == Configuration.LEGACY_INTERPOLATION_SYNTAX && value.indexOf("#{") != -1)
                     || intSyn == Configuration.SQUARE_BRACKET_INTERPOLATION_SYNTAX && value.indexOf("[=") != -1)) {
             try {
-                SimpleCharStream simpleCharacterStream = new SimpleCharStream(
-                        new StringReader(value),
-                        beginLine, beginColumn + 1,
-                        value.length());
-                simpleCharacterStream.setTabSize(pcfg.getTabSize());
+                ArrayCharStream charStream = new ArrayCharStream(
+                        value, getBeginLine(), getBeginColumn() + 1);
+                charStream.setTabSize(pcfg.getTabSize());
                 
                 FMParserTokenManager tkMan = new FMParserTokenManager(
-                        simpleCharacterStream);
+                        charStream);
                 
                 FMParser parser = new FMParser(parentTemplate, false, tkMan, pcfg);
                 // We continue from the parent parser's current state:
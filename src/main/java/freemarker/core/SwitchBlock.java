@@ -28,6 +28,8 @@ import freemarker.template.TemplateException;
  */
 final class SwitchBlock extends TemplateElement {
 
+    private static final long serialVersionUID = 1L;
+
     private Case defaultCase;
     private final Expression searched;
     private int firstCaseIndex;
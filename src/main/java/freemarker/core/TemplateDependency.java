@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.io.Serializable;
+
+import freemarker.cache.TemplateCache;
+import freemarker.cache.TemplateNameFormat;
+import freemarker.cache._CacheAPI;
+import freemarker.template.MalformedTemplateNameException;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template.utility.NullArgumentException;
+import freemarker.template.utility.StringUtil;
+
+/**
+ * A template that another template includes or imports, as it's known after parsing, without executing the
+ * template. Only {@code #include} and {@code #import} directives whose template name (and other parameters that
+ * influence the loading) are literals are known this way. See {@link Template#getStaticDependencies()}.
+ * 
+ * @since 2.3.29
+ */
+public final class TemplateDependency implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+
+    private final String templateName;
+    private final boolean imported;
+    private final String encoding;
+    private final boolean parse;
+    
+    TemplateDependency(String templateName, boolean imported, String encoding, boolean parse) {
+        NullArgumentException.check("templateName", templateName);
+        this.templateName = templateName;
+        this.imported = imported;
+        this.encoding = encoding;
+        this.parse = parse;
+    }
+
+    /**
+     * Creates the dependency on the template whose name is the value of {@code templateNameExp}, or returns
+     * {@code null} if that's not a literal, or is a malformed name.
+     * 
+     * @param template
+     *            The template that contains the directive; its name is the base of relative template names.
+     */
+    static TemplateDependency create(
+            Template template, Expression templateNameExp, boolean imported, String encoding, boolean parse) {
+        if (!templateNameExp.isLiteral()) {
+            return null;
+        }
+        try {
+            String templateName = templateNameExp.evalAndCoerceToPlainText(null);
+            TemplateNameFormat templateNameFormat = template.getConfiguration().getTemplateNameFormat();
+            if (template.getName() != null) {
+                templateName = _CacheAPI.toRootBasedName(templateNameFormat, template.getName(), templateName);
+            }
+            return new TemplateDependency(
+                    _CacheAPI.normalizeRootBasedName(templateNameFormat, templateName), imported, encoding, parse);
+        } catch (MalformedTemplateNameException e) {
+            // Will be reported when the directive is executed
+            return null;
+        } catch (TemplateException e) {
+            // Evaluation of literals must not throw a TemplateException
+            throw new BugException(e);
+        }
+    }
+
+    /**
+     * The root based name of the template, that is, if the name was relative in the directive, it's already resolved
+     * relatively to the name of the depending template. This is the name that's passed to
+     * {@link TemplateCache#getTemplate(String, java.util.Locale, Object, String, boolean)} when the directive is
+     * executed.
+     */
+    public String getTemplateName() {
+        return templateName;
+    }
+
+    /**
+     * Whether the template is imported with {@code #import}, or included with {@code #include}.
+     */
+    public boolean isImported() {
+        return imported;
+    }
+
+    /**
+     * The {@code encoding} parameter of the {@code #include} directive, or {@code null} if it wasn't specified, in
+     * which case the encoding of the main template will be used.
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * The {@code parse} parameter of the {@code #include} directive; always {@code true} for {@code #import}.
+     */
+    public boolean getParse() {
+        return parse;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = templateName.hashCode();
+        result = 31 * result + (imported ? 1 : 0);
+        result = 31 * result + (encoding != null ? encoding.hashCode() : 0);
+        result = 31 * result + (parse ? 1 : 0);
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof TemplateDependency)) return false;
+        TemplateDependency other = (TemplateDependency) obj;
+        return templateName.equals(other.templateName) && imported == other.imported
+                && (encoding == null ? other.encoding == null : encoding.equals(other.encoding))
+                && parse == other.parse;
+    }
+
+    @Override
+    public String toString() {
+        return (imported ? "#import " : "#include ") + StringUtil.jQuote(templateName)
+                + (encoding != null ? " encoding=" + StringUtil.jQuote(encoding) : "")
+                + (!parse ? " parse=false" : "");
+    }
+
+}
@@ -39,6 +39,8 @@ import freemarker.template.TemplateSequenceModel;
 @Deprecated
 abstract public class TemplateElement extends TemplateObject {
 
+    private static final long serialVersionUID = 1L;
+
     private static final int INITIAL_REGULATED_CHILD_BUFFER_CAPACITY = 6;
 
     private TemplateElement parent;
@@ -301,6 +303,39 @@ abstract public class TemplateElement extends TemplateObject {
         this.childCount = childCount + 1;
     }
 
+    /**
+     * Replaces the children from {@code fromIndex} (inclusive) to {@code toIndex} (exclusive) with the given elements,
+     * which can be less or more than the replaced ones, or none.
+     * 
+     * @param replacement
+     *            The array that contains the new elements; maybe {@code null} if {@code replacementCount} is 0. It
+     *            won't be stored in this element, so it can be the child buffer of another element.
+     * 
+     * @since 2.3.29
+     */
+    final void replaceChildren(int fromIndex, int toIndex, TemplateElement[] replacement, int replacementCount) {
+        final int newChildCount = childCount - (toIndex - fromIndex) + replacementCount;
+        if (newChildCount == 0) {
+            childBuffer = null;
+            childCount = 0;
+            return;
+        }
+        
+        TemplateElement[] newChildBuffer = new TemplateElement[newChildCount];
+        System.arraycopy(childBuffer, 0, newChildBuffer, 0, fromIndex);
+        for (int i = 0; i < replacementCount; i++) {
+            TemplateElement newChild = replacement[i];
+            newChild.parent = this;
+            newChildBuffer[fromIndex + i] = newChild;
+        }
+        System.arraycopy(childBuffer, toIndex, newChildBuffer, fromIndex + replacementCount, childCount - toIndex);
+        for (int i = fromIndex; i < newChildCount; i++) {
+            newChildBuffer[i].index = i;
+        }
+        childBuffer = newChildBuffer;
+        childCount = newChildCount;
+    }
+
     final TemplateElement getChild(int index) {
         return childBuffer[index];
     }
@@ -406,6 +441,27 @@ abstract public class TemplateElement extends TemplateObject {
         return this;
     }
 
+    /**
+     * Reduces the heap usage of the AST subtree rooted by this element; this is called after the parsing and the
+     * post-processing of the template is done. It trims the child buffers to their exact size, and lets the elements
+     * replace their immutable parts with shared instances. The AST can still be modified later, only the child
+     * buffers will grow again then.
+     * 
+     * @param textInternPool
+     *            The pool through which the static texts are shared with other templates; maybe {@code null}.
+     */
+    void compact(TemplateTextInternPool textInternPool) {
+        int childCount = this.childCount;
+        if (childCount != 0) {
+            if (childCount != childBuffer.length) {
+                setChildBufferCapacity(childCount);
+            }
+            for (int i = 0; i < childCount; i++) {
+                childBuffer[i].compact(textInternPool);
+            }
+        }
+    }
+
     boolean isIgnorable(boolean stripWhitespace) {
         return false;
     }
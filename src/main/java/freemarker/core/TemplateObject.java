@@ -19,6 +19,13 @@
 
 package freemarker.core;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.WeakHashMap;
+
 import freemarker.template.Template;
 
 /**
@@ -32,15 +39,47 @@ import freemarker.template.Template;
  *             it.
  */
 @Deprecated
-public abstract class TemplateObject {
+public abstract class TemplateObject implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+
+    /** Not serialized, as it's the {@link Template} that contains the AST; see {@link _TemplateObjectInputStream}. */
+    private transient Template template;
     
-    private Template template;
-    int beginColumn, beginLine, endColumn, endLine;
+    /**
+     * The begin and end position of the object in the template source, packed into a single {@code long} instead of
+     * 4 {@code int}-s, as there are a lot of AST nodes in the cached templates. The layout, from the lowest bit:
+     * end column (13 bits), begin column (13 bits), end line minus begin line (14 bits), begin line (22 bits), and a
+     * flag that marks that the line numbers were shifted by {@link #RUNTIME_EVAL_LINE_DISPLACEMENT} (1 bit). If the
+     * values don't fit into that, this is {@link #WIDE_LOCATION}, and the position is stored in
+     * {@link #WIDE_LOCATIONS}.
+     */
+    private long location;
     
     /** This is needed for an ?eval hack; the expression AST nodes will be the descendants of the template, however,
      *  we can't give their position in the template, only in the dynamic string that's evaluated. That's signaled
      *  by a negative line numbers, starting from this constant as line 1. */
     static final int RUNTIME_EVAL_LINE_DISPLACEMENT = -1000000000;  
+    
+    private static final int COLUMN_BITS = 13;
+    private static final int LINE_SPAN_BITS = 14;
+    private static final int LINE_BITS = 22;
+    private static final int MAX_COLUMN = (1 << COLUMN_BITS) - 1;
+    private static final int MAX_LINE_SPAN = (1 << LINE_SPAN_BITS) - 1;
+    private static final int MAX_LINE = (1 << LINE_BITS) - 1;
+    private static final int BEGIN_COLUMN_SHIFT = COLUMN_BITS;
+    private static final int LINE_SPAN_SHIFT = BEGIN_COLUMN_SHIFT + COLUMN_BITS;
+    private static final int BEGIN_LINE_SHIFT = LINE_SPAN_SHIFT + LINE_SPAN_BITS;
+    private static final long EVAL_LINE_FLAG = 1L << (BEGIN_LINE_SHIFT + LINE_BITS);
+    /** Marks that the position didn't fit into {@link #location}; it's the only negative value of it. */
+    private static final long WIDE_LOCATION = -1L;
+    
+    /**
+     * The positions that didn't fit into {@link #location}, each as an array of begin column, begin line, end column,
+     * end line. This only happens with extremely long lines or templates, so it's not worth to make every AST node
+     * bigger for them.
+     */
+    private static final Map<TemplateObject, int[]> WIDE_LOCATIONS = new WeakHashMap<TemplateObject, int[]>();
 
     final void setLocation(Template template, Token begin, Token end) {
         setLocation(template, begin.beginColumn, begin.beginLine, end.endColumn, end.endLine);
@@ -58,39 +97,101 @@ public abstract class TemplateObject {
     }
     
     final void setLocation(Template template, Token begin, TemplateObject end) {
-        setLocation(template, begin.beginColumn, begin.beginLine, end.endColumn, end.endLine);
+        setLocation(template, begin.beginColumn, begin.beginLine, end.getEndColumn(), end.getEndLine());
     }
     
     final void setLocation(Template template, TemplateObject begin, Token end) {
-        setLocation(template, begin.beginColumn, begin.beginLine, end.endColumn, end.endLine);
+        setLocation(template, begin.getBeginColumn(), begin.getBeginLine(), end.endColumn, end.endLine);
     }
 
     final void setLocation(Template template, TemplateObject begin, TemplateObject end) {
-        setLocation(template, begin.beginColumn, begin.beginLine, end.endColumn, end.endLine);
+        setLocation(template, begin.getBeginColumn(), begin.getBeginLine(), end.getEndColumn(), end.getEndLine());
     }
 
     void setLocation(Template template, int beginColumn, int beginLine, int endColumn, int endLine) {
         this.template = template;
-        this.beginColumn = beginColumn;
-        this.beginLine = beginLine;
-        this.endColumn = endColumn;
-        this.endLine = endLine;
+        long location = packLocation(beginColumn, beginLine, endColumn, endLine);
+        if (location == WIDE_LOCATION) {
+            setWideLocation(new int[] { beginColumn, beginLine, endColumn, endLine });
+        } else if (this.location == WIDE_LOCATION) {
+            setWideLocation(null);
+        }
+        this.location = location;
+    }
+
+    /**
+     * Packs the position into the format of {@link #location}, or returns {@link #WIDE_LOCATION} if it doesn't fit.
+     */
+    private static long packLocation(int beginColumn, int beginLine, int endColumn, int endLine) {
+        long evalLineFlag = 0;
+        if (beginLine < 0 && endLine < 0) {
+            beginLine -= RUNTIME_EVAL_LINE_DISPLACEMENT;
+            endLine -= RUNTIME_EVAL_LINE_DISPLACEMENT;
+            evalLineFlag = EVAL_LINE_FLAG;
+        }
+        int lineSpan = endLine - beginLine;
+        if (beginLine < 0 || beginLine > MAX_LINE || lineSpan < 0 || lineSpan > MAX_LINE_SPAN
+                || beginColumn < 0 || beginColumn > MAX_COLUMN || endColumn < 0 || endColumn > MAX_COLUMN) {
+            return WIDE_LOCATION;
+        }
+        return evalLineFlag
+                | (long) beginLine << BEGIN_LINE_SHIFT
+                | (long) lineSpan << LINE_SPAN_SHIFT
+                | (long) beginColumn << BEGIN_COLUMN_SHIFT
+                | endColumn;
+    }
+
+    private int[] getWideLocation() {
+        synchronized (WIDE_LOCATIONS) {
+            return WIDE_LOCATIONS.get(this);
+        }
+    }
+
+    /**
+     * @param wideLocation
+     *            Not modified later, so it can be shared by multiple objects; {@code null} to remove the entry.
+     */
+    private void setWideLocation(int[] wideLocation) {
+        synchronized (WIDE_LOCATIONS) {
+            if (wideLocation != null) {
+                WIDE_LOCATIONS.put(this, wideLocation);
+            } else {
+                WIDE_LOCATIONS.remove(this);
+            }
+        }
     }
     
     public final int getBeginColumn() {
-        return beginColumn;
+        long location = this.location;
+        if (location == WIDE_LOCATION) {
+            return getWideLocation()[0];
+        }
+        return (int) (location >>> BEGIN_COLUMN_SHIFT) & MAX_COLUMN;
     }
 
     public final int getBeginLine() {
-        return beginLine;
+        long location = this.location;
+        if (location == WIDE_LOCATION) {
+            return getWideLocation()[1];
+        }
+        int beginLine = (int) (location >>> BEGIN_LINE_SHIFT) & MAX_LINE;
+        return (location & EVAL_LINE_FLAG) == 0 ? beginLine : beginLine + RUNTIME_EVAL_LINE_DISPLACEMENT;
     }
 
     public final int getEndColumn() {
-        return endColumn;
+        long location = this.location;
+        if (location == WIDE_LOCATION) {
+            return getWideLocation()[2];
+        }
+        return (int) location & MAX_COLUMN;
     }
 
     public final int getEndLine() {
-        return endLine;
+        long location = this.location;
+        if (location == WIDE_LOCATION) {
+            return getWideLocation()[3];
+        }
+        return getBeginLine() + ((int) (location >>> LINE_SPAN_SHIFT) & MAX_LINE_SPAN);
     }
 
     /**
@@ -98,7 +199,7 @@ public abstract class TemplateObject {
      * where in the template source, this object is.
      */
     public String getStartLocation() {
-        return _MessageUtil.formatLocationForEvaluationError(template, beginLine, beginColumn);
+        return _MessageUtil.formatLocationForEvaluationError(template, getBeginLine(), getBeginColumn());
     }
 
     /**
@@ -110,7 +211,7 @@ public abstract class TemplateObject {
     }
 
     public String getEndLocation() {
-        return _MessageUtil.formatLocationForEvaluationError(template, endLine, endColumn);
+        return _MessageUtil.formatLocationForEvaluationError(template, getEndLine(), getEndColumn());
     }
 
     /**
@@ -124,7 +225,7 @@ public abstract class TemplateObject {
     public final String getSource() {
         String s;
         if (template != null) {
-            s = template.getSource(beginColumn, beginLine, endColumn, endLine);
+            s = template.getSource(getBeginColumn(), getBeginLine(), getEndColumn(), getEndLine());
         } else {
             s = null;
         }
@@ -149,16 +250,18 @@ public abstract class TemplateObject {
      * column and line numbers is contained within this template object.
      */
     public boolean contains(int column, int line) {
+        int beginLine = getBeginLine();
+        int endLine = getEndLine();
         if (line < beginLine || line > endLine) {
             return false;
         }
         if (line == beginLine) {
-            if (column < beginColumn) {
+            if (column < getBeginColumn()) {
                 return false;
             }
         }
         if (line == endLine) {
-            if (column > endColumn) {
+            if (column > getEndColumn()) {
                 return false;
             }
         }
@@ -168,13 +271,33 @@ public abstract class TemplateObject {
     public Template getTemplate() {
         return template;
     }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        if (location == WIDE_LOCATION) {
+            out.writeObject(getWideLocation());
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (in instanceof _TemplateObjectInputStream) {
+            template = ((_TemplateObjectInputStream) in).getTemplate();
+        }
+        if (location == WIDE_LOCATION) {
+            setWideLocation((int[]) in.readObject());
+        }
+    }
     
     TemplateObject copyLocationFrom(TemplateObject from) {
         template = from.template;
-        beginColumn = from.beginColumn;
-        beginLine = from.beginLine;
-        endColumn = from.endColumn;
-        endLine = from.endLine;
+        long location = from.location;
+        if (location == WIDE_LOCATION) {
+            setWideLocation(from.getWideLocation());
+        } else if (this.location == WIDE_LOCATION) {
+            setWideLocation(null);
+        }
+        this.location = location;
         return this;
     }    
 
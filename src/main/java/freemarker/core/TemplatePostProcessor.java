@@ -19,16 +19,63 @@
 
 package freemarker.core;
 
-import freemarker.template.Template;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
+import freemarker.template.Configuration;
+import freemarker.template.Template;
 
 /**
- * Note yet public; will change in 2.4 (as it has to process {@code UnboundTemplate}-s).
+ * A pass that transforms the AST of a {@link Template} right after it was parsed, before it's used for anything;
+ * typically to optimize it. The passes are run in the order in which they were specified with
+ * {@link Configuration#setTemplatePostProcessors(List)}. A pass must not change the output of the template, and must
+ * be thread-safe, as it's shared by all the templates of the {@link Configuration}.
+ * 
+ * <p>
+ * As the classes the AST is made of aren't part of the published API, the useful passes are the ones in the static
+ * fields of this class; see {@link #STANDARD_OPTIMIZER_PASSES}. To check that the passes don't change the output of
+ * the templates, see {@link Configuration#setVerifyTemplatePostProcessing(boolean)}.
+ * 
+ * @since 2.3.29
  */
-abstract class TemplatePostProcessor {
+public abstract class TemplatePostProcessor {
+
+    /**
+     * Removes the {@code #if}/{@code #elseif}/{@code #else} branches whose condition is a constant (like
+     * {@code <#if false>}), so that the condition needn't be evaluated on runtime. The branches that can never run are
+     * dropped, and the branch that always runs replaces the whole {@code #if} if all the branches before it were
+     * dropped.
+     */
+    public static final TemplatePostProcessor DEAD_BRANCH_ELIMINATION
+            = new DeadBranchEliminationTemplatePostProcessor();
 
-    public abstract void postProcess(Template e) throws TemplatePostProcessorException;
+    /**
+     * Replaces the elements that are only containers of other elements (the nested content of an element, when it
+     * consists of multiple parts) with the elements they contain, if that's possible without changing the meaning of
+     * the template. After other transformations, such containers may have only one child, or none.
+     */
+    public static final TemplatePostProcessor TRIVIAL_CONTAINER_FLATTENING
+            = new TrivialContainerFlatteningTemplatePostProcessor();
+    
+    /**
+     * Merges the consecutive static text parts into one, so they are written with one {@link java.io.Writer} call.
+     * Text parts are often split by comments (which are dropped if they are between text parts), by the removal of
+     * other elements with the other transformations, or by whitespace stripping.
+     */
+    public static final TemplatePostProcessor TEXT_BLOCK_MERGING = new TextBlockMergingTemplatePostProcessor();
+    
+    /**
+     * The standard optimizer passes, in the recommended order: {@link #DEAD_BRANCH_ELIMINATION},
+     * {@link #TRIVIAL_CONTAINER_FLATTENING}, {@link #TEXT_BLOCK_MERGING}.
+     */
+    public static final List<TemplatePostProcessor> STANDARD_OPTIMIZER_PASSES = Collections.unmodifiableList(
+            Arrays.asList(DEAD_BRANCH_ELIMINATION, TRIVIAL_CONTAINER_FLATTENING, TEXT_BLOCK_MERGING));
     
-    // TODO: getPriority, getPhase, getMustBeBefore, getMustBeAfter
+    /**
+     * Transforms the AST of the template in place. The AST is only used by the template being post-processed at this
+     * point.
+     */
+    public abstract void postProcess(Template t) throws TemplatePostProcessorException;
 
 }
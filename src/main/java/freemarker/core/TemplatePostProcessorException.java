@@ -20,9 +20,12 @@
 package freemarker.core;
 
 /**
- * Not yet public; subject to change.
+ * Thrown by {@link TemplatePostProcessor#postProcess(freemarker.template.Template)}; it will cause a
+ * {@link ParseException} when the template is created.
+ * 
+ * @since 2.3.29
  */
-class TemplatePostProcessorException extends Exception {
+public class TemplatePostProcessorException extends Exception {
 
     public TemplatePostProcessorException(String message, Throwable cause) {
         super(message, cause);
@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import freemarker.template.Configuration;
+
+/**
+ * Makes the parsed templates share the arrays that store their static text (the parts outside the FTL tags and
+ * interpolations), if the content is the same. Static text, like white-space runs, common HTML fragments, or
+ * boilerplate, is often repeated in many templates, and in the locale variants of the same template. This is enabled
+ * with {@link Configuration#setInternTemplateText(boolean)}, and is returned by
+ * {@link Configuration#getTemplateTextInternPool()}, mostly to query its statistics.
+ * 
+ * <p>
+ * The text is interned when the template is parsed (or is read by a {@link freemarker.cache.CompiledTemplateStore}).
+ * The pool only references the texts weakly, so when no template uses a text anymore, it's removed from the pool.
+ * Thus, the pool doesn't have a size limit.
+ * 
+ * @since 2.3.29
+ */
+public final class TemplateTextInternPool {
+
+    private static final int SEGMENT_COUNT = 16;
+    private static final int SEGMENT_SHIFT = 28;
+
+    private final Segment[] segments;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong hitCharCount = new AtomicLong();
+
+    TemplateTextInternPool() {
+        segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Returns the array from the pool that has the same content as the argument, or if there's none, adds the
+     * argument to the pool, and returns it. The returned array must not be modified, as it's shared.
+     */
+    char[] intern(char[] text) {
+        int hash = hash(text);
+        char[] pooledText = segments[hash >>> SEGMENT_SHIFT].intern(text, hash);
+        if (pooledText != text) {
+            hitCount.incrementAndGet();
+            hitCharCount.addAndGet(text.length);
+        } else {
+            missCount.incrementAndGet();
+        }
+        return pooledText;
+    }
+
+    private static int hash(char[] text) {
+        int h = Arrays.hashCode(text);
+        // Spread the bits, as the higher bits select the segment, and the lower bits select the bucket:
+        h ^= (h >>> 20) ^ (h >>> 12);
+        return h ^ (h >>> 7) ^ (h >>> 4);
+    }
+
+    /**
+     * The number of different texts currently in the pool. The texts that aren't used by any template anymore might
+     * still be counted until they are garbage collected.
+     */
+    public int getSize() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * The number of texts that were found in the pool, and so the parsed template could use the pooled instance
+     * instead.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * The number of texts that weren't found in the pool, and so were added to it.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * The sum of the lengths of the texts counted by {@link #getHitCount()}; roughly, the number of characters that
+     * the templates didn't have to store on their own.
+     */
+    public long getHitCharCount() {
+        return hitCharCount.get();
+    }
+
+    /**
+     * Removes all texts from the pool; the templates that were already parsed still share their texts. The statistics
+     * aren't reset.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TemplateTextInternPool(size=" + getSize() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", hitChars=" + getHitCharCount() + ")";
+    }
+
+    /**
+     * A hash table with weakly referenced keys, similar to {@link java.util.WeakHashMap}, but it compares the
+     * {@code char} arrays by content, and it has no values.
+     */
+    private static final class Segment {
+
+        private static final int INITIAL_CAPACITY = 16;
+
+        private final ReferenceQueue<char[]> queue = new ReferenceQueue<char[]>();
+        private Entry[] table = new Entry[INITIAL_CAPACITY];
+        private int size;
+
+        synchronized char[] intern(char[] text, int hash) {
+            expungeStaleEntries();
+            int index = hash & (table.length - 1);
+            for (Entry entry = table[index]; entry != null; entry = entry.next) {
+                if (entry.hash == hash) {
+                    char[] pooledText = entry.get();
+                    if (pooledText != null && Arrays.equals(pooledText, text)) {
+                        return pooledText;
+                    }
+                }
+            }
+            table[index] = new Entry(text, hash, queue, table[index]);
+            if (++size > table.length * 3 / 4) {
+                resize();
+            }
+            return text;
+        }
+
+        synchronized int size() {
+            expungeStaleEntries();
+            return size;
+        }
+
+        synchronized void clear() {
+            table = new Entry[INITIAL_CAPACITY];
+            size = 0;
+        }
+
+        private void resize() {
+            Entry[] oldTable = table;
+            Entry[] newTable = new Entry[oldTable.length * 2];
+            for (Entry entry : oldTable) {
+                while (entry != null) {
+                    Entry next = entry.next;
+                    int index = entry.hash & (newTable.length - 1);
+                    entry.next = newTable[index];
+                    newTable[index] = entry;
+                    entry = next;
+                }
+            }
+            table = newTable;
+        }
+
+        private void expungeStaleEntries() {
+            Entry staleEntry;
+            while ((staleEntry = (Entry) queue.poll()) != null) {
+                int index = staleEntry.hash & (table.length - 1);
+                Entry prev = null;
+                for (Entry entry = table[index]; entry != null; prev = entry, entry = entry.next) {
+                    if (entry == staleEntry) {
+                        if (prev == null) {
+                            table[index] = entry.next;
+                        } else {
+                            prev.next = entry.next;
+                        }
+                        size--;
+                        break;
+                    }
+                }
+                // If it wasn't found, it was removed by clear()
+            }
+        }
+
+    }
+
+    private static final class Entry extends WeakReference<char[]> {
+
+        private final int hash;
+        private Entry next;
+
+        Entry(char[] text, int hash, ReferenceQueue<char[]> queue, Entry next) {
+            super(text, queue);
+            this.hash = hash;
+            this.next = next;
+        }
+
+    }
+
+}
@@ -20,6 +20,8 @@
 package freemarker.core;
 
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
 
 import freemarker.template.utility.CollectionUtils;
 import freemarker.template.utility.StringUtil;
@@ -31,6 +33,8 @@ import freemarker.template.utility.StringUtil;
  */
 public final class TextBlock extends TemplateElement {
     
+    private static final long serialVersionUID = 1L;
+
     // We're using char[] instead of String for storing the text block because
     // Writer.write(String) involves copying the String contents to a char[] 
     // using String.getChars(), and then calling Writer.write(char[]). By
@@ -38,6 +42,40 @@ public final class TextBlock extends TemplateElement {
     // write. 
     private char[] text;
     private final boolean unparsed;
+    /**
+     * The {@link #text} encoded with the charsets that it was written out with through an {@link _EncodingWriter};
+     * see {@link #getEncodedText(Charset)}. As this is just a cache, it's not serialized.
+     */
+    private transient volatile EncodedText[] encodedTexts;
+
+    private static final int MAX_SHARED_INDENTATION = 32;
+    private static final String[] SHARED_LINE_BREAKS = { "", "\n", "\r\n" };
+    private static final char[] SHARED_INDENTATION_CHARS = { ' ', '\t' };
+    /**
+     * The white-space-only texts that are very common in templates (a line break, and/or an indentation with spaces
+     * or tabs), so that the text blocks don't have to store them again and again; see
+     * {@link #compact(TemplateTextInternPool)}. Indexed
+     * like {@code [lineBreakIndex][indentationCharIndex][indentationLength]}.
+     */
+    private static final char[][][][] SHARED_WHITESPACE_TEXTS;
+    static {
+        SHARED_WHITESPACE_TEXTS = new char[SHARED_LINE_BREAKS.length][SHARED_INDENTATION_CHARS.length][][];
+        for (int lineBreakIdx = 0; lineBreakIdx < SHARED_LINE_BREAKS.length; lineBreakIdx++) {
+            String lineBreak = SHARED_LINE_BREAKS[lineBreakIdx];
+            for (int indentCharIdx = 0; indentCharIdx < SHARED_INDENTATION_CHARS.length; indentCharIdx++) {
+                char[][] texts = new char[MAX_SHARED_INDENTATION + 1][];
+                for (int indentLength = 0; indentLength <= MAX_SHARED_INDENTATION; indentLength++) {
+                    char[] text = new char[lineBreak.length() + indentLength];
+                    lineBreak.getChars(0, lineBreak.length(), text, 0);
+                    for (int i = lineBreak.length(); i < text.length; i++) {
+                        text[i] = SHARED_INDENTATION_CHARS[indentCharIdx];
+                    }
+                    texts[indentLength] = text;
+                }
+                SHARED_WHITESPACE_TEXTS[lineBreakIdx][indentCharIdx] = texts;
+            }
+        }
+    }
 
     public TextBlock(String text) {
         this(text, false);
@@ -52,8 +90,20 @@ public final class TextBlock extends TemplateElement {
         this.unparsed = unparsed;
     }
     
+    /**
+     * The text that this element prints; don't modify it.
+     */
+    char[] getTextChars() {
+        return text;
+    }
+    
+    boolean isUnparsed() {
+        return unparsed;
+    }
+    
     void replaceText(String text) {
         this.text = text.toCharArray();
+        encodedTexts = null;
     }
 
     /**
@@ -64,10 +114,46 @@ public final class TextBlock extends TemplateElement {
     @Override
     public TemplateElement[] accept(Environment env)
     throws IOException {
-        env.getOut().write(text);
+        Writer out = env.getOut();
+        if (out instanceof _EncodingWriter) {
+            _EncodingWriter encodingOut = (_EncodingWriter) out;
+            byte[] encodedText = getEncodedText(encodingOut.getCharset());
+            if (encodedText != null && encodingOut.writeEncoded(encodedText)) {
+                return null;
+            }
+        }
+        out.write(text);
         return null;
     }
 
+    /**
+     * Returns the text encoded with the given charset, calculating it on the first call, or {@code null} if the text
+     * can't be encoded in advance with that charset.
+     */
+    byte[] getEncodedText(Charset charset) {
+        EncodedText[] encodedTexts = this.encodedTexts;
+        if (encodedTexts != null) {
+            for (EncodedText encodedText : encodedTexts) {
+                if (encodedText.charset.equals(charset)) {
+                    return encodedText.bytes;
+                }
+            }
+        }
+        
+        byte[] bytes = _EncodingWriter.encode(text, charset);
+        // Races can lose an entry, but then it will be just calculated again later.
+        EncodedText[] newEncodedTexts;
+        if (encodedTexts == null) {
+            newEncodedTexts = new EncodedText[1];
+        } else {
+            newEncodedTexts = new EncodedText[encodedTexts.length + 1];
+            System.arraycopy(encodedTexts, 0, newEncodedTexts, 0, encodedTexts.length);
+        }
+        newEncodedTexts[newEncodedTexts.length - 1] = new EncodedText(charset, bytes);
+        this.encodedTexts = newEncodedTexts;
+        return bytes;
+    }
+
     @Override
     protected String dump(boolean canonical) {
         if (canonical) {
@@ -103,6 +189,63 @@ public final class TextBlock extends TemplateElement {
         return ParameterRole.CONTENT;
     }
 
+    /**
+     * Replaces the text with an equivalent shared array, if it's a common white-space-only text, or else if the text
+     * is in the intern pool.
+     */
+    @Override
+    void compact(TemplateTextInternPool textInternPool) {
+        char[] sharedText = getSharedWhitespaceText(text);
+        if (sharedText != null) {
+            text = sharedText;
+        } else if (textInternPool != null) {
+            text = textInternPool.intern(text);
+        }
+    }
+
+    /**
+     * Returns the element of {@link #SHARED_WHITESPACE_TEXTS} that's equal to the argument, or {@code null} if
+     * there's none.
+     */
+    private static char[] getSharedWhitespaceText(char[] text) {
+        int length = text.length;
+        if (length == 0) {
+            return CollectionUtils.EMPTY_CHAR_ARRAY;
+        }
+        
+        int lineBreakIdx;
+        if (text[0] == '\n') {
+            lineBreakIdx = 1;
+        } else if (text[0] == '\r' && length > 1 && text[1] == '\n') {
+            lineBreakIdx = 2;
+        } else {
+            lineBreakIdx = 0;
+        }
+        int lineBreakLength = SHARED_LINE_BREAKS[lineBreakIdx].length();
+        
+        int indentLength = length - lineBreakLength;
+        if (indentLength > MAX_SHARED_INDENTATION) {
+            return null;
+        }
+        int indentCharIdx = 0;
+        if (indentLength != 0) {
+            char indentChar = text[lineBreakLength];
+            while (indentCharIdx < SHARED_INDENTATION_CHARS.length
+                    && SHARED_INDENTATION_CHARS[indentCharIdx] != indentChar) {
+                indentCharIdx++;
+            }
+            if (indentCharIdx == SHARED_INDENTATION_CHARS.length) {
+                return null;
+            }
+            for (int i = lineBreakLength + 1; i < length; i++) {
+                if (text[i] != indentChar) {
+                    return null;
+                }
+            }
+        }
+        return SHARED_WHITESPACE_TEXTS[lineBreakIdx][indentCharIdx][indentLength];
+    }
+
     @Override
     TemplateElement postParseCleanup(boolean stripWhitespace) {
         if (text.length == 0) return this;
@@ -127,11 +270,10 @@ public final class TextBlock extends TemplateElement {
         }
         this.text = substring(text, openingCharsToStrip, text.length - trailingCharsToStrip);
         if (openingCharsToStrip > 0) {
-            this.beginLine++;
-            this.beginColumn = 1;
+            setLocation(getTemplate(), 1, getBeginLine() + 1, getEndColumn(), getEndLine());
         }
         if (trailingCharsToStrip > 0) {
-            this.endColumn = 0;
+            setLocation(getTemplate(), getBeginColumn(), getBeginLine(), 0, getEndLine());
         }
         return this;
     }
@@ -143,7 +285,7 @@ public final class TextBlock extends TemplateElement {
     private boolean deliberateLeftTrim() {
         boolean result = false;
         for (TemplateElement elem = this.nextTerminalNode(); 
-            elem != null && elem.beginLine == this.endLine;
+            elem != null && elem.getBeginLine() == getEndLine();
             elem = elem.nextTerminalNode()) {
             if (elem instanceof TrimInstruction) {
                 TrimInstruction ti = (TrimInstruction) elem;
@@ -153,12 +295,12 @@ public final class TextBlock extends TemplateElement {
                 if (ti.left) {
                     result = true;
                     int lastNewLineIndex = lastNewLineIndex();
-                    if (lastNewLineIndex >= 0  || beginColumn == 1) {
+                    if (lastNewLineIndex >= 0  || getBeginColumn() == 1) {
                         char[] firstPart = substring(text, 0, lastNewLineIndex + 1);
                         char[] lastLine = substring(text, 1 + lastNewLineIndex); 
                         if (StringUtil.isTrimmableToEmpty(lastLine)) {
                             this.text = firstPart;
-                            this.endColumn = 0;
+                            setLocation(getTemplate(), getBeginColumn(), getBeginLine(), 0, getEndLine());
                         } else {
                             int i = 0;
                             while (Character.isWhitespace(lastLine[i])) {
@@ -181,7 +323,7 @@ public final class TextBlock extends TemplateElement {
     private boolean deliberateRightTrim() {
         boolean result = false;
         for (TemplateElement elem = this.prevTerminalNode(); 
-             elem != null && elem.endLine == this.beginLine;
+             elem != null && elem.getEndLine() == getBeginLine();
              elem = elem.prevTerminalNode()) {
             if (elem instanceof TrimInstruction) {
                 TrimInstruction ti = (TrimInstruction) elem;
@@ -203,8 +345,7 @@ public final class TextBlock extends TemplateElement {
                     char[] openingPart = substring(text, 0, firstLineIndex);
                     if (StringUtil.isTrimmableToEmpty(openingPart)) {
                         this.text = trailingPart;
-                        this.beginLine++;
-                        this.beginColumn = 1;
+                        setLocation(getTemplate(), 1, getBeginLine() + 1, getEndColumn(), getEndLine());
                     } else {
                         int lastNonWS = openingPart.length - 1;
                         while (Character.isWhitespace(text[lastNonWS])) {
@@ -215,7 +356,7 @@ public final class TextBlock extends TemplateElement {
                         // THIS BLOCK IS HEINOUS! THERE MUST BE A BETTER WAY! REVISIT (JR)
                             boolean trimTrailingPart = true;
                             for (TemplateElement te = this.nextTerminalNode(); 
-                                 te != null && te.beginLine == this.endLine;
+                                 te != null && te.getBeginLine() == getEndLine();
                                  te = te.nextTerminalNode()) {
                                 if (te.heedsOpeningWhitespace()) {
                                     trimTrailingPart = false;
@@ -263,7 +404,7 @@ public final class TextBlock extends TemplateElement {
      */
     private int openingCharsToStrip() {
         int newlineIndex = firstNewLineIndex();
-        if (newlineIndex == -1 && beginColumn != 1) {
+        if (newlineIndex == -1 && getBeginColumn() != 1) {
             return 0;
         }
         ++newlineIndex;
@@ -278,7 +419,7 @@ public final class TextBlock extends TemplateElement {
         // We look at the preceding elements on the line to see if we should
         // strip the opening newline and any whitespace preceding it.
         for (TemplateElement elem = this.prevTerminalNode(); 
-             elem != null && elem.endLine == this.beginLine;
+             elem != null && elem.getEndLine() == getBeginLine();
              elem = elem.prevTerminalNode()) {
             if (elem.heedsOpeningWhitespace()) {
                 return 0;
@@ -293,7 +434,7 @@ public final class TextBlock extends TemplateElement {
      */
     private int trailingCharsToStrip() {
         int lastNewlineIndex = lastNewLineIndex();
-        if (lastNewlineIndex == -1 && beginColumn != 1) {
+        if (lastNewlineIndex == -1 && getBeginColumn() != 1) {
             return 0;
         }
         if (!StringUtil.isTrimmableToEmpty(text, lastNewlineIndex + 1)) {
@@ -302,7 +443,7 @@ public final class TextBlock extends TemplateElement {
         // We look at the elements afterward on the same line to see if we should
         // strip any whitespace after the last newline
         for (TemplateElement elem = this.nextTerminalNode(); 
-             elem != null && elem.beginLine == this.endLine;
+             elem != null && elem.getBeginLine() == getEndLine();
              elem = elem.nextTerminalNode()) {
             if (elem.heedsTrailingWhitespace()) {
                 return 0;
@@ -406,5 +547,18 @@ public final class TextBlock extends TemplateElement {
     boolean isNestedBlockRepeater() {
         return false;
     }
-    
+
+    private static final class EncodedText {
+        
+        private final Charset charset;
+        /** {@code null} if the text can't be encoded in advance with the charset. */
+        private final byte[] bytes;
+        
+        EncodedText(Charset charset, byte[] bytes) {
+            this.charset = charset;
+            this.bytes = bytes;
+        }
+        
+    }
+
 }
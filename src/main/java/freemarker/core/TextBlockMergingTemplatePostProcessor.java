@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+/**
+ * {@link TemplatePostProcessor#TEXT_BLOCK_MERGING}
+ */
+final class TextBlockMergingTemplatePostProcessor extends TreeRewritingTemplatePostProcessor {
+
+    @Override
+    void rewriteChildren(TemplateElement parent) {
+        for (int i = 0; i < parent.getChildCount(); i++) {
+            TemplateElement child = parent.getChild(i);
+            if (!(child instanceof TextBlock)) {
+                continue;
+            }
+            
+            TextBlock firstTextBlock = (TextBlock) child;
+            // The end of the run of text blocks (exclusive); comments between the text blocks are dropped.
+            int end = i + 1;
+            int scanIdx = i + 1;
+            while (scanIdx < parent.getChildCount()) {
+                TemplateElement sibling = parent.getChild(scanIdx);
+                if (sibling instanceof TextBlock
+                        && ((TextBlock) sibling).isUnparsed() == firstTextBlock.isUnparsed()) {
+                    scanIdx++;
+                    end = scanIdx;
+                } else if (sibling instanceof Comment) {
+                    scanIdx++;
+                } else {
+                    break;
+                }
+            }
+            if (end - i > 1) {
+                StringBuilder mergedText = new StringBuilder();
+                for (int j = i; j < end; j++) {
+                    TemplateElement runElement = parent.getChild(j);
+                    if (runElement instanceof TextBlock) {
+                        mergedText.append(((TextBlock) runElement).getTextChars());
+                    }
+                }
+                firstTextBlock.replaceText(mergedText.toString());
+                firstTextBlock.setLocation(firstTextBlock.getTemplate(), firstTextBlock, parent.getChild(end - 1));
+                parent.replaceChildren(i + 1, end, null, 0);
+            }
+        }
+    }
+    
+}
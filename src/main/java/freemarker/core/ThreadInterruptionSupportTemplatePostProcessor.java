@@ -78,8 +78,11 @@ class ThreadInterruptionSupportTemplatePostProcessor extends TemplatePostProcess
      */
     static class ThreadInterruptionCheck extends TemplateElement {
         
+        private static final long serialVersionUID = 1L;
+
         private ThreadInterruptionCheck(TemplateElement te) throws ParseException {
-            setLocation(te.getTemplate(), te.beginColumn, te.beginLine, te.beginColumn, te.beginLine);
+            setLocation(te.getTemplate(),
+                    te.getBeginColumn(), te.getBeginLine(), te.getBeginColumn(), te.getBeginLine());
         }
 
         @Override
@@ -39,6 +39,8 @@ import freemarker.template.TemplateTransformModel;
  */
 final class TransformBlock extends TemplateElement {
 
+    private static final long serialVersionUID = 1L;
+
     private Expression transformExpression;
     Map namedArgs;
     private transient volatile SoftReference/*List<Map.Entry<String,Expression>>*/ sortedNamedArgsCache;
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import freemarker.template.Template;
+import freemarker.template._TemplateAPI;
+
+/**
+ * Base class for the {@link TemplatePostProcessor}-s that rewrite the lists of elements that are executed after each
+ * other (like the nested content of most directives). The lists are visited bottom-up, so when a list is rewritten,
+ * the lists inside its elements were already rewritten.
+ */
+abstract class TreeRewritingTemplatePostProcessor extends TemplatePostProcessor {
+
+    @Override
+    public final void postProcess(Template t) throws TemplatePostProcessorException {
+        TemplateElement root = t.getRootTreeNode();
+        if (root == null) {
+            return;
+        }
+        
+        // The root is put into a temporary container, so that it can be replaced like any other element.
+        MixedContent rootContainer = new MixedContent();
+        rootContainer.setLocation(t, root, root);
+        rootContainer.addChild(root);
+        rewriteTree(rootContainer);
+        
+        TemplateElement newRoot = rootContainer;
+        // Like after parsing, the root can't be a container with a single child:
+        while (newRoot instanceof MixedContent && newRoot.getChildCount() == 1) {
+            newRoot = newRoot.getChild(0);
+        }
+        newRoot.setFieldsForRootElement();
+        if (newRoot != root) {
+            _TemplateAPI.setRootTreeNode(t, newRoot);
+        }
+    }
+    
+    private void rewriteTree(TemplateElement element) throws TemplatePostProcessorException {
+        int childCount = element.getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            rewriteTree(element.getChild(i));
+        }
+        if (childCount != 0 && !hasStructuralChildren(element)) {
+            rewriteChildren(element);
+        }
+    }
+    
+    /**
+     * Tells if the children of the element aren't simply executed after each other, or are also referred to by the
+     * element in other ways than as children, and so they can't be freely replaced.
+     */
+    private static boolean hasStructuralChildren(TemplateElement element) {
+        return element instanceof IfBlock || element instanceof SwitchBlock || element instanceof AttemptBlock
+                || element instanceof ListElseContainer;
+    }
+    
+    /**
+     * Rewrites the children of the element, which are executed after each other, and only referred to as children.
+     * Use {@link TemplateElement#replaceChildren(int, int, TemplateElement[], int)} to modify them.
+     */
+    abstract void rewriteChildren(TemplateElement parent) throws TemplatePostProcessorException;
+    
+}
@@ -25,6 +25,8 @@ package freemarker.core;
  */
 final class TrimInstruction extends TemplateElement {
     
+    private static final long serialVersionUID = 1L;
+
     static final int TYPE_T = 0;  
     static final int TYPE_LT = 1;  
     static final int TYPE_RT = 2;  
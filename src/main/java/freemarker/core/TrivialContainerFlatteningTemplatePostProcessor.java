@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+/**
+ * {@link TemplatePostProcessor#TRIVIAL_CONTAINER_FLATTENING}
+ */
+final class TrivialContainerFlatteningTemplatePostProcessor extends TreeRewritingTemplatePostProcessor {
+
+    @Override
+    void rewriteChildren(TemplateElement parent) {
+        int i = 0;
+        while (i < parent.getChildCount()) {
+            TemplateElement child = parent.getChild(i);
+            if (child instanceof MixedContent) {
+                // As the parent executes its children after each other too, the container is superfluous.
+                int childChildCount = child.getChildCount();
+                parent.replaceChildren(i, i + 1, child.getChildBuffer(), childChildCount);
+                i += childChildCount;
+            } else {
+                i++;
+            }
+        }
+    }
+    
+}
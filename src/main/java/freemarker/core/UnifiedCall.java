@@ -41,6 +41,8 @@ import freemarker.template.utility.StringUtil;
  */
 final class UnifiedCall extends TemplateElement implements DirectiveCallPlace {
 
+    private static final long serialVersionUID = 1L;
+
     private Expression nameExp;
     private Map namedArgs;
     private List positionalArgs, bodyParameterNames;
@@ -68,6 +70,13 @@ final class UnifiedCall extends TemplateElement implements DirectiveCallPlace {
         this.bodyParameterNames = bodyParameterNames;
     }
 
+    /**
+     * The names of the loop variables of the nested content, or {@code null} if there were none declared.
+     */
+    List getBodyParameterNames() {
+        return bodyParameterNames;
+    }
+
     @Override
     TemplateElement[] accept(Environment env) throws TemplateException, IOException {
         TemplateModel tm = nameExp.eval(env);
@@ -34,6 +34,8 @@ import freemarker.template.TemplateSequenceModel;
  */
 final class VisitNode extends TemplateElement {
     
+    private static final long serialVersionUID = 1L;
+
     Expression targetNode, namespaces;
     
     VisitNode(Expression targetNode, Expression namespaces) {
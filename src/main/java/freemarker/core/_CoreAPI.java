@@ -22,6 +22,9 @@ package freemarker.core;
 import java.io.Writer;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -169,6 +172,51 @@ public class _CoreAPI {
         }
     }
     
+    /**
+     * Runs the post-processors on the template in the given order; see
+     * {@link Configuration#setTemplatePostProcessors(List)}.
+     * 
+     * @since 2.3.29
+     */
+    public static void postProcess(Template template, List<TemplatePostProcessor> postProcessors)
+            throws ParseException {
+        for (TemplatePostProcessor postProcessor : postProcessors) {
+            try {
+                postProcessor.postProcess(template);
+            } catch (TemplatePostProcessorException e) {
+                throw new ParseException(
+                        "Template post-processor " + postProcessor.getClass().getName() + " has failed: "
+                        + e.getMessage(),
+                        template, 0, 0, e);
+            }
+        }
+    }
+    
+    /**
+     * Reduces the heap usage of the AST after the template was parsed and post-processed; see
+     * {@link TemplateElement#compact(TemplateTextInternPool)}.
+     * 
+     * @param textInternPool
+     *            Maybe {@code null}.
+     * 
+     * @since 2.3.29
+     */
+    public static void compact(TemplateElement rootElement, TemplateTextInternPool textInternPool) {
+        if (rootElement != null) {
+            rootElement.compact(textInternPool);
+        }
+    }
+
+    /**
+     * Binds the references to local and loop variables to fixed slots after the template was parsed and
+     * post-processed; see {@link LocalVariableResolver}.
+     * 
+     * @since 2.3.29
+     */
+    public static void resolveLocalVariables(TemplateElement rootElement) {
+        LocalVariableResolver.resolve(rootElement);
+    }
+    
     static final public void checkHasNoNestedContent(TemplateDirectiveBody body)
             throws NestedContentNotSupportedException {
         NestedContentNotSupportedException.check(body);
@@ -219,4 +267,106 @@ public class _CoreAPI {
         parser.setPreventStrippings(preventStrippings);
     }
     
+    /**
+     * Returns the encoding specified in the {@code #ftl} header at the beginning of the template source, or
+     * {@code null}; see {@link FTLHeaderEncodingSniffer}.
+     * 
+     * @since 2.3.29
+     */
+    public static String sniffFTLHeaderEncoding(CharSequence sourceBeginning, ParserConfiguration pCfg) {
+        return FTLHeaderEncodingSniffer.getEncoding(sourceBeginning, pCfg.getTagSyntax());
+    }
+    
+    /**
+     * @since 2.3.29
+     */
+    public static ParsedFragmentCache newParsedFragmentCache(int maxSize) {
+        return new ParsedFragmentCache(maxSize);
+    }
+    
+    /**
+     * @since 2.3.29
+     */
+    public static TemplateTextInternPool newTemplateTextInternPool() {
+        return new TemplateTextInternPool();
+    }
+    
+    /**
+     * Returns the name with which {@link Configuration#getOutputFormat(String)} returns an equivalent output format;
+     * unlike {@link OutputFormat#getName()}, this is never {@code null}, not even for a
+     * {@link CombinedMarkupOutputFormat}.
+     * 
+     * @since 2.3.29
+     */
+    public static String getOutputFormatName(OutputFormat outputFormat) {
+        return _TemplateObjectOutputStream.getOutputFormatName(outputFormat);
+    }
+    
+    /**
+     * Returns the output of the template if it's static text (i.e., it has no FTL tags or interpolations that would
+     * remain after parsing), otherwise {@code null}. The returned array must not be modified.
+     * 
+     * @since 2.3.29
+     */
+    public static char[] getStaticText(Template template) {
+        TemplateElement root = template.getRootTreeNode();
+        if (root == null) {
+            return new char[0];
+        }
+        if (root instanceof TextBlock) {
+            return ((TextBlock) root).getTextChars();
+        }
+        if (!(root instanceof MixedContent)) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < root.getChildCount(); i++) {
+            TemplateElement child = root.getChild(i);
+            if (!(child instanceof TextBlock)) {
+                return null;
+            }
+            sb.append(((TextBlock) child).getTextChars());
+        }
+        char[] text = new char[sb.length()];
+        sb.getChars(0, text.length, text, 0);
+        return text;
+    }
+    
+    /**
+     * Makes the {@code #include}-s in the template whose {@link TemplateDependency} is a key in
+     * {@code inlinedTexts} print the corresponding text, instead of getting the included template, as far as the
+     * included template would be got with the given parameters. The template must have its own AST, which is not
+     * yet used by other threads.
+     * 
+     * @return The number of {@code #include}-s affected.
+     * 
+     * @since 2.3.29
+     */
+    public static int inlineIncludes(Template template, Map<TemplateDependency, char[]> inlinedTexts,
+            Locale locale, Object customLookupCondition, String encoding) {
+        return inlineIncludes(template.getRootTreeNode(), inlinedTexts, locale, customLookupCondition, encoding);
+    }
+    
+    private static int inlineIncludes(TemplateElement element, Map<TemplateDependency, char[]> inlinedTexts,
+            Locale locale, Object customLookupCondition, String encoding) {
+        if (element == null) {
+            return 0;
+        }
+        int count = 0;
+        if (element instanceof Include) {
+            Include include = (Include) element;
+            TemplateDependency dependency = include.getStaticDependency();
+            char[] text = dependency != null ? inlinedTexts.get(dependency) : null;
+            if (text != null) {
+                include.setInlinedContent(text, locale, customLookupCondition,
+                        dependency.getEncoding() != null ? dependency.getEncoding() : encoding);
+                count++;
+            }
+        }
+        for (int i = 0; i < element.getChildCount(); i++) {
+            count += inlineIncludes(element.getChild(i), inlinedTexts, locale, customLookupCondition, encoding);
+        }
+        return count;
+    }
+    
 }
@@ -0,0 +1,287 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import freemarker.template.Template;
+import freemarker.template.utility.NullArgumentException;
+
+/**
+ * For internal use only; don't depend on this, there's no backward compatibility guarantee at all!
+ *
+ * <p>
+ * A {@link Writer} that encodes the characters written into it to an {@link OutputStream} or
+ * {@link WritableByteChannel}, like {@link java.io.OutputStreamWriter} does, but also allows writing already encoded
+ * bytes with {@link #writeEncoded(byte[])}. The last is used by {@link TextBlock} to write its text, so that the
+ * static parts of a template aren't encoded again on each {@link Template#process(Object, OutputStream, Charset)}
+ * call. Malformed and unmappable characters are replaced, just like in {@link java.io.OutputStreamWriter}. Not thread
+ * safe.
+ *
+ * @since 2.3.29
+ */
+public final class _EncodingWriter extends Writer {
+
+    private static final int CHAR_BUFFER_SIZE = 1024;
+    private static final int BYTE_BUFFER_SIZE = 8192;
+
+    /**
+     * The canonical names of the charsets whose encoder has no state that could influence the encoding of the
+     * subsequent characters, so a text can be encoded in advance, independently of what was written before it.
+     * Stateful charsets (like {@code UTF-16} with its byte order mark, or {@code ISO-2022-JP} with its shift
+     * sequences) aren't listed here.
+     */
+    private static final Set<String> STATELESS_CHARSET_NAMES = new HashSet<String>(Arrays.asList(new String[] {
+            "UTF-8", "US-ASCII", "UTF-16BE", "UTF-16LE", "UTF-32BE", "UTF-32LE",
+            "KOI8-R", "KOI8-U", "Shift_JIS", "windows-31j", "EUC-JP", "EUC-KR", "GBK", "GB2312", "GB18030", "Big5" }));
+
+    private final OutputStream outputStream;
+    private final WritableByteChannel channel;
+    private final Charset charset;
+    private final CharsetEncoder encoder;
+    private final char[] chars = new char[CHAR_BUFFER_SIZE];
+    private final CharBuffer charBuffer = CharBuffer.wrap(chars);
+    private int charCount;
+    private final ByteBuffer byteBuffer = ByteBuffer.allocate(BYTE_BUFFER_SIZE);
+
+    /**
+     * @param out
+     *            The stream to write to; it's not closed by {@link #finish()}.
+     */
+    public _EncodingWriter(OutputStream out, Charset charset) {
+        this(out, null, charset);
+    }
+
+    /**
+     * @param out
+     *            The channel to write to; it's not closed by {@link #finish()}.
+     */
+    public _EncodingWriter(WritableByteChannel out, Charset charset) {
+        this(null, out, charset);
+    }
+
+    private _EncodingWriter(OutputStream outputStream, WritableByteChannel channel, Charset charset) {
+        NullArgumentException.check("out", outputStream != null ? outputStream : channel);
+        NullArgumentException.check("charset", charset);
+        this.outputStream = outputStream;
+        this.channel = channel;
+        this.charset = charset;
+        encoder = newEncoder(charset);
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (charCount == chars.length) {
+            encodeChars(false);
+        }
+        chars[charCount++] = (char) c;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        while (len > 0) {
+            if (charCount == chars.length) {
+                encodeChars(false);
+            }
+            int n = Math.min(len, chars.length - charCount);
+            System.arraycopy(cbuf, off, chars, charCount, n);
+            charCount += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void write(String str) throws IOException {
+        write(str, 0, str.length());
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        while (len > 0) {
+            if (charCount == chars.length) {
+                encodeChars(false);
+            }
+            int n = Math.min(len, chars.length - charCount);
+            str.getChars(off, off + n, chars, charCount);
+            charCount += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Writes bytes that were encoded with {@link #encode(char[], Charset)}, using the charset of this writer.
+     * 
+     * @return Whether the bytes were written; if {@code false}, the caller must write the original characters
+     *         instead. That happens when the previously written characters end with an unpaired high surrogate, which
+     *         the first character of the text might complete.
+     */
+    public boolean writeEncoded(byte[] bytes) throws IOException {
+        if (charCount != 0) {
+            encodeChars(false);
+            if (charCount != 0) {
+                return false;
+            }
+        }
+        if (bytes.length > byteBuffer.remaining()) {
+            writeBytes();
+            if (bytes.length > byteBuffer.capacity()) {
+                writeToSink(ByteBuffer.wrap(bytes));
+                return true;
+            }
+        }
+        byteBuffer.put(bytes);
+        return true;
+    }
+
+    /**
+     * Encodes and writes all the buffered characters, and then flushes the underlying {@link OutputStream}.
+     */
+    @Override
+    public void flush() throws IOException {
+        encodeChars(false);
+        writeBytes();
+        if (outputStream != null) {
+            outputStream.flush();
+        }
+    }
+
+    /**
+     * Encodes and writes all the buffered characters, like at the end of the input (so an unpaired high surrogate at
+     * the end is replaced), but doesn't flush or close the underlying stream or channel. The writer can be still used
+     * after this.
+     */
+    public void finish() throws IOException {
+        encodeChars(true);
+        while (encoder.flush(byteBuffer).isOverflow()) {
+            writeBytes();
+        }
+        writeBytes();
+        encoder.reset();
+    }
+
+    /**
+     * Calls {@link #finish()}, then closes the underlying stream or channel.
+     */
+    @Override
+    public void close() throws IOException {
+        finish();
+        if (outputStream != null) {
+            outputStream.close();
+        } else {
+            channel.close();
+        }
+    }
+
+    /**
+     * Encodes the buffered characters into the byte buffer. Unless {@code endOfInput} is {@code true}, an unpaired high
+     * surrogate at the end remains in the character buffer, as its pair may follow.
+     */
+    private void encodeChars(boolean endOfInput) throws IOException {
+        charBuffer.limit(charCount).position(0);
+        while (true) {
+            CoderResult result = encoder.encode(charBuffer, byteBuffer, endOfInput);
+            if (result.isOverflow()) {
+                writeBytes();
+            } else if (result.isUnderflow()) {
+                break;
+            } else {
+                result.throwException(); // Can't happen, as errors are replaced
+            }
+        }
+        int remaining = charBuffer.remaining();
+        if (remaining != 0) {
+            System.arraycopy(chars, charBuffer.position(), chars, 0, remaining);
+        }
+        charCount = remaining;
+    }
+
+    private void writeBytes() throws IOException {
+        byteBuffer.flip();
+        writeToSink(byteBuffer);
+        byteBuffer.clear();
+    }
+
+    private void writeToSink(ByteBuffer bytes) throws IOException {
+        if (outputStream != null) {
+            outputStream.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            bytes.position(bytes.limit());
+        } else {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Encodes a text in advance, so that later it can be written with {@link #writeEncoded(byte[])}.
+     * 
+     * @return The encoded text, or {@code null} if the text can't be encoded in advance with this charset, in which
+     *         case the characters have to be written instead.
+     */
+    static byte[] encode(char[] text, Charset charset) {
+        int length = text.length;
+        if (!isStateless(charset)
+                || length != 0 && (Character.isHighSurrogate(text[length - 1]) || Character.isLowSurrogate(text[0]))) {
+            return null;
+        }
+        ByteBuffer encoded;
+        try {
+            encoded = newEncoder(charset).encode(CharBuffer.wrap(text));
+        } catch (CharacterCodingException e) {
+            return null; // Can't happen, as errors are replaced
+        }
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        return bytes;
+    }
+
+    private static boolean isStateless(Charset charset) {
+        String name = charset.name();
+        return STATELESS_CHARSET_NAMES.contains(name)
+                || name.startsWith("ISO-8859-") || name.startsWith("windows-125");
+    }
+
+    private static CharsetEncoder newEncoder(Charset charset) {
+        return charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+}
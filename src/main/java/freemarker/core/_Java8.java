@@ -18,6 +18,9 @@
  */
 package freemarker.core;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Method;
 
 /**
@@ -31,4 +34,35 @@ public interface _Java8 {
      */
     boolean isDefaultMethod(Method method);
     
+    /**
+     * Starts watching the directory tree for changes with a {@code java.nio.file.WatchService}, on a daemon thread.
+     * 
+     * @return The object with which the watching can be stopped.
+     */
+    Closeable watchDirectoryTree(File baseDir, DirectoryTreeChangeListener listener) throws IOException;
+    
+    /**
+     * Creates a new empty file like {@link File#createTempFile(String, String, File)}, but if the file system supports
+     * POSIX permissions, it makes the file readable and writable only for its owner.
+     * 
+     * @param directory
+     *            The directory in which the file is created; if {@code null}, the {@code java.io.tmpdir} directory.
+     */
+    File createOwnerOnlyTempFile(String prefix, String suffix, File directory) throws IOException;
+    
+    /**
+     * Callback of {@link _Java8#watchDirectoryTree(File, DirectoryTreeChangeListener)}.
+     */
+    interface DirectoryTreeChangeListener {
+        
+        /**
+         * @param relativePath
+         *            The path of the created, deleted or modified file or directory, relative to the base directory,
+         *            with {@code /} as separator; {@code null} if the changes that has happened are unknown (because
+         *            events were lost).
+         */
+        void changed(String relativePath);
+        
+    }
+    
 }
@@ -16,9 +16,32 @@
  * specific language governing permissions and limitations
  * under the License.
  */
+
 package freemarker.core;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Method;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import freemarker.log.Logger;
 
 /**
  * Used internally only, might changes without notice!
@@ -29,6 +52,8 @@ import java.lang.reflect.Method;
 public class _Java8Impl implements _Java8 {
     
     public static final _Java8 INSTANCE = new _Java8Impl();
+    
+    private static final Logger LOG = Logger.getLogger("freemarker.cache");
 
     private _Java8Impl() {
         // Not meant to be instantiated
@@ -38,4 +63,94 @@ public class _Java8Impl implements _Java8 {
         return method.isDefault();
     }
 
+    public File createOwnerOnlyTempFile(String prefix, String suffix, File directory) throws IOException {
+        Path dirPath = directory != null
+                ? directory.toPath() : new File(System.getProperty("java.io.tmpdir")).toPath();
+        FileAttribute<?>[] attrs;
+        if (dirPath.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            attrs = new FileAttribute<?>[] { PosixFilePermissions.asFileAttribute(
+                    EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE)) };
+        } else {
+            attrs = new FileAttribute<?>[0];
+        }
+        return Files.createTempFile(dirPath, prefix, suffix, attrs).toFile();
+    }
+
+    public Closeable watchDirectoryTree(File baseDir, final DirectoryTreeChangeListener listener)
+            throws IOException {
+        final Path basePath = baseDir.toPath();
+        final WatchService watchService = basePath.getFileSystem().newWatchService();
+        final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<WatchKey, Path>();
+        try {
+            registerDirectoryTree(basePath, watchService, watchedDirs);
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+        
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                while (true) {
+                    WatchKey key;
+                    try {
+                        key = watchService.take();
+                    } catch (ClosedWatchServiceException e) {
+                        return;
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    
+                    Path dir = watchedDirs.get(key);
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        String relativePath;
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+                            relativePath = null;
+                        } else {
+                            Path path = dir.resolve((Path) event.context());
+                            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                                    && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                                try {
+                                    registerDirectoryTree(path, watchService, watchedDirs);
+                                } catch (IOException e) {
+                                    LOG.warn("Failed to watch newly created directory: " + path, e);
+                                } catch (ClosedWatchServiceException e) {
+                                    return;
+                                }
+                            }
+                            relativePath = basePath.relativize(path).toString().replace(File.separatorChar, '/');
+                        }
+                        
+                        try {
+                            listener.changed(relativePath);
+                        } catch (RuntimeException e) {
+                            LOG.error("Directory change listener has thrown exception", e);
+                        }
+                    }
+                    if (!key.reset()) {
+                        watchedDirs.remove(key);
+                    }
+                }
+            }
+        }, "FreeMarker directory watcher for " + baseDir);
+        thread.setDaemon(true);
+        thread.start();
+        
+        return watchService;
+    }
+
+    private static void registerDirectoryTree(Path dir, final WatchService watchService,
+            final Map<WatchKey, Path> watchedDirs) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                WatchKey key = dir.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                watchedDirs.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
 }
@@ -36,6 +36,7 @@ import java.util.Map;
 import java.util.Properties;
 
 import freemarker.cache.AndMatcher;
+import freemarker.cache.ConcurrentLfuCacheStorage;
 import freemarker.cache.ConditionalTemplateConfigurationFactory;
 import freemarker.cache.FileExtensionMatcher;
 import freemarker.cache.FileNameGlobMatcher;
@@ -45,6 +46,7 @@ import freemarker.cache.NotMatcher;
 import freemarker.cache.OrMatcher;
 import freemarker.cache.PathGlobMatcher;
 import freemarker.cache.PathRegexMatcher;
+import freemarker.cache.WeightedCacheStorage;
 import freemarker.ext.beans.BeansWrapper;
 import freemarker.template.Configuration;
 import freemarker.template.DefaultObjectWrapper;
@@ -681,6 +683,9 @@ public class _ObjectBuilderSettingEvaluator {
             addWithSimpleName(SHORTHANDS, ConditionalTemplateConfigurationFactory.class);
             addWithSimpleName(SHORTHANDS, MergingTemplateConfigurationFactory.class);
             addWithSimpleName(SHORTHANDS, FirstMatchTemplateConfigurationFactory.class);
+            
+            addWithSimpleName(SHORTHANDS, ConcurrentLfuCacheStorage.class);
+            addWithSimpleName(SHORTHANDS, WeightedCacheStorage.class);
 
             addWithSimpleName(SHORTHANDS, HTMLOutputFormat.class);
             addWithSimpleName(SHORTHANDS, XHTMLOutputFormat.class);
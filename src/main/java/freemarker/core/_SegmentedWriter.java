@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+
+/**
+ * For internal use only; don't depend on this, there's no backward compatibility guarantee at all!
+ *
+ * <p>
+ * Captures the characters written into it, like a {@link StringWriter}, but it's not synchronized, and stores the
+ * characters in fixed size segments instead of a growing array, so it doesn't have to copy what was already written
+ * when it grows. The content can be written to another {@link Writer} with {@link #writeTo(Writer)} without first
+ * joining the segments into a {@link String}. The segments come from a pool of the {@link Environment}, and they are
+ * given back by {@link #release()}. Not thread safe.
+ * 
+ * @since 2.3.29
+ */
+public final class _SegmentedWriter extends Writer {
+
+    private final CharSegmentPool segmentPool;
+    /** The segments before {@link #segment}; these are all full. */
+    private final ArrayList<char[]> fullSegments = new ArrayList<char[]>();
+    /** The segment that's being filled; {@code null} until something is written, or after {@link #release()}. */
+    private char[] segment;
+    private int segmentLength;
+
+    /**
+     * @param env
+     *            The {@link Environment} whose segment pool is used; if {@code null}, the segments won't be pooled.
+     */
+    public _SegmentedWriter(Environment env) {
+        segmentPool = env != null ? env.getCharSegmentPool() : null;
+    }
+
+    @Override
+    public void write(int c) {
+        if (segment == null || segmentLength == segment.length) {
+            nextSegment();
+        }
+        segment[segmentLength++] = (char) c;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        while (len > 0) {
+            if (segment == null || segmentLength == segment.length) {
+                nextSegment();
+            }
+            int n = Math.min(len, segment.length - segmentLength);
+            System.arraycopy(cbuf, off, segment, segmentLength, n);
+            segmentLength += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void write(String str) {
+        write(str, 0, str.length());
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        while (len > 0) {
+            if (segment == null || segmentLength == segment.length) {
+                nextSegment();
+            }
+            int n = Math.min(len, segment.length - segmentLength);
+            str.getChars(off, off + n, segment, segmentLength);
+            segmentLength += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void nextSegment() {
+        if (segment != null) {
+            fullSegments.add(segment);
+        }
+        segment = segmentPool != null ? segmentPool.take() : new char[CharSegmentPool.SEGMENT_SIZE];
+        segmentLength = 0;
+    }
+
+    /**
+     * The number of characters captured.
+     */
+    public int getLength() {
+        return fullSegments.size() * CharSegmentPool.SEGMENT_SIZE + segmentLength;
+    }
+
+    /**
+     * Writes the captured characters into another {@link Writer}, segment by segment.
+     */
+    public void writeTo(Writer out) throws IOException {
+        for (int i = 0; i < fullSegments.size(); i++) {
+            char[] fullSegment = fullSegments.get(i);
+            out.write(fullSegment, 0, fullSegment.length);
+        }
+        if (segmentLength != 0) {
+            out.write(segment, 0, segmentLength);
+        }
+    }
+
+    /**
+     * Returns the captured characters.
+     */
+    @Override
+    public String toString() {
+        if (fullSegments.isEmpty()) {
+            return segmentLength != 0 ? new String(segment, 0, segmentLength) : "";
+        }
+        StringBuilder sb = new StringBuilder(getLength());
+        for (int i = 0; i < fullSegments.size(); i++) {
+            sb.append(fullSegments.get(i));
+        }
+        sb.append(segment, 0, segmentLength);
+        return sb.toString();
+    }
+
+    /**
+     * Discards the characters after the given length, giving back the segments that become unused to the pool.
+     * 
+     * @param length
+     *            The new length; at most {@link #getLength()}.
+     */
+    public void truncate(int length) {
+        int oldLength = getLength();
+        if (length < 0 || length > oldLength) {
+            throw new IllegalArgumentException("Length must be between 0 and " + oldLength + ", but was " + length);
+        }
+        if (length == oldLength) {
+            return;
+        }
+        if (length == 0) {
+            release();
+            return;
+        }
+        
+        int newSegmentIdx = (length - 1) / CharSegmentPool.SEGMENT_SIZE;
+        if (newSegmentIdx < fullSegments.size()) {
+            if (segmentPool != null) {
+                segmentPool.giveBack(segment);
+                for (int i = newSegmentIdx + 1; i < fullSegments.size(); i++) {
+                    segmentPool.giveBack(fullSegments.get(i));
+                }
+            }
+            segment = fullSegments.get(newSegmentIdx);
+            fullSegments.subList(newSegmentIdx, fullSegments.size()).clear();
+        }
+        segmentLength = length - newSegmentIdx * CharSegmentPool.SEGMENT_SIZE;
+    }
+
+    /**
+     * Discards the captured characters, and gives back the segments to the pool. The writer can be used again after
+     * this, as if it was newly created.
+     */
+    public void release() {
+        if (segmentPool != null) {
+            for (int i = 0; i < fullSegments.size(); i++) {
+                segmentPool.giveBack(fullSegments.get(i));
+            }
+            if (segment != null) {
+                segmentPool.giveBack(segment);
+            }
+        }
+        fullSegments.clear();
+        segment = null;
+        segmentLength = 0;
+    }
+
+    /**
+     * Does nothing.
+     */
+    @Override
+    public void flush() {
+        // Nothing to do
+    }
+
+    /**
+     * Does nothing; the captured characters remain available. Use {@link #release()} to give back the segments.
+     */
+    @Override
+    public void close() {
+        // Nothing to do
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import freemarker.core._TemplateObjectOutputStream.OutputFormatReference;
+import freemarker.core._TemplateObjectOutputStream.SymbolicReference;
+import freemarker.template.Template;
+import freemarker.template.TemplateBooleanModel;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateScalarModel;
+
+/**
+ * For internal use only; don't depend on this, there's no backward compatibility guarantee at all!
+ *
+ * <p>
+ * Reads back what {@link _TemplateObjectOutputStream} has written, attaching the {@link TemplateObject}-s to the
+ * {@link Template} given in the constructor. Only the classes that can occur in a template AST can be resolved (see
+ * {@link #isAllowedClassName(String)}), so a tampered compiled template can't make it instantiate arbitrary
+ * {@link java.io.Serializable} classes.
+ *
+ * @since 2.3.29
+ */
+public final class _TemplateObjectInputStream extends ObjectInputStream {
+
+    /** In the stream, this is replaced with {@code "."} at the beginning of the class names, to save space. */
+    static final String CORE_PACKAGE_PREFIX = "freemarker.core.";
+
+    /**
+     * The classes outside the {@code freemarker.core} package that the AST, or the template properties serialized
+     * with it (like the custom attributes coming from {@code #ftl}), can contain.
+     */
+    private static final Set<String> ALLOWED_NON_CORE_CLASS_NAMES = new HashSet<String>(Arrays.asList(new String[] {
+            "java.lang.Boolean", "java.lang.Character", "java.lang.Number", "java.lang.Byte", "java.lang.Short",
+            "java.lang.Integer", "java.lang.Long", "java.lang.Float", "java.lang.Double", "java.lang.String",
+            "java.lang.Enum",
+            "java.math.BigInteger", "java.math.BigDecimal",
+            "java.util.ArrayList", "java.util.LinkedList", "java.util.Vector",
+            "java.util.HashMap", "java.util.LinkedHashMap", "java.util.TreeMap",
+            "java.util.HashSet", "java.util.LinkedHashSet" }));
+
+    private static final String PRIMITIVE_ARRAY_COMPONENT_CODES = "ZBCSIJFD";
+
+    /**
+     * The already resolved allowed classes; without this, resolving the classes would be a significant part of the
+     * reading time, as it's done for each class in each compiled template. As only allowed classes are added, which
+     * are all visible from the class loader of FreeMarker, this can't grow unbounded, nor leak class loaders.
+     */
+    private static final ConcurrentMap<String, Class<?>> ALLOWED_CLASSES_BY_NAME
+            = new ConcurrentHashMap<String, Class<?>>();
+
+    private final Template template;
+
+    public _TemplateObjectInputStream(InputStream in, Template template) throws IOException {
+        super(in);
+        this.template = template;
+        enableResolveObject(true);
+    }
+
+    Template getTemplate() {
+        return template;
+    }
+
+    @Override
+    protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+        String className = readUTF();
+        if (className.startsWith(".")) {
+            className = CORE_PACKAGE_PREFIX + className.substring(1);
+        }
+        ObjectStreamClass desc = ObjectStreamClass.lookup(forAllowedName(className));
+        if (desc == null) {
+            throw new InvalidClassException(className, "Not serializable");
+        }
+        return desc;
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+        return forAllowedName(desc.getName());
+    }
+
+    @Override
+    protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+        throw new InvalidClassException("Proxy classes are not allowed in a compiled template");
+    }
+
+    private static Class<?> forAllowedName(String className) throws InvalidClassException, ClassNotFoundException {
+        Class<?> cl = ALLOWED_CLASSES_BY_NAME.get(className);
+        if (cl == null) {
+            if (!isAllowedClassName(className)) {
+                throw new InvalidClassException(className, "Class not allowed in a compiled template");
+            }
+            // Not using the thread context class loader, as the AST classes must be the ones of this FreeMarker.
+            cl = Class.forName(className, false, _TemplateObjectInputStream.class.getClassLoader());
+            ALLOWED_CLASSES_BY_NAME.put(className, cl);
+        }
+        return cl;
+    }
+
+    /**
+     * Tells if the class can occur in a compiled template: the classes directly in the {@code freemarker.core}
+     * package (not in its sub-packages), some {@code java.lang}, {@code java.math} and {@code java.util} classes,
+     * and the arrays of these, of {@link Object}, and of the primitive types.
+     */
+    static boolean isAllowedClassName(String className) {
+        if (className.startsWith("[")) {
+            int dimensions = 1;
+            while (dimensions < className.length() && className.charAt(dimensions) == '[') {
+                dimensions++;
+            }
+            String componentCode = className.substring(dimensions);
+            if (componentCode.length() == 1) {
+                return PRIMITIVE_ARRAY_COMPONENT_CODES.indexOf(componentCode.charAt(0)) != -1;
+            }
+            if (componentCode.length() <= 2 || !componentCode.startsWith("L") || !componentCode.endsWith(";")) {
+                return false;
+            }
+            String componentClassName = componentCode.substring(1, componentCode.length() - 1);
+            // Object[] is fine, as its elements are checked one by one:
+            return componentClassName.equals("java.lang.Object") || isAllowedClassName(componentClassName);
+        }
+        if (className.startsWith(CORE_PACKAGE_PREFIX)) {
+            return className.indexOf('.', CORE_PACKAGE_PREFIX.length()) == -1;
+        }
+        return ALLOWED_NON_CORE_CLASS_NAMES.contains(className);
+    }
+
+    @Override
+    protected Object resolveObject(Object obj) throws IOException {
+        if (obj instanceof SymbolicReference) {
+            switch (((SymbolicReference) obj).id) {
+            case 0: return template;
+            case 1: return template.getConfiguration();
+            case 2: return TemplateBooleanModel.TRUE;
+            case 3: return TemplateBooleanModel.FALSE;
+            case 4: return TemplateScalarModel.EMPTY_STRING;
+            case 5: return TemplateModel.NOTHING;
+            default: throw new InvalidObjectException("Unknown symbolic reference: " + ((SymbolicReference) obj).id);
+            }
+        } else if (obj instanceof OutputFormatReference) {
+            String name = ((OutputFormatReference) obj).name;
+            // The output format in the ParserConfiguration need not be registered in the Configuration:
+            OutputFormat pCfgOutputFormat = template.getParserConfiguration().getOutputFormat();
+            if (name.equals(_TemplateObjectOutputStream.getOutputFormatName(pCfgOutputFormat))) {
+                return pCfgOutputFormat;
+            }
+            try {
+                return template.getConfiguration().getOutputFormat(name);
+            } catch (UnregisteredOutputFormatException e) {
+                throw new InvalidObjectException("Can't resolve output format " + name + ": " + e.getMessage());
+            }
+        } else {
+            return obj;
+        }
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateBooleanModel;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateScalarModel;
+
+/**
+ * For internal use only; don't depend on this, there's no backward compatibility guarantee at all!
+ *
+ * <p>
+ * Writes the AST of a parsed {@link Template} (the {@link TemplateObject}-s reachable from it), replacing the objects
+ * that belong to the runtime environment rather than to the template (like the {@link Template} itself, the
+ * {@link Configuration}, or the {@link OutputFormat}-s) with symbolic references. These are resolved by
+ * {@link _TemplateObjectInputStream}. The result is only meant to be read back with the same FreeMarker version.
+ *
+ * @since 2.3.29
+ */
+public final class _TemplateObjectOutputStream extends ObjectOutputStream {
+
+    private final Template template;
+
+    public _TemplateObjectOutputStream(OutputStream out, Template template) throws IOException {
+        super(out);
+        this.template = template;
+        enableReplaceObject(true);
+    }
+
+    /**
+     * Only writes the class name, as the reader is required to use the same classes anyway. This makes the output
+     * much smaller, and faster to read. The names of the classes in {@code freemarker.core} are written without the
+     * package name; see {@link _TemplateObjectInputStream#CORE_PACKAGE_PREFIX}.
+     */
+    @Override
+    protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
+        String className = desc.getName();
+        writeUTF(className.startsWith(_TemplateObjectInputStream.CORE_PACKAGE_PREFIX)
+                ? className.substring(_TemplateObjectInputStream.CORE_PACKAGE_PREFIX.length() - 1)
+                : className);
+    }
+
+    @Override
+    protected Object replaceObject(Object obj) throws IOException {
+        if (obj == template) {
+            return SymbolicReference.TEMPLATE;
+        } else if (obj instanceof Template) {
+            throw new NotSerializableException("Reference to another template: " + ((Template) obj).getSourceName());
+        } else if (obj instanceof Configuration) {
+            if (obj != template.getConfiguration()) {
+                throw new NotSerializableException("Reference to a Configuration other than the template's");
+            }
+            return SymbolicReference.CONFIGURATION;
+        } else if (obj instanceof OutputFormat) {
+            return new OutputFormatReference(getOutputFormatName((OutputFormat) obj));
+        } else if (obj == TemplateBooleanModel.TRUE) {
+            return SymbolicReference.TRUE;
+        } else if (obj == TemplateBooleanModel.FALSE) {
+            return SymbolicReference.FALSE;
+        } else if (obj == TemplateScalarModel.EMPTY_STRING) {
+            return SymbolicReference.EMPTY_STRING;
+        } else if (obj == TemplateModel.NOTHING) {
+            return SymbolicReference.NOTHING;
+        } else {
+            return obj;
+        }
+    }
+
+    /**
+     * Returns the name with which {@link Configuration#getOutputFormat(String)} returns an equivalent output format.
+     */
+    static String getOutputFormatName(OutputFormat outputFormat) {
+        if (outputFormat instanceof CombinedMarkupOutputFormat && outputFormat.getName() == null) {
+            // CombinedMarkupOutputFormat-s created by Configuration.getOutputFormat don't know their name
+            CombinedMarkupOutputFormat combinedOutputFormat = (CombinedMarkupOutputFormat) outputFormat;
+            return getOutputFormatName(combinedOutputFormat.getOuterOutputFormat())
+                    + "{" + getOutputFormatName(combinedOutputFormat.getInnerOutputFormat()) + "}";
+        }
+        return outputFormat.getName();
+    }
+
+    /**
+     * Stands for an object that must be taken from the reading side, instead of being deserialized.
+     */
+    static final class SymbolicReference implements Serializable {
+
+        static final SymbolicReference TEMPLATE = new SymbolicReference(0);
+        static final SymbolicReference CONFIGURATION = new SymbolicReference(1);
+        static final SymbolicReference TRUE = new SymbolicReference(2);
+        static final SymbolicReference FALSE = new SymbolicReference(3);
+        static final SymbolicReference EMPTY_STRING = new SymbolicReference(4);
+        static final SymbolicReference NOTHING = new SymbolicReference(5);
+
+        private static final long serialVersionUID = 1L;
+
+        final int id;
+
+        private SymbolicReference(int id) {
+            this.id = id;
+        }
+
+    }
+
+    /**
+     * Stands for an {@link OutputFormat}, which will be looked up by name in the {@link Configuration}.
+     */
+    static final class OutputFormatReference implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        final String name;
+
+        OutputFormatReference(String name) {
+            this.name = name;
+        }
+
+    }
+
+}
@@ -26,6 +26,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.net.URLConnection;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -33,6 +34,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -43,15 +45,27 @@ import java.util.TimeZone;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Pattern;
 
 import freemarker.cache.CacheStorage;
 import freemarker.cache.ClassTemplateLoader;
+import freemarker.cache.CompiledTemplateStore;
+import freemarker.cache.EnumerableTemplateLoader;
+import freemarker.cache.FileCompiledTemplateStore;
 import freemarker.cache.FileTemplateLoader;
 import freemarker.cache.MruCacheStorage;
 import freemarker.cache.MultiTemplateLoader;
 import freemarker.cache.SoftCacheStorage;
 import freemarker.cache.TemplateCache;
 import freemarker.cache.TemplateCache.MaybeMissingTemplate;
+import freemarker.cache.TemplateCacheListener;
+import freemarker.cache.TemplateCacheStatistics;
 import freemarker.cache.TemplateConfigurationFactory;
 import freemarker.cache.TemplateLoader;
 import freemarker.cache.TemplateLookupContext;
@@ -69,11 +83,14 @@ import freemarker.core.JavaScriptOutputFormat;
 import freemarker.core.MarkupOutputFormat;
 import freemarker.core.OutputFormat;
 import freemarker.core.ParseException;
+import freemarker.core.ParsedFragmentCache;
 import freemarker.core.ParserConfiguration;
 import freemarker.core.PlainTextOutputFormat;
 import freemarker.core.RTFOutputFormat;
 import freemarker.core.TemplateConfiguration;
 import freemarker.core.TemplateMarkupOutputModel;
+import freemarker.core.TemplatePostProcessor;
+import freemarker.core.TemplateTextInternPool;
 import freemarker.core.UndefinedOutputFormat;
 import freemarker.core.UnregisteredOutputFormatException;
 import freemarker.core.XHTMLOutputFormat;
@@ -501,6 +518,9 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
         }
     }
     
+    /** Matches the part of the localized template name that {@link Locale#toString()} has added. */
+    private static final Pattern LOCALE_NAME_SUFFIX_PATTERN = Pattern.compile("[a-zA-Z]{2,3}(_[a-zA-Z0-9]+)*");
+    
     private static final String FM_24_DETECTION_CLASS_NAME = "freemarker.core._2_4_OrLaterMarker";
     private static final boolean FM_24_DETECTED;
     static {
@@ -537,8 +557,15 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
     private int namingConvention = AUTO_DETECT_NAMING_CONVENTION;
     private int tabSize = 8;  // Default from JavaCC 3.x
     private boolean preventStrippings;
+    private boolean compactTemplateSourceLines;
+    private List<TemplatePostProcessor> templatePostProcessors = Collections.emptyList();
+    private boolean verifyTemplatePostProcessing;
+    private int attemptOutputSpillThreshold;
+    private File attemptOutputSpillDirectory;
 
     private TemplateCache cache;
+    private volatile ParsedFragmentCache parsedFragmentCache;
+    private volatile TemplateTextInternPool templateTextInternPool;
     
     private boolean templateLoaderExplicitlySet;
     private boolean templateLookupStrategyExplicitlySet;
@@ -966,6 +993,14 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
                 loader, storage, templateLookupStrategy, templateNameFormat, templateConfigurations, this);
         cache.clear(); // for fully BC behavior
         cache.setDelay(oldCache.getDelay());
+        cache.setBackgroundRefreshExecutor(oldCache.getBackgroundRefreshExecutor());
+        cache.setDependencyPrefetchExecutor(oldCache.getDependencyPrefetchExecutor());
+        cache.setCompiledTemplateStore(oldCache.getCompiledTemplateStore());
+        cache.setContentBasedTemplateReuse(oldCache.getContentBasedTemplateReuse());
+        cache.setInlineStaticTextIncludes(oldCache.getInlineStaticTextIncludes());
+        for (TemplateCacheListener listener : oldCache.getListeners()) {
+            cache.addListener(listener);
+        }
         cache.setLocalizedLookup(localizedLookup);
     }
     
@@ -1090,10 +1125,20 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
             Configuration copy = (Configuration) super.clone();
             copy.sharedVariables = new HashMap(sharedVariables);
             copy.localeToCharsetMap = new ConcurrentHashMap(localeToCharsetMap);
+            copy.setParsedFragmentCacheSize(getParsedFragmentCacheSize());
+            copy.templateTextInternPool = templateTextInternPool != null
+                    ? _CoreAPI.newTemplateTextInternPool() : null;
             copy.recreateTemplateCacheWith(
                     cache.getTemplateLoader(), cache.getCacheStorage(),
                     cache.getTemplateLookupStrategy(), cache.getTemplateNameFormat(),
                     cache.getTemplateConfigurations());
+            // The listeners were copied above, but the clone must collect its own statistics. (Re-adding all of them
+            // keeps their order.)
+            for (TemplateCacheListener listener : copy.cache.getListeners()) {
+                copy.cache.removeListener(listener);
+                copy.cache.addListener(listener instanceof TemplateCacheStatistics
+                        ? ((TemplateCacheStatistics) listener).createEmptyCopy() : listener);
+            }
             return copy;
         } catch (CloneNotSupportedException e) {
             throw new BugException("Cloning failed", e);
@@ -1658,6 +1703,375 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
     public long getTemplateUpdateDelayMilliseconds() {
         return cache.getDelay();
     }
+
+    /**
+     * Sets the {@link Executor} that's used to check if a cached template was changed (and to reload it if it was)
+     * when its template update delay (see {@link #setTemplateUpdateDelayMilliseconds(long)}) has elapsed. When this
+     * is set, {@link #getTemplate(String)} (and its overloads) will not wait for that check to finish (which may
+     * involve I/O, and parsing), but return the cached template immediately, and the new version of the template will
+     * be returned as soon as it was loaded in the background. Defaults to {@code null}, which means that the check is
+     * done by the thread that gets the template. See {@link TemplateCache#setBackgroundRefreshExecutor(Executor)} for
+     * more details.
+     * 
+     * <p>
+     * Note that the {@link Executor} is not shut down by FreeMarker; its life-cycle is managed by the caller.
+     * 
+     * @since 2.3.29
+     */
+    public void setTemplateUpdateExecutor(Executor executor) {
+        cache.setBackgroundRefreshExecutor(executor);
+    }
+    
+    /**
+     * The getter pair of {@link #setTemplateUpdateExecutor(Executor)}.
+     * 
+     * @since 2.3.29
+     */
+    public Executor getTemplateUpdateExecutor() {
+        return cache.getBackgroundRefreshExecutor();
+    }
+
+    /**
+     * Sets the {@link Executor} that's used to load the templates that a newly loaded template includes or imports
+     * with a literal template name (see {@link Template#getStaticDependencies()}), so that they are already in the
+     * template cache when the {@code #include} or {@code #import} is executed. Defaults to {@code null}, which means
+     * that templates are only loaded when they are requested. See
+     * {@link TemplateCache#setDependencyPrefetchExecutor(Executor)} for more details.
+     * 
+     * <p>
+     * Note that the {@link Executor} is not shut down by FreeMarker; its life-cycle is managed by the caller.
+     * 
+     * @since 2.3.29
+     */
+    public void setTemplateDependencyPrefetchExecutor(Executor executor) {
+        cache.setDependencyPrefetchExecutor(executor);
+    }
+    
+    /**
+     * The getter pair of {@link #setTemplateDependencyPrefetchExecutor(Executor)}.
+     * 
+     * @since 2.3.29
+     */
+    public Executor getTemplateDependencyPrefetchExecutor() {
+        return cache.getDependencyPrefetchExecutor();
+    }
+    
+    /**
+     * Returns the names of the templates that (directly or indirectly) include or import the given template, as far
+     * as it's known from the templates loaded into the template cache. This is useful to find the templates affected
+     * by the change of a shared template. See {@link TemplateCache#getDependentTemplateNames(String)} for more
+     * details.
+     * 
+     * @since 2.3.29
+     */
+    public Set<String> getDependentTemplateNames(String templateName) throws MalformedTemplateNameException {
+        return cache.getDependentTemplateNames(templateName);
+    }
+
+    /**
+     * Sets the {@link CompiledTemplateStore} where the parsed templates are persisted, so that after a restart
+     * {@link #getTemplate(String)} (and its overloads) can re-create them without parsing them again. Defaults to
+     * {@code null}, which means that templates are always parsed. The template source is still loaded with the
+     * {@link TemplateLoader}, and a stored compiled template is only used if its source code, the settings that
+     * influence parsing (like {@link #setTagSyntax(int) tag_syntax}, or those coming from
+     * {@link #setTemplateConfigurations(TemplateConfigurationFactory) template_configurations}), and the FreeMarker
+     * version is the same as when it was stored. See
+     * {@link TemplateCache#setCompiledTemplateStore(CompiledTemplateStore)} for more details.
+     * 
+     * @see FileCompiledTemplateStore
+     * 
+     * @since 2.3.29
+     */
+    public void setCompiledTemplateStore(CompiledTemplateStore compiledTemplateStore) {
+        cache.setCompiledTemplateStore(compiledTemplateStore);
+    }
+    
+    /**
+     * The getter pair of {@link #setCompiledTemplateStore(CompiledTemplateStore)}.
+     * 
+     * @since 2.3.29
+     */
+    public CompiledTemplateStore getCompiledTemplateStore() {
+        return cache.getCompiledTemplateStore();
+    }
+
+    /**
+     * Sets whether {@link #getTemplate(String)} (and its overloads) should avoid parsing a template again if its
+     * source code (and the settings that influence parsing) is identical to that of an already parsed template with
+     * the same source name. This is useful if the {@link TemplateLoader#getLastModified(Object) last modification
+     * time} of templates can change without their content changing (like after a deployment that touches all files),
+     * as then the template is still loaded again, but it's not parsed again. Defaults to {@code false}. See
+     * {@link TemplateCache#setContentBasedTemplateReuse(boolean)} for more details.
+     * 
+     * @since 2.3.29
+     */
+    public void setContentBasedTemplateReuse(boolean contentBasedTemplateReuse) {
+        cache.setContentBasedTemplateReuse(contentBasedTemplateReuse);
+    }
+    
+    /**
+     * The getter pair of {@link #setContentBasedTemplateReuse(boolean)}.
+     * 
+     * @since 2.3.29
+     */
+    public boolean getContentBasedTemplateReuse() {
+        return cache.getContentBasedTemplateReuse();
+    }
+
+    /**
+     * Sets whether an {@code #include} with a literal template name, whose target template contains only static
+     * text, should output the text that was already resolved when the including template was loaded, instead of
+     * looking up the included template on each execution. When the including template is checked for changes
+     * (see {@link #setTemplateUpdateDelayMilliseconds(long)}), it's also reloaded if an inlined template has changed.
+     * Defaults to {@code false}. See {@link TemplateCache#setInlineStaticTextIncludes(boolean)} for more details.
+     * 
+     * @since 2.3.29
+     */
+    public void setInlineStaticTextIncludes(boolean inlineStaticTextIncludes) {
+        cache.setInlineStaticTextIncludes(inlineStaticTextIncludes);
+    }
+    
+    /**
+     * The getter pair of {@link #setInlineStaticTextIncludes(boolean)}.
+     * 
+     * @since 2.3.29
+     */
+    public boolean getInlineStaticTextIncludes() {
+        return cache.getInlineStaticTextIncludes();
+    }
+
+    /**
+     * Sets the maximum number of expressions parsed by {@code ?eval}, and templates parsed by {@code ?interpret},
+     * that are kept in memory, so that evaluating the same string again doesn't parse it again. This helps if these
+     * built-ins are called with the same strings repeatedly, like inside {@code #list}. Defaults to 0, which means
+     * that nothing is cached. Setting this empties the cache. See {@link ParsedFragmentCache} for more details.
+     * 
+     * @since 2.3.29
+     */
+    public void setParsedFragmentCacheSize(int parsedFragmentCacheSize) {
+        if (parsedFragmentCacheSize < 0) {
+            throw new IllegalArgumentException("parsedFragmentCacheSize can't be negative");
+        }
+        parsedFragmentCache = parsedFragmentCacheSize != 0
+                ? _CoreAPI.newParsedFragmentCache(parsedFragmentCacheSize) : null;
+    }
+    
+    /**
+     * The getter pair of {@link #setParsedFragmentCacheSize(int)}.
+     * 
+     * @since 2.3.29
+     */
+    public int getParsedFragmentCacheSize() {
+        ParsedFragmentCache parsedFragmentCache = this.parsedFragmentCache;
+        return parsedFragmentCache != null ? parsedFragmentCache.getMaxSize() : 0;
+    }
+    
+    /**
+     * Returns the cache used for {@code ?eval} and {@code ?interpret}, mostly to query its statistics; {@code null}
+     * if {@link #setParsedFragmentCacheSize(int)} was set to 0.
+     * 
+     * @since 2.3.29
+     */
+    public ParsedFragmentCache getParsedFragmentCache() {
+        return parsedFragmentCache;
+    }
+
+    /**
+     * Sets whether the static text in the templates (the parts outside the FTL tags and interpolations) is routed
+     * through a {@link Configuration}-wide pool after parsing, so that the templates (and their locale variants) that
+     * contain the same text share it, instead of each storing its own copy. The pool only references the texts
+     * weakly, so it doesn't prevent the templates removed from the cache from being garbage collected. Defaults to
+     * {@code false}. Changing this doesn't affect the templates that were already parsed. Setting this to
+     * {@code true} when it's already {@code true} keeps the current pool. See {@link TemplateTextInternPool} for more
+     * details.
+     * 
+     * @since 2.3.29
+     */
+    public void setInternTemplateText(boolean internTemplateText) {
+        if (internTemplateText) {
+            if (templateTextInternPool == null) {
+                templateTextInternPool = _CoreAPI.newTemplateTextInternPool();
+            }
+        } else {
+            templateTextInternPool = null;
+        }
+    }
+    
+    /**
+     * The getter pair of {@link #setInternTemplateText(boolean)}.
+     * 
+     * @since 2.3.29
+     */
+    public boolean getInternTemplateText() {
+        return templateTextInternPool != null;
+    }
+    
+    /**
+     * Returns the pool used for the static text of the templates, mostly to query its statistics; {@code null} if
+     * {@link #setInternTemplateText(boolean)} was set to {@code false}.
+     * 
+     * @since 2.3.29
+     */
+    public TemplateTextInternPool getTemplateTextInternPool() {
+        return templateTextInternPool;
+    }
+
+    /**
+     * Sets the {@link TemplatePostProcessor}-s that transform the AST of each template after it was parsed, in the
+     * order they should be applied. This is typically used to optimize the templates, like with
+     * {@link TemplatePostProcessor#STANDARD_OPTIMIZER_PASSES}. The post-processors are applied on the templates
+     * parsed by {@code ?interpret} too. Defaults to an empty list. Changing this doesn't affect the templates that
+     * were already parsed, so you may want to call {@link #clearTemplateCache()} after it.
+     * 
+     * @param templatePostProcessors
+     *            Not {@code null}; the list is copied.
+     * 
+     * @see #setVerifyTemplatePostProcessing(boolean)
+     * 
+     * @since 2.3.29
+     */
+    public void setTemplatePostProcessors(List<? extends TemplatePostProcessor> templatePostProcessors) {
+        NullArgumentException.check("templatePostProcessors", templatePostProcessors);
+        for (TemplatePostProcessor templatePostProcessor : templatePostProcessors) {
+            NullArgumentException.check("templatePostProcessors[...]", templatePostProcessor);
+        }
+        this.templatePostProcessors = Collections.unmodifiableList(
+                new ArrayList<TemplatePostProcessor>(templatePostProcessors));
+    }
+    
+    /**
+     * The getter pair of {@link #setTemplatePostProcessors(List)}.
+     * 
+     * @return Not {@code null}; an unmodifiable list.
+     * 
+     * @since 2.3.29
+     */
+    public List<TemplatePostProcessor> getTemplatePostProcessors() {
+        return templatePostProcessors;
+    }
+    
+    /**
+     * Sets whether to check that the {@link #setTemplatePostProcessors(List) template post-processors} haven't
+     * changed the output of the templates. If this is {@code true} when a template is parsed, the template remembers
+     * its AST as it was before the post-processing, and then {@link Template#process(Object, Writer)} (and
+     * {@link Environment#process()} in general) processes the template with both ASTs, and throws
+     * {@link TemplateException} if the outputs differ.
+     * 
+     * <p><b>This is for testing only; never enable it in production!</b> As each template is rendered twice, every
+     * side effect of the rendering happens twice as well: the methods called from the template (including those of
+     * the data-model objects), {@code ?eval} and {@code ?interpret}, the {@link TemplateLoader} accesses due to
+     * {@code #include} and {@code #import}, the {@link TemplateDirectiveModel}-s, etc., are all executed twice, and if
+     * they aren't side effect free, the two outputs can differ for that reason alone. Also, the rendering is at least
+     * twice as slow, and the whole output is buffered in memory.
+     * 
+     * <p>Note that the settings that were set directly on the {@link Environment} are not used when processing the
+     * AST from before the post-processing, and that the templates loaded from a
+     * {@link #setCompiledTemplateStore(CompiledTemplateStore) compiled template store} aren't verified, as they weren't
+     * parsed. Defaults to {@code false}.
+     * 
+     * @since 2.3.29
+     */
+    public void setVerifyTemplatePostProcessing(boolean verifyTemplatePostProcessing) {
+        this.verifyTemplatePostProcessing = verifyTemplatePostProcessing;
+    }
+    
+    /**
+     * The getter pair of {@link #setVerifyTemplatePostProcessing(boolean)}.
+     * 
+     * @since 2.3.29
+     */
+    public boolean getVerifyTemplatePostProcessing() {
+        return verifyTemplatePostProcessing;
+    }
+
+    /**
+     * Sets the number of characters after which the output of an {@code #attempt} block is moved from memory into a
+     * temporary file (see {@link #setAttemptOutputSpillDirectory(File)}), or 0 if it should be always kept in
+     * memory. As the output of an {@code #attempt} block is only written to the real output when the block has finished
+     * successfully (otherwise it's rolled back), it has to be held back until then; this setting limits how much
+     * memory that uses for very large blocks. The output before the {@code #attempt} block is not affected, and nested
+     * {@code #attempt} blocks share the buffer of the outermost one. The behavior of {@code #attempt} and
+     * {@code #recover} is otherwise the same. Defaults to 0.
+     * 
+     * @since 2.3.29
+     */
+    public void setAttemptOutputSpillThreshold(int attemptOutputSpillThreshold) {
+        if (attemptOutputSpillThreshold < 0) {
+            throw new IllegalArgumentException(
+                    "\"attemptOutputSpillThreshold\" can't be negative, but was " + attemptOutputSpillThreshold);
+        }
+        this.attemptOutputSpillThreshold = attemptOutputSpillThreshold;
+    }
+
+    /**
+     * The getter pair of {@link #setAttemptOutputSpillThreshold(int)}.
+     * 
+     * @since 2.3.29
+     */
+    public int getAttemptOutputSpillThreshold() {
+        return attemptOutputSpillThreshold;
+    }
+
+    /**
+     * Sets the directory where the temporary files used because of {@link #setAttemptOutputSpillThreshold(int)} are
+     * created, or {@code null} if they should be created in the {@code java.io.tmpdir} directory. As these files
+     * contain template output, which can be sensitive, it's better to use a directory that only the user running the
+     * application can access. (On Java 8 and later, where the file system supports POSIX permissions, the files
+     * themselves are only readable by their owner.) The files are deleted when the outermost {@code #attempt} block
+     * is finished (even if it has failed), but if the JVM is terminated meanwhile, the file named like
+     * {@code freemarker-attempt-*.tmp} is left there. Defaults to {@code null}.
+     * 
+     * @since 2.3.29
+     */
+    public void setAttemptOutputSpillDirectory(File attemptOutputSpillDirectory) {
+        this.attemptOutputSpillDirectory = attemptOutputSpillDirectory;
+    }
+
+    /**
+     * The getter pair of {@link #setAttemptOutputSpillDirectory(File)}.
+     * 
+     * @since 2.3.29
+     */
+    public File getAttemptOutputSpillDirectory() {
+        return attemptOutputSpillDirectory;
+    }
+
+    /**
+     * Adds a {@link TemplateCacheListener} that will be notified about what the template cache does, like cache hits,
+     * misses, and template (re)loads. This is typically used to collect statistics, like with
+     * {@link TemplateCacheStatistics}. The listeners are kept when the template cache is re-created because of a
+     * setting change. When the {@link Configuration} is {@linkplain #clone() cloned}, the clone shares the listeners,
+     * except that it gets a new {@link TemplateCacheStatistics} (see {@link TemplateCacheStatistics#createEmptyCopy()})
+     * instead of each one added here. Unlike most setters, this method is thread-safe.
+     * 
+     * @since 2.3.29
+     */
+    public void addTemplateCacheListener(TemplateCacheListener listener) {
+        cache.addListener(listener);
+    }
+
+    /**
+     * Removes a listener added with {@link #addTemplateCacheListener(TemplateCacheListener)}; does nothing if it
+     * wasn't added.
+     * 
+     * @since 2.3.29
+     */
+    public void removeTemplateCacheListener(TemplateCacheListener listener) {
+        cache.removeListener(listener);
+    }
+    
+    /**
+     * Returns the listeners added with {@link #addTemplateCacheListener(TemplateCacheListener)}, in the order as they
+     * were added. After {@link #clone()}, this is how the {@link TemplateCacheStatistics} of the clone can be got (like
+     * to register it as an MBean).
+     * 
+     * @return An unmodifiable snapshot; not {@code null}.
+     * 
+     * @since 2.3.29
+     */
+    public List<TemplateCacheListener> getTemplateCacheListeners() {
+        return cache.getListeners();
+    }
     
     /**
      * Sets whether directives such as {@code if}, {@code else}, etc must be written as {@code #if}, {@code #else}, etc.
@@ -2573,6 +2987,29 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
     public int getTabSize() {
         return tabSize;
     }
+
+    /**
+     * Sets how the parsed templates store their source code, which is kept in memory for quoting it in error messages
+     * (see {@link Template#getSource(int, int, int, int)}). If {@code false} (the default), each line is stored as a
+     * separate {@link String}, which is the legacy behavior. If {@code true}, all lines of a template are stored in a
+     * single {@code char} array, plus an {@code int} array with the line end positions, which uses significantly less
+     * memory, especially for templates with many short lines. The error messages are the same either way. This only
+     * affects the templates that are parsed after this setting was changed.
+     * 
+     * @since 2.3.29
+     */
+    public void setCompactTemplateSourceLines(boolean compactTemplateSourceLines) {
+        this.compactTemplateSourceLines = compactTemplateSourceLines;
+    }
+
+    /**
+     * The getter pair of {@link #setCompactTemplateSourceLines(boolean)}.
+     * 
+     * @since 2.3.29
+     */
+    public boolean getCompactTemplateSourceLines() {
+        return compactTemplateSourceLines;
+    }
     
     /**
      * Getter pair of {@link #setPreventStrippings(boolean)}.
@@ -3085,6 +3522,163 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
         loadBuiltInSharedVariables();
     }
     
+    /**
+     * Loads the specified templates into the template cache, in parallel, so that later
+     * {@link #getTemplate(String, Locale)} calls will find them there (as far as the cache doesn't evict them, or they
+     * become stale). This is typically called when the application starts, before it starts serving requests, so that
+     * the first requests need not wait for the templates to be loaded and parsed.
+     * 
+     * <p>
+     * This is the same as {@link #preloadTemplates(Collection, Collection, Executor)} with an {@link Executor} that
+     * uses as many threads as many processors are available, and which is shut down when the preloading is finished.
+     * 
+     * @since 2.3.29
+     */
+    public TemplatePreloadResult preloadTemplates(
+            Collection<String> templateNamesOrGlobs, Collection<Locale> locales)
+            throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(),
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "FreeMarker template preloader");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        try {
+            return preloadTemplates(templateNamesOrGlobs, locales, executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    /**
+     * Loads the specified templates into the template cache, using the given {@link Executor} to load them in
+     * parallel. For each template name and locale, this does the same as {@link #getTemplate(String, Locale)}, so
+     * it also loads the localized variant of the template that the
+     * {@link #setTemplateLookupStrategy(TemplateLookupStrategy) template_lookup_strategy} resolves to. This method
+     * returns when all the templates were loaded, or have failed to load. The failures are not thrown, but are listed
+     * in the result.
+     * 
+     * @param templateNamesOrGlobs
+     *            The names of the templates to load. If a name contains {@code *} or {@code ?}, it's treated as a glob
+     *            (see {@link StringUtil#globToRegularExpression(String)} for the syntax), and is matched against the
+     *            template names listed by the {@link #setTemplateLoader(TemplateLoader) template_loader}, which then
+     *            must implement {@link EnumerableTemplateLoader} (like {@link FileTemplateLoader},
+     *            {@link ClassTemplateLoader}, and {@link MultiTemplateLoader} do). If
+     *            {@link #setLocalizedLookup(boolean) localized_lookup} is {@code true} and the
+     *            {@link #setTemplateLookupStrategy(TemplateLookupStrategy) template_lookup_strategy} is the default,
+     *            then the localized variants of the listed templates (like {@code foo_de.ftl} if there's a
+     *            {@code foo.ftl}) aren't matched by globs, as they aren't separate templates; they are loaded anyway
+     *            if {@code locales} makes {@code foo.ftl} resolve to them.
+     * @param locales
+     *            The locales for which each template is loaded; if {@code null} or empty, then only
+     *            {@link #getLocale()} is used.
+     * @param executor
+     *            Runs the template loading tasks. If it rejects a task, the task is run in the calling thread.
+     * 
+     * @throws IllegalArgumentException
+     *             If a glob was specified, but the template loader can't list the templates.
+     * @throws IOException
+     *             If listing the templates has failed (errors during template loading are not thrown).
+     * 
+     * @since 2.3.29
+     */
+    public TemplatePreloadResult preloadTemplates(
+            Collection<String> templateNamesOrGlobs, Collection<Locale> locales, Executor executor)
+            throws IOException, InterruptedException {
+        NullArgumentException.check("templateNamesOrGlobs", templateNamesOrGlobs);
+        NullArgumentException.check("executor", executor);
+        long startTime = System.nanoTime();
+        
+        Set<String> templateNames = new LinkedHashSet<String>();
+        List<String> listedTemplateNames = null;
+        Set<String> listedTemplateNameSet = null;
+        for (String nameOrGlob : templateNamesOrGlobs) {
+            if (nameOrGlob.indexOf('*') != -1 || nameOrGlob.indexOf('?') != -1) {
+                if (listedTemplateNames == null) {
+                    TemplateLoader templateLoader = getTemplateLoader();
+                    if (!(templateLoader instanceof EnumerableTemplateLoader)) {
+                        throw new IllegalArgumentException("Can't resolve template name glob "
+                                + StringUtil.jQuote(nameOrGlob) + ", because the template loader doesn't implement "
+                                + EnumerableTemplateLoader.class.getName() + "; template loader: " + templateLoader);
+                    }
+                    listedTemplateNames = ((EnumerableTemplateLoader) templateLoader).listTemplateNames();
+                    if (getLocalizedLookup() && getTemplateLookupStrategy() == TemplateLookupStrategy.DEFAULT_2_3_0) {
+                        listedTemplateNameSet = new HashSet<String>(listedTemplateNames);
+                    }
+                }
+                Pattern globPattern = StringUtil.globToRegularExpression(
+                        nameOrGlob.startsWith("/") ? nameOrGlob.substring(1) : nameOrGlob);
+                for (String listedTemplateName : listedTemplateNames) {
+                    if (globPattern.matcher(listedTemplateName).matches()
+                            && (listedTemplateNameSet == null
+                                    || !isLocalizedVariant(listedTemplateName, listedTemplateNameSet))) {
+                        templateNames.add(listedTemplateName);
+                    }
+                }
+            } else {
+                templateNames.add(nameOrGlob);
+            }
+        }
+        
+        if (locales == null || locales.isEmpty()) {
+            locales = Collections.singletonList(getLocale());
+        }
+        
+        List<TemplatePreloadResult.Item> items = new ArrayList<TemplatePreloadResult.Item>();
+        for (String templateName : templateNames) {
+            for (Locale locale : locales) {
+                items.add(new TemplatePreloadResult.Item(templateName, locale));
+            }
+        }
+        
+        final CountDownLatch doneLatch = new CountDownLatch(items.size());
+        for (final TemplatePreloadResult.Item item : items) {
+            Runnable task = new Runnable() {
+                public void run() {
+                    long itemStartTime = System.nanoTime();
+                    try {
+                        getTemplate(item.getTemplateName(), item.getLocale());
+                        item.setResult(System.nanoTime() - itemStartTime, null);
+                    } catch (Throwable e) {
+                        item.setResult(System.nanoTime() - itemStartTime, e);
+                    } finally {
+                        doneLatch.countDown();
+                    }
+                }
+            };
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                task.run();
+            }
+        }
+        doneLatch.await();
+        
+        return new TemplatePreloadResult(items, System.nanoTime() - startTime);
+    }
+
+    /**
+     * Tells if the template name is like {@code foo_en_US.ftl}, and {@code foo.ftl} is also listed, in which case it's
+     * just a localized variant that {@link TemplateLookupStrategy#DEFAULT_2_3_0} finds through {@code foo.ftl}.
+     */
+    private static boolean isLocalizedVariant(String templateName, Set<String> listedTemplateNames) {
+        int fileNameStart = templateName.lastIndexOf('/') + 1;
+        int lastDot = templateName.lastIndexOf('.');
+        int localeEnd = lastDot >= fileNameStart ? lastDot : templateName.length();
+        String suffix = templateName.substring(localeEnd);
+        for (int i = templateName.indexOf('_', fileNameStart); i != -1 && i < localeEnd;
+                i = templateName.indexOf('_', i + 1)) {
+            if (LOCALE_NAME_SUFFIX_PATTERN.matcher(templateName.substring(i + 1, localeEnd)).matches()
+                    && listedTemplateNames.contains(templateName.substring(0, i) + suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     /**
      * Removes all entries from the template cache, thus forcing reloading of templates
      * on subsequent <code>getTemplate</code> calls.
@@ -3266,7 +3860,7 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
             } else if (CACHE_STORAGE_KEY_SNAKE_CASE.equals(name) || CACHE_STORAGE_KEY_CAMEL_CASE.equals(name)) {
                 if (value.equalsIgnoreCase(DEFAULT)) {
                     unsetCacheStorage();
-                } if (value.indexOf('.') == -1) {
+                } if (value.indexOf('.') == -1 && value.indexOf('(') == -1) {
                     int strongSize = 0;
                     int softSize = 0;
                     Map map = StringUtil.parseNameValuePairList(
@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.template;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+import freemarker.core.Environment;
+import freemarker.core.OutputFormat;
+import freemarker.core.ParserConfiguration;
+import freemarker.log.Logger;
+
+/**
+ * Estimates the heap space retained by an object graph, like by a parsed {@link Template}. It walks the object graph
+ * with reflection, but only descends into FreeMarker's own classes, arrays, and the standard {@link Collection}-s and
+ * {@link Map}-s; for other objects only their shallow size is counted. Objects that are normally shared with other
+ * templates (like the {@link Configuration}, or other {@link Template}-s) aren't counted at all. The estimate assumes
+ * a 64 bit JVM with compressed object pointers, which is the typical case.
+ */
+final class MemoryUsageEstimator {
+
+    private static final int OBJECT_HEADER_SIZE = 12;
+    private static final int ARRAY_HEADER_SIZE = 16;
+    private static final int REFERENCE_SIZE = 4;
+    /** The size of a {@link java.util.HashMap} entry, including its header. */
+    private static final int MAP_ENTRY_SIZE = 32;
+
+    private static final Class<?>[] SHARED_CLASSES = {
+            Configuration.class, Template.class, ParserConfiguration.class, OutputFormat.class, ObjectWrapper.class,
+            Environment.class, Class.class, ClassLoader.class, Thread.class, Locale.class, TimeZone.class,
+            Charset.class, Enum.class, Logger.class };
+
+    private static final ConcurrentHashMap<Class<?>, ClassLayout> CLASS_LAYOUTS
+            = new ConcurrentHashMap<Class<?>, ClassLayout>();
+
+    private final IdentityHashMap<Object, Object> visited = new IdentityHashMap<Object, Object>();
+    private final ArrayList<Object> stack = new ArrayList<Object>();
+
+    private MemoryUsageEstimator() {
+        // Use estimate(Object)
+    }
+
+    /**
+     * Returns the estimated number of bytes retained by the object. The object graph must not be modified
+     * concurrently.
+     */
+    static long estimate(Object root) {
+        MemoryUsageEstimator estimator = new MemoryUsageEstimator();
+        estimator.visited.put(root, root);
+        estimator.stack.add(root);
+        return estimator.walk();
+    }
+
+    private long walk() {
+        long size = 0;
+        while (!stack.isEmpty()) {
+            size += getSizeAndPushReferences(stack.remove(stack.size() - 1));
+        }
+        return size;
+    }
+
+    private long getSizeAndPushReferences(Object obj) {
+        Class<?> cl = obj.getClass();
+        if (cl.isArray()) {
+            int length = Array.getLength(obj);
+            Class<?> componentType = cl.getComponentType();
+            if (componentType.isPrimitive()) {
+                return align(ARRAY_HEADER_SIZE + (long) length * getPrimitiveSize(componentType));
+            }
+            Object[] array = (Object[]) obj;
+            for (Object item : array) {
+                push(item);
+            }
+            return align(ARRAY_HEADER_SIZE + (long) length * REFERENCE_SIZE);
+        } else if (obj instanceof String) {
+            return getClassLayout(cl).shallowSize + align(ARRAY_HEADER_SIZE + 2L * ((String) obj).length());
+        } else if (obj instanceof Collection) {
+            Collection<?> collection = (Collection<?>) obj;
+            for (Object item : collection) {
+                push(item);
+            }
+            return getClassLayout(cl).shallowSize
+                    + align(ARRAY_HEADER_SIZE + (long) collection.size() * REFERENCE_SIZE);
+        } else if (obj instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) obj;
+            for (Map.Entry<?, ?> ent : map.entrySet()) {
+                push(ent.getKey());
+                push(ent.getValue());
+            }
+            int size = map.size();
+            return getClassLayout(cl).shallowSize
+                    + align(ARRAY_HEADER_SIZE + (size + size / 3L) * REFERENCE_SIZE)
+                    + (long) size * MAP_ENTRY_SIZE;
+        } else {
+            ClassLayout layout = getClassLayout(cl);
+            for (Field field : layout.referenceFields) {
+                try {
+                    push(field.get(obj));
+                } catch (IllegalAccessException e) {
+                    // Can't happen, as the fields were made accessible; not counting the referred object then
+                }
+            }
+            return layout.shallowSize;
+        }
+    }
+
+    private void push(Object obj) {
+        if (obj == null || visited.containsKey(obj)) {
+            return;
+        }
+        for (Class<?> sharedClass : SHARED_CLASSES) {
+            if (sharedClass.isInstance(obj)) {
+                return;
+            }
+        }
+        visited.put(obj, obj);
+        stack.add(obj);
+    }
+
+    private static ClassLayout getClassLayout(Class<?> cl) {
+        ClassLayout layout = CLASS_LAYOUTS.get(cl);
+        if (layout == null) {
+            layout = new ClassLayout(cl);
+            CLASS_LAYOUTS.put(cl, layout);
+        }
+        return layout;
+    }
+
+    private static int getPrimitiveSize(Class<?> cl) {
+        if (cl == long.class || cl == double.class) {
+            return 8;
+        } else if (cl == int.class || cl == float.class) {
+            return 4;
+        } else if (cl == char.class || cl == short.class) {
+            return 2;
+        } else {
+            return 1;
+        }
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    private static class ClassLayout {
+
+        private static final Field[] NO_FIELDS = new Field[0];
+
+        private final long shallowSize;
+        /** The non-primitive instance fields, if the class is one whose fields we descend into. */
+        private final Field[] referenceFields;
+
+        ClassLayout(Class<?> cl) {
+            boolean descend = cl.getName().startsWith("freemarker.");
+            long size = OBJECT_HEADER_SIZE;
+            ArrayList<Field> referenceFields = new ArrayList<Field>();
+            for (Class<?> c = cl; c != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    Class<?> fieldType = field.getType();
+                    if (fieldType.isPrimitive()) {
+                        size += getPrimitiveSize(fieldType);
+                    } else {
+                        size += REFERENCE_SIZE;
+                        if (descend) {
+                            referenceFields.add(field);
+                        }
+                    }
+                }
+            }
+            shallowSize = align(size);
+
+            Field[] referenceFieldsArray = referenceFields.toArray(new Field[referenceFields.size()]);
+            try {
+                AccessibleObject.setAccessible(referenceFieldsArray, true);
+            } catch (RuntimeException e) {
+                // Like a SecurityException; we can only count the shallow size then
+                referenceFieldsArray = NO_FIELDS;
+            }
+            this.referenceFields = referenceFieldsArray;
+        }
+
+    }
+
+}
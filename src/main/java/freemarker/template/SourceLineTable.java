@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.template;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores the source code lines of a {@link Template}, so that {@link Template#getSource(int, int, int, int)} can quote
+ * them in error messages. The lines are stored as the parser has read them (with the tabs already expanded), including
+ * the line breaks.
+ */
+abstract class SourceLineTable {
+
+    /**
+     * @param compact
+     *            See {@link Configuration#setCompactTemplateSourceLines(boolean)}.
+     */
+    static SourceLineTable create(boolean compact) {
+        return compact ? new CompactSourceLineTable() : new ListSourceLineTable();
+    }
+
+    abstract void addLine(CharSequence line);
+
+    /**
+     * Called when no more lines will be added, so that the unused capacity can be released.
+     */
+    void trimToSize() {
+        // Does nothing by default
+    }
+
+    abstract int size();
+
+    /**
+     * Appends the line with the given 0-based index to the {@link StringBuilder}.
+     */
+    abstract void appendLine(int index, StringBuilder sb);
+
+    /**
+     * @throws IndexOutOfBoundsException
+     *             If there's no line with the given 0-based index.
+     */
+    abstract int getLineLength(int index);
+
+    List<String> toList() {
+        List<String> result = new ArrayList<String>(size());
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size(); i++) {
+            sb.setLength(0);
+            appendLine(i, sb);
+            result.add(sb.toString());
+        }
+        return result;
+    }
+
+    /**
+     * Stores each line as a separate {@link String}; this was the only way before 2.3.29.
+     */
+    private static final class ListSourceLineTable extends SourceLineTable {
+
+        private final ArrayList<String> lines = new ArrayList<String>();
+
+        @Override
+        void addLine(CharSequence line) {
+            lines.add(line.toString());
+        }
+
+        @Override
+        int size() {
+            return lines.size();
+        }
+
+        @Override
+        void appendLine(int index, StringBuilder sb) {
+            sb.append(lines.get(index));
+        }
+
+        @Override
+        int getLineLength(int index) {
+            return lines.get(index).length();
+        }
+
+    }
+
+    /**
+     * Stores all lines in a single {@code char} array, and the end offset of each line in an {@code int} array. This
+     * avoids having two objects (a {@link String} and its array) per line.
+     */
+    private static final class CompactSourceLineTable extends SourceLineTable {
+
+        private char[] text = new char[1024];
+        private int textLength;
+        private int[] lineEnds = new int[64];
+        private int lineCount;
+
+        @Override
+        void addLine(CharSequence line) {
+            int lineLength = line.length();
+            ensureTextCapacity(textLength + lineLength);
+            for (int i = 0; i < lineLength; i++) {
+                text[textLength++] = line.charAt(i);
+            }
+            if (lineCount == lineEnds.length) {
+                int[] newLineEnds = new int[Math.max(16, lineCount * 2)];
+                System.arraycopy(lineEnds, 0, newLineEnds, 0, lineCount);
+                lineEnds = newLineEnds;
+            }
+            lineEnds[lineCount++] = textLength;
+        }
+
+        private void ensureTextCapacity(int minCapacity) {
+            if (minCapacity > text.length) {
+                char[] newText = new char[Math.max(minCapacity, text.length * 2)];
+                System.arraycopy(text, 0, newText, 0, textLength);
+                text = newText;
+            }
+        }
+
+        @Override
+        void trimToSize() {
+            if (text.length != textLength) {
+                char[] newText = new char[textLength];
+                System.arraycopy(text, 0, newText, 0, textLength);
+                text = newText;
+            }
+            if (lineEnds.length != lineCount) {
+                int[] newLineEnds = new int[lineCount];
+                System.arraycopy(lineEnds, 0, newLineEnds, 0, lineCount);
+                lineEnds = newLineEnds;
+            }
+        }
+
+        @Override
+        int size() {
+            return lineCount;
+        }
+
+        @Override
+        void appendLine(int index, StringBuilder sb) {
+            int start = getLineStart(index);
+            sb.append(text, start, lineEnds[index] - start);
+        }
+
+        @Override
+        int getLineLength(int index) {
+            return lineEnds[index] - getLineStart(index);
+        }
+
+        private int getLineStart(int index) {
+            if (index < 0 || index >= lineCount) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + lineCount);
+            }
+            return index == 0 ? 0 : lineEnds[index - 1];
+        }
+
+    }
+
+}
@@ -19,15 +19,23 @@
 
 package freemarker.template;
 
-import java.io.BufferedReader;
-import java.io.FilterReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
 import java.io.Writer;
-import java.lang.reflect.UndeclaredThrowableException;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -36,6 +44,9 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Vector;
+import java.util.zip.DataFormatException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
 
 import freemarker.cache.TemplateCache;
 import freemarker.cache.TemplateLoader;
@@ -50,10 +61,15 @@ import freemarker.core.OutputFormat;
 import freemarker.core.ParseException;
 import freemarker.core.ParserConfiguration;
 import freemarker.core.TemplateConfiguration;
+import freemarker.core.TemplateDependency;
 import freemarker.core.TemplateElement;
+import freemarker.core.TemplatePostProcessor;
 import freemarker.core.TextBlock;
 import freemarker.core.TokenMgrError;
 import freemarker.core._CoreAPI;
+import freemarker.core._EncodingWriter;
+import freemarker.core._TemplateObjectInputStream;
+import freemarker.core._TemplateObjectOutputStream;
 import freemarker.debug.impl.DebuggerService;
 
 /**
@@ -81,9 +97,20 @@ public class Template extends Configurable {
 
     private static final int READER_BUFFER_SIZE = 4096;
     
+    private static final String COMPILED_FORM_HEADER = "FreeMarker compiled template";
+    /** The compiled form is only valid for the exact same FreeMarker build, as it contains serialized AST classes. */
+    private static final String COMPILED_FORM_VERSION = Configuration.getVersion().toString()
+            + " " + Configuration.getVersion().getBuildDate();
+    
     private Map macros = new HashMap();
     private List imports = new Vector();
+    private List<TemplateDependency> staticDependencies = Collections.emptyList();
     private TemplateElement rootElement;
+    /**
+     * The template with the AST as it was before the {@link TemplatePostProcessor}-s were applied, if
+     * {@link Configuration#getVerifyTemplatePostProcessing()} was {@code true}, otherwise {@code null}.
+     */
+    private Template templateBeforePostProcessing;
     private String encoding, defaultNS;
     private Object customLookupCondition;
     private int interpolationSyntax;
@@ -93,11 +120,13 @@ public class Template extends Configurable {
     private OutputFormat outputFormat;
     private final String name;
     private final String sourceName;
-    private final ArrayList lines = new ArrayList();
+    private SourceLineTable lines;
     private final ParserConfiguration parserConfiguration;
     private Map prefixToNamespaceURILookup = new HashMap();
     private Map namespaceURIToPrefixLookup = new HashMap();
     private Version templateLanguageVersion;
+    /** Lazily calculated by {@link #getEstimatedMemoryUsage()}; -1 if not yet calculated. */
+    private volatile long estimatedMemoryUsage = -1;
 
     /**
      * A prime constructor to which all other constructors should
@@ -109,6 +138,7 @@ public class Template extends Configurable {
         this.sourceName = sourceName;
         this.templateLanguageVersion = normalizeTemplateLanguageVersion(toNonNull(cfg).getIncompatibleImprovements());
         this.parserConfiguration = customParserConfiguration != null ? customParserConfiguration : getConfiguration();
+        this.lines = SourceLineTable.create(toNonNull(cfg).getCompactTemplateSourceLines());
     }
 
     private static Configuration toNonNull(Configuration cfg) {
@@ -231,35 +261,40 @@ public class Template extends Configurable {
         this(name, sourceName, cfg, customParserConfiguration);
         
         this.setEncoding(encoding);
-        LineTableBuilder ltbReader;
+        
+        // The whole source is read before parsing, so that the parser can work on a single char[] (which is much
+        // faster than JavaCC's SimpleCharStream), and so that any I/O errors surface here, not in the parser, which
+        // would treat them as EOF.
+        char[] source = new char[READER_BUFFER_SIZE];
+        int sourceLength = 0;
         try {
-            ParserConfiguration actualParserConfiguration = getParserConfiguration();
-            
-            if (!(reader instanceof BufferedReader) && !(reader instanceof StringReader)) {
-                reader = new BufferedReader(reader, READER_BUFFER_SIZE);
+            int readLength;
+            while ((readLength = reader.read(source, sourceLength, source.length - sourceLength)) != -1) {
+                sourceLength += readLength;
+                if (sourceLength == source.length) {
+                    char[] newSource = new char[source.length * 2];
+                    System.arraycopy(source, 0, newSource, 0, sourceLength);
+                    source = newSource;
+                }
             }
-            ltbReader = new LineTableBuilder(reader, actualParserConfiguration);
-            reader = ltbReader;
+        } finally {
+            reader.close();
+        }
+        
+        try {
+            ParserConfiguration actualParserConfiguration = getParserConfiguration();
+            buildLineTable(source, sourceLength, actualParserConfiguration.getTabSize());
             
             try {
-                FMParser parser = new FMParser(this, reader, actualParserConfiguration);
+                FMParser parser = new FMParser(this, source, sourceLength, actualParserConfiguration);
                 if (cfg != null) {
                     _CoreAPI.setPreventStrippings(parser, cfg.getPreventStrippings());
                 }
-                try {
-                    this.rootElement = parser.Root();
-                } catch (IndexOutOfBoundsException exc) {
-                    // There's a JavaCC bug where the Reader throws a RuntimeExcepton and then JavaCC fails with
-                    // IndexOutOfBoundsException. If that wasn't the case, we just rethrow. Otherwise we suppress the
-                    // IndexOutOfBoundsException and let the real cause to be thrown later. 
-                    if (!ltbReader.hasFailure()) {
-                        throw exc;
-                    }
-                    rootElement = null;
-                }
+                this.rootElement = parser.Root();
                 this.actualTagSyntax = parser._getLastTagSyntax();
                 this.interpolationSyntax = actualParserConfiguration.getInterpolationSyntax();
                 this.actualNamingConvention = parser._getLastNamingConvention();
+                this.staticDependencies = Collections.unmodifiableList(parser._getStaticDependencies());
             } catch (TokenMgrError exc) {
                 // TokenMgrError VS ParseException is not an interesting difference for the user, so we just convert it
                 // to ParseException
@@ -268,12 +303,17 @@ public class Template extends Configurable {
         } catch (ParseException e) {
             e.setTemplateName(getSourceName());
             throw e;
-        } finally {
-            reader.close();
         }
         
-        // Throws any exception that JavaCC has silently treated as EOF:
-        ltbReader.throwFailure();
+        List<TemplatePostProcessor> postProcessors = getConfiguration().getTemplatePostProcessors();
+        if (!postProcessors.isEmpty()) {
+            if (getConfiguration().getVerifyTemplatePostProcessing()) {
+                templateBeforePostProcessing = copyWithOwnParseResult();
+            }
+            _CoreAPI.postProcess(this, postProcessors);
+        }
+        _CoreAPI.resolveLocalVariables(rootElement);
+        _CoreAPI.compact(rootElement, getConfiguration().getTemplateTextInternPool());
         
         DebuggerService.registerTemplate(this);
         namespaceURIToPrefixLookup = Collections.unmodifiableMap(namespaceURIToPrefixLookup);
@@ -306,6 +346,278 @@ public class Template extends Configurable {
         DebuggerService.registerTemplate(this);
     }
     
+    /**
+     * Re-creates a {@link Template} from the output of {@link #toCompiledForm()}, without invoking the parser. The
+     * parameters must be the same as what the {@link Template} was originally created with (see the same named
+     * parameters of {@link #Template(String, String, Reader, Configuration, ParserConfiguration, String)}), except
+     * the {@code name}, which is not stored in the compiled form.
+     * 
+     * @param sourceCode
+     *            The source code that the template was parsed from; the compiled form doesn't contain it, but it's
+     *            needed for the error messages and {@link #getSource(int, int, int, int)}.
+     * 
+     * @throws IOException
+     *             If the compiled form is malformed, or was written by another FreeMarker version, or refers to
+     *             something that can't be resolved with the given parameters.
+     */
+    static Template fromCompiledForm(
+            byte[] compiledForm, String sourceCode,
+            String name, String sourceName,
+            Configuration cfg, ParserConfiguration customParserConfiguration,
+            String encoding) throws IOException {
+        Template template = new Template(name, sourceName, cfg, customParserConfiguration);
+        template.setEncoding(encoding);
+        template.buildLineTable(
+                sourceCode.toCharArray(), sourceCode.length(), template.getParserConfiguration().getTabSize());
+        template.readCompiledForm(compiledForm);
+        return template;
+    }
+    
+    /**
+     * Reads the parse result (the AST, the macros, etc.) from the compiled form into this template.
+     */
+    private void readCompiledForm(byte[] compiledForm) throws IOException {
+        DataInputStream headerIn = new DataInputStream(new ByteArrayInputStream(compiledForm));
+        if (!COMPILED_FORM_HEADER.equals(headerIn.readUTF())) {
+            throw new IOException("Not a compiled template (header mismatch)");
+        }
+        String writerVersion = headerIn.readUTF();
+        if (!writerVersion.equals(COMPILED_FORM_VERSION)) {
+            throw new IOException("The compiled template was written by another FreeMarker version, "
+                    + writerVersion + ", but this is " + COMPILED_FORM_VERSION + ".");
+        }
+        int serializedLength = headerIn.readInt();
+        if (serializedLength < 0) {
+            throw new IOException("Malformed compiled template (negative length)");
+        }
+        int headerLength = compiledForm.length - headerIn.available();
+        
+        byte[] serialized = new byte[serializedLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compiledForm, headerLength, compiledForm.length - headerLength);
+            int inflatedLength = 0;
+            while (inflatedLength < serializedLength && !inflater.finished() && !inflater.needsInput()) {
+                inflatedLength += inflater.inflate(serialized, inflatedLength, serializedLength - inflatedLength);
+            }
+            if (inflatedLength != serializedLength || !inflater.finished()) {
+                throw new IOException("Malformed compiled template (length mismatch)");
+            }
+        } catch (DataFormatException e) {
+            throw newCompiledFormReadingException(e);
+        } finally {
+            inflater.end();
+        }
+        
+        _TemplateObjectInputStream in = new _TemplateObjectInputStream(new ByteArrayInputStream(serialized), this);
+        try {
+            rootElement = (TemplateElement) in.readObject();
+            macros = (Map<?, ?>) in.readObject();
+            imports = (List<?>) in.readObject();
+            @SuppressWarnings("unchecked")
+            List<TemplateDependency> staticDependencies = (List<TemplateDependency>) in.readObject();
+            this.staticDependencies = Collections.unmodifiableList(staticDependencies);
+            defaultNS = (String) in.readObject();
+            prefixToNamespaceURILookup = Collections.unmodifiableMap((Map<?, ?>) in.readObject());
+            namespaceURIToPrefixLookup = Collections.unmodifiableMap((Map<?, ?>) in.readObject());
+            actualTagSyntax = in.readInt();
+            interpolationSyntax = in.readInt();
+            actualNamingConvention = in.readInt();
+            autoEscaping = in.readBoolean();
+            outputFormat = (OutputFormat) in.readObject();
+            int customAttributeCount = in.readInt();
+            for (int i = 0; i < customAttributeCount; i++) {
+                setCustomAttribute((String) in.readObject(), in.readObject());
+            }
+        } catch (ClassNotFoundException e) {
+            throw newCompiledFormReadingException(e);
+        } catch (ClassCastException e) {
+            throw newCompiledFormReadingException(e);
+        } finally {
+            in.close();
+        }
+        _CoreAPI.compact(rootElement, getConfiguration().getTemplateTextInternPool());
+        
+        DebuggerService.registerTemplate(this);
+    }
+    
+    /**
+     * Creates a new {@link Template} that shares the result of the parsing (the AST, the macros, the source lines,
+     * etc.) with this one, but has its own settings, most importantly its own locale. This is used by the
+     * {@link TemplateCache} when multiple locales resolve to the same template source. Only the settings that the
+     * parser has set are copied, so this should be called before the template is customized further, like with
+     * {@link TemplateConfiguration#apply(Template)}. Note that the nodes of the shared AST will still belong to this
+     * template (see {@link #getAstOwner()}), so the {@link Environment} has to map that back to the {@link Template}
+     * that it actually processes. As the nodes use the name of the template that they belong to (like to resolve
+     * relative template names), the copy must have the same name.
+     */
+    Template copyWithSharedParseResult() {
+        Template copy = new Template(name, sourceName, getConfiguration(), parserConfiguration);
+        copy.encoding = encoding;
+        copy.rootElement = rootElement;
+        copy.templateBeforePostProcessing = templateBeforePostProcessing;
+        copy.macros = macros;
+        copy.imports = imports;
+        copy.staticDependencies = staticDependencies;
+        copy.lines = lines;
+        copy.defaultNS = defaultNS;
+        copy.prefixToNamespaceURILookup = prefixToNamespaceURILookup;
+        copy.namespaceURIToPrefixLookup = namespaceURIToPrefixLookup;
+        copy.actualTagSyntax = actualTagSyntax;
+        copy.interpolationSyntax = interpolationSyntax;
+        copy.actualNamingConvention = actualNamingConvention;
+        copy.autoEscaping = autoEscaping;
+        copy.outputFormat = outputFormat;
+        for (String customAttributeName : getCustomAttributeNames()) {
+            copy.setCustomAttribute(customAttributeName, getCustomAttribute(customAttributeName));
+        }
+        return copy;
+    }
+
+    /**
+     * Returns the template that the nodes of the AST belong to; differs from {@code this} if the AST is shared with
+     * another template, see {@link #copyWithSharedParseResult()}.
+     */
+    Template getAstOwner() {
+        Template astOwner = rootElement != null ? rootElement.getTemplate() : null;
+        return astOwner != null ? astOwner : this;
+    }
+
+    /**
+     * Like {@link #copyWithSharedParseResult()}, but the copy gets its own deep copy of the AST (made via the
+     * compiled form), so the nodes of the copy can be modified without affecting this template.
+     * 
+     * @throws java.io.NotSerializableException
+     *             If the template contains something that can't be serialized; see {@link #toCompiledForm()}.
+     */
+    Template copyWithOwnParseResult() throws IOException {
+        Template copy = new Template(name, sourceName, getConfiguration(), parserConfiguration);
+        copy.encoding = encoding;
+        copy.lines = lines; // Not modified after it was built
+        copy.readCompiledForm(toCompiledForm(getAstOwner()));
+        return copy;
+    }
+    
+    private static IOException newCompiledFormReadingException(Exception cause) {
+        IOException e = new IOException("Malformed compiled template; see cause exception.");
+        e.initCause(cause);
+        return e;
+    }
+
+    /**
+     * Serializes the result of the parsing (the AST and the other template properties that were set by the parser),
+     * so that it can be turned back to a {@link Template} with {@link #fromCompiledForm}. This must be called before
+     * the template is customized further, like with {@link TemplateConfiguration#apply(Template)}.
+     * 
+     * @throws java.io.NotSerializableException
+     *             If the template contains something that can't be serialized, like a custom attribute value that's
+     *             not {@link java.io.Serializable}.
+     */
+    byte[] toCompiledForm() throws IOException {
+        return toCompiledForm(this);
+    }
+
+    /**
+     * @param astOwner
+     *            The template that the AST nodes refer to as their template; differs from {@code this} if the AST is
+     *            shared with another template.
+     */
+    private byte[] toCompiledForm(Template astOwner) throws IOException {
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        _TemplateObjectOutputStream out = new _TemplateObjectOutputStream(serialized, astOwner);
+        try {
+            out.writeObject(rootElement);
+            out.writeObject(macros);
+            out.writeObject(imports);
+            out.writeObject(new ArrayList<TemplateDependency>(staticDependencies));
+            out.writeObject(defaultNS);
+            out.writeObject(new HashMap<Object, Object>((Map<?, ?>) prefixToNamespaceURILookup));
+            out.writeObject(new HashMap<Object, Object>((Map<?, ?>) namespaceURIToPrefixLookup));
+            out.writeInt(actualTagSyntax);
+            out.writeInt(interpolationSyntax);
+            out.writeInt(actualNamingConvention);
+            out.writeBoolean(autoEscaping);
+            out.writeObject(outputFormat);
+            String[] customAttributeNames = getCustomAttributeNames();
+            out.writeInt(customAttributeNames.length);
+            for (String customAttributeName : customAttributeNames) {
+                out.writeObject(customAttributeName);
+                out.writeObject(getCustomAttribute(customAttributeName));
+            }
+        } finally {
+            out.close();
+        }
+        
+        // The serialized AST is very repetitive (the class descriptors, the default field values, etc.), so it's
+        // compressed, which typically makes it several times smaller. The header is left uncompressed, so that an
+        // entry written by another FreeMarker version is recognized without inflating it.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(serialized.size() / 4);
+        DataOutputStream headerOut = new DataOutputStream(bytes);
+        headerOut.writeUTF(COMPILED_FORM_HEADER);
+        headerOut.writeUTF(COMPILED_FORM_VERSION);
+        headerOut.writeInt(serialized.size());
+        headerOut.flush();
+        DeflaterOutputStream deflaterOut = new DeflaterOutputStream(bytes);
+        try {
+            serialized.writeTo(deflaterOut);
+        } finally {
+            deflaterOut.close();
+        }
+        return bytes.toByteArray();
+    }
+    
+    /**
+     * Returns a string (a hexadecimal hash) that identifies the compiled form of a template, as far as its source code
+     * and all the parameters that influence the parsing are the same. It also depends on the FreeMarker version, so a
+     * FreeMarker upgrade invalidates all earlier compiled forms.
+     */
+    static String getCompiledFormKey(
+            String sourceName, String sourceCode,
+            Configuration cfg, ParserConfiguration customParserConfiguration,
+            String encoding) {
+        ParserConfiguration pCfg = customParserConfiguration != null ? customParserConfiguration : cfg;
+        StringBuilder sb = new StringBuilder();
+        sb.append(COMPILED_FORM_VERSION)
+                .append('\n').append(sourceName)
+                .append('\n').append(encoding)
+                .append('\n').append(cfg.getIncompatibleImprovements())
+                .append('\n').append(pCfg.getIncompatibleImprovements())
+                .append('\n').append(pCfg.getTagSyntax())
+                .append('\n').append(pCfg.getInterpolationSyntax())
+                .append('\n').append(pCfg.getNamingConvention())
+                .append('\n').append(pCfg.getWhitespaceStripping())
+                .append('\n').append(pCfg.getStrictSyntaxMode())
+                .append('\n').append(pCfg.getAutoEscapingPolicy())
+                .append('\n').append(_CoreAPI.getOutputFormatName(pCfg.getOutputFormat()))
+                .append('\n').append(pCfg.getRecognizeStandardFileExtensions())
+                .append('\n').append(pCfg.getTabSize())
+                .append('\n').append(pCfg.getArithmeticEngine().getClass().getName())
+                .append('\n').append(cfg.getPreventStrippings());
+        for (TemplatePostProcessor postProcessor : cfg.getTemplatePostProcessors()) {
+            sb.append('\n').append(postProcessor.getClass().getName());
+        }
+        sb.append('\n').append(sourceCode);
+        
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new BugException("SHA-256 is not supported", e);
+        }
+        byte[] digest;
+        try {
+            digest = md.digest(sb.toString().getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new BugException(e);
+        }
+        
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+    
     /**
      * Same as {@link #getPlainTextTemplate(String, String, String, Configuration)} with {@code null} {@code sourceName}
      * argument.
@@ -336,6 +648,8 @@ public class Template extends Configurable {
             throw new BugException("Plain text template creation failed", e);
         }
         _CoreAPI.replaceText((TextBlock) template.rootElement, content);
+        // There's nothing to verify, and the AST from before the post-processing would still output the "X":
+        template.templateBeforePostProcessing = null;
         DebuggerService.registerTemplate(template);
         return template;
     }
@@ -381,6 +695,68 @@ public class Template extends Configurable {
         createProcessingEnvironment(dataModel, out, null).process();
     }
 
+    /**
+     * Like {@link #process(Object, Writer)}, but writes the output into an {@link OutputStream}, encoded with the
+     * given charset. This is faster than wrapping the stream into an {@link java.io.OutputStreamWriter}, because the
+     * static text of the template is only encoded for the first time it's written with a given charset, and then the
+     * already encoded bytes are reused; only the dynamically generated parts of the output will be encoded on each
+     * call. (With stateful charsets, like {@code UTF-16}, which writes a byte order mark, everything is encoded on each
+     * call, just like with an {@link java.io.OutputStreamWriter}.) Malformed or unmappable characters are replaced,
+     * again like with {@link java.io.OutputStreamWriter}.
+     * 
+     * <p>
+     * If the {@link Configurable#getOutputEncoding() output_encoding} setting isn't set, it will be the name of the
+     * charset during this processing.
+     * 
+     * @param out
+     *            The {@link OutputStream} where the output of the template will go. Unless you have used
+     *            {@link Configuration#setAutoFlush(boolean)} to disable this, {@link OutputStream#flush()} will be
+     *            called when the template processing was successfully finished. {@link OutputStream#close()} is not
+     *            called. Can't be {@code null}.
+     * @param charset
+     *            The charset used to encode the output. Can't be {@code null}.
+     * 
+     * @since 2.3.29
+     */
+    public void process(Object dataModel, OutputStream out, Charset charset)
+    throws TemplateException, IOException {
+        processEncoded(dataModel, new _EncodingWriter(out, charset));
+    }
+
+    /**
+     * Same as {@link #process(Object, OutputStream, Charset)}, but writes the output into a
+     * {@link WritableByteChannel}. {@link WritableByteChannel#close()} is not called.
+     * 
+     * @since 2.3.29
+     */
+    public void process(Object dataModel, WritableByteChannel out, Charset charset)
+    throws TemplateException, IOException {
+        processEncoded(dataModel, new _EncodingWriter(out, charset));
+    }
+
+    private void processEncoded(Object dataModel, _EncodingWriter out) throws TemplateException, IOException {
+        Environment env = createProcessingEnvironment(dataModel, out, null);
+        if (env.getOutputEncoding() == null) {
+            env.setOutputEncoding(out.getCharset().name());
+        }
+        boolean successful = false;
+        try {
+            env.process();
+            successful = true;
+        } finally {
+            // The buffered output is written even on failure, just like a Writer passed in would contain it.
+            if (successful) {
+                out.finish();
+            } else {
+                try {
+                    out.finish();
+                } catch (IOException e) {
+                    // Ignored, so that it doesn't hide the original exception
+                }
+            }
+        }
+    }
+
     /**
      * Like {@link #process(Object, Writer)}, but also sets a (XML-)node to be recursively processed by the template.
      * That node is accessed in the template with <tt>.node</tt>, <tt>#recurse</tt>, etc. See the
@@ -720,6 +1096,30 @@ public class Template extends Configurable {
         this.autoEscaping = autoEscaping;
     }
     
+    /**
+     * Returns a rough estimate of the heap space retained by this template, in bytes. This includes the parsed
+     * template (the tree of {@link TemplateElement}-s and expressions, with the static text), the source code lines
+     * kept for error messages, the macros, and the custom attributes, but not the objects that are shared with other
+     * templates, like the {@link Configuration}. When the parsed template is shared by multiple {@link Template}
+     * objects (as the {@link freemarker.cache.TemplateCache} does for the localized variants of the same template
+     * source), it's included in the estimate of each. The result is calculated on the first call, and then
+     * remembered, so later changes in the template (like adding custom attributes) won't be reflected in it.
+     * 
+     * <p>
+     * This is used for example by {@link freemarker.cache.WeightedCacheStorage} to limit the memory used by the
+     * template cache.
+     * 
+     * @since 2.3.29
+     */
+    public long getEstimatedMemoryUsage() {
+        long estimatedMemoryUsage = this.estimatedMemoryUsage;
+        if (estimatedMemoryUsage == -1) {
+            estimatedMemoryUsage = MemoryUsageEstimator.estimate(this);
+            this.estimatedMemoryUsage = estimatedMemoryUsage;
+        }
+        return estimatedMemoryUsage;
+    }
+
     /**
      * Dump the raw template in canonical form.
      */
@@ -782,10 +1182,10 @@ public class Template extends Configurable {
         StringBuilder buf = new StringBuilder();
         for (int i = beginLine ; i <= endLine; i++) {
             if (i < lines.size()) {
-                buf.append(lines.get(i));
+                lines.appendLine(i, buf);
             }
         }
-        int lastLineLength = lines.get(endLine).toString().length();
+        int lastLineLength = lines.getLineLength(endLine);
         int trailingCharsToDelete = lastLineLength - endColumn - 1;
         buf.delete(0, beginColumn);
         buf.delete(buf.length() - trailingCharsToDelete, buf.length());
@@ -793,113 +1193,53 @@ public class Template extends Configurable {
     }
 
     /**
-     * Reader that builds up the line table info for us, and also helps in working around JavaCC's exception
-     * suppression.
+     * Fills {@link #lines} from the template source; the line breaks are kept, and the tabs are expanded to spaces
+     * (unless the tab size is 1), so that the columns reported by the parser can be used to index into the lines.
      */
-    private class LineTableBuilder extends FilterReader {
-        
-        private final int tabSize;
-        private final StringBuilder lineBuf = new StringBuilder();
-        int lastChar;
-        boolean closed;
-        
-        /** Needed to work around JavaCC behavior where it silently treats any errors as EOF. */ 
-        private Exception failure; 
-
-        /**
-         * @param r the character stream to wrap
-         */
-        LineTableBuilder(Reader r, ParserConfiguration parserConfiguration) {
-            super(r);
-            tabSize = parserConfiguration.getTabSize();
-        }
-        
-        public boolean hasFailure() {
-            return failure != null;
-        }
-
-        public void throwFailure() throws IOException {
-            if (failure != null) {
-                if (failure instanceof IOException) {
-                    throw (IOException) failure;
-                }
-                if (failure instanceof RuntimeException) {
-                    throw (RuntimeException) failure;
-                }
-                throw new UndeclaredThrowableException(failure);
-            }
-        }
-
-        @Override
-        public int read() throws IOException {
-            try {
-                int c = in.read();
-                handleChar(c);
-                return c;
-            } catch (Exception e) {
-                throw rememberException(e);
-            }
-        }
-
-        private IOException rememberException(Exception e) throws IOException {
-            // JavaCC used to read from the Reader after it was closed. So we must not treat that as a failure. 
-            if (!closed) {
-                failure = e;
-            }
-            if (e instanceof IOException) {
-                return (IOException) e;
-            }
-            if (e instanceof RuntimeException) {
-                throw (RuntimeException) e;
-            }
-            throw new UndeclaredThrowableException(e);
-        }
-
-        @Override
-        public int read(char cbuf[], int off, int len) throws IOException {
-            try {
-                int numchars = in.read(cbuf, off, len);
-                for (int i = off; i < off + numchars; i++) {
-                    char c = cbuf[i];
-                    handleChar(c);
+    private void buildLineTable(char[] source, int sourceLength, int tabSize) {
+        StringBuilder expandedLine = null;
+        int lineStart = 0;
+        while (lineStart < sourceLength) {
+            int lineEnd = lineStart;
+            boolean hasTab = false;
+            while (lineEnd < sourceLength) {
+                char c = source[lineEnd++];
+                if (c == '\n') {
+                    break;
+                } else if (c == '\r') {
+                    if (lineEnd < sourceLength && source[lineEnd] == '\n') { // CRLF under Windoze
+                        lineEnd++;
+                    }
+                    break;
+                } else if (c == '\t') {
+                    hasTab = true;
                 }
-                return numchars;
-            } catch (Exception e) {
-                throw rememberException(e);
             }
-        }
-
-        @Override
-        public void close() throws IOException {
-            if (lineBuf.length() > 0) {
-                lines.add(lineBuf.toString());
-                lineBuf.setLength(0);
-            }
-            super.close();
-            closed = true;
-        }
-
-        private void handleChar(int c) {
-            if (c == '\n' || c == '\r') {
-                if (lastChar == '\r' && c == '\n') { // CRLF under Windoze
-                    int lastIndex = lines.size() - 1;
-                    String lastLine = (String) lines.get(lastIndex);
-                    lines.set(lastIndex, lastLine + '\n');
+            
+            if (hasTab && tabSize != 1) {
+                if (expandedLine == null) {
+                    expandedLine = new StringBuilder();
                 } else {
-                    lineBuf.append((char) c);
-                    lines.add(lineBuf.toString());
-                    lineBuf.setLength(0);
+                    expandedLine.setLength(0);
                 }
-            } else if (c == '\t' && tabSize != 1) {
-                int numSpaces = tabSize - (lineBuf.length() % tabSize);
-                for (int i = 0; i < numSpaces; i++) {
-                    lineBuf.append(' ');
+                for (int i = lineStart; i < lineEnd; i++) {
+                    char c = source[i];
+                    if (c == '\t') {
+                        int numSpaces = tabSize - (expandedLine.length() % tabSize);
+                        for (int j = 0; j < numSpaces; j++) {
+                            expandedLine.append(' ');
+                        }
+                    } else {
+                        expandedLine.append(c);
+                    }
                 }
+                lines.addLine(expandedLine);
             } else {
-                lineBuf.append((char) c);
+                lines.addLine(CharBuffer.wrap(source, lineStart, lineEnd - lineStart));
             }
-            lastChar = c;
+            lineStart = lineEnd;
         }
+        lines.trimToSize();
     }
 
     /**
@@ -910,6 +1250,20 @@ public class Template extends Configurable {
         return rootElement;
     }
     
+    /**
+     * Used by {@link TemplatePostProcessor}-s that replace the root element.
+     */
+    void setRootTreeNode(TemplateElement rootElement) {
+        this.rootElement = rootElement;
+    }
+    
+    /**
+     * See {@link #templateBeforePostProcessing}.
+     */
+    Template getTemplateBeforePostProcessing() {
+        return templateBeforePostProcessing;
+    }
+    
     /**
      * @deprecated Should only be used internally, and might will be removed later.
      */
@@ -918,6 +1272,20 @@ public class Template extends Configurable {
         return macros;
     }
 
+    /**
+     * Returns the templates that this template includes or imports, as far as that's known without executing the
+     * template; see {@link TemplateDependency}. The list is in the order of the first occurrence of the directives,
+     * and contains no duplicates. The {@link TemplateCache} can use this to load these templates in advance; see
+     * {@link TemplateCache#setDependencyPrefetchExecutor(java.util.concurrent.Executor)}.
+     * 
+     * @return Not {@code null}, unmodifiable.
+     * 
+     * @since 2.3.29
+     */
+    public List<TemplateDependency> getStaticDependencies() {
+        return staticDependencies;
+    }
+
     /**
      * @deprecated Should only be used internally, and might will be removed later.
      */
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.template;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import freemarker.template.utility.StringUtil;
+
+/**
+ * The result of {@link Configuration#preloadTemplates(java.util.Collection, java.util.Collection)}; lists which
+ * templates were loaded, how long that took, and which has failed.
+ *
+ * @since 2.3.29
+ */
+public final class TemplatePreloadResult {
+
+    private final List<Item> items;
+    private final long elapsedNanos;
+
+    TemplatePreloadResult(List<Item> items, long elapsedNanos) {
+        this.items = Collections.unmodifiableList(items);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * All the templates that were attempted to be loaded, in the order in which they were specified.
+     */
+    public List<Item> getItems() {
+        return items;
+    }
+
+    /**
+     * The subset of {@link #getItems()} where {@link Item#isSuccessful()} is {@code false}.
+     */
+    public List<Item> getFailedItems() {
+        List<Item> failedItems = new ArrayList<Item>();
+        for (Item item : items) {
+            if (!item.isSuccessful()) {
+                failedItems.add(item);
+            }
+        }
+        return failedItems;
+    }
+
+    /**
+     * The wall-clock time the whole preloading took, in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "TemplatePreloadResult(items=" + items.size() + ", failed=" + getFailedItems().size()
+                + ", elapsedMillis=" + elapsedNanos / 1000000 + ")";
+    }
+
+    /**
+     * The result of loading a single template for a single locale.
+     */
+    public static final class Item {
+
+        private final String templateName;
+        private final Locale locale;
+        private long loadNanos;
+        private Throwable failure;
+
+        Item(String templateName, Locale locale) {
+            this.templateName = templateName;
+            this.locale = locale;
+        }
+
+        void setResult(long loadNanos, Throwable failure) {
+            this.loadNanos = loadNanos;
+            this.failure = failure;
+        }
+
+        /**
+         * The template name as it was passed to {@link Configuration#getTemplate(String, Locale)}.
+         */
+        public String getTemplateName() {
+            return templateName;
+        }
+
+        public Locale getLocale() {
+            return locale;
+        }
+
+        /**
+         * How long the {@link Configuration#getTemplate(String, Locale)} call took, in nanoseconds. This also
+         * includes the time spent on waiting for other threads that were loading the same template concurrently.
+         */
+        public long getLoadNanos() {
+            return loadNanos;
+        }
+
+        /**
+         * The exception that {@link Configuration#getTemplate(String, Locale)} has thrown, or {@code null} if it was
+         * successful. For a missing template this is a {@link TemplateNotFoundException}.
+         */
+        public Throwable getFailure() {
+            return failure;
+        }
+
+        public boolean isSuccessful() {
+            return failure == null;
+        }
+
+        @Override
+        public String toString() {
+            return StringUtil.jQuote(templateName) + "/" + locale + ": "
+                    + (failure == null ? "loaded in " + loadNanos / 1000000 + " ms" : "failed with " + failure);
+        }
+
+    }
+
+}
@@ -19,6 +19,7 @@
 
 package freemarker.template;
 
+import java.io.IOException;
 import java.util.Locale;
 import java.util.Set;
 import java.util.TimeZone;
@@ -29,6 +30,8 @@ import freemarker.cache.TemplateLookupStrategy;
 import freemarker.cache.TemplateNameFormat;
 import freemarker.core.Expression;
 import freemarker.core.OutputFormat;
+import freemarker.core.ParserConfiguration;
+import freemarker.core.TemplateElement;
 import freemarker.core.TemplateObject;
 import freemarker.template.utility.NullArgumentException;
 
@@ -186,5 +189,42 @@ public class _TemplateAPI {
     public static void setPreventStrippings(Configuration conf, boolean preventStrippings) {
         conf.setPreventStrippings(preventStrippings);
     }
+
+    public static byte[] toCompiledForm(Template t) throws IOException {
+        return t.toCompiledForm();
+    }
+
+    public static Template fromCompiledForm(
+            byte[] compiledForm, String sourceCode, String name, String sourceName,
+            Configuration cfg, ParserConfiguration customParserConfiguration, String encoding) throws IOException {
+        return Template.fromCompiledForm(
+                compiledForm, sourceCode, name, sourceName, cfg, customParserConfiguration, encoding);
+    }
+
+    public static Template copyWithSharedParseResult(Template t) {
+        return t.copyWithSharedParseResult();
+    }
+
+    public static Template getAstOwner(Template t) {
+        return t.getAstOwner();
+    }
+
+    public static Template copyWithOwnParseResult(Template t) throws IOException {
+        return t.copyWithOwnParseResult();
+    }
+
+    public static void setRootTreeNode(Template t, TemplateElement rootElement) {
+        t.setRootTreeNode(rootElement);
+    }
+
+    public static Template getTemplateBeforePostProcessing(Template t) {
+        return t.getTemplateBeforePostProcessing();
+    }
+    
+    public static String getCompiledFormKey(
+            String sourceName, String sourceCode,
+            Configuration cfg, ParserConfiguration customParserConfiguration, String encoding) {
+        return Template.getCompiledFormKey(sourceName, sourceCode, cfg, customParserConfiguration, encoding);
+    }
     
 }
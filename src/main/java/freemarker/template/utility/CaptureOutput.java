@@ -24,6 +24,7 @@ import java.io.Writer;
 import java.util.Map;
 
 import freemarker.core.Environment;
+import freemarker.core._SegmentedWriter;
 import freemarker.template.SimpleScalar;
 import freemarker.template.TemplateModel;
 import freemarker.template.TemplateModelException;
@@ -105,16 +106,18 @@ public class CaptureOutput implements TemplateTransformModel {
             throw new TemplateModelException("'var' or 'local' or 'global' parameter evaluates to null string");
         }
 
-        final StringBuilder buf = new StringBuilder();
         final Environment env = Environment.getCurrentEnvironment();
+        final _SegmentedWriter buf = new _SegmentedWriter(env);
         final boolean localVar = local;
         final boolean globalVar = global;
 
         return new Writer() {
 
+            private SimpleScalar result;
+
             @Override
             public void write(char cbuf[], int off, int len) {
-                buf.append(cbuf, off, len);
+                buf.write(cbuf, off, len);
             }
 
             @Override
@@ -124,7 +127,10 @@ public class CaptureOutput implements TemplateTransformModel {
 
             @Override
             public void close() throws IOException {
-                SimpleScalar result = new SimpleScalar(buf.toString());
+                if (result == null) {
+                    result = new SimpleScalar(buf.toString());
+                    buf.release();
+                }
                 try {
                     if (localVar) {
                         env.setLocalVariable(varName, result);
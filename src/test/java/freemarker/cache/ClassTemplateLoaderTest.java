@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+
+import freemarker.template.Configuration;
+
+public class ClassTemplateLoaderTest {
+
+    private File tempDir;
+    private File classesDir;
+    private File jarFile;
+    private URLClassLoader classLoader;
+
+    @Before
+    public void setup() throws IOException {
+        tempDir = Files.createTempDir();
+        
+        classesDir = new File(tempDir, "classes");
+        FileUtils.write(new File(classesDir, "tpl/a.ftl"), "a from dir");
+        FileUtils.write(new File(classesDir, "tpl/sub/b.ftl"), "b from dir");
+        
+        jarFile = new File(tempDir, "templates.jar");
+        JarOutputStream jarOut = new JarOutputStream(new FileOutputStream(jarFile));
+        try {
+            putJarEntry(jarOut, "tpl/", null);
+            putJarEntry(jarOut, "tpl/a.ftl", "a from jar");
+            putJarEntry(jarOut, "tpl/c.ftl", "c from jar");
+            putJarEntry(jarOut, "tpl/sub/f g%20#.ftl", "f from jar");
+            putJarEntry(jarOut, "other/d.ftl", "d from jar");
+        } finally {
+            jarOut.close();
+        }
+        
+        classLoader = new URLClassLoader(new URL[] { classesDir.toURI().toURL(), jarFile.toURI().toURL() }, null);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(tempDir);
+    }
+
+    @Test
+    public void testListTemplateNames() throws Exception {
+        ClassTemplateLoader tl = new ClassTemplateLoader(classLoader, "tpl");
+        assertEquals(ImmutableList.of("a.ftl", "c.ftl", "sub/b.ftl", "sub/f g%20#.ftl"), tl.listTemplateNames());
+        tl.setUseClassPathIndex(true);
+        assertEquals(ImmutableList.of("a.ftl", "c.ftl", "sub/b.ftl", "sub/f g%20#.ftl"), tl.listTemplateNames());
+    }
+    
+    @Test
+    public void testClassPathIndex() throws Exception {
+        for (boolean useClassPathIndex : new boolean[] { false, true }) {
+            FileUtils.write(new File(classesDir, "tpl/sub/b.ftl"), "b from dir");
+            
+            ClassTemplateLoader tl = new ClassTemplateLoader(classLoader, "tpl");
+            tl.setUseClassPathIndex(useClassPathIndex);
+            Configuration cfg = new Configuration(Configuration.VERSION_2_3_28);
+            cfg.setTemplateLoader(tl);
+            cfg.setTemplateUpdateDelayMilliseconds(0);
+            
+            // The earlier class path entry wins:
+            assertEquals("a from dir", cfg.getTemplate("a.ftl").toString());
+            assertEquals("b from dir", cfg.getTemplate("sub/b.ftl").toString());
+            assertEquals("c from jar", cfg.getTemplate("c.ftl").toString());
+            assertEquals("f from jar", cfg.getTemplate("sub/f g%20#.ftl").toString());
+            assertNull(cfg.getTemplate("d.ftl", null, null, null, true, true));
+            assertNull(cfg.getTemplate("../other/d.ftl", null, null, null, true, true));
+            
+            // Changes in directories are still noticed:
+            File bFile = new File(classesDir, "tpl/sub/b.ftl");
+            FileUtils.write(bFile, "b from dir v2");
+            bFile.setLastModified(bFile.lastModified() + 2000);
+            assertEquals("b from dir v2", cfg.getTemplate("sub/b.ftl").toString());
+            
+            FileUtils.write(new File(classesDir, "tpl/e.ftl"), "e from dir");
+            if (useClassPathIndex) {
+                assertNull(cfg.getTemplate("e.ftl", null, null, null, true, true));
+                cfg.clearTemplateCache();
+            }
+            assertEquals("e from dir", cfg.getTemplate("e.ftl").toString());
+            
+            assertTrue(new File(classesDir, "tpl/e.ftl").delete());
+            assertNull(cfg.getTemplate("e.ftl", null, null, null, true, true));
+        }
+    }
+    
+    @Test
+    public void testClassPathIndexJarSources() throws Exception {
+        ClassTemplateLoader tl = new ClassTemplateLoader(classLoader, "tpl");
+        tl.setUseClassPathIndex(true);
+        
+        Object source = tl.findTemplateSource("c.ftl");
+        assertNotNull(source);
+        assertEquals(source, tl.findTemplateSource("c.ftl"));
+        assertEquals(tl.getLastModified(source), tl.getLastModified(tl.findTemplateSource("c.ftl")));
+        assertTrue(source.toString().endsWith("templates.jar!/tpl/c.ftl"));
+        
+        // The source is equal after the index was rebuilt:
+        tl.resetState();
+        Object source2 = tl.findTemplateSource("c.ftl");
+        assertEquals(source, source2);
+        assertNotSame(source, source2);
+        Reader reader = tl.getReader(source2, "UTF-8");
+        try {
+            assertEquals("c from jar", IOUtils.toString(reader));
+        } finally {
+            reader.close();
+        }
+        tl.closeTemplateSource(source2);
+    }
+    
+    @Test
+    public void testClassPathIndexJarFileHandles() throws Exception {
+        assumeTrue(new File("/proc/self/fd").isDirectory());
+        
+        ClassTemplateLoader tl = new ClassTemplateLoader(classLoader, "tpl");
+        tl.setUseClassPathIndex(true);
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_28);
+        cfg.setTemplateLoader(tl);
+        assertEquals("c from jar", cfg.getTemplate("c.ftl").toString());
+        Object oldSource = tl.findTemplateSource("c.ftl");
+        assertEquals("f from jar", cfg.getTemplate("sub/f g%20#.ftl").toString());
+        
+        // Close the handles opened by the class loader itself:
+        classLoader.close();
+        
+        // The index holds exactly one handle, however many templates were read:
+        assertEquals(1, countJarFileHandles());
+        
+        // Drops the index:
+        cfg.clearTemplateCache();
+        assertEquals(0, countJarFileHandles());
+        
+        // A source found before the index was dropped is still readable:
+        Reader reader = tl.getReader(oldSource, "UTF-8");
+        try {
+            assertEquals("c from jar", IOUtils.toString(reader));
+        } finally {
+            reader.close();
+        }
+        assertEquals(0, countJarFileHandles());
+    }
+    
+    @Test
+    public void testClassPathIndexJarFileHandlesClosedWhenDisabled() throws Exception {
+        assumeTrue(new File("/proc/self/fd").isDirectory());
+        
+        ClassTemplateLoader tl = new ClassTemplateLoader(classLoader, "tpl");
+        tl.setUseClassPathIndex(true);
+        assertNotNull(tl.findTemplateSource("c.ftl"));
+        classLoader.close();
+        assertEquals(1, countJarFileHandles());
+        
+        tl.setUseClassPathIndex(false);
+        assertEquals(0, countJarFileHandles());
+    }
+    
+    private int countJarFileHandles() throws IOException {
+        File canonicalJarFile = jarFile.getCanonicalFile();
+        int count = 0;
+        File[] fdFiles = new File("/proc/self/fd").listFiles();
+        if (fdFiles != null) {
+            for (File fdFile : fdFiles) {
+                File fdTarget;
+                try {
+                    fdTarget = fdFile.getCanonicalFile();
+                } catch (IOException e) {
+                    continue; // Was closed meanwhile
+                }
+                if (canonicalJarFile.equals(fdTarget)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+    
+    private static void putJarEntry(JarOutputStream jarOut, String name, String content) throws IOException {
+        jarOut.putNextEntry(new JarEntry(name));
+        if (content != null) {
+            jarOut.write(content.getBytes("UTF-8"));
+        }
+        jarOut.closeEntry();
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+
+public class ConcurrentLfuCacheStorageTest {
+
+    @Test
+    public void testScanResistance() {
+        ConcurrentLfuCacheStorage cache = new ConcurrentLfuCacheStorage(3, 0);
+        for (int i = 0; i < 5; i++) {
+            for (String key : new String[] { "a", "b", "c" }) {
+                getOrPut(cache, key);
+            }
+        }
+        for (int i = 0; i < 100; i++) {
+            getOrPut(cache, "scanned" + i);
+        }
+        assertEquals("A", cache.get("a"));
+        assertEquals("B", cache.get("b"));
+        assertEquals("C", cache.get("c"));
+        assertEquals(3, cache.getStrongSize());
+        assertEquals(0, cache.getSoftSize());
+    }
+
+    @Test
+    public void testSoftOverflow() {
+        ConcurrentLfuCacheStorage cache = new ConcurrentLfuCacheStorage(2, 2);
+        getOrPut(cache, "a");
+        getOrPut(cache, "b");
+        getOrPut(cache, "c");
+        getOrPut(cache, "d");
+        assertEquals(2, cache.getStrongSize());
+        assertEquals(2, cache.getSoftSize());
+        getOrPut(cache, "e");
+        assertEquals(2, cache.getStrongSize());
+        assertEquals(2, cache.getSoftSize());
+        assertEquals(4, cache.getSize());
+    }
+
+    @Test
+    public void testSoftOnly() {
+        ConcurrentLfuCacheStorage cache = new ConcurrentLfuCacheStorage(0, 2);
+        cache.put("a", "A");
+        assertEquals("A", cache.get("a"));
+        assertEquals(0, cache.getStrongSize());
+        assertEquals(1, cache.getSoftSize());
+    }
+
+    @Test
+    public void testRemoveAndClear() {
+        ConcurrentLfuCacheStorage cache = new ConcurrentLfuCacheStorage(2, 2);
+        for (String key : new String[] { "a", "b", "c", "d" }) {
+            getOrPut(cache, key);
+        }
+        cache.put("a", "A2");
+        assertEquals("A2", cache.get("a"));
+        cache.remove("a");
+        assertNull(cache.get("a"));
+        assertEquals(3, cache.getSize());
+        cache.clear();
+        assertEquals(0, cache.getSize());
+        assertNull(cache.get("b"));
+    }
+
+    @Test
+    public void testSetting() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_28);
+        Properties props = new Properties();
+        props.setProperty(Configuration.CACHE_STORAGE_KEY, "ConcurrentLfuCacheStorage(100, 1000)");
+        cfg.setSettings(props);
+        ConcurrentLfuCacheStorage cache = (ConcurrentLfuCacheStorage) cfg.getCacheStorage();
+        assertEquals(100, cache.getStrongSizeLimit());
+        assertEquals(1000, cache.getSoftSizeLimit());
+    }
+
+    private void getOrPut(ConcurrentLfuCacheStorage cache, String key) {
+        if (cache.get(key) == null) {
+            cache.put(key, key.toUpperCase());
+        }
+    }
+
+}
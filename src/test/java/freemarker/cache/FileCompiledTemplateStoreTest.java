@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import freemarker.core.HTMLOutputFormat;
+import freemarker.core.OutputFormat;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+
+public class FileCompiledTemplateStoreTest {
+
+    private static final String MAIN_FTL
+            = "<#ftl attributes={'a': 1}>"
+            + "<#import 'lib.ftl' as lib>"
+            + "<#macro m x=.version?length>${x}</#macro>"
+            + "<#list 1..2 as i>${i}<@m x=i /></#list> ${'a' + 'b'} ${{'k': 'v'}.k} <@lib.l /> "
+            + "${.main?is_hash?c} ${s}";
+
+    private File storeDir;
+    private StringTemplateLoader templateLoader;
+
+    @Before
+    public void setup() {
+        storeDir = Files.createTempDir();
+        templateLoader = new StringTemplateLoader();
+        templateLoader.putTemplate("main.ftl", MAIN_FTL);
+        templateLoader.putTemplate("lib.ftl", "<#macro l>lib</#macro>");
+        templateLoader.putTemplate("escaped.ftlh", "${s}");
+        templateLoader.putTemplate("error.ftl", "1\n2 ${noSuchVar}");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(storeDir);
+    }
+
+    @Test
+    public void testReuseAfterRestart() throws Exception {
+        String expectedOutput = "1122 ab v lib true <&>";
+
+        CountingStore store1 = new CountingStore(new FileCompiledTemplateStore(storeDir));
+        Configuration cfg1 = createConfiguration(store1);
+        assertEquals(expectedOutput, process(cfg1.getTemplate("main.ftl")));
+        assertEquals(0, store1.hits);
+        assertEquals(2, store1.puts);
+        assertEquals(2, storeDir.listFiles().length);
+
+        CountingStore store2 = new CountingStore(new FileCompiledTemplateStore(storeDir));
+        Configuration cfg2 = createConfiguration(store2);
+        Template t = cfg2.getTemplate("main.ftl");
+        assertEquals(expectedOutput, process(t));
+        assertEquals(2, store2.hits);
+        assertEquals(0, store2.puts);
+        assertEquals(cfg1.getTemplate("main.ftl").getCustomAttribute("a"), t.getCustomAttribute("a"));
+        assertEquals(MAIN_FTL, t.getSource(1, 1, MAIN_FTL.length(), 1));
+        assertEquals(cfg1.getTemplate("main.ftl").getRootTreeNode().getCanonicalForm(),
+                t.getRootTreeNode().getCanonicalForm());
+        assertEquals(cfg1.getTemplate("main.ftl").getStaticDependencies(), t.getStaticDependencies());
+    }
+
+    @Test
+    public void testOutputFormatAndErrorLocation() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            Configuration cfg = createConfiguration(new FileCompiledTemplateStore(storeDir));
+            Template t = cfg.getTemplate("escaped.ftlh");
+            assertSame(HTMLOutputFormat.INSTANCE, t.getOutputFormat());
+            assertEquals("&lt;&amp;&gt;", process(t));
+
+            try {
+                process(cfg.getTemplate("error.ftl"));
+                fail();
+            } catch (TemplateException e) {
+                assertThat(e.getMessage(), containsString("line 2, column 5"));
+                assertThat(e.getMessage(), containsString("${noSuchVar}"));
+            }
+        }
+    }
+
+    @Test
+    public void testCombinedOutputFormat() throws Exception {
+        // The CombinedMarkupOutputFormat-s returned by Configuration.getOutputFormat have null name.
+        for (String outputFormatName : new String[] { "HTML{XML}", "XML{HTML}" }) {
+            for (int i = 0; i < 2; i++) {
+                CountingStore store = new CountingStore(new FileCompiledTemplateStore(storeDir));
+                Configuration cfg = createConfiguration(store);
+                OutputFormat outputFormat = cfg.getOutputFormat(outputFormatName);
+                cfg.setOutputFormat(outputFormat);
+                Template t = cfg.getTemplate("lib.ftl");
+                assertSame(outputFormat, t.getOutputFormat());
+                assertEquals(i, store.hits);
+                assertEquals(1 - i, store.puts);
+            }
+        }
+        assertEquals(2, storeDir.listFiles().length);
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        CountingStore store = new CountingStore(new FileCompiledTemplateStore(storeDir));
+        process(createConfiguration(store).getTemplate("lib.ftl"));
+        assertEquals(1, store.puts);
+
+        // Same settings, same source:
+        process(createConfiguration(store).getTemplate("lib.ftl"));
+        assertEquals(1, store.puts);
+        assertEquals(1, store.hits);
+
+        // Changed source:
+        templateLoader.putTemplate("lib.ftl", "<#macro l>lib2</#macro>");
+        process(createConfiguration(store).getTemplate("lib.ftl"));
+        assertEquals(2, store.puts);
+
+        // Changed parser setting:
+        Configuration cfg = createConfiguration(store);
+        cfg.setTagSyntax(Configuration.SQUARE_BRACKET_TAG_SYNTAX);
+        process(cfg.getTemplate("lib.ftl"));
+        assertEquals(3, store.puts);
+
+        // Changed incompatible_improvements:
+        cfg = createConfiguration(store);
+        cfg.setIncompatibleImprovements(Configuration.VERSION_2_3_28);
+        process(cfg.getTemplate("lib.ftl"));
+        assertEquals(4, store.puts);
+
+        assertEquals(1, store.hits);
+        assertEquals(4, storeDir.listFiles().length);
+    }
+
+    @Test
+    public void testCorruptEntryIsIgnored() throws Exception {
+        process(createConfiguration(new FileCompiledTemplateStore(storeDir)).getTemplate("lib.ftl"));
+        File[] files = storeDir.listFiles();
+        assertEquals(1, files.length);
+        FileUtils.writeStringToFile(files[0], "garbage");
+
+        CountingStore store = new CountingStore(new FileCompiledTemplateStore(storeDir));
+        assertEquals("", process(createConfiguration(store).getTemplate("lib.ftl")));
+        assertEquals(1, store.hits);
+        assertEquals(1, store.puts);
+
+        store = new CountingStore(new FileCompiledTemplateStore(storeDir));
+        assertEquals("", process(createConfiguration(store).getTemplate("lib.ftl")));
+        assertEquals(1, store.hits);
+        assertEquals(0, store.puts);
+    }
+
+    private Configuration createConfiguration(CompiledTemplateStore store) {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_29);
+        cfg.setTemplateLoader(templateLoader);
+        cfg.setCompiledTemplateStore(store);
+        return cfg;
+    }
+
+    private static String process(Template t) throws TemplateException, IOException {
+        StringWriter out = new StringWriter();
+        t.process(Collections.singletonMap("s", "<&>"), out);
+        return out.toString();
+    }
+
+    private static class CountingStore implements CompiledTemplateStore {
+
+        private final CompiledTemplateStore store;
+        private int hits;
+        private int puts;
+
+        CountingStore(CompiledTemplateStore store) {
+            this.store = store;
+        }
+
+        public byte[] get(String sourceName, String key) throws IOException {
+            byte[] result = store.get(sourceName, key);
+            if (result != null) {
+                hits++;
+            }
+            return result;
+        }
+
+        public void put(String sourceName, String key, byte[] compiledTemplate) throws IOException {
+            puts++;
+            store.put(sourceName, key, compiledTemplate);
+        }
+
+    }
+
+}
@@ -30,6 +30,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.io.Files;
 
 import freemarker.template.Configuration;
@@ -113,6 +114,45 @@ public class FileTemplateLoaderTest {
         assertFalse(new FileTemplateLoader(templateRootDir).getEmulateCaseSensitiveFileSystem());
     }
     
+    @Test
+    public void testWatchForChanges() throws Exception {
+        FileTemplateLoader tl = (FileTemplateLoader) cfg.getTemplateLoader();
+        tl.setWatchForChanges(true);
+        try {
+            cfg.setTemplateUpdateDelayMilliseconds(Long.MAX_VALUE);
+            assertEquals("foo", cfg.getTemplate("sub1/sub2/t.ftl").toString());
+            assertNull(cfg.getTemplate("sub1/sub3/t2.ftl", null, null, null, true, true));
+            
+            FileUtils.write(new File(templateRootDir, "sub1/sub2/t.ftl"), "bar");
+            File sub3Dir = new File(templateRootDir, "sub1/sub3");
+            assertTrue(sub3Dir.mkdir());
+            FileUtils.write(new File(sub3Dir, "t2.ftl"), "baaz");
+            
+            // How fast the file system notifications arrive depends on the platform, so we have to poll here:
+            long deadline = System.currentTimeMillis() + 30000;
+            while (!"bar".equals(cfg.getTemplate("sub1/sub2/t.ftl").toString())
+                    || cfg.getTemplate("sub1/sub3/t2.ftl", null, null, null, true, true) == null) {
+                if (System.currentTimeMillis() > deadline) {
+                    fail("Template changes weren't noticed");
+                }
+                Thread.sleep(50);
+            }
+            assertEquals("baaz", cfg.getTemplate("sub1/sub3/t2.ftl").toString());
+        } finally {
+            tl.setWatchForChanges(false);
+        }
+        assertFalse(tl.getWatchForChanges());
+    }
+    
+    @Test
+    public void testListTemplateNames() throws Exception {
+        FileUtils.write(new File(templateRootDir, "a.ftl"), "a");
+        FileUtils.write(new File(templateRootDir, "sub1/b.ftl"), "b");
+        assertEquals(
+                ImmutableList.of("a.ftl", "sub1/b.ftl", "sub1/sub2/t.ftl"),
+                ((FileTemplateLoader) cfg.getTemplateLoader()).listTemplateNames());
+    }
+    
     @After
     public void tearDown() throws IOException {
         FileUtils.deleteDirectory(templateRootDir);
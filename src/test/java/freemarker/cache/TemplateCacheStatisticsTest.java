@@ -0,0 +1,291 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import freemarker.template.Configuration;
+import freemarker.template.TemplateNotFoundException;
+
+public class TemplateCacheStatisticsTest {
+
+    @Test
+    public void testHitsMissesAndLoads() throws Exception {
+        StringTemplateLoader tl = new StringTemplateLoader();
+        tl.putTemplate("a.ftl", "a");
+        tl.putTemplate("error.ftl", "<#if>");
+        Configuration cfg = createConfiguration(tl);
+        TemplateCacheStatistics stats = new TemplateCacheStatistics();
+        cfg.addTemplateCacheListener(stats);
+
+        cfg.getTemplate("a.ftl");
+        cfg.getTemplate("a.ftl");
+        cfg.getTemplate("a.ftl", Locale.GERMAN);
+        assertEquals(1, stats.getHitCount());
+        assertEquals(2, stats.getMissCount());
+        assertEquals(2, stats.getLoadCount());
+        assertEquals(0, stats.getReloadCount());
+        // The 2nd locale has reused the parsed template:
+        assertEquals(1, stats.getLoadTimeHistogram().getCount());
+        assertEquals(2, stats.getLookupTimeHistogram().getCount());
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                cfg.getTemplate("missing.ftl");
+                fail();
+            } catch (TemplateNotFoundException e) {
+                // expected
+            }
+        }
+        for (int i = 0; i < 2; i++) {
+            try {
+                cfg.getTemplate("error.ftl");
+                fail();
+            } catch (IOException e) {
+                // expected
+            }
+        }
+        assertEquals(2, stats.getNegativeHitCount());
+        assertEquals(4, stats.getMissCount());
+        assertEquals(2, stats.getLoadCount());
+        assertEquals(1, stats.getLoadFailureCount());
+        assertEquals(3.0 / 7, stats.getHitRatio(), 0.00001);
+
+        stats.reset();
+        assertEquals(0, stats.getMissCount());
+        assertEquals(0, stats.getLoadTimeHistogram().getCount());
+        assertEquals(0.0, stats.getHitRatio(), 0);
+    }
+
+    @Test
+    public void testStaleChecksAndReloads() throws Exception {
+        StringTemplateLoader tl = new StringTemplateLoader();
+        tl.putTemplate("a.ftl", "a", 1);
+        Configuration cfg = createConfiguration(tl);
+        cfg.setTemplateUpdateDelayMilliseconds(0);
+        TemplateCacheStatistics stats = new TemplateCacheStatistics();
+        cfg.addTemplateCacheListener(stats);
+
+        cfg.getTemplate("a.ftl");
+        cfg.getTemplate("a.ftl");
+        assertEquals(1, stats.getStaleCheckCount());
+        assertEquals(0, stats.getReloadCount());
+
+        tl.putTemplate("a.ftl", "a2", 2);
+        assertEquals("a2", cfg.getTemplate("a.ftl").toString());
+        assertEquals(2, stats.getStaleCheckCount());
+        assertEquals(1, stats.getReloadCount());
+        assertEquals(2, stats.getLoadCount());
+        assertEquals(0, stats.getHitCount());
+    }
+
+    @Test
+    public void testTemplateLoaderBreakdown() throws Exception {
+        StringTemplateLoader tl1 = new StringTemplateLoader();
+        tl1.putTemplate("a.ftl", "a");
+        StringTemplateLoader tl2 = new StringTemplateLoader();
+        tl2.putTemplate("b.ftl", "b");
+        Configuration cfg = createConfiguration(new MultiTemplateLoader(new TemplateLoader[] { tl1, tl2 }));
+        TemplateCacheStatistics stats = new TemplateCacheStatistics();
+        cfg.addTemplateCacheListener(stats);
+
+        cfg.getTemplate("a.ftl");
+        cfg.getTemplate("b.ftl");
+        cfg.getTemplate("b.ftl");
+        cfg.getTemplate("b.ftl");
+
+        Map<TemplateLoader, TemplateCacheStatistics> loaderStats = stats.getTemplateLoaderStatistics();
+        assertEquals(2, loaderStats.size());
+        assertEquals(0, loaderStats.get(tl1).getHitCount());
+        assertEquals(1, loaderStats.get(tl1).getLoadCount());
+        assertEquals(2, loaderStats.get(tl2).getHitCount());
+        assertEquals(1, loaderStats.get(tl2).getLoadCount());
+        assertEquals(2, stats.getTemplateLoaderSummaries().length);
+    }
+
+    @Test
+    public void testTopTemplateNames() throws Exception {
+        StringTemplateLoader tl = new StringTemplateLoader();
+        tl.putTemplate("a.ftl", "a");
+        tl.putTemplate("b.ftl", "b");
+        tl.putTemplate("c.ftl", "c");
+        Configuration cfg = createConfiguration(tl);
+        TemplateCacheStatistics stats = new TemplateCacheStatistics();
+        cfg.addTemplateCacheListener(stats);
+
+        cfg.getTemplate("c.ftl");
+        assertEquals(0, stats.getTopRequestedTemplateNames(10).size());
+
+        stats.setMaxTrackedTemplateNames(2);
+        for (int i = 0; i < 3; i++) {
+            cfg.getTemplate("a.ftl");
+        }
+        for (int i = 0; i < 5; i++) {
+            cfg.getTemplate("b.ftl");
+        }
+        for (int i = 0; i < 7; i++) {
+            cfg.getTemplate("c.ftl");
+        }
+        Map<String, Long> top = stats.getTopRequestedTemplateNames(10);
+        assertThat(top.keySet(), contains("b.ftl", "a.ftl"));
+        assertEquals(Long.valueOf(5), top.get("b.ftl"));
+        assertThat(stats.getTopRequestedTemplateNames(1).keySet(), contains("b.ftl"));
+        assertThat(stats.getTopLoadTimeTemplateNames(10).keySet(), containsInAnyOrder("a.ftl", "b.ftl"));
+    }
+
+    @Test
+    public void testListenersSurviveTemplateCacheRecreation() throws Exception {
+        StringTemplateLoader tl = new StringTemplateLoader();
+        tl.putTemplate("a.ftl", "a");
+        Configuration cfg = createConfiguration(tl);
+        TemplateCacheStatistics stats = new TemplateCacheStatistics();
+        cfg.addTemplateCacheListener(stats);
+        cfg.setCacheStorage(new MruCacheStorage(10, 10));
+
+        cfg.getTemplate("a.ftl");
+        assertEquals(1, stats.getMissCount());
+
+        cfg.removeTemplateCacheListener(stats);
+        cfg.getTemplate("a.ftl");
+        assertEquals(0, stats.getHitCount());
+    }
+
+    @Test
+    public void testConfigurationCloneHasOwnStatistics() throws Exception {
+        StringTemplateLoader tl = new StringTemplateLoader();
+        tl.putTemplate("a.ftl", "a");
+        Configuration cfg = createConfiguration(tl);
+        TemplateCacheListener otherListener = new NopListener();
+        cfg.addTemplateCacheListener(otherListener);
+        TemplateCacheStatistics stats = new TemplateCacheStatistics();
+        stats.setMaxTrackedTemplateNames(10);
+        cfg.addTemplateCacheListener(stats);
+        cfg.getTemplate("a.ftl");
+
+        Configuration clone = (Configuration) cfg.clone();
+        List<TemplateCacheListener> cloneListeners = clone.getTemplateCacheListeners();
+        assertEquals(2, cloneListeners.size());
+        assertSame(otherListener, cloneListeners.get(0));
+        TemplateCacheStatistics cloneStats = (TemplateCacheStatistics) cloneListeners.get(1);
+        assertNotSame(stats, cloneStats);
+        assertEquals(10, cloneStats.getMaxTrackedTemplateNames());
+        assertEquals(0, cloneStats.getMissCount());
+
+        clone.getTemplate("a.ftl");
+        clone.getTemplate("a.ftl");
+        assertEquals(1, cloneStats.getMissCount());
+        assertEquals(1, cloneStats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+        assertEquals(0, stats.getHitCount());
+        assertEquals(ImmutableList.of(otherListener, stats), cfg.getTemplateCacheListeners());
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        StringTemplateLoader tl = new StringTemplateLoader();
+        tl.putTemplate("a.ftl", "a");
+        Configuration cfg = createConfiguration(tl);
+        TemplateCacheStatistics stats = new TemplateCacheStatistics();
+        cfg.addTemplateCacheListener(stats);
+        cfg.getTemplate("a.ftl");
+        cfg.getTemplate("a.ftl");
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = stats.registerMBean("test:1");
+        try {
+            assertTrue(mBeanServer.isRegistered(objectName));
+            assertEquals(1L, mBeanServer.getAttribute(objectName, "HitCount"));
+            assertEquals(1L, mBeanServer.getAttribute(objectName, "MissCount"));
+            assertEquals(0.5, (Double) mBeanServer.getAttribute(objectName, "HitRatio"), 0.00001);
+            mBeanServer.invoke(objectName, "reset", null, null);
+            assertEquals(0L, mBeanServer.getAttribute(objectName, "HitCount"));
+        } finally {
+            stats.unregisterMBean();
+        }
+        assertFalse(mBeanServer.isRegistered(objectName));
+    }
+
+    @Test
+    public void testTimeHistogram() throws Exception {
+        TemplateCacheStatistics.TimeHistogram histogram = new TemplateCacheStatistics().getLoadTimeHistogram();
+        assertEquals(0, histogram.getPercentileNanos(0.5));
+        for (int i = 0; i < 90; i++) {
+            histogram.record(100);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(3000000);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(3000000, histogram.getMaxNanos());
+        assertEquals(90 * 100 + 10 * 3000000, histogram.getTotalNanos());
+        assertEquals(1024, histogram.getPercentileNanos(0.5));
+        assertEquals(1024, histogram.getPercentileNanos(0.9));
+        assertEquals(3000000, histogram.getPercentileNanos(0.95));
+        assertEquals(3000000, histogram.getPercentileNanos(1));
+    }
+
+    private Configuration createConfiguration(TemplateLoader tl) {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_29);
+        cfg.setTemplateLoader(tl);
+        cfg.setLocale(Locale.US);
+        return cfg;
+    }
+
+    private static class NopListener implements TemplateCacheListener {
+
+        public void hit(String templateName, Locale locale, TemplateLoader templateLoader) {
+            // Do nothing
+        }
+
+        public void negativeHit(String templateName, Locale locale) {
+            // Do nothing
+        }
+
+        public void lookup(String templateName, Locale locale, TemplateLoader templateLoader, boolean staleCheck,
+                long ioNanos) {
+            // Do nothing
+        }
+
+        public void load(String templateName, Locale locale, TemplateLoader templateLoader, boolean reload,
+                boolean parsed, long loadNanos) {
+            // Do nothing
+        }
+
+        public void loadFailure(String templateName, Locale locale, Throwable exception) {
+            // Do nothing
+        }
+
+    }
+
+}
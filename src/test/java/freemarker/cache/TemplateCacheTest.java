@@ -23,20 +23,35 @@ import static org.junit.Assert.*;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.io.StringWriter;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.hamcrest.Matchers;
 import org.junit.Test;
 
 import com.google.common.collect.ImmutableList;
 
+import freemarker.core.Environment;
 import freemarker.core.ParseException;
 import freemarker.template.Configuration;
 import freemarker.template.MalformedTemplateNameException;
 import freemarker.template.Template;
+import freemarker.template.TemplateDirectiveBody;
+import freemarker.template.TemplateDirectiveModel;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateModel;
 import freemarker.template.TemplateNotFoundException;
 import freemarker.template.Version;
+import freemarker.template._TemplateAPI;
 import freemarker.test.MonitoredTemplateLoader;
 import freemarker.test.MonitoredTemplateLoader.CloseTemplateSourceEvent;
 import freemarker.test.MonitoredTemplateLoader.FindTemplateSourceEvent;
@@ -419,6 +434,487 @@ public class TemplateCacheTest {
         }
     }
     
+    @Test
+    public void testConcurrentMissesAreCoalesced() throws Exception {
+        final Configuration cfg = new Configuration(Configuration.VERSION_2_3_22);
+        SlowStringTemplateLoader loader = new SlowStringTemplateLoader();
+        loader.putTemplate("t.ftl", "foo");
+        cfg.setTemplateLoader(loader);
+        cfg.setLocalizedLookup(false);
+        
+        final int threadCount = 8;
+        final Template[] results = new Template[threadCount];
+        final Exception[] exceptions = new Exception[threadCount];
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            final int threadIdx = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        results[threadIdx] = cfg.getTemplate("t.ftl");
+                    } catch (Exception e) {
+                        exceptions[threadIdx] = e;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        assertEquals(1, loader.getFindCount());
+        for (int i = 0; i < threadCount; i++) {
+            assertNull(exceptions[i]);
+            assertSame(results[0], results[i]);
+        }
+        assertEquals("foo", results[0].toString());
+    }
+    
+    @Test
+    public void testBackgroundRefresh() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_22);
+        cfg.setLocale(Locale.US);
+        StringTemplateLoader loader = new StringTemplateLoader();
+        cfg.setTemplateLoader(loader);
+        cfg.setTemplateUpdateDelayMilliseconds(0);
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        cfg.setTemplateUpdateExecutor(new Executor() {
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+        
+        loader.putTemplate("t.ftl", "v1", 1);
+        assertEquals("v1", cfg.getTemplate("t.ftl").toString());
+        assertEquals(0, tasks.size());
+        
+        loader.putTemplate("t.ftl", "v2", 2);
+        assertEquals("v1", cfg.getTemplate("t.ftl").toString());
+        assertEquals(1, tasks.size());
+        // Refresh already scheduled:
+        assertEquals("v1", cfg.getTemplate("t.ftl").toString());
+        assertEquals(1, tasks.size());
+        
+        tasks.remove(0).run();
+        assertEquals("v2", cfg.getTemplate("t.ftl").toString());
+        assertEquals(1, tasks.size());
+        tasks.remove(0).run();
+        
+        cfg.setTemplateUpdateExecutor(new Executor() {
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        });
+        loader.putTemplate("t.ftl", "v3", 3);
+        assertEquals("v3", cfg.getTemplate("t.ftl").toString());
+    }
+    
+    @Test
+    public void testLocalizedVariantsAreShared() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_28);
+        cfg.setTemplateUpdateDelayMilliseconds(Long.MAX_VALUE);
+        MonitoredTemplateLoader tl = new MonitoredTemplateLoader();
+        tl.putTemplate("t.ftl", "${.locale}");
+        tl.putTemplate("t_de.ftl", "de ${.locale}");
+        cfg.setTemplateLoader(tl);
+        
+        Template tUS = cfg.getTemplate("t.ftl", Locale.US);
+        assertEquals(
+                ImmutableList.of(
+                        new FindTemplateSourceEvent("t_en_US.ftl", false),
+                        new FindTemplateSourceEvent("t_en.ftl", false),
+                        new FindTemplateSourceEvent("t.ftl", true),
+                        new GetLastModifiedEvent("t.ftl"),
+                        new GetReaderEvent("t.ftl"),
+                        new CloseTemplateSourceEvent("t.ftl")),
+                tl.getEvents());
+        
+        // Only the variant that wasn't looked up yet is checked, and the parsed template is reused:
+        tl.clearEvents();
+        Template tUK = cfg.getTemplate("t.ftl", Locale.UK);
+        assertEquals(ImmutableList.of(new FindTemplateSourceEvent("t_en_GB.ftl", false)), tl.getEvents());
+        assertNotSame(tUS, tUK);
+        assertSame(tUS.getRootTreeNode(), tUK.getRootTreeNode());
+        assertEquals("t.ftl", tUK.getSourceName());
+        assertEquals(Locale.UK, tUK.getLocale());
+        assertEquals(Locale.US, tUS.getLocale());
+        assertEquals("en_GB", processToString(tUK));
+        assertEquals("en_US", processToString(tUS));
+        
+        tl.clearEvents();
+        assertSame(tUK, cfg.getTemplate("t.ftl", Locale.UK));
+        assertSame(tUS, cfg.getTemplate("t.ftl", Locale.US));
+        assertEquals(ImmutableList.of(), tl.getEvents());
+        
+        Template tDE = cfg.getTemplate("t.ftl", Locale.GERMANY);
+        assertEquals(
+                ImmutableList.of(
+                        new FindTemplateSourceEvent("t_de_DE.ftl", false),
+                        new FindTemplateSourceEvent("t_de.ftl", true),
+                        new GetLastModifiedEvent("t_de.ftl"),
+                        new GetReaderEvent("t_de.ftl"),
+                        new CloseTemplateSourceEvent("t_de.ftl")),
+                tl.getEvents());
+        assertEquals("de de_DE", processToString(tDE));
+        
+        tl.clearEvents();
+        Template tAT = cfg.getTemplate("t.ftl", new Locale("de", "AT"));
+        assertEquals(ImmutableList.of(new FindTemplateSourceEvent("t_de_AT.ftl", false)), tl.getEvents());
+        assertSame(tDE.getRootTreeNode(), tAT.getRootTreeNode());
+        assertEquals("de de_AT", processToString(tAT));
+        
+        // Removal makes the other locales forget what was found, so the new variant is noticed:
+        tl.putTemplate("t_en.ftl", "en ${.locale}");
+        cfg.removeTemplateFromCache("t.ftl", Locale.CANADA);
+        tl.clearEvents();
+        assertEquals("en en_CA", processToString(cfg.getTemplate("t.ftl", Locale.CANADA)));
+        assertEquals(
+                ImmutableList.of(
+                        new FindTemplateSourceEvent("t_en_CA.ftl", false),
+                        new FindTemplateSourceEvent("t_en.ftl", true),
+                        new GetLastModifiedEvent("t_en.ftl"),
+                        new GetReaderEvent("t_en.ftl"),
+                        new CloseTemplateSourceEvent("t_en.ftl")),
+                tl.getEvents());
+        assertSame(tUK, cfg.getTemplate("t.ftl", Locale.UK));
+    }
+    
+    @Test
+    public void testCurrentTemplateWithSharedParseResult() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_28);
+        StringTemplateLoader tl = new StringTemplateLoader();
+        tl.putTemplate("main.ftl", "<@currentTemplate /> <#include 'inc.ftl'> <#import 'lib.ftl' as lib><@lib.m />");
+        tl.putTemplate("inc.ftl", "<@currentTemplate />");
+        tl.putTemplate("lib.ftl", "<#macro m><@currentTemplate /></#macro>");
+        cfg.setTemplateLoader(tl);
+        cfg.setSharedVariable("currentTemplate", new TemplateDirectiveModel() {
+            public void execute(Environment env, Map params, TemplateModel[] loopVars, TemplateDirectiveBody body)
+                    throws TemplateException, IOException {
+                Template t = env.getCurrentTemplate();
+                env.getOut().write(t.getName() + "/" + t.getLocale());
+            }
+        });
+        
+        Template mainUS = cfg.getTemplate("main.ftl", Locale.US);
+        Template mainUK = cfg.getTemplate("main.ftl", Locale.UK);
+        assertSame(mainUS.getRootTreeNode(), mainUK.getRootTreeNode());
+        // The AST doesn't belong to any of the templates returned by the cache:
+        assertNotSame(mainUS, mainUS.getRootTreeNode().getTemplate());
+        assertNotSame(mainUK, mainUK.getRootTreeNode().getTemplate());
+        
+        assertEquals("main.ftl/en_US inc.ftl/en_US lib.ftl/en_US", processToString(mainUS));
+        assertEquals("main.ftl/en_GB inc.ftl/en_GB lib.ftl/en_GB", processToString(mainUK));
+    }
+    
+    @Test
+    public void testLocalizedVariantsAreRevalidatedWhenStale() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_28);
+        cfg.setTemplateUpdateDelayMilliseconds(0);
+        MonitoredTemplateLoader tl = new MonitoredTemplateLoader();
+        tl.putTemplate("t.ftl", "v1", 1);
+        cfg.setTemplateLoader(tl);
+        cfg.setLocalizedLookup(false);
+        
+        Template t1 = cfg.getTemplate("t.ftl", Locale.US);
+        Template t2 = cfg.getTemplate("t.ftl", Locale.UK);
+        assertNotSame(t1, t2);
+        // Not parsed again, as the source hasn't changed:
+        assertSame(t1.getRootTreeNode(), t2.getRootTreeNode());
+        
+        tl.putTemplate("t.ftl", "v2", 2);
+        Template t3 = cfg.getTemplate("t.ftl", Locale.GERMANY);
+        assertEquals("v2", t3.toString());
+        Template t4 = cfg.getTemplate("t.ftl", Locale.US);
+        assertEquals("v2", t4.toString());
+        assertSame(t3.getRootTreeNode(), t4.getRootTreeNode());
+    }
+    
+    @Test
+    public void testContentBasedTemplateReuse() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_28);
+        cfg.setTemplateUpdateDelayMilliseconds(0);
+        StringTemplateLoader tl = new StringTemplateLoader();
+        tl.putTemplate("t.ftl", "${.locale}", 1);
+        tl.putTemplate("t2.ftl", "${.locale}", 1);
+        cfg.setTemplateLoader(tl);
+        cfg.setLocalizedLookup(false);
+        ParseCountingListener listener = new ParseCountingListener();
+        cfg.addTemplateCacheListener(listener);
+        
+        assertFalse(cfg.getContentBasedTemplateReuse());
+        Template t1 = cfg.getTemplate("t.ftl", Locale.US);
+        // Only the last modification time has changed:
+        tl.putTemplate("t.ftl", "${.locale}", 2);
+        Template t2 = cfg.getTemplate("t.ftl", Locale.US);
+        assertNotSame(t1.getRootTreeNode(), t2.getRootTreeNode());
+        assertEquals(2, listener.parseCount.get());
+        
+        cfg.setContentBasedTemplateReuse(true);
+        assertTrue(cfg.getContentBasedTemplateReuse());
+        Template t3 = cfg.getTemplate("t.ftl", Locale.US);
+        assertSame(t2, t3);
+        tl.putTemplate("t.ftl", "${.locale}", 3);
+        Template t4 = cfg.getTemplate("t.ftl", Locale.US);
+        assertEquals(3, listener.parseCount.get());
+        tl.putTemplate("t.ftl", "${.locale}", 4);
+        Template t5 = cfg.getTemplate("t.ftl", Locale.GERMANY);
+        assertNotSame(t4, t5);
+        assertSame(t4.getRootTreeNode(), t5.getRootTreeNode());
+        assertEquals(Locale.GERMANY, t5.getLocale());
+        assertEquals("de_DE", processToString(t5));
+        assertEquals("en_US", processToString(t4));
+        assertEquals(3, listener.parseCount.get());
+        
+        // The source name is part of the key, as the AST refers to the template:
+        Template otherT = cfg.getTemplate("t2.ftl", Locale.US);
+        assertNotSame(t4.getRootTreeNode(), otherT.getRootTreeNode());
+        assertEquals("t2.ftl", otherT.getSourceName());
+        assertEquals(4, listener.parseCount.get());
+        
+        // Changed content:
+        tl.putTemplate("t.ftl", "v2 ${.locale}", 5);
+        Template t6 = cfg.getTemplate("t.ftl", Locale.US);
+        assertEquals("v2 en_US", processToString(t6));
+        assertEquals(5, listener.parseCount.get());
+        
+        // Changing back to an earlier content:
+        tl.putTemplate("t.ftl", "${.locale}", 6);
+        Template t7 = cfg.getTemplate("t.ftl", Locale.US);
+        assertSame(t4.getRootTreeNode(), t7.getRootTreeNode());
+        assertEquals(5, listener.parseCount.get());
+        
+        // The parser settings are part of the key:
+        cfg.setTagSyntax(Configuration.SQUARE_BRACKET_TAG_SYNTAX);
+        tl.putTemplate("t.ftl", "${.locale}", 7);
+        Template t8 = cfg.getTemplate("t.ftl", Locale.US);
+        assertNotSame(t4.getRootTreeNode(), t8.getRootTreeNode());
+        assertEquals(6, listener.parseCount.get());
+        
+        // Survives the re-creation of the TemplateCache:
+        cfg.setTemplateNameFormat(TemplateNameFormat.DEFAULT_2_4_0);
+        assertTrue(cfg.getContentBasedTemplateReuse());
+        
+        cfg.setContentBasedTemplateReuse(false);
+        tl.putTemplate("t.ftl", "${.locale}", 8);
+        Template t9 = cfg.getTemplate("t.ftl", Locale.US);
+        assertNotSame(t8.getRootTreeNode(), t9.getRootTreeNode());
+        assertEquals(7, listener.parseCount.get());
+    }
+    
+    @Test
+    public void testContentBasedTemplateReuseKeepsRequestedName() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_28);
+        StringTemplateLoader tl = new StringTemplateLoader();
+        tl.putTemplate("lib.ftl", "<#include 'inc.ftl'> ${.current_template_name}");
+        tl.putTemplate("inc.ftl", "[root inc]");
+        tl.putTemplate("sub/inc.ftl", "[sub inc]");
+        tl.putTemplate("foo_en.ftl", "${.current_template_name}");
+        cfg.setTemplateLoader(tl);
+        cfg.setContentBasedTemplateReuse(true);
+        
+        assertEquals("[root inc] lib.ftl", processToString(cfg.getTemplate("lib.ftl")));
+        Template acquired = cfg.getTemplate("sub/*/lib.ftl");
+        assertEquals("sub/*/lib.ftl", acquired.getName());
+        assertEquals("lib.ftl", acquired.getSourceName());
+        assertEquals("[sub inc] sub/*/lib.ftl", processToString(acquired));
+        
+        assertEquals("foo.ftl", processToString(cfg.getTemplate("foo.ftl", Locale.ENGLISH)));
+        Template localized = cfg.getTemplate("foo_en.ftl", Locale.ENGLISH);
+        assertEquals("foo_en.ftl", localized.getName());
+        assertEquals("foo_en.ftl", processToString(localized));
+    }
+    
+    @Test
+    public void testDependencyPrefetching() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_28);
+        StringTemplateLoader tl = new StringTemplateLoader();
+        tl.putTemplate("main.ftl", "<#import 'lib/util.ftl' as u><#include 'header.ftl'><#include x>");
+        tl.putTemplate("header.ftl", "<#include 'lib/common.ftl'>");
+        tl.putTemplate("lib/util.ftl", "<#include 'common.ftl'><#import '/main.ftl' as m>");
+        tl.putTemplate("lib/common.ftl", "");
+        cfg.setTemplateLoader(tl);
+        ParseCountingListener listener = new ParseCountingListener();
+        cfg.addTemplateCacheListener(listener);
+        cfg.setTemplateDependencyPrefetchExecutor(new Executor() {
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        
+        cfg.getTemplate("main.ftl");
+        assertEquals(
+                ImmutableList.of("main.ftl", "lib/util.ftl", "lib/common.ftl", "header.ftl"),
+                listener.loadedTemplateNames);
+        cfg.getTemplate("header.ftl");
+        assertEquals(4, listener.loadedTemplateNames.size());
+        
+        assertEquals(ImmutableList.of("header.ftl", "lib/util.ftl", "main.ftl"),
+                ImmutableList.copyOf(cfg.getDependentTemplateNames("lib/common.ftl")));
+        assertEquals(ImmutableList.of("lib/util.ftl", "main.ftl"),
+                ImmutableList.copyOf(cfg.getDependentTemplateNames("/main.ftl")));
+        assertEquals(ImmutableList.of(), ImmutableList.copyOf(cfg.getDependentTemplateNames("x.ftl")));
+        
+        // Survives the re-creation of the TemplateCache, which also clears it:
+        cfg.setTemplateNameFormat(TemplateNameFormat.DEFAULT_2_4_0);
+        assertNotNull(cfg.getTemplateDependencyPrefetchExecutor());
+        assertEquals(ImmutableList.of(), ImmutableList.copyOf(cfg.getDependentTemplateNames("lib/common.ftl")));
+    }
+    
+    @Test
+    public void testDependencyPrefetchingRejected() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_28);
+        StringTemplateLoader tl = new StringTemplateLoader();
+        tl.putTemplate("main.ftl", "<#include 'a.ftl'><#include 'b.ftl'>");
+        tl.putTemplate("a.ftl", "");
+        tl.putTemplate("b.ftl", "");
+        cfg.setTemplateLoader(tl);
+        ParseCountingListener listener = new ParseCountingListener();
+        cfg.addTemplateCacheListener(listener);
+        final AtomicInteger executeCalls = new AtomicInteger();
+        cfg.setTemplateDependencyPrefetchExecutor(new Executor() {
+            public void execute(Runnable command) {
+                executeCalls.incrementAndGet();
+                throw new RejectedExecutionException();
+            }
+        });
+        
+        cfg.getTemplate("main.ftl");
+        assertEquals(ImmutableList.of("main.ftl"), listener.loadedTemplateNames);
+        assertEquals(1, executeCalls.get());
+        assertEquals(ImmutableList.of("main.ftl"), ImmutableList.copyOf(cfg.getDependentTemplateNames("b.ftl")));
+    }
+    
+    private static String processToString(Template t) throws Exception {
+        StringWriter out = new StringWriter();
+        t.process(null, out);
+        return out.toString();
+    }
+    
+    @Test
+    public void testInlineStaticTextIncludes() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_28);
+        StringTemplateLoader tl = new StringTemplateLoader();
+        tl.putTemplate("main.ftl",
+                "<#include 'header.ftl'>[${1}]<#include 'dynamic.ftl'><#include 'raw.ftl' parse=false>", 1);
+        tl.putTemplate("header.ftl", "Header", 1);
+        tl.putTemplate("header_de.ftl", "Kopf", 1);
+        tl.putTemplate("dynamic.ftl", "${2}", 1);
+        tl.putTemplate("raw.ftl", "${raw}", 1);
+        tl.putTemplate("loc.ftl", "<#include 'header.ftl'>, <#setting locale='de_DE'><#include 'header.ftl'>", 1);
+        tl.putTemplate("cyclic1.ftl", "1<#include 'cyclic2.ftl'>", 1);
+        tl.putTemplate("cyclic2.ftl", "2<#if !done??><#assign done=true><#include 'cyclic1.ftl'></#if>", 1);
+        cfg.setTemplateLoader(tl);
+        ParseCountingListener listener = new ParseCountingListener();
+        cfg.addTemplateCacheListener(listener);
+        
+        assertFalse(cfg.getInlineStaticTextIncludes());
+        cfg.setInlineStaticTextIncludes(true);
+        assertTrue(cfg.getInlineStaticTextIncludes());
+        
+        Template main = cfg.getTemplate("main.ftl", Locale.US);
+        listener.hitTemplateNames.clear();
+        assertEquals("Header[1]2${raw}", processToString(main));
+        // Only the non-static include had to get the template:
+        assertEquals(ImmutableList.of("dynamic.ftl"), listener.hitTemplateNames);
+        
+        // The locale has changed at runtime, so the inlined content can't be used there:
+        assertEquals("Header, Kopf", processToString(cfg.getTemplate("loc.ftl", Locale.US)));
+        
+        assertEquals("1212", processToString(cfg.getTemplate("cyclic1.ftl", Locale.US)));
+        
+        // The including template is reloaded when the inlined template has changed:
+        cfg.setTemplateUpdateDelayMilliseconds(0);
+        listener.lookedUpTemplateNames.clear();
+        listener.loadedTemplateNames.clear();
+        assertSame(main, cfg.getTemplate("main.ftl", Locale.US));
+        // The check hasn't got the inlined template through the cache:
+        assertEquals(ImmutableList.of("main.ftl"), listener.lookedUpTemplateNames);
+        assertEquals(ImmutableList.of(), listener.loadedTemplateNames);
+        tl.putTemplate("header.ftl", "Header 2", 2);
+        int parseCount = listener.parseCount.get();
+        Template main2 = cfg.getTemplate("main.ftl", Locale.US);
+        assertNotSame(main, main2);
+        // Parsed again, as the inlining has modified the AST of the earlier load:
+        assertEquals(parseCount + 2, listener.parseCount.get()); // + header.ftl
+        assertEquals("Header 2[1]2${raw}", processToString(main2));
+        assertSame(main2, cfg.getTemplate("main.ftl", Locale.US));
+        
+        // Another locale reuses the parsed template, but not what was inlined into it:
+        parseCount = listener.parseCount.get();
+        Template mainDe = cfg.getTemplate("main.ftl", Locale.GERMANY);
+        assertEquals(parseCount, listener.parseCount.get());
+        assertSame(_TemplateAPI.getAstOwner(main2), _TemplateAPI.getAstOwner(mainDe));
+        assertEquals("Kopf[1]2${raw}", processToString(mainDe));
+        assertEquals("Header 2[1]2${raw}", processToString(main2));
+        tl.putTemplate("header.ftl", "Header 3", 3);
+        assertSame(mainDe, cfg.getTemplate("main.ftl", Locale.GERMANY));
+        assertEquals("Header 3[1]2${raw}", processToString(cfg.getTemplate("main.ftl", Locale.US)));
+        
+        // Survives the re-creation of the TemplateCache:
+        cfg.setTemplateNameFormat(TemplateNameFormat.DEFAULT_2_4_0);
+        assertTrue(cfg.getInlineStaticTextIncludes());
+    }
+    
+    private static class ParseCountingListener implements TemplateCacheListener {
+        
+        private final AtomicInteger parseCount = new AtomicInteger();
+        private final List<String> loadedTemplateNames = Collections.synchronizedList(new ArrayList<String>());
+        private final List<String> hitTemplateNames = Collections.synchronizedList(new ArrayList<String>());
+        private final List<String> lookedUpTemplateNames = Collections.synchronizedList(new ArrayList<String>());
+
+        public void hit(String templateName, Locale locale, TemplateLoader templateLoader) {
+            hitTemplateNames.add(templateName);
+        }
+
+        public void negativeHit(String templateName, Locale locale) {
+            // Do nothing
+        }
+
+        public void lookup(String templateName, Locale locale, TemplateLoader templateLoader, boolean staleCheck,
+                long ioNanos) {
+            lookedUpTemplateNames.add(templateName);
+        }
+
+        public void load(String templateName, Locale locale, TemplateLoader templateLoader, boolean reload,
+                boolean parsed, long loadNanos) {
+            loadedTemplateNames.add(templateName);
+            if (parsed) {
+                parseCount.incrementAndGet();
+            }
+        }
+
+        public void loadFailure(String templateName, Locale locale, Throwable exception) {
+            // Do nothing
+        }
+        
+    }
+    
+    private static class SlowStringTemplateLoader extends StringTemplateLoader {
+        
+        private final AtomicInteger findCount = new AtomicInteger();
+
+        @Override
+        public Object findTemplateSource(String name) {
+            findCount.incrementAndGet();
+            try {
+                Thread.sleep(250);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return super.findTemplateSource(name);
+        }
+        
+        int getFindCount() {
+            return findCount.get();
+        }
+        
+    }
+    
     private static class MonitoredClassTemplateLoader extends ClassTemplateLoader {
         
         private Boolean lastTemplateSourceModification;
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Locale;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+public class WeightedCacheStorageTest {
+
+    @Test
+    public void testEvictionByWeight() {
+        WeightedCacheStorage cache = new LengthWeighedCacheStorage(10);
+        cache.put("a", "aaaa");
+        cache.put("b", "bbbb");
+        assertEquals(8, cache.getWeight());
+        // Reading "a" makes "b" the eviction victim:
+        assertEquals("aaaa", cache.get("a"));
+        cache.put("c", "cc");
+        assertEquals(10, cache.getWeight());
+        assertEquals(3, cache.getSize());
+        cache.put("d", "ddd");
+        assertNull(cache.get("b"));
+        assertEquals("aaaa", cache.get("a"));
+        assertEquals("ddd", cache.get("d"));
+        assertThat(cache.getWeight(), lessThanOrEqualTo(10L));
+    }
+
+    @Test
+    public void testTooHeavyItem() {
+        WeightedCacheStorage cache = new LengthWeighedCacheStorage(10);
+        cache.put("a", "aaaa");
+        cache.put("a", "12345678901");
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getWeight());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testReplaceRemoveAndClear() {
+        WeightedCacheStorage cache = new LengthWeighedCacheStorage(10);
+        cache.put("a", "aaaa");
+        cache.put("a", "aa");
+        assertEquals("aa", cache.get("a"));
+        assertEquals(2, cache.getWeight());
+        cache.put("b", "bbb");
+        cache.remove("a");
+        assertNull(cache.get("a"));
+        assertEquals(3, cache.getWeight());
+        assertEquals(1, cache.getSize());
+        cache.clear();
+        assertEquals(0, cache.getWeight());
+        assertNull(cache.get("b"));
+    }
+
+    @Test
+    public void testTemplateWeights() throws Exception {
+        StringBuilder bigTemplate = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            bigTemplate.append("<#if x == ").append(i).append(">Line ").append(i).append("</#if>\n");
+        }
+        StringTemplateLoader tl = new StringTemplateLoader();
+        tl.putTemplate("small.ftl", "Hello ${name}!");
+        tl.putTemplate("big.ftl", bigTemplate.toString());
+
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_29);
+        cfg.setTemplateLoader(tl);
+        Template small = cfg.getTemplate("small.ftl");
+        Template big = cfg.getTemplate("big.ftl");
+        long smallSize = small.getEstimatedMemoryUsage();
+        long bigSize = big.getEstimatedMemoryUsage();
+        assertThat(smallSize, greaterThan(0L));
+        assertThat(smallSize, lessThan(10000L));
+        // Each line has several AST nodes, and is also kept as source code:
+        assertThat(bigSize, greaterThan(200L * 1000));
+        assertThat(bigSize, lessThan(5000L * 1000));
+        assertEquals(bigSize, big.getEstimatedMemoryUsage());
+
+        // The budget fits the big template, but not together with 2 other ones:
+        WeightedCacheStorage storage = new WeightedCacheStorage(bigSize + 3 * smallSize);
+        cfg.setCacheStorage(storage);
+        cfg.getTemplate("big.ftl");
+        cfg.getTemplate("small.ftl");
+        assertEquals(2, storage.getSize());
+        assertThat(storage.getWeight(), greaterThan(bigSize + smallSize));
+        cfg.getTemplate("small.ftl", Locale.GERMAN);
+        cfg.getTemplate("small.ftl", Locale.FRENCH);
+        assertThat(storage.getWeight(), lessThanOrEqualTo(storage.getMaxWeight()));
+        assertThat(storage.getSize(), lessThan(4));
+    }
+
+    @Test
+    public void testSetting() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_28);
+        Properties props = new Properties();
+        props.setProperty(Configuration.CACHE_STORAGE_KEY, "WeightedCacheStorage(100000000)");
+        cfg.setSettings(props);
+        WeightedCacheStorage cache = (WeightedCacheStorage) cfg.getCacheStorage();
+        assertEquals(100000000L, cache.getMaxWeight());
+    }
+
+    private static class LengthWeighedCacheStorage extends WeightedCacheStorage {
+
+        LengthWeighedCacheStorage(long maxWeight) {
+            super(maxWeight);
+        }
+
+        @Override
+        protected long weigh(Object key, Object value) {
+            return ((String) value).length();
+        }
+
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template._TemplateAPI;
+import freemarker.test.TemplateTest;
+
+public class ASTCompactionTest extends TemplateTest {
+
+    @Override
+    protected Configuration createConfiguration() throws Exception {
+        return new Configuration(Configuration.VERSION_2_3_28);
+    }
+
+    @Test
+    public void testPackedLocation() throws IOException {
+        Template t = new Template(null, "a\n  ${x}", getConfiguration());
+        assertLocation(findDollarVariable(t.getRootTreeNode()), 3, 2, 6, 2);
+    }
+
+    @Test
+    public void testWideLocation() throws IOException, TemplateException {
+        String longLine = StringUtils.repeat(" ", 9999);
+        String manyLines = StringUtils.repeat("\n", 20000);
+        Template t = new Template(null, "<#if true>" + longLine + "${x}" + manyLines + "</#if>", getConfiguration());
+        
+        TemplateElement ifElement = t.getRootTreeNode();
+        assertLocation(ifElement, 1, 1, 6, 20001);
+        assertLocation(findDollarVariable(ifElement), 10010, 1, 10013, 1);
+        
+        Template copy = _TemplateAPI.copyWithOwnParseResult(t);
+        assertLocation(copy.getRootTreeNode(), 1, 1, 6, 20001);
+        assertLocation(findDollarVariable(copy.getRootTreeNode()), 10010, 1, 10013, 1);
+        
+        addTemplate("wide.ftl", "<#if true>" + longLine + "${noSuchVar}</#if>");
+        assertErrorContains("<#include 'wide.ftl'>", "line 1, column 10012");
+    }
+
+    @Test
+    public void testEvalLocation() {
+        assertErrorContains("${'1 +\\n  noSuchVar'?eval}", "line 2, column 3", "?eval");
+    }
+
+    @Test
+    public void testChildBuffersAreTight() throws IOException {
+        Template t = new Template(null, "<#list 1..2 as i>${i}<#if i = 1>, </#if></#list>x", getConfiguration());
+        assertChildBuffersAreTight(t.getRootTreeNode());
+    }
+
+    @Test
+    public void testWhitespaceTextIsShared() throws IOException {
+        Template t1 = new Template(null, "${a}    ${b}\n  ${c}", getConfiguration());
+        Template t2 = new Template(null, "${x}    ${y}", getConfiguration());
+        
+        char[] text1 = ((TextBlock) t1.getRootTreeNode().getChild(1)).getTextChars();
+        char[] text2 = ((TextBlock) t2.getRootTreeNode().getChild(1)).getTextChars();
+        assertEquals("    ", new String(text1));
+        assertSame(text1, text2);
+        assertEquals("\n  ", new String(((TextBlock) t1.getRootTreeNode().getChild(3)).getTextChars()));
+        
+        Template t3 = new Template(null, "${a} x  ${b}", getConfiguration());
+        assertNotSame(text1, ((TextBlock) t3.getRootTreeNode().getChild(1)).getTextChars());
+    }
+
+    private static DollarVariable findDollarVariable(TemplateElement te) {
+        if (te instanceof DollarVariable) {
+            return (DollarVariable) te;
+        }
+        for (int i = 0; i < te.getChildCount(); i++) {
+            DollarVariable found = findDollarVariable(te.getChild(i));
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    private static void assertChildBuffersAreTight(TemplateElement te) {
+        TemplateElement[] childBuffer = te.getChildBuffer();
+        if (childBuffer != null) {
+            assertEquals(te.getChildCount(), childBuffer.length);
+        }
+        for (int i = 0; i < te.getChildCount(); i++) {
+            assertChildBuffersAreTight(te.getChild(i));
+        }
+    }
+
+    private static void assertLocation(TemplateObject tObj,
+            int beginColumn, int beginLine, int endColumn, int endLine) {
+        assertEquals(beginColumn, tObj.getBeginColumn());
+        assertEquals(beginLine, tObj.getBeginLine());
+        assertEquals(endColumn, tObj.getEndColumn());
+        assertEquals(endLine, tObj.getEndLine());
+    }
+
+}
@@ -373,7 +373,8 @@ public class ASTPrinter {
                 out.write("; ");
             }
             TemplateObject tObj = (TemplateObject) node;
-            out.write("Location " + tObj.beginLine + ":" + tObj.beginColumn + "-" + tObj.endLine + ":" + tObj.endColumn);
+            out.write("Location " + tObj.getBeginLine() + ":" + tObj.getBeginColumn()
+                    + "-" + tObj.getEndLine() + ":" + tObj.getEndColumn());
         }
         out.write('\n');
     }
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class ArrayCharStreamTest {
+
+    @Test
+    public void testReadAndBackup() throws IOException {
+        ArrayCharStream cs = new ArrayCharStream("abc", 1, 1);
+        assertEquals('a', cs.BeginToken());
+        assertEquals('b', cs.readChar());
+        assertEquals('c', cs.readChar());
+        assertEquals("abc", cs.GetImage());
+        assertArrayEquals(new char[] { 'b', 'c' }, cs.GetSuffix(2));
+        cs.backup(2);
+        assertEquals("a", cs.GetImage());
+        assertEquals('b', cs.BeginToken());
+        assertEquals("b", cs.GetImage());
+        assertEquals('c', cs.readChar());
+        try {
+            cs.readChar();
+            fail();
+        } catch (IOException e) {
+            // Expected
+        }
+        assertEquals("bc", cs.GetImage());
+    }
+
+    @Test
+    public void testLineBreaks() throws IOException {
+        // Line breaks: "\n", "\r\n", and a lone "\r"
+        ArrayCharStream cs = new ArrayCharStream("a\nbc\r\nd\re", 1, 1);
+        assertPosition(cs, 1, 1); // a
+        assertPosition(cs, 1, 2); // \n
+        assertPosition(cs, 2, 1); // b
+        assertPosition(cs, 2, 2); // c
+        assertPosition(cs, 2, 3); // \r
+        assertPosition(cs, 2, 4); // \n
+        assertPosition(cs, 3, 1); // d
+        assertPosition(cs, 3, 2); // \r
+        assertPosition(cs, 4, 1); // e
+    }
+
+    @Test
+    public void testStartPosition() throws IOException {
+        ArrayCharStream cs = new ArrayCharStream("ab\ncd", 5, 10);
+        assertPosition(cs, 5, 10);
+        assertPosition(cs, 5, 11);
+        assertPosition(cs, 5, 12);
+        assertPosition(cs, 6, 1);
+    }
+
+    @Test
+    public void testTabs() throws IOException {
+        ArrayCharStream cs = new ArrayCharStream("\tx\n x\t\ty", 1, 1);
+        cs.setTabSize(4);
+        assertPosition(cs, 1, 4); // \t
+        assertPosition(cs, 1, 5); // x
+        assertPosition(cs, 1, 6); // \n
+        assertPosition(cs, 2, 1); // space
+        assertPosition(cs, 2, 2); // x
+        assertPosition(cs, 2, 4); // \t
+        assertPosition(cs, 2, 8); // \t
+        assertPosition(cs, 2, 9); // y
+    }
+
+    @Test
+    public void testPositionsOfMultiCharToken() throws IOException {
+        ArrayCharStream cs = new ArrayCharStream("x\nabc\ndef", 1, 1);
+        cs.BeginToken();
+        cs.readChar();
+        assertEquals('a', cs.BeginToken());
+        for (int i = 0; i < 5; i++) {
+            cs.readChar();
+        }
+        assertEquals("abc\nde", cs.GetImage());
+        assertEquals(2, cs.getBeginLine());
+        assertEquals(1, cs.getBeginColumn());
+        assertEquals(3, cs.getEndLine());
+        assertEquals(2, cs.getEndColumn());
+        
+        // Going back to an earlier line:
+        cs.backup(4);
+        assertEquals(2, cs.getEndLine());
+        assertEquals(2, cs.getEndColumn());
+    }
+
+    @Test
+    public void testReader() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        String s = sb.toString();
+        ArrayCharStream cs = new ArrayCharStream(new StringReader(s), 1, 1);
+        cs.BeginToken();
+        for (int i = 1; i < s.length(); i++) {
+            cs.readChar();
+        }
+        assertEquals(s, cs.GetImage());
+        assertEquals(1, cs.getEndLine());
+        assertEquals(s.length(), cs.getEndColumn());
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        ArrayCharStream cs = new ArrayCharStream(new StringReader(""), 1, 1);
+        try {
+            cs.BeginToken();
+            fail();
+        } catch (IOException e) {
+            // Expected
+        }
+        assertEquals(1, cs.getBeginLine());
+        assertEquals(0, cs.getBeginColumn());
+    }
+
+    private static void assertPosition(ArrayCharStream cs, int line, int column) throws IOException {
+        cs.BeginToken();
+        assertEquals(line, cs.getBeginLine());
+        assertEquals(column, cs.getBeginColumn());
+        assertEquals(line, cs.getEndLine());
+        assertEquals(column, cs.getEndColumn());
+    }
+
+}
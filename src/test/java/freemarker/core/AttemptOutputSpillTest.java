@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateMethodModelEx;
+import freemarker.test.TemplateTest;
+
+public class AttemptOutputSpillTest extends TemplateTest {
+
+    private static final String TEMPLATE = ""
+            + "a<#attempt>"
+                + "b${long}"
+                + "<#attempt>c${long}${noSuchVar}<#recover>r1</#attempt>"
+                + "<#attempt>d${long}<#recover>r2</#attempt>"
+                + "<#attempt>e<#attempt>f${long}${noSuchVar}<#recover>r3${long}</#attempt>g<#recover>r4</#attempt>"
+            + "<#recover>r5</#attempt>"
+            + "<#attempt>h${long}<#attempt>i<#recover>r7</#attempt>${noSuchVar}<#recover>r6</#attempt>"
+            + "z";
+
+    @Test
+    public void testSameOutputRegardlessOfThreshold() throws IOException, TemplateException {
+        String longText = StringUtils.repeat("x😀\uD83D", 5000);
+        addToDataModel("long", longText);
+        String expectedOutput = "ab" + longText + "r1d" + longText + "er3" + longText + "gr6z";
+        
+        String[] tempFilesBefore = listSpillFiles();
+        for (int threshold : new int[] { 0, 1, 10, 4096, 20000, 100000 }) {
+            getConfiguration().setAttemptOutputSpillThreshold(threshold);
+            assertOutput(TEMPLATE, expectedOutput);
+        }
+        assertArrayEquals(tempFilesBefore, listSpillFiles());
+    }
+
+    @Test
+    public void testSpillFileIsUsed() throws IOException, TemplateException {
+        Environment env = new Template(null, "", getConfiguration())
+                .createProcessingEnvironment(null, new StringWriter());
+        RollbackWriter out = new RollbackWriter(new StringWriter(), env, 10, null);
+        try {
+            String[] tempFilesBefore = listSpillFiles();
+            out.write("0123456789");
+            assertArrayEquals(tempFilesBefore, listSpillFiles());
+            out.write("a");
+            assertEquals(tempFilesBefore.length + 1, listSpillFiles().length);
+        } finally {
+            out.release();
+        }
+    }
+
+    @Test
+    public void testRollback() throws IOException, TemplateException {
+        Environment env = new Template(null, "", getConfiguration())
+                .createProcessingEnvironment(null, new StringWriter());
+        for (int threshold : new int[] { 0, 3, 5000 }) {
+            StringWriter sw = new StringWriter();
+            RollbackWriter out = new RollbackWriter(sw, env, threshold, null);
+            try {
+                out.write("abcd");
+                long mark1 = out.mark();
+                out.write("efgh");
+                long mark2 = out.mark();
+                out.write(StringUtils.repeat("ijkl", 3000));
+                out.rollback(mark2);
+                out.write('m');
+                out.rollback(mark1);
+                out.write("n");
+                long mark3 = out.mark();
+                out.rollback(mark3);
+                out.write(StringUtils.repeat("o", 10000));
+                out.commit();
+                assertEquals("abcdn" + StringUtils.repeat("o", 10000), sw.toString());
+            } finally {
+                out.release();
+            }
+        }
+    }
+
+    @Test
+    public void testSpillFileDeletedAfterCommitAndRollback() throws Exception {
+        final File spillDir = Files.createTempDir();
+        try {
+            getConfiguration().setAttemptOutputSpillDirectory(spillDir);
+            getConfiguration().setAttemptOutputSpillThreshold(10);
+            String longText = StringUtils.repeat("x", 100);
+            addToDataModel("long", longText);
+            addToDataModel("spillFileCount", new TemplateMethodModelEx() {
+                public Object exec(List args) {
+                    return spillDir.list().length;
+                }
+            });
+            
+            assertOutput("<#attempt>${long}${spillFileCount()}<#recover>r</#attempt>${spillFileCount()}",
+                    longText + "10");
+            assertEquals(0, spillDir.list().length);
+            
+            assertOutput("<#attempt>${long}<#if spillFileCount() == 1>${noSuchVar}</#if>"
+                    + "<#recover>r${spillFileCount()}</#attempt>",
+                    "r0");
+            assertEquals(0, spillDir.list().length);
+        } finally {
+            FileUtils.deleteDirectory(spillDir);
+        }
+    }
+
+    @Test
+    public void testSpillFileOnlyAccessibleByOwner() throws IOException, TemplateException {
+        File spillDir = Files.createTempDir();
+        try {
+            assumeTrue(_JavaVersions.JAVA_8 != null
+                    && spillDir.toPath().getFileSystem().supportedFileAttributeViews().contains("posix"));
+            
+            Environment env = new Template(null, "", getConfiguration())
+                    .createProcessingEnvironment(null, new StringWriter());
+            RollbackWriter out = new RollbackWriter(new StringWriter(), env, 10, spillDir);
+            try {
+                out.write("0123456789a");
+                File[] spillFiles = spillDir.listFiles();
+                assertEquals(1, spillFiles.length);
+                assertEquals(
+                        EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE),
+                        java.nio.file.Files.getPosixFilePermissions(spillFiles[0].toPath()));
+            } finally {
+                out.release();
+            }
+            assertEquals(0, spillDir.list().length);
+        } finally {
+            FileUtils.deleteDirectory(spillDir);
+        }
+    }
+
+    private static String[] listSpillFiles() {
+        String[] names = new File(System.getProperty("java.io.tmpdir")).list(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.startsWith("freemarker-attempt-");
+            }
+        });
+        Arrays.sort(names);
+        return names;
+    }
+
+    @Override
+    protected Configuration createConfiguration() throws Exception {
+        return new Configuration(Configuration.VERSION_2_3_29);
+    }
+
+}
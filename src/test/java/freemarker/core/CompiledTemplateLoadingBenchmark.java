@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static freemarker.test.utility.BenchmarkUtil.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import freemarker.cache.CompiledTemplateStore;
+import freemarker.cache.FileCompiledTemplateStore;
+import freemarker.cache.FileTemplateLoader;
+import freemarker.log.Logger;
+import freemarker.template.Configuration;
+import freemarker.template.utility.StringUtil;
+
+/**
+ * Command-line tool for measuring how much a {@link CompiledTemplateStore} speeds up loading templates, especially
+ * right after the JVM was started, which is when it matters the most. It gets all the {@code .ftl} files found in a
+ * directory (recursively) with {@link Configuration#getTemplate(String)} again and again (clearing the template cache
+ * between the rounds), and prints how long the first round took, and how long the later rounds take. By default it
+ * uses the templates of the template test suite. It's not a unit test, so it's not run by the build.
+ * 
+ * <p>
+ * Run it with the {@code parse} argument, and then twice with the same {@code <storeDirectory>} argument (the first
+ * run only fills the store), each time in a new JVM. Then compare the times of the {@code parse} run with those of
+ * the second store run. As the first round includes one-time costs that don't grow with the number of templates (like
+ * class loading), use a corpus that's about as big as that of the application whose start time matters.
+ */
+public class CompiledTemplateLoadingBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 3) {
+            p("Usage: CompiledTemplateLoadingBenchmark (parse|<storeDirectory>) [<corpusDirectory> [<rounds>]]");
+            System.exit(-1);
+        }
+        // The debug log of the template cache would distort the results:
+        System.setProperty(Logger.SYSTEM_PROPERTY_NAME_LOGGER_LIBRARY, Logger.LIBRARY_NAME_NONE);
+        
+        File storeDir = args[0].equals("parse") ? null : new File(args[0]);
+        File corpusDir = new File(args.length > 1 ? args[1] : DEFAULT_CORPUS_DIR);
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+
+        List<String> names = new ArrayList<String>();
+        List<String> sources = new ArrayList<String>();
+        collectTemplates(corpusDir, names, sources);
+        long corpusChars = 0;
+        for (String source : sources) {
+            corpusChars += source.length();
+        }
+        p("Corpus: " + names.size() + " templates, " + corpusChars + " characters, from "
+                + StringUtil.jQuote(corpusDir.getPath()));
+
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_28);
+        cfg.setTemplateLoader(new FileTemplateLoader(corpusDir));
+        cfg.setLocalizedLookup(false);
+        cfg.setDefaultEncoding("UTF-8");
+        if (storeDir != null) {
+            String[] storeFiles = storeDir.list();
+            cfg.setCompiledTemplateStore(new FileCompiledTemplateStore(storeDir));
+            if (storeFiles == null || storeFiles.length == 0) {
+                getAll(names, cfg);
+                p("The store was empty, so it was filled now. Run this again (in a new JVM) to measure loading the "
+                        + "templates from it.");
+                return;
+            }
+            long storeBytes = 0;
+            for (File storeFile : storeDir.listFiles()) {
+                storeBytes += storeFile.length();
+            }
+            p("Store: " + storeFiles.length + " compiled templates, " + storeBytes + " bytes, in "
+                    + StringUtil.jQuote(storeDir.getPath()));
+        }
+
+        long[] roundNanos = new long[rounds];
+        int templateCount = 0;
+        for (int i = 0; i < rounds; i++) {
+            cfg.clearTemplateCache();
+            long startTime = System.nanoTime();
+            templateCount = getAll(names, cfg);
+            roundNanos[i] = System.nanoTime() - startTime;
+        }
+
+        p("Got " + templateCount + " templates per round, "
+                + (storeDir == null ? "by parsing them" : "from the store"));
+        p("The first round took " + roundNanos[0] / 1000 / 1000.0 + " ms");
+        if (rounds > 1) {
+            long[] laterRoundNanos = new long[rounds - 1];
+            System.arraycopy(roundNanos, 1, laterRoundNanos, 0, laterRoundNanos.length);
+            Arrays.sort(laterRoundNanos);
+            p("The later rounds took " + formatRoundTimes(laterRoundNanos, 1));
+        }
+    }
+
+    /**
+     * Gets the templates, except those that can't be parsed (as some test templates are intentionally malformed).
+     * 
+     * @return The number of templates successfully got
+     */
+    private static int getAll(List<String> names, Configuration cfg) throws IOException {
+        int count = 0;
+        for (String name : names) {
+            try {
+                cfg.getTemplate(name);
+                count++;
+            } catch (ParseException e) {
+                // Skip it
+            }
+        }
+        return count;
+    }
+
+}
@@ -19,14 +19,19 @@
 
 package freemarker.core;
 
+import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.io.FilterReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
 import java.util.Collections;
 
 import org.junit.Test;
 
+import freemarker.cache.ByteArrayTemplateLoader;
 import freemarker.template.Configuration;
 import freemarker.template.Template;
 import freemarker.template.TemplateException;
@@ -54,6 +59,64 @@ public class EncodingOverrideTest {
         checkTempateOutput(t);
     }
 
+    @Test
+    public void testHeaderEncodingIsDetectedBeforeParsing() throws Exception {
+        String body = createLongBody();
+        ReaderCountingTemplateLoader tl = new ReaderCountingTemplateLoader();
+        tl.putTemplate("t.ftl", ("<#ftl encoding='ISO-8859-2'>" + body).getBytes("ISO-8859-2"));
+        tl.putTemplate("same.ftl", ("<#ftl encoding='utf-8'>" + body).getBytes("UTF-8"));
+        tl.putTemplate("sq.ftl", ("[#ftl encoding='ISO-8859-2']" + body).getBytes("ISO-8859-2"));
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_28);
+        cfg.setTemplateLoader(tl);
+        cfg.setDefaultEncoding("UTF-8");
+        
+        Template t = cfg.getTemplate("t.ftl");
+        assertEquals("ISO-8859-2", t.getEncoding());
+        assertEquals(body, t.toString());
+        // Only the beginning was read with the wrong encoding:
+        assertEquals(2, tl.getReaderCount);
+        assertThat(tl.charsRead, lessThan(body.length() + 2000));
+        
+        tl.reset();
+        t = cfg.getTemplate("same.ftl");
+        assertEquals("UTF-8", t.getEncoding());
+        assertEquals(body, t.toString());
+        assertEquals(1, tl.getReaderCount);
+        
+        tl.reset();
+        cfg.setTagSyntax(Configuration.SQUARE_BRACKET_TAG_SYNTAX);
+        t = cfg.getTemplate("sq.ftl");
+        assertEquals("ISO-8859-2", t.getEncoding());
+        assertEquals(body, t.toString());
+        assertEquals(2, tl.getReaderCount);
+        assertThat(tl.charsRead, lessThan(body.length() + 2000));
+    }
+
+    @Test
+    public void testHeaderEncodingFallsBackToReparsing() throws Exception {
+        String body = createLongBody();
+        ReaderCountingTemplateLoader tl = new ReaderCountingTemplateLoader();
+        // The header sniffing doesn't deal with escapes, so the parser will find the encoding mismatch:
+        tl.putTemplate("t.ftl", ("<#ftl encoding='ISO\\x002D8859-2'>" + body).getBytes("ISO-8859-2"));
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_28);
+        cfg.setTemplateLoader(tl);
+        cfg.setDefaultEncoding("UTF-8");
+        
+        Template t = cfg.getTemplate("t.ftl");
+        assertEquals("ISO-8859-2", t.getEncoding());
+        assertEquals(body, t.toString());
+        assertEquals(2, tl.getReaderCount);
+        assertThat(tl.charsRead, greaterThanOrEqualTo(body.length() * 2));
+    }
+
+    private String createLongBody() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("\u0151rv\u00EDzt\u0171r\u0151\n");
+        }
+        return sb.toString();
+    }
+
     private void checkTempateOutput(Template t) throws TemplateException, IOException {
         StringWriter out = new StringWriter(); 
         t.process(Collections.emptyMap(), out);
@@ -66,5 +129,32 @@ public class EncodingOverrideTest {
        cfg.setDefaultEncoding(charset);
        return cfg;
     }
+    
+    private static class ReaderCountingTemplateLoader extends ByteArrayTemplateLoader {
+        
+        private int getReaderCount;
+        private int charsRead;
+
+        @Override
+        public Reader getReader(Object templateSource, String encoding) throws UnsupportedEncodingException {
+            getReaderCount++;
+            return new FilterReader(super.getReader(templateSource, encoding)) {
+                @Override
+                public int read(char[] cbuf, int off, int len) throws IOException {
+                    int result = super.read(cbuf, off, len);
+                    if (result > 0) {
+                        charsRead += result;
+                    }
+                    return result;
+                }
+            };
+        }
+        
+        void reset() {
+            getReaderCount = 0;
+            charsRead = 0;
+        }
+        
+    }
 
 }
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+
+public class FTLHeaderEncodingSnifferTest {
+
+    @Test
+    public void testFound() {
+        assertEncoding("ISO-8859-2", "<#ftl encoding='ISO-8859-2'>");
+        assertEncoding("ISO-8859-2", "<#ftl encoding=\"ISO-8859-2\">x");
+        assertEncoding("ISO-8859-2", " \n\t<#ftl  ENCODING = \"ISO-8859-2\" >");
+        assertEncoding("ISO-8859-2", "<#ftl encoding=r\"ISO-8859-2\"/>");
+        assertEncoding("ISO-8859-2", "[#ftl encoding=\"ISO-8859-2\"]");
+        assertEncoding("ISO-8859-2",
+                "<#ftl strip_whitespace=true ns_prefixes={'D': 'http://a/b>c', 'x': \"\\\"]>\"}\n"
+                + "encoding='ISO-8859-2' output_format='HTML'>");
+        assertEncoding("ISO-8859-2", "<#ftl attributes={'encoding': 'x'} encoding='ISO-8859-2'>");
+        assertEncoding("ISO-8859-2", "<#ftl x=r'\\' encoding='ISO-8859-2'>");
+        // The end of the header needn't be in the prefix:
+        assertEncoding("ISO-8859-2", "<#ftl encoding='ISO-8859-2' strip_text=tr");
+    }
+
+    @Test
+    public void testNotFound() {
+        assertEncoding(null, "");
+        assertEncoding(null, "x<#ftl encoding='ISO-8859-2'>");
+        assertEncoding(null, "﻿<#ftl encoding='ISO-8859-2'>");
+        assertEncoding(null, "<#ftl>");
+        assertEncoding(null, "<#ftl/>");
+        assertEncoding(null, "<#ftlx encoding='ISO-8859-2'>");
+        assertEncoding(null, "<#ftl strip_whitespace=true>encoding='ISO-8859-2'");
+        assertEncoding(null, "<#ftl attributes={'encoding': 'x'}>");
+        assertEncoding(null, "<#ftl x='encoding=\"ISO-8859-2\"'>");
+        assertEncoding(null, "<#ftl my.encoding='ISO-8859-2'>");
+        assertEncoding(null, "<#ftl encodingx='ISO-8859-2'>");
+        assertEncoding(null, "<#ftl <#-- encoding='ISO-8859-2' --> >");
+        assertEncoding(null, "<#ftl encoding='ISO-8859-2");
+        assertEncoding(null, "<#ftl encoding='ISO-8859-2'");
+        assertEncoding(null, "<#ftl encoding='ISO-8859-2' ");
+        assertEncoding(null, "<#ftl encoding='ISO-8859-2' strip_text");
+        assertEncoding(null, "<#ftl encoding=x>");
+        // These we leave to the parser:
+        assertEncoding(null, "<#ftl encoding='ISO\\x002D8859-2'>");
+        assertEncoding(null, "<#ftl encoding='ISO-8859-2' + 'x'>");
+        assertEncoding(null, "<#ftl encoding='ISO-8859-2'?trim>");
+        assertEncoding(null, "<#ftl encoding='ISO-8859-2' ?trim>");
+        assertEncoding(null, "<#ftl encoding='ISO-8859-2' gt 'x'>");
+        assertEncoding(null, "<#ftl encoding='ISO-8859-2' x=='x'>");
+        assertEncoding(null, "<#ftl encoding='${x}'>");
+    }
+
+    @Test
+    public void testTagSyntax() {
+        String angle = "<#ftl encoding='ISO-8859-2'>";
+        String square = "[#ftl encoding='ISO-8859-2']";
+        assertEquals("ISO-8859-2",
+                FTLHeaderEncodingSniffer.getEncoding(angle, Configuration.ANGLE_BRACKET_TAG_SYNTAX));
+        assertNull(FTLHeaderEncodingSniffer.getEncoding(angle, Configuration.SQUARE_BRACKET_TAG_SYNTAX));
+        assertNull(FTLHeaderEncodingSniffer.getEncoding(square, Configuration.ANGLE_BRACKET_TAG_SYNTAX));
+        assertEquals("ISO-8859-2",
+                FTLHeaderEncodingSniffer.getEncoding(square, Configuration.SQUARE_BRACKET_TAG_SYNTAX));
+    }
+
+    private void assertEncoding(String expected, String src) {
+        assertEquals(expected, FTLHeaderEncodingSniffer.getEncoding(src, Configuration.AUTO_DETECT_TAG_SYNTAX));
+    }
+
+}
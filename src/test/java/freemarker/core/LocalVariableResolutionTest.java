@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateDirectiveBody;
+import freemarker.template.TemplateDirectiveModel;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateModel;
+import freemarker.template._TemplateAPI;
+import freemarker.test.TemplateTest;
+
+public class LocalVariableResolutionTest extends TemplateTest {
+
+    @Override
+    protected Configuration createConfiguration() throws Exception {
+        return new Configuration(Configuration.VERSION_2_3_28);
+    }
+
+    @Test
+    public void testMacroParametersLocalsAndLoopVariablesAreBound() throws IOException, TemplateException {
+        Template t = new Template(null,
+                "<#macro m a b=a+1><#local c = a + b>${a} ${b} ${c}<#list 1..2 as i>${i}${a}</#list></#macro>"
+                + "<@m a=1 />",
+                getConfiguration());
+        assertOutput(t, "1 2 31121");
+        for (String name : new String[] { "a", "b", "c", "i" }) {
+            for (Identifier identifier : findIdentifiers(t.getRootTreeNode(), name)) {
+                assertNotNull(name, identifier.getBinding());
+            }
+        }
+
+        assertOutput(_TemplateAPI.copyWithOwnParseResult(t), "1 2 31121");
+    }
+
+    @Test
+    public void testTopLevelVariablesAreNotBound() throws IOException, TemplateException {
+        Template t = new Template(null, "<#assign x = 1>${x}<#list [2] as y>${x}${y}</#list>", getConfiguration());
+        assertOutput(t, "112");
+        for (Identifier identifier : findIdentifiers(t.getRootTreeNode(), "x")) {
+            assertNull(identifier.getBinding());
+        }
+        assertNotNull(findIdentifiers(t.getRootTreeNode(), "y").get(0).getBinding());
+    }
+
+    @Test
+    public void testShadowing() throws IOException, TemplateException {
+        assertOutput("<#macro m x><#list [x + 1] as x>${x}<#list [x + 1] as x>${x}</#list>${x}</#list>${x}</#macro>"
+                + "<@m x=1 />",
+                "2321");
+        assertOutput("<#list ['a'] as x><#list ['b'] as y><#list ['c'] as x>${x}${y}</#list>${x}</#list></#list>",
+                "cba");
+    }
+
+    @Test
+    public void testLocalAssignedAfterReference() throws IOException, TemplateException {
+        assertOutput("<#assign y = 'ns'><#macro m>${y} <#local y = 'local'>${y}</#macro><@m />", "ns local");
+        assertOutput("<#assign y = 'ns'><#macro m><#list 1..2 as i>${y}<#local y = i></#list></#macro><@m />",
+                "ns1");
+    }
+
+    @Test
+    public void testItemsAndHashListing() throws IOException, TemplateException {
+        assertOutput("<#list {'a': 1, 'b': 2}><#items as k, v>${k}=${v};</#items></#list>", "a=1;b=2;");
+        assertOutput("<#macro m xs><#list xs><ul><#items as x>${x}</#items></ul><#else>-</#list></#macro>"
+                + "<@m [1, 2] /><@m [] />",
+                "<ul>12</ul>-");
+        assertOutput("<#list ['a', 'b'] as x>${x_index}${x_has_next?c}${x?index}</#list>", "0true0" + "1false1");
+        assertOutput("<#macro m x_index><#list ['a'] as x>${x_index}</#list></#macro><@m x_index=9 />", "0");
+    }
+
+    @Test
+    public void testNestedContent() throws IOException, TemplateException {
+        Template t = new Template(null,
+                "<#macro m x><#nested x * 2></#macro>"
+                + "<#macro n x><@m x=10; y>${x} ${y}</@m> <@m x=5>${x}</@m></#macro>"
+                + "<@n x=1 />",
+                getConfiguration());
+        assertOutput(t, "1 20 1");
+        // Inside the nested content with loop variables we don't know what the LocalContextStack contains:
+        assertNull(findIdentifiers(t.getRootTreeNode(), "y").get(0).getBinding());
+
+        assertOutput("<#macro m><#list 1..2 as i><#nested i></#list></#macro>"
+                + "<#macro n x><#list ['a'] as j><@m ; i>${x}${i}${j}</@m><@m>${x}${j}</@m></#list></#macro>"
+                + "<@n x='x' />",
+                "x1ax2axaxa");
+    }
+
+    @Test
+    public void testNullLoopVariable() throws IOException, TemplateException {
+        addToDataModel("withNull", Arrays.asList(1, null, 3));
+        // As with name-based lookup, a null loop variable doesn't hide the outer variable with the same name:
+        assertOutput("<#assign x = 'outer'><#list withNull as x>${x!'-'}</#list>", "1outer3");
+        assertOutput("<#macro m x><#list withNull as x>${x!'-'}</#list></#macro><@m x=2 />", "123");
+        assertOutput("<#macro m x=0><#list withNull as x>${x!'-'}</#list></#macro><@m x=withNull[1] />", "103");
+        assertErrorContains("<#macro m x><#list withNull as x>${x}</#list></#macro><@m x=withNull[1] />",
+                "required parameter", "specified, but had null");
+    }
+
+    @Test
+    public void testLocalsVariable() throws IOException, TemplateException {
+        assertOutput("<#macro m a others...><#local b = 2>${.locals?keys?sort?join(',')}</#macro><@m a=1 />",
+                "a,b,others");
+    }
+
+    @Test
+    public void testLocalsIsLiveView() throws IOException, TemplateException {
+        assertOutput("<#macro m a><#assign l = .locals>${l?size}<#local x = 1>${l.x} ${l?size} ${l?keys?sort?join(',')}"
+                + "<#local a = 3>${l.a}<#local x = 2>${l?values?sort?join(',')}</#macro><@m a=0 />",
+                "11 2 a,x32,3");
+        assertOutput("<#macro m><#assign l = .locals>${l?size} ${l?has_content?c}<#local x = 1>${l?size}</#macro><@m />",
+                "0 false1");
+    }
+
+    @Test
+    public void testLocalsSetFromJava() throws IOException, TemplateException {
+        addToDataModel("setLocal", new TemplateDirectiveModel() {
+            public void execute(Environment env, Map params, TemplateModel[] loopVars, TemplateDirectiveBody body)
+                    throws TemplateException, IOException {
+                for (Object name : params.keySet()) {
+                    env.setLocalVariable((String) name, (TemplateModel) params.get(name));
+                }
+            }
+        });
+        assertOutput("<#macro m x><#if x == 1><#local y = 0></#if><@setLocal x=2 y=3 z=4 />${x} ${y} ${z}"
+                + " ${.locals?keys?sort?join(',')}</#macro><@m x=1 />",
+                "2 3 4 x,y,z");
+    }
+
+    @Test
+    public void testRecursion() throws IOException, TemplateException {
+        assertOutput("<#function f n><#if n <= 1><#return 1></#if><#return n * f(n - 1)></#function>${f(5)}", "120");
+        assertOutput("<#macro m n><#if n != 0>${n}<@m n - 1 />${n}</#if></#macro><@m 3 />", "321123");
+    }
+
+    private static List<Identifier> findIdentifiers(TemplateObject tObj, String name) {
+        List<Identifier> result = new ArrayList<Identifier>();
+        findIdentifiers(tObj, name, result);
+        return result;
+    }
+
+    private static void findIdentifiers(TemplateObject tObj, String name, List<Identifier> result) {
+        if (tObj instanceof Identifier) {
+            if (((Identifier) tObj).getName().equals(name)) {
+                result.add((Identifier) tObj);
+            }
+            return;
+        }
+        for (int i = 0; i < tObj.getParameterCount(); i++) {
+            Object paramValue = tObj.getParameterValue(i);
+            if (paramValue instanceof TemplateObject) {
+                findIdentifiers((TemplateObject) paramValue, name, result);
+            }
+        }
+        if (tObj instanceof TemplateElement) {
+            TemplateElement te = (TemplateElement) tObj;
+            for (int i = 0; i < te.getChildCount(); i++) {
+                findIdentifiers(te.getChild(i), name, result);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import static freemarker.test.utility.BenchmarkUtil.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template.utility.NullWriter;
+
+/**
+ * Command-line tool for measuring how fast a template that mostly consists of macro calls and loops runs, which is
+ * where the lookup of local and loop variables matters. It's not a unit test, so it's not run by the build.
+ */
+public class MacroCallBenchmark {
+
+    private static final String TEMPLATE
+            = "<#macro cell value cssClass=''><td<#if cssClass != ''> class=\"${cssClass}\"</#if>>${value}</td>"
+            + "</#macro>"
+            + "<#macro row item index>"
+            + "<#local cssClass = (index % 2 == 0)?then('even', 'odd')>"
+            + "<tr><@cell value=index cssClass=cssClass /><#list item.values as value><@cell value=value /></#list>"
+            + "<@cell value=total(item.values) /></tr>"
+            + "</#macro>"
+            + "<#function total values><#local sum = 0><#list values as value><#local sum += value></#list>"
+            + "<#return sum></#function>"
+            + "<table><#list items as item><@row item=item index=item?index /></#list></table>";
+
+    public static void main(String[] args) throws IOException, TemplateException {
+        if (args.length > 3) {
+            p("Usage: MacroCallBenchmark [<rows> [<warmupRounds> [<measuredRounds>]]]");
+            System.exit(-1);
+        }
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int warmupRounds = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int measuredRounds = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_28);
+        Template template = new Template("macroCallBenchmark.ftl", TEMPLATE, cfg);
+
+        List<Map<String, Object>> items = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> item = new HashMap<String, Object>();
+            item.put("values", Arrays.asList(i, i + 1, i + 2, i + 3, i + 4));
+            items.add(item);
+        }
+        Map<String, Object> dataModel = new HashMap<String, Object>();
+        dataModel.put("items", items);
+
+        for (int i = 0; i < warmupRounds; i++) {
+            template.process(dataModel, NullWriter.INSTANCE);
+        }
+
+        long[] roundNanos = new long[measuredRounds];
+        for (int i = 0; i < measuredRounds; i++) {
+            long startTime = System.nanoTime();
+            template.process(dataModel, NullWriter.INSTANCE);
+            roundNanos[i] = System.nanoTime() - startTime;
+        }
+        Arrays.sort(roundNanos);
+
+        p("Rendering " + rows + " rows took " + formatRoundTimes(roundNanos, warmupRounds));
+    }
+
+}
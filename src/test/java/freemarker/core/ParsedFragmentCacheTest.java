@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.TemplateException;
+import freemarker.test.TemplateTest;
+
+public class ParsedFragmentCacheTest extends TemplateTest {
+
+    @Override
+    protected Configuration createConfiguration() throws Exception {
+        return new Configuration(Configuration.VERSION_2_3_28);
+    }
+
+    @Test
+    public void testDisabledByDefault() throws IOException, TemplateException {
+        Configuration cfg = getConfiguration();
+        assertEquals(0, cfg.getParsedFragmentCacheSize());
+        assertNull(cfg.getParsedFragmentCache());
+        assertOutput("<#list 1..3 as i>${'i * 2'?eval}</#list>", "246");
+    }
+    
+    @Test
+    public void testEval() throws IOException, TemplateException {
+        addTemplate("t1.ftl", "${'1 + 1'?eval}");
+        addTemplate("t2.ftl", "${'1 + 1'?eval}");
+        Configuration cfg = getConfiguration();
+        cfg.setParsedFragmentCacheSize(10);
+        ParsedFragmentCache cache = cfg.getParsedFragmentCache();
+        assertEquals(10, cache.getMaxSize());
+        
+        assertOutput("<#list 1..5 as i>${'i * 2'?eval}</#list>", "246810");
+        assertEquals(1, cache.getMissCount());
+        assertEquals(4, cache.getHitCount());
+        assertEquals(1, cache.getSize());
+        
+        // The parsed expression belongs to the template that contains the ?eval, so it's not shared with others:
+        assertOutputForNamed("t1.ftl", "2");
+        assertOutputForNamed("t2.ftl", "2");
+        assertOutputForNamed("t1.ftl", "2");
+        assertEquals(3, cache.getMissCount());
+        assertEquals(5, cache.getHitCount());
+        assertEquals(3, cache.getSize());
+        
+        // Parsing errors aren't cached:
+        assertErrorContains("${'1 +'?eval}", "Failed to \"?eval\"");
+        assertEquals(3, cache.getSize());
+        
+        cache.clear();
+        assertEquals(0, cache.getSize());
+    }
+    
+    @Test
+    public void testInterpret() throws IOException, TemplateException {
+        Configuration cfg = getConfiguration();
+        cfg.setParsedFragmentCacheSize(10);
+        ParsedFragmentCache cache = cfg.getParsedFragmentCache();
+        
+        assertOutput("<#list 1..3 as i><@r'[${i}]'?interpret /></#list>", "[1][2][3]");
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2, cache.getHitCount());
+        
+        // Shared by the templates that give the same name to the interpreted template:
+        assertOutput("<#list 1..3 as i><@r'[${i}]'?interpret /></#list>", "[1][2][3]");
+        assertEquals(1, cache.getMissCount());
+        assertEquals(5, cache.getHitCount());
+        assertOutput("<#assign src = [r'[${i}]', 'other']><#list 1..3 as i><@src?interpret /></#list>", "[1][2][3]");
+        assertEquals(2, cache.getMissCount());
+        
+        // Parser settings are part of the key, even if they are set in the Configuration:
+        String ftl = "<@'<#assign x = 1>\\nY'?interpret />";
+        cfg.setWhitespaceStripping(true);
+        assertOutput(ftl, "Y");
+        cfg.setWhitespaceStripping(false);
+        assertOutput(ftl, "\nY");
+        cfg.setWhitespaceStripping(true);
+        assertOutput(ftl, "Y");
+        assertEquals(4, cache.getMissCount());
+    }
+    
+    @Test
+    public void testOutputFormatIsInherited() throws IOException, TemplateException {
+        Configuration cfg = getConfiguration();
+        cfg.setParsedFragmentCacheSize(10);
+        
+        // The output format comes from the lexical context of the ?eval call:
+        assertOutput("<#outputFormat 'HTML'><#list 1..2 as i>${'\"<\"?noEsc'?eval}</#list></#outputFormat>", "<<");
+        assertErrorContains("<#outputFormat 'HTML'>${'\"<\"?noEsc'?eval}</#outputFormat>${'\"<\"?noEsc'?eval}",
+                "isn't a markup");
+    }
+    
+    @Test
+    public void testSetSize() throws IOException, TemplateException {
+        Configuration cfg = getConfiguration();
+        cfg.setParsedFragmentCacheSize(10);
+        ParsedFragmentCache cache = cfg.getParsedFragmentCache();
+        
+        Configuration cfgCopy = (Configuration) cfg.clone();
+        assertEquals(10, cfgCopy.getParsedFragmentCacheSize());
+        assertNotSame(cache, cfgCopy.getParsedFragmentCache());
+        
+        cfg.setParsedFragmentCacheSize(0);
+        assertNull(cfg.getParsedFragmentCache());
+        assertOutput("${'1'?eval}", "1");
+        
+        try {
+            cfg.setParsedFragmentCacheSize(-1);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+    
+}
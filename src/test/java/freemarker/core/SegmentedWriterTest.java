@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template.utility.CaptureOutput;
+import freemarker.test.TemplateTest;
+
+public class SegmentedWriterTest extends TemplateTest {
+
+    @Test
+    public void testWriteAcrossSegments() throws IOException {
+        _SegmentedWriter w = new _SegmentedWriter(null);
+        assertEquals("", w.toString());
+        assertEquals(0, w.getLength());
+        
+        StringBuilder expected = new StringBuilder();
+        String s = StringUtils.repeat("0123456789", 100);
+        for (int i = 0; i < 20; i++) {
+            w.write(s);
+            w.write('x');
+            w.write(s.toCharArray(), 1, 500);
+            w.write(s, 2, 300);
+            expected.append(s).append('x').append(s, 1, 501).append(s, 2, 302);
+        }
+        assertEquals(expected.length(), w.getLength());
+        assertEquals(expected.toString(), w.toString());
+        
+        StringWriter sw = new StringWriter();
+        w.writeTo(sw);
+        assertEquals(expected.toString(), sw.toString());
+    }
+
+    @Test
+    public void testSegmentSizeBoundaries() throws IOException {
+        for (int length : new int[] {
+                CharSegmentPool.SEGMENT_SIZE - 1, CharSegmentPool.SEGMENT_SIZE, CharSegmentPool.SEGMENT_SIZE + 1,
+                CharSegmentPool.SEGMENT_SIZE * 2 }) {
+            String s = StringUtils.repeat("a", length - 1) + "b";
+            _SegmentedWriter w = new _SegmentedWriter(null);
+            w.write(s);
+            assertEquals(s, w.toString());
+            StringWriter sw = new StringWriter();
+            w.writeTo(sw);
+            assertEquals(s, sw.toString());
+        }
+    }
+
+    @Test
+    public void testReleaseAndPooling() throws IOException, TemplateException {
+        Environment env = new Template(null, "", new Configuration(Configuration.VERSION_2_3_29))
+                .createProcessingEnvironment(null, new StringWriter());
+        
+        _SegmentedWriter w1 = new _SegmentedWriter(env);
+        w1.write(StringUtils.repeat("a", CharSegmentPool.SEGMENT_SIZE * 2));
+        w1.release();
+        assertEquals("", w1.toString());
+        assertEquals(0, w1.getLength());
+        
+        // The released segments are reused, but the earlier content doesn't leak into the new writer:
+        _SegmentedWriter w2 = new _SegmentedWriter(env);
+        w2.write("bc");
+        assertEquals("bc", w2.toString());
+        
+        // The released writer can be used again:
+        w1.write("d");
+        assertEquals("d", w1.toString());
+        assertEquals("bc", w2.toString());
+    }
+
+    @Test
+    public void testCaptureSites() throws IOException, TemplateException {
+        addToDataModel("capture_output", new CaptureOutput());
+        
+        String longText = StringUtils.repeat("Lorem ipsum ", 1000);
+        addToDataModel("long", longText);
+        assertOutput(
+                "<#list 1..3 as i>"
+                + "<#assign x>${long}${i}</#assign>"
+                + "<#attempt>${long}${i}<#recover>failed</#attempt>"
+                + "<#attempt>${long}${noSuchVar}<#recover>failed${i}</#attempt>"
+                + "<@capture_output var='y'>${long}${i}</@>"
+                + "[${(x == y)?c}${x?length?c}]"
+                + "</#list>",
+                longText + "1failed1[true12001]" + longText + "2failed2[true12001]" + longText + "3failed3[true12001]");
+    }
+
+}
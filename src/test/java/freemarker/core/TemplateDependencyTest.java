@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import freemarker.cache.TemplateNameFormat;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+public class TemplateDependencyTest {
+    
+    private final Configuration cfg = new Configuration(Configuration.VERSION_2_3_28);
+
+    @Test
+    public void testIncludeAndImport() throws Exception {
+        assertEquals(
+                ImmutableList.of(
+                        new TemplateDependency("lib/a.ftl", false, null, true),
+                        new TemplateDependency("lib/b.ftl", true, null, true),
+                        new TemplateDependency("c.ftl", false, null, true),
+                        new TemplateDependency("sub/d.ftl", false, "ISO-8859-2", true),
+                        new TemplateDependency("sub/e.txt", false, null, false),
+                        new TemplateDependency("sub/f.ftl", false, null, true),
+                        new TemplateDependency("sub/a.ftl", false, null, true)),
+                getStaticDependencies("sub/t.ftl",
+                        "<#include '/lib/a.ftl'>"
+                        + "<#import '/lib/b.ftl' as b>"
+                        + "<#include '../c.ftl'>"
+                        + "<#include 'd.ftl' encoding='ISO-8859-2'>"
+                        + "<#include 'e.txt' parse=false>"
+                        + "<#if x><#macro m><#include 'f.ftl' ignore_missing=x></#macro></#if>"
+                        + "<#include 'a.ftl'>"
+                        + "<#include '/lib/a.ftl'>"));
+    }
+    
+    @Test
+    public void testNonLiteralsAreIgnored() throws Exception {
+        assertEquals(
+                Collections.emptyList(),
+                getStaticDependencies("t.ftl",
+                        "<#include x>"
+                        + "<#include '${x}.ftl'>"
+                        + "<#import 'lib' + x as lib>"
+                        + "<#include 'a.ftl' encoding=x>"
+                        + "<#include 'a.ftl' parse=x>"
+                        + "${'<#include \"e.ftl\">'?interpret}"));
+    }
+    
+    @Test
+    public void testMalformedNamesAreIgnored() throws Exception {
+        cfg.setTemplateNameFormat(TemplateNameFormat.DEFAULT_2_4_0);
+        assertEquals(
+                ImmutableList.of(new TemplateDependency("a.ftl", false, null, true)),
+                getStaticDependencies("t.ftl", "<#include '../../x.ftl'><#include 'a.ftl'>"));
+    }
+    
+    @Test
+    public void testNamelessTemplate() throws Exception {
+        assertEquals(
+                ImmutableList.of(new TemplateDependency("a.ftl", true, null, true)),
+                getStaticDependencies(null, "<#import '/a.ftl' as a>"));
+    }
+    
+    @Test
+    public void testToString() {
+        assertEquals("#include \"a.ftl\"", new TemplateDependency("a.ftl", false, null, true).toString());
+        assertEquals("#include \"a.txt\" encoding=\"UTF-8\" parse=false",
+                new TemplateDependency("a.txt", false, "UTF-8", false).toString());
+        assertEquals("#import \"a.ftl\"", new TemplateDependency("a.ftl", true, null, true).toString());
+    }
+
+    private List<TemplateDependency> getStaticDependencies(String name, String content) throws Exception {
+        return new Template(name, content, cfg).getStaticDependencies();
+    }
+    
+}
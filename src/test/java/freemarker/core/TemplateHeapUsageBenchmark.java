@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static freemarker.test.utility.BenchmarkUtil.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.utility.StringUtil;
+
+/**
+ * Command-line tool for measuring how much heap the parsed templates occupy. It parses all the {@code .ftl} files
+ * found in a directory (recursively) several times, keeps all the resulting {@link Template}-s reachable, and prints
+ * both the heap growth measured after garbage collection, and the sum of {@link Template#getEstimatedMemoryUsage()}.
+ * Each copy is parsed separately, as the templates in a real template cache would be, so whatever is shared among
+ * them is only counted once by the measured heap growth. By default it uses the templates of the template test suite.
+ * Optionally, {@link Configuration#setInternTemplateText(boolean)} can be enabled.
+ * It's not a unit test, so it's not run by the build.
+ */
+public class TemplateHeapUsageBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 3) {
+            p("Usage: TemplateHeapUsageBenchmark [<corpusDirectory> [<copies> [<internTemplateText>]]]");
+            System.exit(-1);
+        }
+        File corpusDir = new File(args.length > 0 ? args[0] : DEFAULT_CORPUS_DIR);
+        int copies = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        boolean internTemplateText = args.length > 2 && Boolean.parseBoolean(args[2]);
+
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_28);
+        cfg.setInternTemplateText(internTemplateText);
+
+        List<String> names = new ArrayList<String>();
+        List<String> sources = new ArrayList<String>();
+        collectParsableTemplates(corpusDir, cfg, names, sources);
+
+        long astNodes = 0;
+        long estimatedBytes = 0;
+        for (int i = 0; i < names.size(); i++) {
+            Template t = new Template(names.get(i), new StringReader(sources.get(i)), cfg);
+            astNodes += countNodes(t.getRootTreeNode());
+            estimatedBytes += t.getEstimatedMemoryUsage();
+        }
+        p("Corpus: " + names.size() + " templates, " + astNodes + " template elements, from "
+                + StringUtil.jQuote(corpusDir.getPath()));
+        p("Estimated memory usage of one copy of the corpus: " + estimatedBytes + " bytes, "
+                + estimatedBytes / names.size() + " bytes/template");
+
+        long heapBefore = getUsedHeapAfterGC();
+        List<Template> retained = new ArrayList<Template>(names.size() * copies);
+        for (int copy = 0; copy < copies; copy++) {
+            for (int i = 0; i < names.size(); i++) {
+                retained.add(new Template(names.get(i), new StringReader(sources.get(i)), cfg));
+            }
+        }
+        long heapGrowth = getUsedHeapAfterGC() - heapBefore;
+        p("Heap growth after parsing " + copies + " copies of the corpus: " + heapGrowth + " bytes, "
+                + heapGrowth / retained.size() + " bytes/template");
+        if (internTemplateText) {
+            p(cfg.getTemplateTextInternPool());
+        }
+    }
+
+    private static long countNodes(TemplateElement te) {
+        if (te == null) {
+            return 0;
+        }
+        long count = 1;
+        for (int i = 0; i < te.getChildCount(); i++) {
+            count += countNodes(te.getChild(i));
+        }
+        return count;
+    }
+
+    private static long getUsedHeapAfterGC() {
+        Runtime rt = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // The result of a single System.gc() is unreliable; take the minimum of a few rounds
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            used = Math.min(used, rt.totalMemory() - rt.freeMemory());
+        }
+        return used;
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+public class TemplateObjectInputStreamTest {
+
+    private final Template template = Template.getPlainTextTemplate(
+            null, "", new Configuration(Configuration.VERSION_2_3_29));
+
+    @Test
+    public void testAllowedClasses() throws Exception {
+        List<Object> list = new ArrayList<Object>();
+        list.add(1);
+        list.add(new java.math.BigDecimal("1.5"));
+        list.add(true);
+        list.add("s");
+        list.add(new char[] { 'a' });
+        list.add(new int[][] { { 1 } });
+        list.add(new TemplateElement[0]);
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("k", new TextBlock("text"));
+        list.add(map);
+        
+        Object result = writeAndRead(list);
+        assertEquals(list.size(), ((List<?>) result).size());
+        assertEquals("text", ((TextBlock) ((Map<?, ?>) ((List<?>) result).get(7)).get("k")).getSource());
+    }
+
+    @Test
+    public void testDisallowedClasses() throws Exception {
+        assertRejected(new Date(), "java.util.Date");
+        assertRejected(new Date[] { new Date() }, "[Ljava.util.Date;");
+        
+        List<Object> list = new ArrayList<Object>();
+        list.add(new Date());
+        assertRejected(list, "java.util.Date");
+        
+        assertRejected(new Object[] { new File("f") }, "java.io.File");
+    }
+
+    @Test
+    public void testIsAllowedClassName() {
+        assertTrue(_TemplateObjectInputStream.isAllowedClassName("freemarker.core.TextBlock"));
+        assertTrue(_TemplateObjectInputStream.isAllowedClassName("freemarker.core.BuiltInsForStringsBasic$trimBI"));
+        assertTrue(_TemplateObjectInputStream.isAllowedClassName("[[Lfreemarker.core.Expression;"));
+        assertTrue(_TemplateObjectInputStream.isAllowedClassName("[B"));
+        assertTrue(_TemplateObjectInputStream.isAllowedClassName("java.lang.Integer"));
+        assertFalse(_TemplateObjectInputStream.isAllowedClassName("freemarker.core.sub.Foo"));
+        assertFalse(_TemplateObjectInputStream.isAllowedClassName("[X"));
+        assertFalse(_TemplateObjectInputStream.isAllowedClassName("[L;"));
+        assertTrue(_TemplateObjectInputStream.isAllowedClassName("[Ljava.lang.Object;"));
+        assertFalse(_TemplateObjectInputStream.isAllowedClassName("java.lang.Object"));
+        assertFalse(_TemplateObjectInputStream.isAllowedClassName("java.util.PriorityQueue"));
+    }
+
+    private void assertRejected(Object obj, String expectedClassName) throws IOException, ClassNotFoundException {
+        try {
+            writeAndRead(obj);
+            fail();
+        } catch (InvalidClassException e) {
+            assertEquals(expectedClassName, e.classname);
+        }
+    }
+
+    private Object writeAndRead(Object obj) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        _TemplateObjectOutputStream out = new _TemplateObjectOutputStream(bytes, template);
+        out.writeObject(obj);
+        out.close();
+        
+        _TemplateObjectInputStream in = new _TemplateObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray()), template);
+        try {
+            return in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static freemarker.test.utility.BenchmarkUtil.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.utility.StringUtil;
+
+/**
+ * Command-line tool for measuring how fast the parser is. It parses all the {@code .ftl} files found in a directory
+ * (recursively) again and again, and prints how long a pass over the whole corpus takes. By default it uses the
+ * templates of the template test suite. It's not a unit test, so it's not run by the build.
+ */
+public class TemplateParsingBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 3) {
+            p("Usage: TemplateParsingBenchmark [<corpusDirectory> [<warmupRounds> [<measuredRounds>]]]");
+            System.exit(-1);
+        }
+        File corpusDir = new File(args.length > 0 ? args[0] : DEFAULT_CORPUS_DIR);
+        int warmupRounds = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int measuredRounds = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_28);
+
+        List<String> names = new ArrayList<String>();
+        List<String> sources = new ArrayList<String>();
+        collectParsableTemplates(corpusDir, cfg, names, sources);
+        long corpusChars = 0;
+        for (String source : sources) {
+            corpusChars += source.length();
+        }
+        p("Corpus: " + names.size() + " templates, " + corpusChars + " characters, from "
+                + StringUtil.jQuote(corpusDir.getPath()));
+
+        for (int i = 0; i < warmupRounds; i++) {
+            parseAll(names, sources, cfg);
+        }
+
+        long[] roundNanos = new long[measuredRounds];
+        for (int i = 0; i < measuredRounds; i++) {
+            long startTime = System.nanoTime();
+            parseAll(names, sources, cfg);
+            roundNanos[i] = System.nanoTime() - startTime;
+        }
+        Arrays.sort(roundNanos);
+
+        long medianNanos = roundNanos[measuredRounds / 2];
+        p("Parsing the corpus took " + formatRoundTimes(roundNanos, warmupRounds));
+        p("Throughput: " + corpusChars * 1000 / medianNanos + " characters/microsecond");
+    }
+
+    private static void parseAll(List<String> names, List<String> sources, Configuration cfg) throws IOException {
+        for (int i = 0; i < names.size(); i++) {
+            new Template(names.get(i), new StringReader(sources.get(i)), cfg);
+        }
+    }
+
+}
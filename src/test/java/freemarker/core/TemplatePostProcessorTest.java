@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import freemarker.template.Configuration;
+import freemarker.template.SimpleScalar;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.test.TemplateTest;
+
+public class TemplatePostProcessorTest extends TemplateTest {
+
+    @Override
+    protected Configuration createConfiguration() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_28);
+        cfg.setTemplatePostProcessors(TemplatePostProcessor.STANDARD_OPTIMIZER_PASSES);
+        return cfg;
+    }
+    
+    @Test
+    public void testDefaults() {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_28);
+        assertEquals(Collections.emptyList(), cfg.getTemplatePostProcessors());
+        assertFalse(cfg.getVerifyTemplatePostProcessing());
+    }
+
+    @Test
+    public void testDeadBranchElimination() throws IOException, TemplateException {
+        getConfiguration().setTemplatePostProcessors(
+                ImmutableList.of(TemplatePostProcessor.DEAD_BRANCH_ELIMINATION));
+        
+        assertCanonicalForm("a<#if true>b<#else>c</#if>d", "a", "b", "d");
+        assertCanonicalForm("a<#if false>b</#if>c", "a", "c");
+        assertCanonicalForm("<#if false>a<#elseif x>b<#elseif true>c<#else>d</#if>",
+                "<#if x>b<#elseif true>c</#if>");
+        assertCanonicalForm("<#if x>a<#elseif false>b<#else>c</#if>", "<#if x>a<#else>c</#if>");
+        assertCanonicalForm("<#if false>a<#elseif x>b</#if>", "<#if x>b</#if>");
+        assertCanonicalForm("<#if 1 == 1 && !false>a</#if><#if x>b</#if>", "a", "<#if x>b</#if>");
+        assertCanonicalForm("<#list xs as x><#if false>a<#else>${x}</#if></#list>", "<#list xs as x>${x}</#list>");
+        
+        addToDataModel("x", false);
+        addToDataModel("xs", ImmutableList.of(1, 2));
+        assertOutput("<#if false>a<#elseif x>b<#elseif true>c<#else>d</#if>", "c");
+        assertOutput("<#list xs as x><#if false>a<#else>${x}</#if></#list>", "12");
+    }
+
+    @Test
+    public void testTrivialContainerFlattening() throws IOException, TemplateException {
+        getConfiguration().setTemplatePostProcessors(ImmutableList.of(
+                TemplatePostProcessor.DEAD_BRANCH_ELIMINATION, TemplatePostProcessor.TRIVIAL_CONTAINER_FLATTENING));
+        assertRootNodeType("<#if true>${x}</#if>", DollarVariable.class);
+        assertRootNodeType("<#if false>${x}</#if>", MixedContent.class);
+        assertOutput("<#if false>${x}</#if>", "");
+    }
+
+    @Test
+    public void testTextBlockMerging() throws IOException, TemplateException {
+        assertRootNodeType("a<#-- comment -->b\nc<#if true>d</#if>", TextBlock.class);
+        assertOutput("a<#-- comment -->b\nc<#if true>d</#if>", "ab\ncd");
+        assertCanonicalForm("a<#-- c -->b${x}c<#noparse>d</#noparse><#noparse>e</#noparse>", 
+                "ab", "${x}", "c", "<#noparse>de</#noparse>");
+        
+        Template t = new Template(null, "a<#-- c -->b\n<#if true>c</#if>", getConfiguration());
+        TemplateElement root = t.getRootTreeNode();
+        assertEquals(1, root.getBeginLine());
+        assertEquals(1, root.getBeginColumn());
+        assertEquals(2, root.getEndLine());
+    }
+    
+    @Test
+    public void testVerification() throws IOException, TemplateException {
+        Configuration cfg = getConfiguration();
+        cfg.setVerifyTemplatePostProcessing(true);
+        assertTrue(cfg.getVerifyTemplatePostProcessing());
+        assertOutput("a<#-- c -->b<#if true>${1}</#if><#macro m>c<#if false>d</#if></#macro><@m />", "ab1c");
+        
+        cfg.setTemplatePostProcessors(ImmutableList.of(new UpperCasingTemplatePostProcessor()));
+        addToDataModel("x", true);
+        assertErrorContains("a<#if x>b</#if>", "post-processors have changed the output", "\"ab\"", "\"AB\"");
+        
+        cfg.setVerifyTemplatePostProcessing(false);
+        assertOutput("a<#if x>b</#if>", "AB");
+    }
+    
+    @Test
+    public void testVerificationUsesEnvironmentSettings() throws IOException, TemplateException {
+        Configuration cfg = getConfiguration();
+        cfg.setVerifyTemplatePostProcessing(true);
+        cfg.setTemplatePostProcessors(ImmutableList.of(TemplatePostProcessor.DEAD_BRANCH_ELIMINATION));
+        Template t = new Template(null,
+                "<#if true>${n} ${d?date} ${g} ${v} ${.locale}</#if> <#setting locale='en_US'>${n}", cfg);
+        Environment env = t.createProcessingEnvironment(
+                ImmutableMap.of("n", 1.5, "d", new Date(0)), new StringWriter());
+        env.setLocale(Locale.GERMANY);
+        env.setTimeZone(TimeZone.getTimeZone("GMT"));
+        env.setDateFormat("yyyy/MM/dd");
+        env.setNumberFormat("0.00");
+        env.setGlobalVariable("g", new SimpleScalar("global"));
+        env.setVariable("v", new SimpleScalar("main"));
+        StringWriter out = new StringWriter();
+        env.setOut(out);
+        env.process();
+        assertEquals("1,50 1970/01/01 global main de_DE 1.50", out.toString());
+    }
+    
+    @Test
+    public void testFailingPostProcessor() throws IOException, TemplateException {
+        getConfiguration().setTemplatePostProcessors(ImmutableList.of(new TemplatePostProcessor() {
+            @Override
+            public void postProcess(Template t) throws TemplatePostProcessorException {
+                throw new TemplatePostProcessorException("Test failure");
+            }
+        }));
+        assertErrorContains("x", ParseException.class, "Test failure");
+    }
+    
+    private void assertCanonicalForm(String ftl, String... expectedRootChildrenCanonicalForms)
+            throws IOException {
+        TemplateElement root = new Template(null, ftl, getConfiguration()).getRootTreeNode();
+        ImmutableList.Builder<String> rootChildrenCanonicalForms = ImmutableList.builder();
+        if (root instanceof MixedContent) {
+            for (int i = 0; i < root.getChildCount(); i++) {
+                rootChildrenCanonicalForms.add(root.getChild(i).getCanonicalForm());
+            }
+        } else {
+            rootChildrenCanonicalForms.add(root.getCanonicalForm());
+        }
+        assertEquals(ImmutableList.copyOf(expectedRootChildrenCanonicalForms), rootChildrenCanonicalForms.build());
+    }
+    
+    private void assertRootNodeType(String ftl, Class<? extends TemplateElement> expectedType) throws IOException {
+        assertEquals(expectedType, new Template(null, ftl, getConfiguration()).getRootTreeNode().getClass());
+    }
+
+    /**
+     * Deliberately changes the output, to test the verification.
+     */
+    private static class UpperCasingTemplatePostProcessor extends TreeRewritingTemplatePostProcessor {
+
+        @Override
+        void rewriteChildren(TemplateElement parent) {
+            for (int i = 0; i < parent.getChildCount(); i++) {
+                TemplateElement child = parent.getChild(i);
+                if (child instanceof TextBlock) {
+                    ((TextBlock) child).replaceText(new String(((TextBlock) child).getTextChars()).toUpperCase());
+                }
+            }
+        }
+        
+    }
+    
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template._TemplateAPI;
+
+public class TemplateTextInternPoolTest {
+
+    @Test
+    public void testDefaults() {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_28);
+        assertFalse(cfg.getInternTemplateText());
+        assertNull(cfg.getTemplateTextInternPool());
+        
+        cfg.setInternTemplateText(true);
+        TemplateTextInternPool pool = cfg.getTemplateTextInternPool();
+        assertNotNull(pool);
+        cfg.setInternTemplateText(true);
+        assertSame(pool, cfg.getTemplateTextInternPool());
+        
+        Configuration clone = (Configuration) cfg.clone();
+        assertTrue(clone.getInternTemplateText());
+        assertNotSame(pool, clone.getTemplateTextInternPool());
+        
+        cfg.setInternTemplateText(false);
+        assertNull(cfg.getTemplateTextInternPool());
+    }
+
+    @Test
+    public void testTemplatesShareText() throws IOException {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_28);
+        cfg.setInternTemplateText(true);
+        TemplateTextInternPool pool = cfg.getTemplateTextInternPool();
+        
+        Template t1 = new Template(null, "<p>Hello ${name}!</p>", cfg);
+        Template t2 = new Template(null, "<p>Hello ${user}!</p>", cfg);
+        Template t3 = new Template(null, "<p>Bye ${user}!</p>", cfg);
+        assertSame(getText(t1, 0), getText(t2, 0));
+        assertSame(getText(t1, 2), getText(t2, 2));
+        assertSame(getText(t1, 2), getText(t3, 2));
+        assertNotSame(getText(t1, 0), getText(t3, 0));
+        assertEquals("<p>Bye ", new String(getText(t3, 0)));
+        
+        assertEquals(3, pool.getHitCount());
+        assertEquals(3, pool.getMissCount());
+        assertEquals(3, pool.getSize());
+        assertEquals("<p>Hello ".length() + 2 * "!</p>".length(), pool.getHitCharCount());
+        
+        Template copy = _TemplateAPI.copyWithOwnParseResult(t1);
+        assertNotSame(t1.getRootTreeNode(), copy.getRootTreeNode());
+        assertSame(getText(t1, 0), getText(copy, 0));
+        
+        pool.clear();
+        assertEquals(0, pool.getSize());
+        assertEquals(5, pool.getHitCount());
+        Template t4 = new Template(null, "<p>Hello ${x}", cfg);
+        assertNotSame(getText(t1, 0), getText(t4, 0));
+    }
+
+    @Test
+    public void testWhitespaceIsNotPooled() throws IOException {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_28);
+        cfg.setInternTemplateText(true);
+        new Template(null, "${a}  ${b}\n", cfg);
+        // These are shared without the pool anyway
+        assertEquals(0, cfg.getTemplateTextInternPool().getMissCount());
+    }
+
+    @Test
+    public void testUnusedTextIsRemoved() throws IOException, InterruptedException {
+        TemplateTextInternPool pool = new TemplateTextInternPool();
+        for (int i = 0; i < 1000; i++) {
+            char[] text = ("text " + i).toCharArray();
+            assertSame(text, pool.intern(text));
+            assertSame(text, pool.intern(("text " + i).toCharArray()));
+        }
+        assertEquals(1000, pool.getHitCount());
+        
+        // The array created in the last iteration might still be referenced from the stack frame
+        for (int i = 0; i < 100 && pool.getSize() > 1; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertTrue(pool.getSize() <= 1);
+    }
+
+    @Test
+    public void testHashCollisions() {
+        TemplateTextInternPool pool = new TemplateTextInternPool();
+        // "Aa" and "BB" have the same hash code
+        char[] aa = "AaAa".toCharArray();
+        char[] bb = "BBBB".toCharArray();
+        assertSame(aa, pool.intern(aa));
+        assertSame(bb, pool.intern(bb));
+        assertSame(aa, pool.intern("AaAa".toCharArray()));
+        assertSame(bb, pool.intern("BBBB".toCharArray()));
+        assertEquals(2, pool.getSize());
+    }
+
+    private static char[] getText(Template t, int childIndex) {
+        return ((TextBlock) t.getRootTreeNode().getChild(childIndex)).getTextChars();
+    }
+
+}
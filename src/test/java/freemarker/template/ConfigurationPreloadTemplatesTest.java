@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.template;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import freemarker.cache.ByteArrayTemplateLoader;
+import freemarker.cache.MultiTemplateLoader;
+import freemarker.cache.StringTemplateLoader;
+import freemarker.cache.TemplateLoader;
+import freemarker.core.ParseException;
+
+public class ConfigurationPreloadTemplatesTest {
+
+    private final Configuration cfg = new Configuration(Configuration.VERSION_2_3_29);
+    private final StringTemplateLoader templateLoader = new StringTemplateLoader();
+
+    @Before
+    public void setup() {
+        templateLoader.putTemplate("a.ftl", "a");
+        templateLoader.putTemplate("a_de.ftl", "a_de");
+        templateLoader.putTemplate("b.ftl", "b");
+        templateLoader.putTemplate("sub/c.ftl", "c");
+        templateLoader.putTemplate("sub/bad.ftl", "<#if>");
+        templateLoader.putTemplate("sub/c.ftlh", "c");
+        cfg.setTemplateLoader(templateLoader);
+        cfg.setLocale(Locale.US);
+    }
+
+    @Test
+    public void testGlobs() throws Exception {
+        TemplatePreloadResult result = cfg.preloadTemplates(ImmutableList.of("*.ftl", "**/c.ftl", "b.ftl"), null);
+        assertEquals(
+                ImmutableList.of("a.ftl/en_US", "b.ftl/en_US", "sub/c.ftl/en_US"),
+                toStrings(result.getItems()));
+        assertEquals(Collections.emptyList(), result.getFailedItems());
+        for (TemplatePreloadResult.Item item : result.getItems()) {
+            assertTrue(item.isSuccessful());
+        }
+    }
+
+    @Test
+    public void testGlobsSkipLocalizedVariants() throws Exception {
+        templateLoader.putTemplate("a_de_DE.ftl", "a_de_DE");
+        templateLoader.putTemplate("b_list.ftl", "b_list");
+        templateLoader.putTemplate("sub/c_fr.ftl", "c_fr");
+        templateLoader.putTemplate("sub/d_en.ftl", "d_en");
+        TemplatePreloadResult result = cfg.preloadTemplates(
+                ImmutableList.of("**/*.ftl"), ImmutableList.of(Locale.GERMANY));
+        assertEquals(
+                ImmutableList.of("a.ftl/de_DE", "b.ftl/de_DE", "b_list.ftl/de_DE", "sub/bad.ftl/de_DE",
+                        "sub/c.ftl/de_DE", "sub/d_en.ftl/de_DE"),
+                toStrings(result.getItems()));
+        // The variant was loaded through the base name:
+        templateLoader.removeTemplate("a_de_DE.ftl");
+        cfg.setTemplateUpdateDelayMilliseconds(Long.MAX_VALUE);
+        assertEquals("a_de_DE", cfg.getTemplate("a.ftl", Locale.GERMANY).toString());
+
+        cfg.setLocalizedLookup(false);
+        result = cfg.preloadTemplates(ImmutableList.of("a*.ftl"), null);
+        assertEquals(ImmutableList.of("a.ftl/en_US", "a_de.ftl/en_US"), toStrings(result.getItems()));
+    }
+
+    @Test
+    public void testLocalesAndCaching() throws Exception {
+        TemplatePreloadResult result = cfg.preloadTemplates(
+                ImmutableList.of("a.ftl"), ImmutableList.of(Locale.US, Locale.GERMANY));
+        assertEquals(ImmutableList.of("a.ftl/en_US", "a.ftl/de_DE"), toStrings(result.getItems()));
+        assertEquals(Collections.emptyList(), result.getFailedItems());
+
+        // Proves that the templates are in the cache now:
+        templateLoader.removeTemplate("a.ftl");
+        templateLoader.removeTemplate("a_de.ftl");
+        cfg.setTemplateUpdateDelayMilliseconds(Long.MAX_VALUE);
+        assertEquals("a", cfg.getTemplate("a.ftl", Locale.US).toString());
+        assertEquals("a_de", cfg.getTemplate("a.ftl", Locale.GERMANY).toString());
+    }
+
+    @Test
+    public void testFailures() throws Exception {
+        TemplatePreloadResult result = cfg.preloadTemplates(
+                ImmutableList.of("sub/*", "missing.ftl"), null, new Executor() {
+                    public void execute(Runnable command) {
+                        command.run();
+                    }
+                });
+        assertEquals(
+                ImmutableList.of("sub/bad.ftl/en_US", "sub/c.ftl/en_US", "sub/c.ftlh/en_US", "missing.ftl/en_US"),
+                toStrings(result.getItems()));
+
+        List<TemplatePreloadResult.Item> failedItems = result.getFailedItems();
+        assertEquals(2, failedItems.size());
+        assertEquals("sub/bad.ftl", failedItems.get(0).getTemplateName());
+        assertThat(failedItems.get(0).getFailure(), instanceOf(ParseException.class));
+        assertEquals("missing.ftl", failedItems.get(1).getTemplateName());
+        assertThat(failedItems.get(1).getFailure(), instanceOf(TemplateNotFoundException.class));
+    }
+
+    @Test
+    public void testMultiTemplateLoader() throws Exception {
+        StringTemplateLoader templateLoader2 = new StringTemplateLoader();
+        templateLoader2.putTemplate("b.ftl", "b2");
+        templateLoader2.putTemplate("d.ftl", "d");
+        cfg.setTemplateLoader(new MultiTemplateLoader(new TemplateLoader[] {
+                templateLoader, new ByteArrayTemplateLoader(), templateLoader2 }));
+        TemplatePreloadResult result = cfg.preloadTemplates(ImmutableList.of("?.ftl"), null);
+        assertEquals(ImmutableList.of("a.ftl/en_US", "b.ftl/en_US", "d.ftl/en_US"), toStrings(result.getItems()));
+        assertEquals(Collections.emptyList(), result.getFailedItems());
+    }
+
+    @Test
+    public void testGlobWithNonEnumerableTemplateLoader() throws Exception {
+        cfg.setTemplateLoader(new ByteArrayTemplateLoader());
+        assertEquals(1, cfg.preloadTemplates(ImmutableList.of("a.ftl"), null).getFailedItems().size());
+        try {
+            cfg.preloadTemplates(ImmutableList.of("*.ftl"), null);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), containsString("EnumerableTemplateLoader"));
+        }
+    }
+
+    private static List<String> toStrings(List<TemplatePreloadResult.Item> items) {
+        List<String> result = new ArrayList<String>();
+        for (TemplatePreloadResult.Item item : items) {
+            result.add(item.getTemplateName() + "/" + item.getLocale());
+        }
+        return result;
+    }
+
+}
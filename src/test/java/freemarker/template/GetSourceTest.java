@@ -20,6 +20,8 @@ package freemarker.template;
 
 import static org.junit.Assert.*;
 
+import java.io.StringWriter;
+
 import org.junit.Test;
 
 public class GetSourceTest {
@@ -49,5 +51,57 @@ public class GetSourceTest {
             assertEquals("a\n\tb\nc", t.getSource(1, 1, 1, 3));
         }
     }
+
+    @Test
+    public void testCompactSourceLinesGiveTheSameResult() throws Exception {
+        String src = "first\r\n\tsecond ${x}\rthird\n\nfifth <#if x>y</#if>\r\n";
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_29);
+        Template legacyT = new Template(null, src, cfg);
+        cfg.setCompactTemplateSourceLines(true);
+        Template compactT = new Template(null, src, cfg);
+        for (int beginLine = 1; beginLine <= 5; beginLine++) {
+            for (int endLine = beginLine; endLine <= 5; endLine++) {
+                for (int beginColumn = 1; beginColumn <= 3; beginColumn++) {
+                    for (int endColumn = 1; endColumn <= 3; endColumn++) {
+                        assertEquals(
+                                getSourceOrException(legacyT, beginColumn, beginLine, endColumn, endLine),
+                                getSourceOrException(compactT, beginColumn, beginLine, endColumn, endLine));
+                    }
+                }
+            }
+        }
+        assertEquals("        second ${x}\r", compactT.getSource(1, 2, 20, 2));
+        assertEquals("first\r\n        second", compactT.getSource(1, 1, 14, 2));
+
+        try {
+            compactT.getSource(1, 6, 1, 6);
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+            // Expected, same as with the legacy storage
+        }
+    }
+
+    private static String getSourceOrException(
+            Template t, int beginColumn, int beginLine, int endColumn, int endLine) {
+        try {
+            return t.getSource(beginColumn, beginLine, endColumn, endLine);
+        } catch (IndexOutOfBoundsException e) {
+            return e.getClass().getName();
+        }
+    }
+
+    @Test
+    public void testCompactSourceLinesInErrorMessage() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_29);
+        cfg.setCompactTemplateSourceLines(true);
+        Template t = new Template("foo.ftl", "line 1\nline ${2}\n  ${noSuchVar}\n", cfg);
+        try {
+            t.process(null, new StringWriter());
+            fail();
+        } catch (TemplateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("${noSuchVar}"));
+            assertTrue(e.getMessage(), e.getMessage().contains("line 3, column 5"));
+        }
+    }
     
 }
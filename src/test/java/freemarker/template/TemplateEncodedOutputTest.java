@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.template;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+
+import freemarker.core.ParseException;
+
+public class TemplateEncodedOutputTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final Charset UTF_16 = Charset.forName("UTF-16");
+
+    private final Configuration cfg = new Configuration(Configuration.VERSION_2_3_29);
+
+    @Test
+    public void testSameAsWithWriter() throws Exception {
+        String templateSource = "Árvíztűrő ${x} tükörfúrógép\n<#list 1..3 as i>${i}€ </#list>"
+                + "<#assign c>captured ő ${x}</#assign>${c?length} ${c}";
+        for (Charset charset : new Charset[] { UTF_8, ISO_8859_1, UTF_16, Charset.forName("windows-1250") }) {
+            Template t = new Template(null, templateSource, cfg);
+            // Twice, so the second time the cached encoded text is used:
+            for (int i = 0; i < 2; i++) {
+                assertOutputSameAsWithWriter(t, charset);
+            }
+        }
+    }
+
+    @Test
+    public void testSurrogatePairs() throws Exception {
+        // The parts of the surrogate pairs are written separately, in static text and interpolation:
+        String templateSource = "${hi}\uDE00 \uD83D${lo} ${hi}${lo} 😀${hi}";
+        for (Charset charset : new Charset[] { UTF_8, ISO_8859_1, UTF_16 }) {
+            Template t = new Template(null, templateSource, cfg);
+            for (int i = 0; i < 2; i++) {
+                assertOutputSameAsWithWriter(t, charset);
+            }
+        }
+    }
+
+    @Test
+    public void testLongOutput() throws Exception {
+        String longText = StringUtils.repeat("Lőrem ipsum ", 2000);
+        Template t = new Template(null, longText + "${x}" + longText + "<#list 1..1000 as i>${x}${i} ő</#list>", cfg);
+        for (int i = 0; i < 2; i++) {
+            assertOutputSameAsWithWriter(t, UTF_8);
+        }
+    }
+
+    @Test
+    public void testChannel() throws Exception {
+        Template t = new Template(null, "a ő ${x}", cfg);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        t.process(createDataModel(), Channels.newChannel(out), UTF_8);
+        assertEquals("a ő x ű", new String(out.toByteArray(), UTF_8));
+    }
+
+    @Test
+    public void testOutputEncodingSetting() throws Exception {
+        Template t = new Template(null, "${.output_encoding} ${'ő'?url}", cfg);
+        assertEquals("ISO-8859-2 %F5", processToString(t, Charset.forName("ISO-8859-2")));
+        
+        cfg.setOutputEncoding("UTF-8");
+        assertEquals("UTF-8 %C5%91", processToString(t, ISO_8859_1));
+    }
+
+    @Test
+    public void testOutputWrittenBeforeError() throws IOException, ParseException {
+        Template t = new Template(null, "ő ${x} ${noSuchVar}", cfg);
+        cfg.setTemplateExceptionHandler(TemplateExceptionHandler.RETHROW_HANDLER);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            t.process(createDataModel(), out, UTF_8);
+            fail();
+        } catch (TemplateException e) {
+            // expected
+        }
+        assertEquals("ő x ű ", new String(out.toByteArray(), UTF_8));
+    }
+
+    private void assertOutputSameAsWithWriter(Template t, Charset charset) throws TemplateException, IOException {
+        StringWriter sw = new StringWriter();
+        t.process(createDataModel(), sw);
+        byte[] expected = sw.toString().getBytes(charset.name());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        t.process(createDataModel(), out, charset);
+        assertArrayEquals(charset.name(), expected, out.toByteArray());
+    }
+
+    private String processToString(Template t, Charset charset) throws TemplateException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        t.process(createDataModel(), out, charset);
+        return new String(out.toByteArray(), charset);
+    }
+
+    private Map<String, Object> createDataModel() {
+        Map<String, Object> dataModel = new HashMap<String, Object>();
+        dataModel.put("x", "x ű");
+        dataModel.put("hi", "\uD83D");
+        dataModel.put("lo", "\uDE00");
+        return dataModel;
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package freemarker.test.utility;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+
+import freemarker.core.ParseException;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+/**
+ * Helper methods for the command-line benchmark tools in the test source tree.
+ */
+public final class BenchmarkUtil {
+
+    /** The templates used as corpus by default. */
+    public static final String DEFAULT_CORPUS_DIR = "src/test/resources/freemarker/test/templatesuite/templates";
+
+    private BenchmarkUtil() { }
+
+    /**
+     * Collects the {@code .ftl} files found in the directory (recursively, in a stable order), and their content, except
+     * those that can't be parsed with the given {@link Configuration} (as some test templates are intentionally
+     * malformed).
+     * 
+     * @param names
+     *            The template names, relative to {@code dir}, are added to this.
+     * @param sources
+     *            The template source codes are added to this, at the same indexes as the names.
+     */
+    public static void collectParsableTemplates(
+            File dir, Configuration cfg, List<String> names, List<String> sources) throws IOException {
+        int firstIdx = names.size();
+        collectTemplates(dir, "", names, sources);
+        for (int i = names.size() - 1; i >= firstIdx; i--) {
+            try {
+                new Template(names.get(i), new StringReader(sources.get(i)), cfg);
+            } catch (ParseException e) {
+                names.remove(i);
+                sources.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Like {@link #collectParsableTemplates(File, Configuration, List, List)}, but doesn't filter out the templates
+     * that can't be parsed, and so it doesn't invoke the parser (which matters if the time of the first parsing is
+     * measured).
+     */
+    public static void collectTemplates(File dir, List<String> names, List<String> sources) throws IOException {
+        collectTemplates(dir, "", names, sources);
+    }
+
+    private static void collectTemplates(File dir, String namePrefix, List<String> names, List<String> sources)
+            throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            throw new IOException("Failed to list directory: " + dir);
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isDirectory()) {
+                collectTemplates(file, namePrefix + file.getName() + "/", names, sources);
+            } else if (file.getName().endsWith(".ftl")) {
+                names.add(namePrefix + file.getName());
+                sources.add(FileUtils.readFileToString(file, "UTF-8"));
+            }
+        }
+    }
+
+    /**
+     * Summarizes the durations of the measured rounds, like
+     * {@code "12.3 ms (median), 11.9 ms (best), 13.1 ms (90th percentile), over 200 rounds, after 200 warmup rounds"}.
+     * 
+     * @param sortedRoundNanos
+     *            The duration of each measured round in nanoseconds, sorted in ascending order; not empty.
+     */
+    public static String formatRoundTimes(long[] sortedRoundNanos, int warmupRounds) {
+        int rounds = sortedRoundNanos.length;
+        return formatMillis(sortedRoundNanos[rounds / 2]) + " ms (median), "
+                + formatMillis(sortedRoundNanos[0]) + " ms (best), "
+                + formatMillis(sortedRoundNanos[rounds * 9 / 10]) + " ms (90th percentile), "
+                + "over " + rounds + " rounds, after " + warmupRounds + " warmup rounds";
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.valueOf(nanos / 1000 / 1000.0);
+    }
+
+    public static void p(Object obj) {
+        System.out.println(obj);
+    }
+
+}